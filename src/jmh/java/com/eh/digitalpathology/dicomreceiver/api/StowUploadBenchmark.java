@@ -0,0 +1,130 @@
+package com.eh.digitalpathology.dicomreceiver.api;
+
+import com.eh.digitalpathology.dicomreceiver.benchmark.LocalStubServer;
+import com.eh.digitalpathology.dicomreceiver.benchmark.SyntheticDicom;
+import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
+import com.eh.digitalpathology.dicomreceiver.config.HttpClientConfig;
+import com.eh.digitalpathology.dicomreceiver.service.AccessTokenService;
+import com.eh.digitalpathology.dicomreceiver.service.DownstreamLimits;
+import com.eh.digitalpathology.dicomreceiver.service.IngestMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOW-RS uploads against a loopback DICOMweb stub: one request per instance through
+ * {@link DicomHealthcareApiClient}, and one multipart request per batch through {@link StowBatchUploader}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StowUploadBenchmark {
+    private static final String DICOM_URL = "projects/benchmark/locations/local/datasets/benchmark/dicomStores/benchmark";
+
+    @Param({"1", "16"})
+    public int sizeMb;
+
+    @Param({"50"})
+    public int batchSize;
+
+    private Path dir;
+    private List<DicomUpload> uploads;
+    private LocalStubServer server;
+    private CloseableHttpClient httpClient;
+    private ScheduledExecutorService scheduler;
+    private DicomHealthcareApiClient healthcareApiClient;
+    private StowBatchUploader stowBatchUploader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("stow-bench");
+        uploads = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            String sopInstanceUid = SyntheticDicom.SERIES_UID + "." + i;
+            File file = SyntheticDicom.writeWsiInstance(dir, sopInstanceUid, sizeMb * SyntheticDicom.MB).toFile();
+            uploads.add(DicomUpload.ofFile(sopInstanceUid, SyntheticDicom.STUDY_UID, file));
+        }
+
+        server = LocalStubServer.dicomWeb();
+        GcpConfig gcpConfig = new GcpConfig();
+        gcpConfig.setDicomWebUrl(server.url());
+        httpClient = httpClient();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        AccessTokenService accessTokenService = new AccessTokenService(gcpConfig, scheduler, new SimpleMeterRegistry()) {
+            @Override
+            public String getAccessToken() {
+                return "benchmark";
+            }
+        };
+
+        healthcareApiClient = new DicomHealthcareApiClient(gcpConfig, httpClient, accessTokenService, new IngestMetrics(new SimpleMeterRegistry()),
+                new DownstreamLimits(64, 100, 16, 8));
+        stowBatchUploader = new StowBatchUploader(gcpConfig, httpClient, accessTokenService, scheduler, new DownstreamLimits(64, 100, 16, 8));
+        ReflectionTestUtils.setField(stowBatchUploader, "maxInstances", batchSize);
+        ReflectionTestUtils.setField(stowBatchUploader, "maxBytesMb", 1024L);
+        // Batches are sent when they fill up, never by the linger timer
+        ReflectionTestUtils.setField(stowBatchUploader, "lingerMs", 60_000L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        httpClient.close();
+        scheduler.shutdownNow();
+        server.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void storeSingle() {
+        healthcareApiClient.storeDicomInstances(uploads.get(0), DICOM_URL);
+    }
+
+    @Benchmark
+    public void storeBatch() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(uploads.size());
+        for (DicomUpload upload : uploads) {
+            futures.add(stowBatchUploader.submit(upload, DICOM_URL));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    private static CloseableHttpClient httpClient() {
+        HttpClientConfig httpClientConfig = new HttpClientConfig();
+        ReflectionTestUtils.setField(httpClientConfig, "maxTotal", 200);
+        ReflectionTestUtils.setField(httpClientConfig, "maxPerRoute", 100);
+        ReflectionTestUtils.setField(httpClientConfig, "idleTimeoutSeconds", 60L);
+        ReflectionTestUtils.setField(httpClientConfig, "validateAfterInactivityMs", 10_000);
+        ReflectionTestUtils.setField(httpClientConfig, "connectTimeoutMs", 120_000);
+        ReflectionTestUtils.setField(httpClientConfig, "socketTimeoutMs", 120_000);
+        ReflectionTestUtils.setField(httpClientConfig, "connectionRequestTimeoutMs", 120_000);
+        return httpClientConfig.healthcareApiHttpClient();
+    }
+}
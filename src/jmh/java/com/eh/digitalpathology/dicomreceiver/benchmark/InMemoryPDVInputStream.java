@@ -0,0 +1,74 @@
+package com.eh.digitalpathology.dicomreceiver.benchmark;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.net.PDVInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The data PDVs of one C-STORE served from memory, so {@code store} can be measured without an association.
+ */
+public class InMemoryPDVInputStream extends PDVInputStream {
+    private final byte[] data;
+    private int position;
+
+    public InMemoryPDVInputStream(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public int read() {
+        return position < data.length ? data[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (position >= data.length) {
+            return -1;
+        }
+        int read = Math.min(len, data.length - position);
+        System.arraycopy(data, position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return data.length - position;
+    }
+
+    @Override
+    public Attributes readDataset(String tsuid) throws IOException {
+        try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(data, position, data.length - position), tsuid)) {
+            position = data.length;
+            return dis.readDataset(-1);
+        }
+    }
+
+    public Attributes readDataset() throws IOException {
+        return readDataset(UID.ExplicitVRLittleEndian);
+    }
+
+    @Override
+    public void copyTo(OutputStream out, int length) throws IOException {
+        int count = Math.min(length, data.length - position);
+        out.write(data, position, count);
+        position += count;
+    }
+
+    @Override
+    public void copyTo(OutputStream out) throws IOException {
+        copyTo(out, data.length - position);
+    }
+
+    @Override
+    public long skipAll() {
+        long skipped = data.length - position;
+        position = data.length;
+        return skipped;
+    }
+}
@@ -0,0 +1,163 @@
+package com.eh.digitalpathology.dicomreceiver.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loopback stand-ins for Cloud Storage, the Healthcare API DICOMweb endpoint and the DB connector. Request bodies are drained and
+ * discarded, so the benchmarks measure the client side of the upload loops rather than a remote service.
+ */
+public final class LocalStubServer implements AutoCloseable {
+    private static final Pattern OBJECT_NAME = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern BUCKET = Pattern.compile("/upload/storage/v1/b/([^/]+)/o");
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\*|\\d+-\\d+)/(\\*|\\d+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong sessions = new AtomicLong();
+    private final Map<String, Session> uploads = new ConcurrentHashMap<>();
+
+    private record Session(String bucket, String name, AtomicLong received) {
+    }
+
+    private LocalStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Cloud Storage JSON API, enough of it for resumable uploads: a session is opened by the POST, every PUT of a
+     * chunk is acknowledged with 308 and the PUT carrying the total size finalizes the object.
+     */
+    public static LocalStubServer gcs() throws IOException {
+        LocalStubServer stub = new LocalStubServer();
+        stub.server.createContext("/upload/storage/v1/b/", stub::openSession);
+        stub.server.createContext("/upload/session/", stub::writeChunk);
+        stub.server.start();
+        return stub;
+    }
+
+    /**
+     * DICOMweb STOW-RS: every POST is drained and answered with an empty store response.
+     */
+    public static LocalStubServer dicomWeb() throws IOException {
+        LocalStubServer stub = new LocalStubServer();
+        stub.server.createContext("/", exchange -> {
+            stub.drain(exchange);
+            stub.respond(exchange, 200, "application/dicom+json", "{}");
+        });
+        stub.server.start();
+        return stub;
+    }
+
+    /**
+     * DB connector REST API. Every scanner is known and connected; {@code research} and {@code barcodeExists} pick
+     * the route instances take through the extractor. Writes are acknowledged and lookups of stored instances find none.
+     */
+    public static LocalStubServer dbConnector(boolean research, boolean barcodeExists) throws IOException {
+        LocalStubServer stub = new LocalStubServer();
+        stub.server.createContext("/", exchange -> {
+            stub.drain(exchange);
+            String path = exchange.getRequestURI().getPath();
+            String content;
+            if (path.contains("/scanner/")) {
+                String serial = path.substring(path.lastIndexOf('/') + 1);
+                content = String.format("{\"deviceSerialNumber\":\"%s\",\"connected\":true,\"research\":%b}", serial, research);
+            } else if (path.contains("/qaslide/barcode/")) {
+                content = Boolean.toString(barcodeExists);
+            } else if ("GET".equals(exchange.getRequestMethod())) {
+                content = "null";
+            } else {
+                content = "\"success\"";
+            }
+            stub.respond(exchange, 200, "application/json", "{\"status\":\"success\",\"content\":" + content + "}");
+        });
+        stub.server.start();
+        return stub;
+    }
+
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public long bytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void openSession(HttpExchange exchange) throws IOException {
+        String metadata = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Matcher bucket = BUCKET.matcher(exchange.getRequestURI().getPath());
+        Matcher name = OBJECT_NAME.matcher(metadata);
+        String id = Long.toString(sessions.incrementAndGet());
+        uploads.put(id, new Session(bucket.find() ? bucket.group(1) : "benchmark", name.find() ? name.group(1) : id, new AtomicLong()));
+        exchange.getResponseHeaders().set("Location", url() + "/upload/session/" + id);
+        respond(exchange, 200, "application/json", "{}");
+    }
+
+    private void writeChunk(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Session session = uploads.get(path.substring(path.lastIndexOf('/') + 1));
+        long received = drain(exchange);
+        if (session == null) {
+            respond(exchange, 404, "application/json", "{}");
+            return;
+        }
+        long total = session.received().addAndGet(received);
+        String range = exchange.getRequestHeaders().getFirst("Content-Range");
+        Matcher matcher = CONTENT_RANGE.matcher(range != null ? range : "");
+        if (matcher.find() && "*".equals(matcher.group(2))) {
+            if (total > 0) {
+                exchange.getResponseHeaders().set("Range", "bytes=0-" + (total - 1));
+            }
+            exchange.sendResponseHeaders(308, -1);
+            exchange.close();
+            return;
+        }
+        uploads.remove(path.substring(path.lastIndexOf('/') + 1));
+        respond(exchange, 200, "application/json", String.format(
+                "{\"kind\":\"storage#object\",\"bucket\":\"%s\",\"name\":\"%s\",\"generation\":\"1\",\"size\":\"%d\",\"contentType\":\"application/dicom\"}",
+                session.bucket(), session.name(), total));
+    }
+
+    private long drain(HttpExchange exchange) throws IOException {
+        long count = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream body = exchange.getRequestBody()) {
+            for (int read; (read = body.read(buffer)) > 0; ) {
+                count += read;
+            }
+        }
+        bytesReceived.addAndGet(count);
+        return count;
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
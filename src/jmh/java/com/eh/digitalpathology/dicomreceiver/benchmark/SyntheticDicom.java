@@ -0,0 +1,145 @@
+package com.eh.digitalpathology.dicomreceiver.benchmark;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Synthetic whole-slide instances and DICOMDIRs for the benchmarks. Pixel data is written as one native OB value
+ * of the requested size, streamed from a small buffer so multi-GB instances need no heap.
+ */
+public final class SyntheticDicom {
+    public static final long MB = 1024L * 1024L;
+    public static final String STUDY_UID = "1.2.826.0.1.3680043.8.498.1";
+    public static final String SERIES_UID = "1.2.826.0.1.3680043.8.498.1.1";
+    public static final String DEVICE_SERIAL_NUMBER = "BENCH-SCANNER-1";
+
+    private SyntheticDicom() {
+    }
+
+    /**
+     * Header of a WSI tile instance as a scanner sends it, without pixel data.
+     */
+    public static Attributes wsiHeader(String sopInstanceUid) {
+        return wsiHeader(STUDY_UID, SERIES_UID, sopInstanceUid, DEVICE_SERIAL_NUMBER, "BC-BENCH", 1);
+    }
+
+    /**
+     * Header of one instance of a WSI series holding {@code frames} 512x512 tiles.
+     */
+    public static Attributes wsiHeader(String studyUid, String seriesUid, String sopInstanceUid, String deviceSerialNumber, String barcode, int frames) {
+        Attributes header = new Attributes();
+        header.setString(Tag.SOPClassUID, VR.UI, UID.VLWholeSlideMicroscopyImageStorage);
+        header.setString(Tag.SOPInstanceUID, VR.UI, sopInstanceUid);
+        header.setString(Tag.StudyInstanceUID, VR.UI, studyUid);
+        header.setString(Tag.SeriesInstanceUID, VR.UI, seriesUid);
+        header.setString(Tag.Modality, VR.CS, "SM");
+        header.setString(Tag.DeviceSerialNumber, VR.LO, deviceSerialNumber);
+        header.setString(Tag.BarcodeValue, VR.LO, barcode);
+        header.setString(Tag.PatientID, VR.LO, "BENCH");
+        header.setInt(Tag.NumberOfFrames, VR.IS, frames);
+        header.setInt(Tag.Rows, VR.US, 512);
+        header.setInt(Tag.Columns, VR.US, 512);
+        header.setInt(Tag.SamplesPerPixel, VR.US, 3);
+        header.setInt(Tag.BitsAllocated, VR.US, 8);
+        header.setInt(Tag.BitsStored, VR.US, 8);
+        header.setInt(Tag.HighBit, VR.US, 7);
+        header.setString(Tag.PhotometricInterpretation, VR.CS, "RGB");
+        return header;
+    }
+
+    /**
+     * Writes a Part 10 WSI instance with {@code pixelBytes} of pixel data.
+     */
+    public static Path writeWsiInstance(Path dir, String sopInstanceUid, long pixelBytes) throws IOException {
+        return writeWsiInstance(dir, wsiHeader(sopInstanceUid), pixelBytes);
+    }
+
+    /**
+     * Writes a Part 10 file named after the SOP Instance UID of {@code header}, followed by {@code pixelBytes} of pixel data.
+     */
+    public static Path writeWsiInstance(Path dir, Attributes header, long pixelBytes) throws IOException {
+        File file = dir.resolve(header.getString(Tag.SOPInstanceUID) + ".dcm").toFile();
+        try (DicomOutputStream dos = new DicomOutputStream(file)) {
+            dos.writeDataset(header.createFileMetaInformation(UID.ExplicitVRLittleEndian), header);
+            writePixelData(dos, pixelBytes);
+        }
+        return file.toPath();
+    }
+
+    /**
+     * Writes {@code header} and {@code pixelBytes} of pixel data as a bare dataset, e.g. into the PDVs of a C-STORE.
+     */
+    public static void writeWsiDataset(OutputStream out, String transferSyntax, Attributes header, long pixelBytes) throws IOException {
+        DicomOutputStream dos = new DicomOutputStream(out, transferSyntax);
+        dos.writeDataset(null, header);
+        writePixelData(dos, pixelBytes);
+        // Not closed: the caller owns the underlying stream
+        dos.flush();
+    }
+
+    /**
+     * The dataset of a WSI instance as it arrives in the PDVs of a C-STORE, in Explicit VR Little Endian.
+     */
+    public static byte[] wsiDataset(String sopInstanceUid, int pixelBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pixelBytes + 4096);
+        writeWsiDataset(out, UID.ExplicitVRLittleEndian, wsiHeader(sopInstanceUid), pixelBytes);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a DICOMDIR with one study, one series and {@code images} image records.
+     */
+    public static Path writeDicomDir(Path dir, int images) throws IOException {
+        Attributes dataset = new Attributes();
+        dataset.setString(Tag.FileSetID, VR.CS, "BENCH");
+        Sequence records = dataset.newSequence(Tag.DirectoryRecordSequence, images + 2);
+        records.add(directoryRecord("STUDY", Tag.StudyInstanceUID, STUDY_UID));
+        records.add(directoryRecord("SERIES", Tag.SeriesInstanceUID, SERIES_UID));
+        for (int i = 0; i < images; i++) {
+            Attributes image = directoryRecord("IMAGE", Tag.ReferencedSOPInstanceUIDInFile, SERIES_UID + "." + i);
+            image.setString(Tag.ReferencedFileID, VR.CS, "IMAGES", "IM" + i);
+            image.setString(Tag.ReferencedSOPClassUIDInFile, VR.UI, UID.VLWholeSlideMicroscopyImageStorage);
+            records.add(image);
+        }
+        File file = dir.resolve("DICOMDIR").toFile();
+        Attributes fmi = Attributes.createFileMetaInformation(STUDY_UID + ".99", UID.MediaStorageDirectoryStorage, UID.ExplicitVRLittleEndian);
+        try (DicomOutputStream dos = new DicomOutputStream(file)) {
+            dos.writeDataset(fmi, dataset);
+        }
+        return file.toPath();
+    }
+
+    private static Attributes directoryRecord(String type, int uidTag, String uid) {
+        Attributes record = new Attributes();
+        record.setString(Tag.DirectoryRecordType, VR.CS, type);
+        record.setString(uidTag, VR.UI, uid);
+        return record;
+    }
+
+    private static void writePixelData(DicomOutputStream dos, long pixelBytes) throws IOException {
+        // Even length, as DICOM requires
+        long length = pixelBytes + (pixelBytes & 1);
+        dos.writeHeader(Tag.PixelData, VR.OB, (int) length);
+        writeFill(dos, length);
+    }
+
+    private static void writeFill(OutputStream out, long length) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(length, MB)];
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = (byte) i;
+        }
+        for (long written = 0; written < length; written += buffer.length) {
+            out.write(buffer, 0, (int) Math.min(buffer.length, length - written));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.eh.digitalpathology.dicomreceiver.loadtest;
+
+import com.eh.digitalpathology.dicomreceiver.benchmark.SyntheticDicom;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.IncompatibleConnectionException;
+import org.dcm4che3.net.Priority;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A storescu-style C-STORE SCU. Each worker opens its own association and sends its instances over it one at a
+ * time, so the number of associations is the send concurrency. Pixel data is generated while it is written to the
+ * PDVs, which keeps memory flat whatever the instance size.
+ */
+final class CStoreClient implements Closeable {
+    private final Device device = new Device("loadgen");
+    private final ApplicationEntity ae;
+    private final Connection conn = new Connection();
+    private final Connection remote;
+    private final String calledAet;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    CStoreClient(String callingAet, String calledAet, String host, int port) {
+        this.ae = new ApplicationEntity(callingAet);
+        this.calledAet = calledAet;
+        this.remote = new Connection(null, host, port);
+        device.addConnection(conn);
+        device.addApplicationEntity(ae);
+        ae.addConnection(conn);
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduledExecutor);
+    }
+
+    Association open() throws IOException, InterruptedException, IncompatibleConnectionException, GeneralSecurityException {
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.setCalledAET(calledAet);
+        rq.addPresentationContext(new PresentationContext(1, UID.VLWholeSlideMicroscopyImageStorage, UID.ExplicitVRLittleEndian));
+        return ae.connect(conn, remote, rq);
+    }
+
+    /**
+     * Sends one instance and waits for its C-STORE response; true if the SCP answered with Success.
+     */
+    static boolean store(Association as, SyntheticSeries.Instance instance) throws IOException, InterruptedException {
+        DimseRSP rsp = as.cstore(UID.VLWholeSlideMicroscopyImageStorage, instance.sopInstanceUid(), Priority.NORMAL,
+                (out, tsuid) -> SyntheticDicom.writeWsiDataset(out, tsuid, instance.header(), instance.pixelBytes()),
+                UID.ExplicitVRLittleEndian);
+        rsp.next();
+        return rsp.getCommand().getInt(Tag.Status, -1) == Status.Success;
+    }
+
+    static void release(Association as) {
+        try {
+            as.release();
+            as.waitForSocketClose();
+        } catch (IOException e) {
+            as.abort();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            as.abort();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        scheduledExecutor.shutdownNow();
+    }
+}
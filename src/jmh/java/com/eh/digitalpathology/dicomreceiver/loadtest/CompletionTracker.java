@@ -0,0 +1,121 @@
+package com.eh.digitalpathology.dicomreceiver.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects that the receiver has finished with an instance: it deletes the received file once the instance is
+ * stored or uploaded, so the removal of {@code <SOPInstanceUID>.dcm} from the receive directory ends its
+ * end-to-end latency. Files that have arrived are also re-checked periodically, in case deletes were lost to a
+ * watch overflow.
+ */
+final class CompletionTracker implements Closeable {
+    private static final long SWEEP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path dir;
+    private final LoadReport report;
+    private final WatchService watchService;
+    // Start of the send, by file name
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    // Files known to be in place, the only ones a sweep may complete
+    private final Set<String> arrived = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+
+    CompletionTracker(Path dir, LoadReport report) throws IOException {
+        this.dir = dir;
+        this.report = report;
+        this.watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_DELETE);
+        this.thread = new Thread(this::run, "completion-tracker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Called before the first byte of {@code fileName} is sent. */
+    void expect(String fileName, long startNanos) {
+        pending.put(fileName, startNanos);
+    }
+
+    /** Called once {@code fileName} is in place in the receive directory. */
+    void arrived(String fileName) {
+        if (pending.containsKey(fileName)) {
+            arrived.add(fileName);
+        }
+    }
+
+    /** Gives up on {@code fileName}, e.g. because its send failed. */
+    void cancel(String fileName) {
+        pending.remove(fileName);
+        arrived.remove(fileName);
+    }
+
+    /**
+     * Waits until every expected file has been processed or {@code timeoutSeconds} have passed; true if none is left.
+     */
+    boolean await(long timeoutSeconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        return pending.isEmpty();
+    }
+
+    int remaining() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void run() {
+        long nextSweep = System.nanoTime() + SWEEP_NANOS;
+        try {
+            while (true) {
+                WatchKey key = watchService.poll(100, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            nextSweep = 0;
+                        } else if (event.context() instanceof Path name) {
+                            complete(name.toString());
+                        }
+                    }
+                    key.reset();
+                }
+                if (System.nanoTime() >= nextSweep) {
+                    for (String name : arrived) {
+                        if (Files.notExists(dir.resolve(name))) {
+                            complete(name);
+                        }
+                    }
+                    nextSweep = System.nanoTime() + SWEEP_NANOS;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Closed at the end of the run
+        }
+    }
+
+    private void complete(String fileName) {
+        Long start = pending.remove(fileName);
+        arrived.remove(fileName);
+        if (start != null) {
+            report.completed(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.eh.digitalpathology.dicomreceiver.loadtest;
+
+import com.eh.digitalpathology.dicomreceiver.benchmark.SyntheticDicom;
+import org.dcm4che3.net.Association;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays synthetic scanner traffic against a running receiver and reports instances/s, MB/s and p50/p99 latency.
+ * <p>
+ * {@code --mode=cstore} sends C-STORE requests to the receiver's SCP, like a scanner pushing a slide;
+ * {@code --mode=filedrop} writes Part 10 files into a watched directory, like a scanner exporting to a share, for
+ * the {@code DirectoryWatcher} path. End-to-end latency is only measured when the generator can see the receive
+ * directory ({@code --watch-dir}, implied by {@code --drop-dir}).
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java \
+ *     -Dexec.mainClass=com.eh.digitalpathology.dicomreceiver.loadtest.LoadGenerator \
+ *     -Dexec.args="--mode=cstore --host=localhost --port=2575 --called-aet=EH_ENRICH --watch-dir=/opt/received --series=20 --instances=4 --frames=256 --tile-kb=48 --concurrency=8"
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    record Options(String mode, String host, int port, String callingAet, String calledAet, Path dropDir, Path stagingDir, Path watchDir,
+                   int series, int instances, int frames, int tileKb, int scanners, int concurrency, long timeoutSeconds) {
+
+        static Options parse(String... args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+            String mode = values.getOrDefault("mode", "cstore");
+            if (!mode.equals("cstore") && !mode.equals("filedrop")) {
+                throw new IllegalArgumentException("--mode must be cstore or filedrop");
+            }
+            Path dropDir = path(values.get("drop-dir"));
+            if (mode.equals("filedrop") && dropDir == null) {
+                throw new IllegalArgumentException("--mode=filedrop needs --drop-dir");
+            }
+            Path stagingDir = path(values.getOrDefault("staging-dir", dropDir != null ? dropDir + ".staging" : null));
+            Path watchDir = path(values.getOrDefault("watch-dir", dropDir != null ? dropDir.toString() : null));
+            return new Options(mode,
+                    values.getOrDefault("host", "localhost"),
+                    Integer.parseInt(values.getOrDefault("port", "2575")),
+                    values.getOrDefault("calling-aet", "LOADGEN"),
+                    values.getOrDefault("called-aet", "EH_ENRICH"),
+                    dropDir, stagingDir, watchDir,
+                    Integer.parseInt(values.getOrDefault("series", "10")),
+                    Integer.parseInt(values.getOrDefault("instances", "4")),
+                    Integer.parseInt(values.getOrDefault("frames", "64")),
+                    Integer.parseInt(values.getOrDefault("tile-kb", "48")),
+                    Integer.parseInt(values.getOrDefault("scanners", "1")),
+                    Integer.parseInt(values.getOrDefault("concurrency", "4")),
+                    Long.parseLong(values.getOrDefault("timeout-seconds", "600")));
+        }
+
+        private static Path path(String value) {
+            return value == null || value.isBlank() ? null : Paths.get(value).toAbsolutePath();
+        }
+    }
+
+    private final Options options;
+    private final PrintStream out;
+
+    LoadGenerator(Options options, PrintStream out) {
+        this.options = options;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new LoadGenerator(Options.parse(args), System.out).run() ? 0 : 1);
+    }
+
+    /**
+     * Sends every instance and waits for the receiver to process them; true if all were sent and processed.
+     */
+    boolean run() throws IOException, InterruptedException {
+        List<SyntheticSeries.Instance> instances = SyntheticSeries.generate(options.series(), options.instances(), options.frames(), options.tileKb(), options.scanners());
+        out.printf("Sending %d instances of %.1f MB (%s, %d workers)%n", instances.size(), instances.get(0).pixelBytes() / (double) SyntheticDicom.MB, options.mode(), options.concurrency());
+
+        LoadReport report = new LoadReport();
+        CompletionTracker tracker = options.watchDir() != null ? new CompletionTracker(options.watchDir(), report) : null;
+        boolean complete;
+        try {
+            if (options.mode().equals("filedrop")) {
+                Files.createDirectories(options.stagingDir());
+            }
+            runWorkers(instances, report, tracker);
+            complete = tracker == null || tracker.await(options.timeoutSeconds());
+            if (!complete) {
+                out.printf("Timed out with %d instances not processed%n", tracker.remaining());
+            }
+        } finally {
+            if (tracker != null) {
+                tracker.close();
+            }
+        }
+        report.print(out, instances.size(), tracker != null);
+        return complete && report.allSent(instances.size());
+    }
+
+    private void runWorkers(List<SyntheticSeries.Instance> instances, LoadReport report, CompletionTracker tracker) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(options.concurrency());
+        CStoreClient client = options.mode().equals("cstore") ? new CStoreClient(options.callingAet(), options.calledAet(), options.host(), options.port()) : null;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < options.concurrency(); i++) {
+                futures.add(workers.submit(() -> {
+                    if (client != null) {
+                        sendOverAssociation(client, instances, next, report, tracker);
+                    } else {
+                        drop(instances, next, report, tracker);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    out.println("Worker failed: " + e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    private void sendOverAssociation(CStoreClient client, List<SyntheticSeries.Instance> instances, AtomicInteger next, LoadReport report, CompletionTracker tracker) throws Exception {
+        Association as = client.open();
+        try {
+            for (int i; (i = next.getAndIncrement()) < instances.size(); ) {
+                SyntheticSeries.Instance instance = instances.get(i);
+                long start = System.nanoTime();
+                if (tracker != null) {
+                    tracker.expect(instance.fileName(), start);
+                }
+                boolean stored;
+                try {
+                    stored = CStoreClient.store(as, instance);
+                } catch (IOException e) {
+                    stored = false;
+                }
+                settle(instance, stored, start, report, tracker);
+            }
+        } finally {
+            CStoreClient.release(as);
+        }
+    }
+
+    private void drop(List<SyntheticSeries.Instance> instances, AtomicInteger next, LoadReport report, CompletionTracker tracker) throws IOException {
+        for (int i; (i = next.getAndIncrement()) < instances.size(); ) {
+            SyntheticSeries.Instance instance = instances.get(i);
+            // Written outside the watched directory and moved in complete, as a scanner's export would appear
+            Path staged = SyntheticDicom.writeWsiInstance(options.stagingDir(), instance.header(), instance.pixelBytes());
+            long start = System.nanoTime();
+            if (tracker != null) {
+                tracker.expect(instance.fileName(), start);
+            }
+            boolean dropped;
+            try {
+                Files.move(staged, options.dropDir().resolve(instance.fileName()), StandardCopyOption.ATOMIC_MOVE);
+                dropped = true;
+            } catch (IOException e) {
+                Files.deleteIfExists(staged);
+                dropped = false;
+            }
+            settle(instance, dropped, start, report, tracker);
+        }
+    }
+
+    private static void settle(SyntheticSeries.Instance instance, boolean sent, long start, LoadReport report, CompletionTracker tracker) {
+        if (sent) {
+            report.sent(instance.pixelBytes(), System.nanoTime() - start);
+            if (tracker != null) {
+                tracker.arrived(instance.fileName());
+            }
+        } else {
+            report.failed();
+            if (tracker != null) {
+                tracker.cancel(instance.fileName());
+            }
+        }
+    }
+}
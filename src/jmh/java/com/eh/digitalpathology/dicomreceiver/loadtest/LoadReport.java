@@ -0,0 +1,71 @@
+package com.eh.digitalpathology.dicomreceiver.loadtest;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency of one run. The send latency covers the C-STORE round trip (or the drop of the file);
+ * the end-to-end latency runs from the start of the send until the receiver has processed the file and removed it.
+ */
+final class LoadReport {
+    private final Queue<Long> sendNanos = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> endToEndNanos = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile long lastSentNanos;
+    private volatile long lastCompletedNanos;
+
+    void sent(long bytes, long nanos) {
+        sent.incrementAndGet();
+        sentBytes.addAndGet(bytes);
+        sendNanos.add(nanos);
+        lastSentNanos = System.nanoTime();
+    }
+
+    void failed() {
+        failed.incrementAndGet();
+    }
+
+    /** True when every one of {@code expected} instances was sent without a failure. */
+    boolean allSent(int expected) {
+        return failed.get() == 0 && sent.get() == expected;
+    }
+
+    void completed(long nanos) {
+        endToEndNanos.add(nanos);
+        lastCompletedNanos = System.nanoTime();
+    }
+
+    void print(PrintStream out, int expected, boolean tracked) {
+        long end = tracked && !endToEndNanos.isEmpty() ? lastCompletedNanos : lastSentNanos;
+        double seconds = Math.max(1, end - startNanos) / 1e9;
+        long instances = tracked ? endToEndNanos.size() : sent.get();
+
+        out.println("---- load test report ----");
+        out.printf("instances   %d sent, %d failed, %d completed of %d%n", sent.get(), failed.get(), endToEndNanos.size(), expected);
+        out.printf("duration    %.1f s%n", seconds);
+        out.printf("throughput  %.1f instances/s, %.1f MB/s%n", instances / seconds, sentBytes.get() / (1024.0 * 1024.0) / seconds);
+        out.printf("send        %s%n", percentiles(sendNanos));
+        out.printf("end-to-end  %s%n", tracked ? percentiles(endToEndNanos) : "not tracked (no watch directory)");
+    }
+
+    private static String percentiles(Queue<Long> nanos) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).toArray();
+        if (sorted.length == 0) {
+            return "no samples";
+        }
+        Arrays.sort(sorted);
+        return String.format("p50 %d ms, p99 %d ms, max %d ms", millis(sorted, 0.50), millis(sorted, 0.99), TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length - 1]));
+    }
+
+    private static long millis(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+    }
+}
@@ -0,0 +1,86 @@
+package com.eh.digitalpathology.dicomreceiver.loadtest;
+
+import com.eh.digitalpathology.dicomreceiver.DicomReceiverApplication;
+import com.eh.digitalpathology.dicomreceiver.benchmark.LocalStubServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * End-to-end throughput test: starts the receiver in this JVM against local stand-ins for the DB connector, Kafka,
+ * Redis, Cloud Storage and the Healthcare API (see {@link StandInConfig}), drives it with the {@link LoadGenerator}
+ * and prints the report.
+ * <p>
+ * Takes the generator's options, except for the target and directories which point at the embedded receiver,
+ * plus {@code --route=intermediate|pathqa|research} to choose the path instances take through the extractor:
+ * upload to the intermediate bucket, STOW-RS to the PathQA store, or STOW-RS to the research store.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java \
+ *     -Dexec.mainClass=com.eh.digitalpathology.dicomreceiver.loadtest.LoadTest \
+ *     -Dexec.args="--mode=cstore --route=pathqa --series=20 --instances=4 --frames=256 --concurrency=8"
+ * </pre>
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String route = Arrays.stream(args).filter(arg -> arg.startsWith("--route=")).map(arg -> arg.substring(8)).findFirst().orElse("intermediate");
+        if (!List.of("intermediate", "pathqa", "research").contains(route)) {
+            throw new IllegalArgumentException("--route must be intermediate, pathqa or research");
+        }
+        LoadGenerator.Options requested = LoadGenerator.Options.parse(Arrays.stream(args).filter(arg -> !arg.startsWith("--route=")).toArray(String[]::new));
+        Path workDir = Files.createTempDirectory("loadtest");
+        Path receiveDir = Files.createDirectories(workDir.resolve("received"));
+        boolean passed;
+        try (LocalStubServer db = LocalStubServer.dbConnector(route.equals("research"), route.equals("pathqa"));
+             LocalStubServer gcs = LocalStubServer.gcs();
+             LocalStubServer dicomWeb = LocalStubServer.dicomWeb()) {
+            ConfigurableApplicationContext receiver = new SpringApplicationBuilder(DicomReceiverApplication.class)
+                    .profiles("loadtest")
+                    .run(receiverArguments(requested, receiveDir, db, gcs, dicomWeb));
+            try {
+                LoadGenerator.Options options = new LoadGenerator.Options(requested.mode(), "localhost", requested.port(), requested.callingAet(), requested.calledAet(),
+                        receiveDir, workDir.resolve("staging"), receiveDir, requested.series(), requested.instances(), requested.frames(), requested.tileKb(),
+                        requested.scanners(), requested.concurrency(), requested.timeoutSeconds());
+                passed = new LoadGenerator(options, System.out).run();
+                System.out.printf("stand-ins   %d MB to Cloud Storage, %d MB to DICOMweb%n", gcs.bytesReceived() >> 20, dicomWeb.bytesReceived() >> 20);
+            } finally {
+                receiver.close();
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(workDir);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Command-line properties, so they take precedence over ./config/application.yml and the config server.
+     */
+    private static String[] receiverArguments(LoadGenerator.Options options, Path receiveDir, LocalStubServer db, LocalStubServer gcs, LocalStubServer dicomWeb) {
+        return new String[]{
+                "--spring.cloud.config.enabled=false",
+                "--spring.cloud.bus.enabled=false",
+                "--management.health.redis.enabled=false",
+                "--server.port=0",
+                "--db.service.url=" + db.url() + "/api/",
+                "--loadtest.gcs-url=" + gcs.url(),
+                "--gcp-config.dicom-web-url=" + dicomWeb.url(),
+                // The Cloud Storage stub does not implement compose, so every upload takes the single-stream path
+                "--gcp-config.upload.composite-threshold-mb=1048576",
+                "--file.server.path=loadtest-intermediate",
+                "--storescp.storage.path=" + receiveDir,
+                "--storescp.aetitle=" + options.calledAet(),
+                "--storescp.aetitle.port=" + options.port(),
+                "--sharedfolder.enableRemoteDirectoryWatcher=false",
+                // Picks up files dropped before the watcher has registered the receive directory
+                "--watcher.reconcile.enable=true",
+                "--ingest.journal.directory="};
+    }
+}
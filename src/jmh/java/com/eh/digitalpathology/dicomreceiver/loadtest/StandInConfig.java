@@ -0,0 +1,90 @@
+package com.eh.digitalpathology.dicomreceiver.loadtest;
+
+import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
+import com.eh.digitalpathology.dicomreceiver.service.AccessTokenService;
+import com.eh.digitalpathology.dicomreceiver.service.RedisClient;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Local stand-ins for the receiver's external dependencies, active with the {@code loadtest} profile. Cloud Storage
+ * points at a {@code LocalStubServer}, Kafka sends complete immediately without a broker, Redis is an in-memory set
+ * and the Healthcare API token is fixed. The DB connector and the DICOMweb endpoint are stubs reached through their
+ * usual URL properties.
+ */
+@Configuration
+@Profile("loadtest")
+public class StandInConfig {
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public Storage standInStorage(@Value("${loadtest.gcs-url}") String gcsUrl) {
+        return StorageOptions.newBuilder()
+                .setHost(gcsUrl)
+                .setProjectId("loadtest")
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+    }
+
+    @Bean
+    @Primary
+    public KafkaTemplate<String, String> standInKafkaTemplate() {
+        // KafkaTemplate closes the producer after every send, so each send gets a fresh mock
+        return new KafkaTemplate<>(() -> new MockProducer<>(true, new StringSerializer(), new StringSerializer()));
+    }
+
+    @Bean
+    @Primary
+    public AccessTokenService standInAccessTokenService(GcpConfig gcpConfig, @Qualifier("tokenRefreshScheduler") ScheduledExecutorService scheduler, MeterRegistry meterRegistry) {
+        return new AccessTokenService(gcpConfig, scheduler, meterRegistry) {
+            @Override
+            public String getAccessToken() {
+                return "loadtest";
+            }
+        };
+    }
+
+    @Bean
+    @Primary
+    public RedisClient standInRedisClient() {
+        Set<String> keys = ConcurrentHashMap.newKeySet();
+        return new RedisClient(null) {
+            @Override
+            public boolean isFileProcessed(String fileKey) {
+                return keys.contains(fileKey);
+            }
+
+            @Override
+            public void markFileAsProcessed(String fileKey) {
+                keys.add(fileKey);
+            }
+
+            @Override
+            public boolean tryLockFile(String fileKey, Duration lockDuration) {
+                return keys.add(fileKey + ":lock");
+            }
+
+            @Override
+            public void releaseFileLock(String fileKey) {
+                keys.remove(fileKey + ":lock");
+            }
+        };
+    }
+}
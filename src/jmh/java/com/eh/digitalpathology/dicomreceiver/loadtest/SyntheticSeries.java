@@ -0,0 +1,47 @@
+package com.eh.digitalpathology.dicomreceiver.loadtest;
+
+import com.eh.digitalpathology.dicomreceiver.benchmark.SyntheticDicom;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.util.UIDUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The instances a run sends: {@code series} WSI series of {@code instances} instances each, spread round-robin
+ * over {@code scanners} device serial numbers. Every instance holds {@code frames} tiles of {@code tileKb} KB.
+ * UIDs and barcodes are unique per run, so runs can be repeated against the same receiver.
+ */
+final class SyntheticSeries {
+
+    record Instance(Attributes header, long pixelBytes) {
+        String sopInstanceUid() {
+            return header.getString(Tag.SOPInstanceUID);
+        }
+
+        String fileName() {
+            return sopInstanceUid() + ".dcm";
+        }
+    }
+
+    private SyntheticSeries() {
+    }
+
+    static List<Instance> generate(int series, int instances, int frames, int tileKb, int scanners) {
+        String run = Long.toString(System.currentTimeMillis(), 36).toUpperCase();
+        long pixelBytes = (long) frames * tileKb * 1024L;
+        List<Instance> result = new ArrayList<>(series * instances);
+        for (int s = 0; s < series; s++) {
+            String studyUid = UIDUtils.createUID();
+            String seriesUid = UIDUtils.createUID();
+            String scanner = "LOADGEN-" + (s % scanners + 1);
+            String barcode = "LOADGEN-" + run + "-" + (s + 1);
+            for (int i = 0; i < instances; i++) {
+                Attributes header = SyntheticDicom.wsiHeader(studyUid, seriesUid, UIDUtils.createUID(), scanner, barcode, frames);
+                result.add(new Instance(header, pixelBytes));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.benchmark.SyntheticDicom;
+import com.eh.digitalpathology.dicomreceiver.model.DicomDirDocument;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.io.DicomInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DicomDirService#fetchMetaData} on large DICOMDIRs, alone and together with parsing the file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DicomDirBenchmark {
+
+    @Param({"1000", "20000"})
+    public int images;
+
+    private Path dir;
+    private Path dicomDir;
+    private Attributes dataset;
+    // fetchMetaData touches none of the collaborators
+    private final DicomDirService dicomDirService = new DicomDirService(null, null, null);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("dicomdir-bench");
+        dicomDir = SyntheticDicom.writeDicomDir(dir, images);
+        dataset = read(dicomDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public DicomDirDocument fetchMetaData() {
+        return dicomDirService.fetchMetaData(dicomDir, dataset);
+    }
+
+    @Benchmark
+    public DicomDirDocument readAndFetchMetaData() throws IOException {
+        return dicomDirService.fetchMetaData(dicomDir, read(dicomDir));
+    }
+
+    private static Attributes read(Path file) throws IOException {
+        try (DicomInputStream dis = new DicomInputStream(file.toFile())) {
+            return dis.readDataset();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.benchmark.SyntheticDicom;
+import org.dcm4che3.data.Attributes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Header extraction and short barcode generation of {@link DicomExtractorService}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DicomExtractorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class WsiFile {
+        /** Pixel data size; header extraction must stay flat as it grows */
+        @Param({"1", "64", "512"})
+        public int sizeMb;
+
+        Path dir;
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("extract-bench");
+            file = SyntheticDicom.writeWsiInstance(dir, "1.2.826.0.1.3680043.8.498.2", sizeMb * SyntheticDicom.MB).toFile();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileSystemUtils.deleteRecursively(dir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Uids {
+        String studyUid = SyntheticDicom.STUDY_UID;
+        String seriesUid = SyntheticDicom.SERIES_UID;
+    }
+
+    @Benchmark
+    public Attributes readHeader(WsiFile wsi) throws IOException {
+        return DicomExtractorService.readHeader(wsi.file).dataset();
+    }
+
+    @Benchmark
+    public String generateShortBarcode(Uids uids) {
+        return DicomExtractorService.generateShortBarcode(uids.studyUid, uids.seriesUid);
+    }
+}
@@ -0,0 +1,84 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.benchmark.LocalStubServer;
+import com.eh.digitalpathology.dicomreceiver.benchmark.SyntheticDicom;
+import com.eh.digitalpathology.dicomreceiver.exceptions.DicomAttributesException;
+import com.eh.digitalpathology.dicomreceiver.util.UploadBufferPool;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resumable upload loop of {@link GcsUploadService} against a loopback Cloud Storage stub.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GcsUploadBenchmark {
+
+    @Param({"1", "64"})
+    public int sizeMb;
+
+    private Path dir;
+    private File file;
+    private LocalStubServer server;
+    private Storage storage;
+    private ExecutorService uploadExecutor;
+    private GcsUploadService gcsUploadService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("gcs-bench");
+        file = SyntheticDicom.writeWsiInstance(dir, "1.2.826.0.1.3680043.8.498.4", sizeMb * SyntheticDicom.MB).toFile();
+        server = LocalStubServer.gcs();
+        storage = StorageOptions.newBuilder()
+                .setHost(server.url())
+                .setProjectId("benchmark")
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+        uploadExecutor = Executors.newFixedThreadPool(4);
+        gcsUploadService = new GcsUploadService(storage, new UploadBufferPool(4, 16 * 1024 * 1024), uploadExecutor, new DownstreamLimits(64, 100, 16, 8));
+        ReflectionTestUtils.setField(gcsUploadService, "compositeThresholdMb", 256L);
+        ReflectionTestUtils.setField(gcsUploadService, "partSizeMb", 128L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        storage.close();
+        uploadExecutor.shutdownNow();
+        server.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void upload() throws DicomAttributesException {
+        gcsUploadService.upload("benchmark", file.getName(), file);
+    }
+}
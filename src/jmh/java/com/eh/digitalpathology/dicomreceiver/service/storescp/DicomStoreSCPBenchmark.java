@@ -0,0 +1,80 @@
+package com.eh.digitalpathology.dicomreceiver.service.storescp;
+
+import com.eh.digitalpathology.dicomreceiver.benchmark.InMemoryPDVInputStream;
+import com.eh.digitalpathology.dicomreceiver.benchmark.SyntheticDicom;
+import com.eh.digitalpathology.dicomreceiver.util.CommonUtils;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DicomStoreSCPService#store} of one instance from an in-memory PDV stream to the local store, in the
+ * streaming mode and the decode-and-rewrite mode. The watcher hand-off is disabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DicomStoreSCPBenchmark {
+    private static final String SOP_INSTANCE_UID = "1.2.826.0.1.3680043.8.498.3";
+
+    @Param({"1", "64"})
+    public int sizeMb;
+
+    @Param({"true", "false"})
+    public boolean streaming;
+
+    private Path dir;
+    private byte[] dataset;
+    private DicomStoreSCPService storeSCPService;
+    private final PresentationContext pc = new PresentationContext(1, UID.VLWholeSlideMicroscopyImageStorage, UID.ExplicitVRLittleEndian);
+    private final Attributes rq = new Attributes();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("storescp-bench");
+        dataset = SyntheticDicom.wsiDataset(SOP_INSTANCE_UID, (int) (sizeMb * SyntheticDicom.MB));
+        rq.setString(Tag.AffectedSOPInstanceUID, VR.UI, SOP_INSTANCE_UID);
+        rq.setString(Tag.AffectedSOPClassUID, VR.UI, UID.VLWholeSlideMicroscopyImageStorage);
+
+        CommonUtils commonUtils = new CommonUtils();
+        ReflectionTestUtils.setField(commonUtils, "fileStorePath", dir.toString());
+        storeSCPService = new DicomStoreSCPService(commonUtils, null);
+        ReflectionTestUtils.setField(storeSCPService, "streamingEnabled", streaming);
+        ReflectionTestUtils.setField(storeSCPService, "handOffEnabled", false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void store() throws IOException {
+        storeSCPService.store(null, pc, rq, new InMemoryPDVInputStream(dataset), new Attributes());
+    }
+}
@@ -3,6 +3,7 @@ package com.eh.digitalpathology.dicomreceiver;
 
 import com.eh.digitalpathology.dicomreceiver.service.DirectoryWatcher;
 import com.eh.digitalpathology.dicomreceiver.service.RemoteDirectoryWatcher;
+import com.eh.digitalpathology.dicomreceiver.service.WatchRoots;
 import com.eh.digitalpathology.dicomreceiver.util.CommonUtils;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
@@ -25,13 +26,15 @@ public class DicomReceiverApplication implements CommandLineRunner {
 
 
     private RemoteDirectoryWatcher remoteDirectoryWatcher;
+    private final WatchRoots watchRoots;
 
     @Autowired
-    public DicomReceiverApplication( DirectoryWatcher directoryWatcher, CommonUtils commonUtils, RemoteDirectoryWatcher remoteDirectoryWatcher) {
+    public DicomReceiverApplication( DirectoryWatcher directoryWatcher, CommonUtils commonUtils, RemoteDirectoryWatcher remoteDirectoryWatcher, WatchRoots watchRoots) {
 
         this.directoryWatcher = directoryWatcher;
         this.commonUtils = commonUtils;
         this.remoteDirectoryWatcher = remoteDirectoryWatcher;
+        this.watchRoots = watchRoots;
 
     }
 
@@ -54,6 +57,8 @@ public class DicomReceiverApplication implements CommandLineRunner {
             directoryWatcher.directoryLookup(receivedFiles, intermediateFileStorage);
             log.info("run :: Directory watcher service completed.");
         });
+        // Additional watch roots (watcher.roots) run on their own threads and worker pools
+        watchRoots.start(intermediateFileStorage);
         boolean enableRemoteDirectoryWatcher = commonUtils.isEnableRemoteDirectoryWatcher();
         log.info("run :: enableRemoteDirectoryWatcher: {}", enableRemoteDirectoryWatcher);
         if(enableRemoteDirectoryWatcher) {
@@ -13,124 +13,92 @@ package com.eh.digitalpathology.dicomreceiver.api;
 
 import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
 import com.eh.digitalpathology.dicomreceiver.exceptions.HealthcareApiException;
-import com.eh.digitalpathology.dicomreceiver.util.GCPUtils;
-import jakarta.annotation.PreDestroy;
-import org.apache.http.HttpEntity;
+import com.eh.digitalpathology.dicomreceiver.service.AccessTokenService;
+import com.eh.digitalpathology.dicomreceiver.service.DownstreamLimits;
+import com.eh.digitalpathology.dicomreceiver.service.IngestMetrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.dcm4che3.data.Attributes;
-import org.dcm4che3.data.Tag;
-import org.dcm4che3.io.DicomOutputStream;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.util.concurrent.*;
 
 @Component
 public class DicomHealthcareApiClient {
     private static final Logger logger = LoggerFactory.getLogger( DicomHealthcareApiClient.class );
     private final GcpConfig gcpConfig;
-    ExecutorService executorService = Executors.newFixedThreadPool( Runtime.getRuntime( ).availableProcessors( ) );
+    private final CloseableHttpClient httpClient;
+    private final AccessTokenService accessTokenService;
+    private final IngestMetrics ingestMetrics;
+    private final DownstreamLimits downstreamLimits;
 
-    public DicomHealthcareApiClient ( GcpConfig gcpConfig ) {
+    public DicomHealthcareApiClient ( GcpConfig gcpConfig, @Qualifier( "healthcareApiHttpClient" ) CloseableHttpClient httpClient, AccessTokenService accessTokenService, IngestMetrics ingestMetrics,
+                                      DownstreamLimits downstreamLimits ) {
         this.gcpConfig = gcpConfig;
+        this.httpClient = httpClient;
+        this.accessTokenService = accessTokenService;
+        this.ingestMetrics = ingestMetrics;
+        this.downstreamLimits = downstreamLimits;
     }
 
     /**
      * This method is used to store dicom instances to final dicom store
      *
-     * @param dicomFileMetadata contains file metadata information of dicom instance
-     * @param dcmAttributes     contains tag data of dicom instance
+     * @param upload   dicom instance to store, streamed from its file on disk
+     * @param dicomUrl path of the target dicom store
      */
-    public void storeDicomInstances ( Attributes dicomFileMetadata, Attributes dcmAttributes, String dicomUrl ) {
-        String sopInstanceUid = dcmAttributes.getString( Tag.SOPInstanceUID );
+    public void storeDicomInstances ( DicomUpload upload, String dicomUrl ) {
+        String sopInstanceUid = upload.sopInstanceUid( );
         logger.info( "storeDicomInstances :: Starting the process of storing DICOM instance with SOPInstanceUID : {}", sopInstanceUid );
-        try ( CloseableHttpClient httpClient = HttpClients.custom( ).setDefaultRequestConfig( RequestConfig.custom( ).setSocketTimeout( 120000 ).setConnectTimeout( 120000 ).setConnectionRequestTimeout( 120000 ).build( ) ).build( ); PipedInputStream pipedInputStream = new PipedInputStream( 1048576 ); PipedOutputStream pipedOutputStream = new PipedOutputStream( pipedInputStream ) ) {
+        Timer.Sample sample = ingestMetrics.start( );
+        boolean success = false;
+        try {
             String uri = String.format( "%s/%s/dicomWeb/studies", gcpConfig.getDicomWebUrl( ), dicomUrl );
             logger.info( "storeDicomInstances :: Constructed DICOM Store URI: {}", uri );
 
-            String accessToken = GCPUtils.getAccessToken( gcpConfig );
-            logger.debug( "storeDicomInstances :: Submitting a task to write DICOM data to the output stream." );
-
-            Future< ? > writeTask = executorService.submit( ( ) -> {
-                try ( DicomOutputStream dicomOutputStream = new DicomOutputStream( pipedOutputStream, "" ) ) {
-                    dicomOutputStream.writeDataset( dicomFileMetadata, dcmAttributes );
-                } catch ( IOException ex ) {
-                    throw new HealthcareApiException( "Failed to write DICOM data to the output stream", ex );
-                }
-            } );
+            String accessToken = accessTokenService.getAccessToken( );
             HttpPost httpPost = new HttpPost( uri );
-            httpPost.setHeader( HttpHeaders.CONTENT_TYPE, "application/dicom" );
 
             if ( accessToken != null && !accessToken.isEmpty( ) ) {
                 httpPost.setHeader( HttpHeaders.AUTHORIZATION, "Bearer " + accessToken );
             }
 
-            HttpEntity entity = new InputStreamEntity( pipedInputStream );
-            httpPost.setEntity( entity );
+            // The entity copies the file into the request as it is sent; no re-encoding thread or pipe is involved
+            httpPost.setEntity( new DicomUploadEntity( upload ) );
 
-            storeInstances( writeTask, httpClient, httpPost, sopInstanceUid );
+            storeInstances( httpPost, sopInstanceUid );
+            success = true;
+            ingestMetrics.countBytes( "ingest.stow.uploaded", upload.contentLength( ) );
         } catch ( Exception e ) {
             String errorMessage = String.format( "An error occurred while uploading the DICOM file with SOPInstanceUID '%s' to the final DICOM store during the STOW-RS operation.", sopInstanceUid );
             throw new HealthcareApiException( errorMessage, e );
+        } finally {
+            ingestMetrics.stop( sample, "ingest.stow", IngestMetrics.outcome( success ) );
         }
     }
 
-    private void storeInstances ( Future< ? > writeTask, CloseableHttpClient httpClient, HttpPost httpPost, String sopInstanceUid ) {
-        try ( CloseableHttpResponse response = httpClient.execute( httpPost ) ) {
+    private void storeInstances ( HttpPost httpPost, String sopInstanceUid ) {
+        try ( DownstreamLimits.Permit permit = downstreamLimits.acquire( DownstreamLimits.Downstream.HEALTHCARE_API );
+              CloseableHttpResponse response = httpClient.execute( httpPost ) ) {
+            // Drain the body so the connection goes back to the pool instead of being closed
+            EntityUtils.consume( response.getEntity( ) );
             int statusCode = response.getStatusLine( ).getStatusCode( );
             if ( statusCode != HttpStatus.SC_OK ) {
-                writeTask.cancel( true );
                 String errorMessage = String.format( "Error storing DICOM instance with SOPInstance id %s: %s - %s", sopInstanceUid, statusCode, response.getStatusLine( ).getReasonPhrase( ) );
                 throw new HealthcareApiException( errorMessage );
             }
 
-            handleWriteTask( writeTask );
-
             logger.info( "storeInstances :: DICOM file with SOPInstanceUID '{}' successfully uploaded to the final DICOM store.", sopInstanceUid );
         } catch ( IOException ex ) {
             String errorMessage = String.format( "Failed to send DICOM data for SOPInstanceUID '%s' to the final DICOM store during the STOW-RS operation.", sopInstanceUid );
             throw new HealthcareApiException( errorMessage, ex );
         }
     }
-
-    private void handleWriteTask ( Future< ? > writeTask ) {
-        try {
-            writeTask.get( 5, TimeUnit.MINUTES );
-        } catch ( InterruptedException | ExecutionException e ) {
-            Thread.currentThread( ).interrupt( );
-            logger.error( "handleWriteTask :: Write task was interrupted", e );
-        } catch ( TimeoutException e ) {
-            writeTask.cancel( true );
-            logger.error( "handleWriteTask :: Write task was timed out", e );
-        }
-    }
-
-    @PreDestroy
-    public void shutdownExecutor ( ) {
-        executorService.shutdown( );
-        try {
-            if ( !executorService.awaitTermination( 30, TimeUnit.SECONDS ) ) {
-                executorService.shutdownNow( );
-            }
-        } catch ( InterruptedException ex ) {
-            executorService.shutdownNow( );
-            Thread.currentThread( ).interrupt( );
-        }
-
-    }
-
-
-
-
-}
\ No newline at end of file
+}
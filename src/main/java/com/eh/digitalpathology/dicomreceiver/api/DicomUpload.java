@@ -0,0 +1,62 @@
+package com.eh.digitalpathology.dicomreceiver.api;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.io.DicomOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A DICOM instance to be sent by STOW-RS, backed by its file on disk. Unless the dataset was changed after
+ * it was received, the file is sent byte for byte. Otherwise only the header is re-encoded from
+ * {@code header} and the rest of the file, from {@code tailOffset} (the Pixel Data element), is copied as is.
+ */
+public record DicomUpload( String sopInstanceUid, String studyInstanceUid, File file, Attributes fileMetaInformation, Attributes header, long tailOffset ) {
+
+    public static DicomUpload ofFile ( String sopInstanceUid, String studyInstanceUid, File file ) {
+        return new DicomUpload( sopInstanceUid, studyInstanceUid, file, null, null, 0 );
+    }
+
+    public static DicomUpload withHeader ( String sopInstanceUid, String studyInstanceUid, File file, Attributes fileMetaInformation, Attributes header, long tailOffset ) {
+        return new DicomUpload( sopInstanceUid, studyInstanceUid, file, fileMetaInformation, header, tailOffset );
+    }
+
+    /** Number of bytes {@link #writeTo} produces, or -1 when the header is re-encoded and the size is not known up front. */
+    public long contentLength ( ) {
+        return header == null ? file.length( ) : -1;
+    }
+
+    public void writeTo ( OutputStream outputStream ) throws IOException {
+        try ( FileChannel input = FileChannel.open( file.toPath( ), StandardOpenOption.READ ) ) {
+            if ( header == null ) {
+                transfer( input, 0, input.size( ), outputStream );
+                return;
+            }
+            // The header writer must not close the request stream before the tail is copied
+            try ( DicomOutputStream dicomOutputStream = new DicomOutputStream( CloseShieldOutputStream.wrap( outputStream ), "" ) ) {
+                dicomOutputStream.writeDataset( fileMetaInformation, header );
+            }
+            transfer( input, tailOffset, input.size( ) - tailOffset, outputStream );
+        }
+    }
+
+    private static void transfer ( FileChannel input, long position, long count, OutputStream outputStream ) throws IOException {
+        WritableByteChannel target = Channels.newChannel( outputStream );
+        long offset = position;
+        long remaining = count;
+        while ( remaining > 0 ) {
+            long transferred = input.transferTo( offset, remaining, target );
+            if ( transferred <= 0 ) {
+                throw new IOException( "Unable to read " + remaining + " bytes at offset " + offset );
+            }
+            offset += transferred;
+            remaining -= transferred;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.eh.digitalpathology.dicomreceiver.api;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.message.BasicHeader;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@code application/dicom} request body that writes a {@link DicomUpload} straight from its file.
+ */
+class DicomUploadEntity extends AbstractHttpEntity {
+
+    private final DicomUpload upload;
+
+    DicomUploadEntity ( DicomUpload upload ) {
+        this.upload = upload;
+        setChunked( upload.contentLength( ) < 0 );
+        setContentType( new BasicHeader( HttpHeaders.CONTENT_TYPE, "application/dicom" ) );
+    }
+
+    @Override
+    public boolean isRepeatable ( ) {
+        return true;
+    }
+
+    @Override
+    public long getContentLength ( ) {
+        return upload.contentLength( );
+    }
+
+    @Override
+    public InputStream getContent ( ) {
+        throw new UnsupportedOperationException( "DICOM upload entity can only be written to a stream" );
+    }
+
+    @Override
+    public void writeTo ( OutputStream outputStream ) throws IOException {
+        upload.writeTo( outputStream );
+        outputStream.flush( );
+    }
+
+    @Override
+    public boolean isStreaming ( ) {
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+package com.eh.digitalpathology.dicomreceiver.api;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.message.BasicHeader;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@code multipart/related; type="application/dicom"} request body for STOW-RS. Each instance is copied
+ * from its file straight into the request stream while it is sent, so the batch is never buffered in memory.
+ */
+class MultipartDicomEntity extends AbstractHttpEntity {
+
+    private final List< DicomUpload > parts;
+    private final String boundary;
+
+    MultipartDicomEntity ( List< DicomUpload > parts ) {
+        this.parts = parts;
+        this.boundary = "DICOM-" + UUID.randomUUID( );
+        setChunked( true );
+        setContentType( new BasicHeader( HttpHeaders.CONTENT_TYPE, "multipart/related; type=\"application/dicom\"; boundary=" + boundary ) );
+    }
+
+    String getBoundary ( ) {
+        return boundary;
+    }
+
+    @Override
+    public boolean isRepeatable ( ) {
+        return true;
+    }
+
+    @Override
+    public long getContentLength ( ) {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent ( ) {
+        throw new UnsupportedOperationException( "Multipart DICOM entity can only be written to a stream" );
+    }
+
+    @Override
+    public void writeTo ( OutputStream outputStream ) throws IOException {
+        for ( DicomUpload part : parts ) {
+            outputStream.write( ( "--" + boundary + "\r\nContent-Type: application/dicom\r\n\r\n" ).getBytes( StandardCharsets.US_ASCII ) );
+            part.writeTo( outputStream );
+            outputStream.write( "\r\n".getBytes( StandardCharsets.US_ASCII ) );
+        }
+        outputStream.write( ( "--" + boundary + "--\r\n" ).getBytes( StandardCharsets.US_ASCII ) );
+        outputStream.flush( );
+    }
+
+    @Override
+    public boolean isStreaming ( ) {
+        return false;
+    }
+}
@@ -0,0 +1,207 @@
+package com.eh.digitalpathology.dicomreceiver.api;
+
+import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
+import com.eh.digitalpathology.dicomreceiver.exceptions.HealthcareApiException;
+import com.eh.digitalpathology.dicomreceiver.service.AccessTokenService;
+import com.eh.digitalpathology.dicomreceiver.service.DownstreamLimits;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects instances going to the same DICOM store and study and sends them as a single
+ * multipart/related STOW-RS request once the batch reaches its instance count or byte limit, or
+ * when the linger time since its first instance runs out. Each submitted instance gets its own
+ * future, completed from the per-instance result in the STOW-RS response.
+ */
+@Component
+public class StowBatchUploader {
+    private static final Logger logger = LoggerFactory.getLogger( StowBatchUploader.class );
+
+    // DICOM JSON keys of the STOW-RS response
+    private static final String FAILED_SOP_SEQUENCE = "00081198";
+    private static final String REFERENCED_SOP_INSTANCE_UID = "00081155";
+    private static final String FAILURE_REASON = "00081197";
+
+    private final GcpConfig gcpConfig;
+    private final CloseableHttpClient httpClient;
+    private final AccessTokenService accessTokenService;
+    private final ScheduledExecutorService scheduler;
+    private final DownstreamLimits downstreamLimits;
+    private final ObjectMapper objectMapper = new ObjectMapper( );
+
+    private final Map< String, Batch > batches = new HashMap<>( );
+
+    @Value( "${gcp-config.stow-batch.max-instances:50}" )
+    private int maxInstances;
+
+    @Value( "${gcp-config.stow-batch.max-bytes-mb:256}" )
+    private long maxBytesMb;
+
+    @Value( "${gcp-config.stow-batch.linger-ms:2000}" )
+    private long lingerMs;
+
+    public StowBatchUploader ( GcpConfig gcpConfig, @Qualifier( "healthcareApiHttpClient" ) CloseableHttpClient httpClient, AccessTokenService accessTokenService, @Qualifier( "stowBatchScheduler" ) ScheduledExecutorService scheduler,
+                               DownstreamLimits downstreamLimits ) {
+        this.gcpConfig = gcpConfig;
+        this.httpClient = httpClient;
+        this.accessTokenService = accessTokenService;
+        this.scheduler = scheduler;
+        this.downstreamLimits = downstreamLimits;
+    }
+
+    /**
+     * Queues an instance for the given DICOM store. The returned future completes once the batch holding
+     * the instance has been sent, exceptionally with a {@link HealthcareApiException} if the store rejected it.
+     * The upload's file is read when the batch is sent, so it must stay in place until the future completes.
+     */
+    public CompletableFuture< Void > submit ( DicomUpload upload, String dicomUrl ) {
+        String key = dicomUrl + "|" + upload.studyInstanceUid( );
+        PendingInstance instance = new PendingInstance( upload.sopInstanceUid( ), upload, new CompletableFuture<>( ) );
+
+        Batch full = null;
+        synchronized ( batches ) {
+            Batch batch = batches.get( key );
+            if ( batch == null ) {
+                batch = new Batch( dicomUrl );
+                batches.put( key, batch );
+                Batch lingering = batch;
+                batch.lingerTask = scheduler.schedule( ( ) -> flush( key, lingering ), lingerMs, TimeUnit.MILLISECONDS );
+            }
+            batch.instances.add( instance );
+            batch.bytes += upload.file( ).length( );
+            if ( batch.instances.size( ) >= maxInstances || batch.bytes >= maxBytesMb * 1024 * 1024 ) {
+                batches.remove( key );
+                batch.lingerTask.cancel( false );
+                full = batch;
+            }
+        }
+        if ( full != null ) {
+            send( full );
+        }
+        return instance.future;
+    }
+
+    /** Sends every pending batch now, e.g. on shutdown. */
+    @PreDestroy
+    public void flushAll ( ) {
+        List< Batch > pending;
+        synchronized ( batches ) {
+            pending = new ArrayList<>( batches.values( ) );
+            batches.clear( );
+        }
+        pending.forEach( batch -> {
+            batch.lingerTask.cancel( false );
+            send( batch );
+        } );
+    }
+
+    private void flush ( String key, Batch batch ) {
+        synchronized ( batches ) {
+            if ( !batches.remove( key, batch ) ) {
+                return; // already sent because it filled up
+            }
+        }
+        send( batch );
+    }
+
+    private void send ( Batch batch ) {
+        List< PendingInstance > instances = batch.instances;
+        String uri = String.format( "%s/%s/dicomWeb/studies", gcpConfig.getDicomWebUrl( ), batch.dicomUrl );
+        logger.info( "send :: Sending STOW-RS batch of {} instances ({} bytes) to {}", instances.size( ), batch.bytes, uri );
+        try {
+            HttpPost httpPost = new HttpPost( uri );
+            httpPost.setHeader( HttpHeaders.ACCEPT, "application/dicom+json" );
+            String accessToken = accessTokenService.getAccessToken( );
+            if ( accessToken != null && !accessToken.isEmpty( ) ) {
+                httpPost.setHeader( HttpHeaders.AUTHORIZATION, "Bearer " + accessToken );
+            }
+            httpPost.setEntity( new MultipartDicomEntity( instances.stream( ).map( PendingInstance::upload ).toList( ) ) );
+
+            try ( DownstreamLimits.Permit permit = downstreamLimits.acquire( DownstreamLimits.Downstream.HEALTHCARE_API );
+                  CloseableHttpResponse response = httpClient.execute( httpPost ) ) {
+                int statusCode = response.getStatusLine( ).getStatusCode( );
+                String body = response.getEntity( ) != null ? EntityUtils.toString( response.getEntity( ) ) : null;
+                complete( instances, statusCode, response.getStatusLine( ).getReasonPhrase( ), body );
+            }
+        } catch ( Exception e ) {
+            logger.error( "send :: STOW-RS batch to {} failed: {}", uri, e.getMessage( ) );
+            HealthcareApiException failure = new HealthcareApiException( "Failed to send STOW-RS batch to the DICOM store", e );
+            instances.forEach( instance -> instance.future.completeExceptionally( failure ) );
+        }
+    }
+
+    private void complete ( List< PendingInstance > instances, int statusCode, String reasonPhrase, String body ) {
+        if ( statusCode == HttpStatus.SC_OK ) {
+            instances.forEach( instance -> instance.future.complete( null ) );
+            logger.info( "complete :: STOW-RS batch of {} instances stored", instances.size( ) );
+            return;
+        }
+        // 202 (some failed) and 409 (all failed) list the rejected instances in FailedSOPSequence
+        Map< String, String > failures = statusCode == HttpStatus.SC_ACCEPTED || statusCode == HttpStatus.SC_CONFLICT ? parseFailures( body ) : Map.of( );
+        for ( PendingInstance instance : instances ) {
+            String reason = failures.get( instance.sopInstanceUid );
+            if ( reason == null && statusCode == HttpStatus.SC_ACCEPTED ) {
+                instance.future.complete( null );
+            } else {
+                String detail = reason != null ? "failure reason " + reason : statusCode + " - " + reasonPhrase;
+                instance.future.completeExceptionally( new HealthcareApiException( String.format( "Error storing DICOM instance with SOPInstance id %s: %s", instance.sopInstanceUid, detail ) ) );
+            }
+        }
+        logger.warn( "complete :: STOW-RS batch returned {}; {} of {} instances rejected", statusCode, statusCode == HttpStatus.SC_ACCEPTED ? failures.size( ) : instances.size( ), instances.size( ) );
+    }
+
+    Map< String, String > parseFailures ( String body ) {
+        Map< String, String > failures = new HashMap<>( );
+        if ( body == null || body.isBlank( ) ) {
+            return failures;
+        }
+        try {
+            JsonNode root = objectMapper.readTree( body );
+            for ( JsonNode item : root.path( FAILED_SOP_SEQUENCE ).path( "Value" ) ) {
+                String sopInstanceUid = item.path( REFERENCED_SOP_INSTANCE_UID ).path( "Value" ).path( 0 ).asText( null );
+                if ( sopInstanceUid != null ) {
+                    failures.put( sopInstanceUid, item.path( FAILURE_REASON ).path( "Value" ).path( 0 ).asText( "unknown" ) );
+                }
+            }
+        } catch ( IOException e ) {
+            logger.warn( "parseFailures :: Unable to parse STOW-RS response: {}", e.getMessage( ) );
+        }
+        return failures;
+    }
+
+    private record PendingInstance( String sopInstanceUid, DicomUpload upload, CompletableFuture< Void > future ) {
+    }
+
+    private static final class Batch {
+        private final String dicomUrl;
+        private final List< PendingInstance > instances = new ArrayList<>( );
+        private long bytes;
+        private ScheduledFuture< ? > lingerTask;
+
+        private Batch ( String dicomUrl ) {
+            this.dicomUrl = dicomUrl;
+        }
+    }
+}
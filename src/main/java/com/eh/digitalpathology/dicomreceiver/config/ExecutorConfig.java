@@ -1,61 +1,220 @@
 package com.eh.digitalpathology.dicomreceiver.config;
 
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Executors of the service. With {@code spring.threads.virtual.enabled} on Java 21 the blocking I/O executors
+ * run on virtual threads: GCS uploads and the DICOM device start a virtual thread per task, and the schedulers use
+ * virtual threads for their fixed pools. How many calls reach each downstream service is then bounded by
+ * {@code DownstreamLimits}, not by the pool sizes. The ingest stages keep their concurrency and bounded queues on
+ * virtual threads too, so a scanner burst still backs up into the watcher instead of into memory. The stabilizer
+ * keeps its platform thread so the timing wheel ticks on time.
+ */
 @Configuration
 public class ExecutorConfig {
 
     private static final Logger log = LoggerFactory.getLogger( ExecutorConfig.class );
 
-    private ExecutorService directoryWatcherExecutor;
+    private ExecutorService ingestProcessExecutor;
+    private ExecutorService ingestPersistExecutor;
+    private ExecutorService ingestNotifyExecutor;
     private ExecutorService remoteDirectoryWatcherExecutor;
     private ScheduledExecutorService remoteDirectoryWatcherScheduledExecutor;
     private ScheduledExecutorService barcodeUploadScheduledExecutor;
     private ScheduledExecutorService stabilizerScheduler;
+    private ExecutorService gcsUploadExecutor;
+    private ScheduledExecutorService tokenRefreshScheduler;
+    private ScheduledExecutorService stowBatchScheduler;
+    private ScheduledExecutorService dbInsertBatchScheduler;
+    private ExecutorService dicomDeviceExecutor;
 
-    @Bean( name = "directoryWatcherExecutor" )
-    public ExecutorService directoryWatcherExecutor ( ) {
-        this.directoryWatcherExecutor = Executors.newScheduledThreadPool( Runtime.getRuntime( ).availableProcessors( ) );
-        return this.directoryWatcherExecutor;
+    @Value( "${spring.threads.virtual.enabled:false}" )
+    private boolean virtualThreadsEnabled;
+    private Boolean virtualThreads;
+
+    @Value( "${downstream.shared-folder.max-concurrency:8}" )
+    private int sharedFolderConcurrency;
+
+    @Value( "${gcp-config.upload.parallelism:4}" )
+    private int gcsUploadParallelism;
+
+    @Value( "${ingest.pipeline.process.concurrency:8}" )
+    private int ingestProcessConcurrency;
+    @Value( "${ingest.pipeline.process.queue-capacity:56}" )
+    private int ingestProcessQueueCapacity;
+    @Value( "${ingest.pipeline.persist.concurrency:4}" )
+    private int ingestPersistConcurrency;
+    @Value( "${ingest.pipeline.persist.queue-capacity:64}" )
+    private int ingestPersistQueueCapacity;
+    @Value( "${ingest.pipeline.notify.concurrency:2}" )
+    private int ingestNotifyConcurrency;
+    @Value( "${ingest.pipeline.notify.queue-capacity:256}" )
+    private int ingestNotifyQueueCapacity;
+
+    @Bean( name = "ingestProcessExecutor" )
+    public ExecutorService ingestProcessExecutor ( ) {
+        this.ingestProcessExecutor = ingestStage( "Ingest process stage", "ingest-process", ingestProcessConcurrency, ingestProcessQueueCapacity );
+        return this.ingestProcessExecutor;
+    }
+
+    @Bean( name = "ingestPersistExecutor" )
+    public ExecutorService ingestPersistExecutor ( ) {
+        this.ingestPersistExecutor = ingestStage( "Ingest persist stage", "ingest-persist", ingestPersistConcurrency, ingestPersistQueueCapacity );
+        return this.ingestPersistExecutor;
+    }
+
+    @Bean( name = "ingestNotifyExecutor" )
+    public ExecutorService ingestNotifyExecutor ( ) {
+        this.ingestNotifyExecutor = ingestStage( "Ingest notify stage", "ingest-notify", ingestNotifyConcurrency, ingestNotifyQueueCapacity );
+        return this.ingestNotifyExecutor;
     }
     @Bean( name = "remoteDirectoryWatcherExecutor" )
     public ExecutorService remoteDirectoryWatcherExecutor ( ) {
-        this.remoteDirectoryWatcherExecutor = Executors.newScheduledThreadPool( Runtime.getRuntime( ).availableProcessors( ) );
+        if ( useVirtualThreads( ) ) {
+            // Stays pooled: RemoteDirectoryService keeps one SMB session per thread. Each file takes two threads,
+            // one copying and one waiting on the copy
+            this.remoteDirectoryWatcherExecutor = Executors.newScheduledThreadPool( 2 * sharedFolderConcurrency, VirtualThreads.factory( "remote-watcher" ) );
+        } else {
+            this.remoteDirectoryWatcherExecutor = Executors.newScheduledThreadPool( Runtime.getRuntime( ).availableProcessors( ) );
+        }
         return this.remoteDirectoryWatcherExecutor;
     }
     @Bean( name = "remoteDirectoryWatcherScheduledExecutor" )
     public ScheduledExecutorService remoteDirectoryWatcherScheduledExecutor ( ) {
-        this.remoteDirectoryWatcherScheduledExecutor = Executors.newScheduledThreadPool( Runtime.getRuntime( ).availableProcessors( ) );
+        this.remoteDirectoryWatcherScheduledExecutor = scheduledPool( "remote-watcher-scheduler", Runtime.getRuntime( ).availableProcessors( ) );
         return this.remoteDirectoryWatcherScheduledExecutor;
     }
     @Bean( name = "barcodeUploadScheduledExecutor" )
     public ScheduledExecutorService barcodeUploadScheduledExecutor ( ) {
-        this.barcodeUploadScheduledExecutor = Executors.newScheduledThreadPool( Runtime.getRuntime( ).availableProcessors( ) );
+        this.barcodeUploadScheduledExecutor = scheduledPool( "barcode-upload-scheduler", Runtime.getRuntime( ).availableProcessors( ) );
         return this.barcodeUploadScheduledExecutor;
     }
 
     @Bean(name = "stabilizerScheduler")
     public ScheduledExecutorService stabilizerScheduler(){
-        this.stabilizerScheduler = Executors.newScheduledThreadPool( Runtime.getRuntime( ).availableProcessors( ) );
+        // A single thread ticks the DirectoryWatcher timing wheel
+        this.stabilizerScheduler = Executors.newSingleThreadScheduledExecutor( );
         return this.stabilizerScheduler;
     }
+
+    @Bean( name = "gcsUploadExecutor" )
+    public ExecutorService gcsUploadExecutor ( ) {
+        this.gcsUploadExecutor = useVirtualThreads( ) ? VirtualThreads.newThreadPerTaskExecutor( "gcs-upload" ) : Executors.newFixedThreadPool( gcsUploadParallelism );
+        return this.gcsUploadExecutor;
+    }
+
+    @Bean( name = "tokenRefreshScheduler" )
+    public ScheduledExecutorService tokenRefreshScheduler ( ) {
+        this.tokenRefreshScheduler = scheduledPool( "token-refresh", 1 );
+        return this.tokenRefreshScheduler;
+    }
+
+    @Bean( name = "stowBatchScheduler" )
+    public ScheduledExecutorService stowBatchScheduler ( ) {
+        this.stowBatchScheduler = scheduledPool( "stow-batch", Runtime.getRuntime( ).availableProcessors( ) );
+        return this.stowBatchScheduler;
+    }
+
+    @Bean( name = "dbInsertBatchScheduler" )
+    public ScheduledExecutorService dbInsertBatchScheduler ( ) {
+        this.dbInsertBatchScheduler = scheduledPool( "db-insert-batch", 2 );
+        return this.dbInsertBatchScheduler;
+    }
+
+    /**
+     * Runs the associations of the DICOM SCP; each one blocks on its socket for as long as it is open.
+     */
+    @Bean( name = "dicomDeviceExecutor" )
+    public ExecutorService dicomDeviceExecutor ( ) {
+        this.dicomDeviceExecutor = useVirtualThreads( ) ? VirtualThreads.newThreadPerTaskExecutor( "dicom-association" ) : Executors.newCachedThreadPool( );
+        return this.dicomDeviceExecutor;
+    }
+
+    /**
+     * Queue depth, active threads and completed tasks of every executor above, tagged with its bean name.
+     */
+    @Bean
+    public MeterBinder executorMetrics ( Map< String, ExecutorService > executors ) {
+        return registry -> executors.forEach( ( name, executor ) -> new ExecutorServiceMetrics( executor, name, Tags.empty( ) ).bindTo( registry ) );
+    }
+
     @PreDestroy
     public void shutdownExecutors ( ) {
 
-        shutdownExecutor( directoryWatcherExecutor, "Directory Watcher ExecutorService" );
+        // Upstream stages first, so work they still hand on finds the downstream stages running
+        shutdownExecutor( ingestProcessExecutor, "Ingest Process Stage ExecutorService" );
+        shutdownExecutor( ingestPersistExecutor, "Ingest Persist Stage ExecutorService" );
+        shutdownExecutor( ingestNotifyExecutor, "Ingest Notify Stage ExecutorService" );
         shutdownExecutor( remoteDirectoryWatcherExecutor, " Remote Directory Watcher ExecutorService" );
         shutdownExecutor( remoteDirectoryWatcherScheduledExecutor, " Remote Directory Watcher Scheduled ExecutorService" );
         shutdownExecutor( barcodeUploadScheduledExecutor, " Barcode Uploader Scheduled ExecutorService" );
         shutdownExecutor( stabilizerScheduler, " Stabilizer Scheduled ExecutorService" );
+        shutdownExecutor( gcsUploadExecutor, " GCS Upload ExecutorService" );
+        shutdownExecutor( tokenRefreshScheduler, " Token Refresh Scheduled ExecutorService" );
+        shutdownExecutor( stowBatchScheduler, " STOW-RS Batch Scheduled ExecutorService" );
+        shutdownExecutor( dbInsertBatchScheduler, " DB Insert Batch Scheduled ExecutorService" );
+        shutdownExecutor( dicomDeviceExecutor, " DICOM Device ExecutorService" );
+    }
+
+    /**
+     * True when virtual threads are enabled and available; on Java 17 the setting is ignored with a warning.
+     */
+    boolean useVirtualThreads ( ) {
+        if ( virtualThreads == null ) {
+            virtualThreads = virtualThreadsEnabled && VirtualThreads.isSupported( );
+            if ( virtualThreadsEnabled && !virtualThreads ) {
+                log.warn( "useVirtualThreads :: spring.threads.virtual.enabled is set but Java {} has no virtual threads, using platform threads", Runtime.version( ).feature( ) );
+            }
+        }
+        return virtualThreads;
+    }
+
+    private ThreadPoolExecutor ingestStage ( String name, String threadPrefix, int concurrency, int queueCapacity ) {
+        return useVirtualThreads( ) ? boundedExecutor( name, concurrency, queueCapacity, VirtualThreads.factory( threadPrefix ) ) : boundedExecutor( name, concurrency, queueCapacity );
+    }
+
+    private ScheduledExecutorService scheduledPool ( String name, int threads ) {
+        return useVirtualThreads( ) ? Executors.newScheduledThreadPool( threads, VirtualThreads.factory( name ) ) : Executors.newScheduledThreadPool( threads );
+    }
+
+    /**
+     * Fixed pool with a bounded queue. When the queue is full the submitting thread waits for room instead of
+     * the task being rejected, which is what carries backpressure from one ingest stage to the one before it.
+     */
+    static ThreadPoolExecutor boundedExecutor ( String name, int threads, int queueCapacity ) {
+        return boundedExecutor( name, threads, queueCapacity, Executors.defaultThreadFactory( ) );
+    }
+
+    public static ThreadPoolExecutor boundedExecutor ( String name, int threads, int queueCapacity, ThreadFactory threadFactory ) {
+        return new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>( queueCapacity ), threadFactory, ( task, executor ) -> {
+            if ( executor.isShutdown( ) ) {
+                throw new RejectedExecutionException( name + " is shut down" );
+            }
+            try {
+                executor.getQueue( ).put( task );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread( ).interrupt( );
+                throw new RejectedExecutionException( "Interrupted while waiting for room in " + name, e );
+            }
+        } );
     }
 
     private void shutdownExecutor ( ExecutorService executor, String name ) {
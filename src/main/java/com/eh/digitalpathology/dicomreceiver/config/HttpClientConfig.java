@@ -0,0 +1,57 @@
+package com.eh.digitalpathology.dicomreceiver.config;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class HttpClientConfig {
+
+    @Value( "${gcp-config.http.max-total:200}" )
+    private int maxTotal;
+
+    @Value( "${gcp-config.http.max-per-route:100}" )
+    private int maxPerRoute;
+
+    @Value( "${gcp-config.http.idle-timeout-seconds:60}" )
+    private long idleTimeoutSeconds;
+
+    @Value( "${gcp-config.http.validate-after-inactivity-ms:10000}" )
+    private int validateAfterInactivityMs;
+
+    @Value( "${gcp-config.http.connect-timeout-ms:120000}" )
+    private int connectTimeoutMs;
+
+    @Value( "${gcp-config.http.socket-timeout-ms:120000}" )
+    private int socketTimeoutMs;
+
+    @Value( "${gcp-config.http.connection-request-timeout-ms:120000}" )
+    private int connectionRequestTimeoutMs;
+
+    // Shared by every STOW-RS upload so connections (and their TLS sessions) to the Healthcare API are reused.
+    // Closing the client also shuts down its connection manager and the idle connection evictor.
+    @Bean( name = "healthcareApiHttpClient", destroyMethod = "close" )
+    public CloseableHttpClient healthcareApiHttpClient ( ) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager( );
+        connectionManager.setMaxTotal( maxTotal );
+        connectionManager.setDefaultMaxPerRoute( maxPerRoute );
+        connectionManager.setValidateAfterInactivity( validateAfterInactivityMs );
+
+        RequestConfig requestConfig = RequestConfig.custom( ).setSocketTimeout( socketTimeoutMs ).setConnectTimeout( connectTimeoutMs ).setConnectionRequestTimeout( connectionRequestTimeoutMs ).build( );
+
+        return HttpClients.custom( )
+                .setConnectionManager( connectionManager )
+                .setDefaultRequestConfig( requestConfig )
+                .setKeepAliveStrategy( DefaultConnectionKeepAliveStrategy.INSTANCE )
+                .evictExpiredConnections( )
+                .evictIdleConnections( idleTimeoutSeconds, TimeUnit.SECONDS )
+                .build( );
+    }
+}
@@ -0,0 +1,30 @@
+package com.eh.digitalpathology.dicomreceiver.config;
+
+import com.eh.digitalpathology.dicomreceiver.util.UploadBufferPool;
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StorageConfig {
+
+    @Value( "${gcp-config.upload.buffer-size-mb:16}" )
+    private int uploadBufferSizeMb;
+
+    @Value( "${gcp-config.upload.buffer-count:4}" )
+    private int uploadBufferCount;
+
+    // Shared across uploads so credentials and the HTTP transport are set up once; closed with the context
+    @Bean( destroyMethod = "close" )
+    public Storage storage ( ) {
+        return StorageOptions.newBuilder( ).setRetrySettings( ServiceOptions.getDefaultRetrySettings( ) ).build( ).getService( );
+    }
+
+    @Bean
+    public UploadBufferPool uploadBufferPool ( ) {
+        return new UploadBufferPool( uploadBufferCount, uploadBufferSizeMb * 1024 * 1024 );
+    }
+}
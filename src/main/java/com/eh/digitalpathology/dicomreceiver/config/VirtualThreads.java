@@ -0,0 +1,95 @@
+package com.eh.digitalpathology.dicomreceiver.config;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads (JDK 21), looked up reflectively so the service still compiles and runs on Java 17, where
+ * {@link #isSupported()} is false. Build with {@code -Pjdk21} and set {@code spring.threads.virtual.enabled} to use them.
+ */
+public final class VirtualThreads {
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle FACTORY;
+    private static final MethodHandle THREAD_PER_TASK_EXECUTOR;
+    private static final MethodHandle IS_VIRTUAL;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle factory = null;
+        MethodHandle threadPerTaskExecutor = null;
+        MethodHandle isVirtual = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup( );
+            Class< ? > builder = Class.forName( "java.lang.Thread$Builder" );
+            Class< ? > ofVirtualBuilder = Class.forName( "java.lang.Thread$Builder$OfVirtual" );
+            ofVirtual = lookup.findStatic( Thread.class, "ofVirtual", MethodType.methodType( ofVirtualBuilder ) );
+            name = lookup.findVirtual( ofVirtualBuilder, "name", MethodType.methodType( ofVirtualBuilder, String.class, long.class ) );
+            factory = lookup.findVirtual( builder, "factory", MethodType.methodType( ThreadFactory.class ) );
+            threadPerTaskExecutor = lookup.findStatic( Executors.class, "newThreadPerTaskExecutor", MethodType.methodType( ExecutorService.class, ThreadFactory.class ) );
+            isVirtual = lookup.findVirtual( Thread.class, "isVirtual", MethodType.methodType( boolean.class ) );
+        } catch ( ReflectiveOperationException e ) {
+            // Before JDK 21
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        THREAD_PER_TASK_EXECUTOR = threadPerTaskExecutor;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    private VirtualThreads ( ) {
+    }
+
+    public static boolean isSupported ( ) {
+        return THREAD_PER_TASK_EXECUTOR != null && IS_VIRTUAL != null;
+    }
+
+    public static boolean isVirtual ( Thread thread ) {
+        if ( IS_VIRTUAL == null ) {
+            return false;
+        }
+        try {
+            return ( boolean ) IS_VIRTUAL.invoke( thread );
+        } catch ( Throwable e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Factory of virtual threads named {@code prefix-0}, {@code prefix-1}, ...
+     */
+    public static ThreadFactory factory ( String prefix ) {
+        requireSupported( );
+        try {
+            Object builder = OF_VIRTUAL.invoke( );
+            builder = NAME.invoke( builder, prefix + "-", 0L );
+            return ( ThreadFactory ) FACTORY.invoke( builder );
+        } catch ( Throwable e ) {
+            throw new IllegalStateException( "Unable to create a virtual thread factory", e );
+        }
+    }
+
+    /**
+     * Executor starting one virtual thread per task, so tasks never queue behind each other.
+     */
+    public static ExecutorService newThreadPerTaskExecutor ( String prefix ) {
+        ThreadFactory factory = factory( prefix );
+        try {
+            return ( ExecutorService ) THREAD_PER_TASK_EXECUTOR.invoke( factory );
+        } catch ( Throwable e ) {
+            throw new IllegalStateException( "Unable to create a virtual thread executor", e );
+        }
+    }
+
+    private static void requireSupported ( ) {
+        if ( !isSupported( ) ) {
+            throw new UnsupportedOperationException( "Virtual threads need Java 21, running on Java " + Runtime.version( ).feature( ) );
+        }
+    }
+}
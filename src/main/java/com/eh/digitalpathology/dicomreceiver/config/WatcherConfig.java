@@ -0,0 +1,77 @@
+package com.eh.digitalpathology.dicomreceiver.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Additional local directories to watch next to {@code storescp.storage.path}, e.g. one per scanner volume.
+ * Each root gets its own process-stage pool and admission limit; persist and notify stages are shared.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "watcher")
+public class WatcherConfig {
+
+    private List< Root > roots = new ArrayList<>( );
+
+    public List< Root > getRoots ( ) {
+        return roots;
+    }
+
+    public void setRoots ( List< Root > roots ) {
+        this.roots = roots;
+    }
+
+    public static class Root {
+        private String path;
+        private int concurrency = 4;
+        private int queueCapacity = 32;
+        private int maxInFlight = 32;
+        // Java thread priority (1-10) of the root's process-stage threads. Only a scheduling hint: Linux HotSpot
+        // ignores it unless run as root with -XX:ThreadPriorityPolicy=1, so there it is a no-op. Use concurrency and
+        // maxInFlight to favour one root over another.
+        private int priority = Thread.NORM_PRIORITY;
+
+        public String getPath ( ) {
+            return path;
+        }
+
+        public void setPath ( String path ) {
+            this.path = path;
+        }
+
+        public int getConcurrency ( ) {
+            return concurrency;
+        }
+
+        public void setConcurrency ( int concurrency ) {
+            this.concurrency = concurrency;
+        }
+
+        public int getQueueCapacity ( ) {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity ( int queueCapacity ) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getMaxInFlight ( ) {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight ( int maxInFlight ) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        public int getPriority ( ) {
+            return priority;
+        }
+
+        public void setPriority ( int priority ) {
+            this.priority = priority;
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package com.eh.digitalpathology.dicomreceiver.config;
 
+import io.netty.channel.ChannelOption;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 public class WebClientConfig {
@@ -14,10 +20,73 @@ public class WebClientConfig {
     @Value("${db.service.url}")
     private String baseUrl;
 
+    // Zero or unset keeps the Reactor Netty default for the setting
+    @Value("${db.connector.http.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${db.connector.http.pending-acquire-max-count:256}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${db.connector.http.pending-acquire-timeout-ms:5000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${db.connector.http.max-idle-time-seconds:30}")
+    private long maxIdleTimeSeconds;
+
+    @Value("${db.connector.http.max-life-time-seconds:300}")
+    private long maxLifeTimeSeconds;
+
+    @Value("${db.connector.http.evict-in-background-seconds:30}")
+    private long evictInBackgroundSeconds;
+
+    @Value("${db.connector.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${db.connector.http.response-timeout-ms:10000}")
+    private long responseTimeoutMs;
+
+    @Value("${db.connector.http.compress:true}")
+    private boolean compress;
+
+    // Outlives config refreshes of the WebClient, so open connections are kept. A request that finds every connection
+    // busy waits in the pending-acquire queue; a full queue or a wait past the timeout fails the request instead of
+    // queuing it silently. Pool gauges are published as reactor.netty.connection.provider.* tagged name=db-connector.
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider dbConnectorConnectionProvider() {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("db-connector").metrics(true);
+        if (maxConnections > 0) {
+            builder.maxConnections(maxConnections);
+        }
+        if (pendingAcquireMaxCount != 0) {
+            builder.pendingAcquireMaxCount(pendingAcquireMaxCount);
+        }
+        if (pendingAcquireTimeoutMs > 0) {
+            builder.pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs));
+        }
+        if (maxIdleTimeSeconds > 0) {
+            builder.maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds));
+        }
+        if (maxLifeTimeSeconds > 0) {
+            builder.maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds));
+        }
+        if (evictInBackgroundSeconds > 0) {
+            builder.evictInBackground(Duration.ofSeconds(evictInBackgroundSeconds));
+        }
+        return builder.build();
+    }
+
     @Bean
     @RefreshScope
     public WebClient webClient(){
+        HttpClient httpClient = HttpClient.create(dbConnectorConnectionProvider()).compress(compress);
+        if (connectTimeoutMs > 0) {
+            httpClient = httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs);
+        }
+        if (responseTimeoutMs > 0) {
+            httpClient = httpClient.responseTimeout(Duration.ofMillis(responseTimeoutMs));
+        }
         return WebClient.builder().baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .build();
     }
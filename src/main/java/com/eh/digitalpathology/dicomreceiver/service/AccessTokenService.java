@@ -0,0 +1,137 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
+import com.eh.digitalpathology.dicomreceiver.exceptions.HealthcareApiException;
+import com.eh.digitalpathology.dicomreceiver.util.GCPUtils;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the service-account credentials and the current OAuth access token for the Healthcare API.
+ * Callers get the cached token; a background task refreshes it shortly before it expires, so the
+ * token endpoint is only hit synchronously on first use or when the cached token is about to lapse.
+ */
+@Service
+public class AccessTokenService {
+    private static final Logger log = LoggerFactory.getLogger( AccessTokenService.class.getName( ) );
+
+    private final GcpConfig gcpConfig;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+
+    private final Counter hits;
+    private final Counter syncRefreshes;
+    private final Counter backgroundRefreshes;
+    private final Counter refreshFailures;
+
+    @Value( "${gcp-config.token.refresh-margin-seconds:300}" )
+    private long refreshMarginSeconds;
+
+    @Value( "${gcp-config.token.min-validity-seconds:60}" )
+    private long minValiditySeconds;
+
+    @Value( "${gcp-config.token.retry-delay-seconds:30}" )
+    private long retryDelaySeconds;
+
+    private volatile CachedToken cached;
+    private ScheduledFuture< ? > scheduledRefresh;
+
+    public AccessTokenService ( GcpConfig gcpConfig, @Qualifier( "tokenRefreshScheduler" ) ScheduledExecutorService scheduler, MeterRegistry meterRegistry ) {
+        this( gcpConfig, scheduler, meterRegistry, Clock.systemUTC( ) );
+    }
+
+    AccessTokenService ( GcpConfig gcpConfig, ScheduledExecutorService scheduler, MeterRegistry meterRegistry, Clock clock ) {
+        this.gcpConfig = gcpConfig;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.hits = meterRegistry.counter( "gcp.access.token", "result", "hit" );
+        this.syncRefreshes = meterRegistry.counter( "gcp.access.token", "result", "sync_refresh" );
+        this.backgroundRefreshes = meterRegistry.counter( "gcp.access.token", "result", "background_refresh" );
+        this.refreshFailures = meterRegistry.counter( "gcp.access.token", "result", "refresh_failure" );
+    }
+
+    public String getAccessToken ( ) throws HealthcareApiException {
+        String creds = gcpConfig.getCreds( );
+        if ( creds == null || creds.isBlank( ) ) {
+            return ""; // No credentials provided
+        }
+        CachedToken current = cached;
+        if ( current != null && current.isUsable( creds, clock.instant( ).plusSeconds( minValiditySeconds ) ) ) {
+            hits.increment( );
+            return current.token.getTokenValue( );
+        }
+        return refreshNow( creds );
+    }
+
+    private synchronized String refreshNow ( String creds ) {
+        // Another caller may have refreshed while this one waited for the lock
+        CachedToken current = cached;
+        if ( current != null && current.isUsable( creds, clock.instant( ).plusSeconds( minValiditySeconds ) ) ) {
+            hits.increment( );
+            return current.token.getTokenValue( );
+        }
+        try {
+            GoogleCredentials credentials = current != null && current.creds.equals( creds ) ? current.credentials : GCPUtils.createCredentials( creds );
+            CachedToken refreshed = refresh( creds, credentials );
+            syncRefreshes.increment( );
+            return refreshed.token.getTokenValue( );
+        } catch ( Exception e ) {
+            refreshFailures.increment( );
+            throw new HealthcareApiException( "Failed to get access token from service account credentials", e );
+        }
+    }
+
+    private synchronized void refreshInBackground ( ) {
+        CachedToken current = cached;
+        if ( current == null ) {
+            return;
+        }
+        try {
+            refresh( current.creds, current.credentials );
+            backgroundRefreshes.increment( );
+            log.debug( "refreshInBackground :: Access token refreshed, expires at {}", cached.expiresAt );
+        } catch ( Exception e ) {
+            refreshFailures.increment( );
+            log.warn( "refreshInBackground :: Unable to refresh access token, retrying in {}s: {}", retryDelaySeconds, e.getMessage( ) );
+            scheduleRefresh( Duration.ofSeconds( retryDelaySeconds ) );
+        }
+    }
+
+    private CachedToken refresh ( String creds, GoogleCredentials credentials ) throws Exception {
+        AccessToken token = credentials.refreshAccessToken( );
+        Instant expiresAt = token.getExpirationTime( ) != null ? token.getExpirationTime( ).toInstant( ) : clock.instant( ).plusSeconds( refreshMarginSeconds + minValiditySeconds );
+        CachedToken refreshed = new CachedToken( creds, credentials, token, expiresAt );
+        cached = refreshed;
+        scheduleRefresh( Duration.between( clock.instant( ), expiresAt.minusSeconds( refreshMarginSeconds ) ) );
+        return refreshed;
+    }
+
+    private void scheduleRefresh ( Duration delay ) {
+        if ( scheduledRefresh != null ) {
+            scheduledRefresh.cancel( false );
+        }
+        long delayMillis = Math.max( 0, delay.toMillis( ) );
+        scheduledRefresh = scheduler.schedule( this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS );
+    }
+
+    private record CachedToken( String creds, GoogleCredentials credentials, AccessToken token, Instant expiresAt ) {
+        boolean isUsable ( String currentCreds, Instant validUntil ) {
+            // Credentials can change on a config refresh; a token minted for the old ones is discarded
+            return creds.equals( currentCreds ) && expiresAt.isAfter( validUntil );
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.eh.digitalpathology.dicomreceiver.service;
 import com.eh.digitalpathology.dicomreceiver.config.DBRestClient;
 import com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption;
 import com.eh.digitalpathology.dicomreceiver.model.*;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,8 +13,18 @@ import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
-
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.internal.shaded.reactor.pool.PoolAcquirePendingLimitException;
+import reactor.netty.internal.shaded.reactor.pool.PoolAcquireTimeoutException;
+import reactor.util.retry.Retry;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Service
 @RefreshScope
@@ -21,53 +32,140 @@ public class DatabaseService {
     private static final Logger log = LoggerFactory.getLogger( DatabaseService.class.getName( ) );
 
     private final DBRestClient dbRestClient;
+    private final IngestMetrics ingestMetrics;
+    private final DownstreamLimits downstreamLimits;
     @Value( "${db.connector.insert.uri}" )
     String uriInsert;
+    @Value( "${db.connector.insert.batch.uri:dicom/instances/batch}" )
+    String uriInsertBatch;
+    @Value( "${db.connector.timeout-ms:10000}" )
+    long timeoutMs;
+    @Value( "${db.connector.retry.max-retries:2}" )
+    int maxRetries;
+    @Value( "${db.connector.retry.backoff-ms:200}" )
+    long retryBackoffMs;
 
     @Autowired
-    public DatabaseService ( DBRestClient dbRestClient ) {
+    public DatabaseService ( DBRestClient dbRestClient, IngestMetrics ingestMetrics, DownstreamLimits downstreamLimits ) {
         this.dbRestClient = dbRestClient;
+        this.ingestMetrics = ingestMetrics;
+        this.downstreamLimits = downstreamLimits;
     }
 
 
     public String insertDicomData ( DicomRequestDBObject requestDBObject, String sourceServiceName ) throws DbConnectorExeption {
-        log.info( "insertDicomData :: Started inserting Dicom-Request-Object: {} \nwaiting for db reply..... ..........", requestDBObject );
-        HttpHeaders headers = getHttpHeaders( sourceServiceName );
         try {
+            return insertDicomDataReactive( requestDBObject, sourceServiceName ).block( );
+        } catch ( Exception ex ) {
+            throw new DbConnectorExeption( "DB error", ex.getMessage( ) );
+        }
+    }
+
+    /**
+     * Non-blocking {@link #insertDicomData(DicomRequestDBObject, String)}. Nothing is sent until subscription; the
+     * insert is only retried when the request never left this service, so a retry cannot store a record twice.
+     */
+    public Mono< String > insertDicomDataReactive ( DicomRequestDBObject requestDBObject, String sourceServiceName ) {
+        HttpHeaders headers = getHttpHeaders( sourceServiceName );
+        return timed( "ingest.db.insert", call( ( ) -> {
+            log.info( "insertDicomData :: Started inserting Dicom-Request-Object: {} \nwaiting for db reply..... ..........", requestDBObject );
             return dbRestClient.exchange( HttpMethod.POST, uriInsert, requestDBObject, new ParameterizedTypeReference< ApiResponse< String > >( ) {
-            }, httpHeaders -> httpHeaders.putAll( headers ) ).map( ApiResponse::status ).block( );
+            }, httpHeaders -> httpHeaders.putAll( headers ) ).map( ApiResponse::status );
+        }, false ) );
+    }
+
+    /**
+     * Stores several instance records with one bulk request and returns the status of the whole batch.
+     */
+    public String insertDicomDataBatch ( List< DicomRequestDBObject > requestDBObjects, String sourceServiceName ) throws DbConnectorExeption {
+        try {
+            return insertDicomDataBatchReactive( requestDBObjects, sourceServiceName ).block( );
         } catch ( Exception ex ) {
             throw new DbConnectorExeption( "DB error", ex.getMessage( ) );
         }
+    }
 
+    public Mono< String > insertDicomDataBatchReactive ( List< DicomRequestDBObject > requestDBObjects, String sourceServiceName ) {
+        HttpHeaders headers = getHttpHeaders( sourceServiceName );
+        return timed( "ingest.db.insert.batch", call( ( ) -> {
+            log.info( "insertDicomDataBatch :: Inserting batch of {} Dicom-Request-Objects", requestDBObjects.size( ) );
+            return dbRestClient.exchange( HttpMethod.POST, uriInsertBatch, requestDBObjects, new ParameterizedTypeReference< ApiResponse< String > >( ) {
+            }, httpHeaders -> httpHeaders.putAll( headers ) ).map( ApiResponse::status );
+        }, false ) );
     }
 
     public String saveStorageCommitment ( StorageCommitmentRequest request ) {
         try {
-            return dbRestClient.exchange( HttpMethod.POST, "dicom/storage-commitment", request, new ParameterizedTypeReference< ApiResponse< String > >( ) {
-            }, null ).map( ApiResponse::status ).block( );
+            return saveStorageCommitmentReactive( request ).block( );
         } catch ( Exception ex ) {
             throw new DbConnectorExeption( "DB error", ex.getMessage( ) );
         }
     }
 
+    public Mono< String > saveStorageCommitmentReactive ( StorageCommitmentRequest request ) {
+        return call( ( ) -> dbRestClient.exchange( HttpMethod.POST, "dicom/storage-commitment", request, new ParameterizedTypeReference< ApiResponse< String > >( ) {
+        }, null ).map( ApiResponse::status ), false );
+    }
+
     public Optional< DicomRequestDBObject > getDicomInstanceBySopInstanceUid ( String sopInstanceUid ) {
         try {
-            ApiResponse< DicomRequestDBObject > response = dbRestClient.exchange( HttpMethod.GET, "dicom/instance/" + sopInstanceUid, null, new ParameterizedTypeReference< ApiResponse< DicomRequestDBObject > >( ) {
-            }, null ).block( );
-
-            if ( response != null ) {
-                return Optional.ofNullable( response.content( ) );
-            } else {
-                log.error( "Received null response for SOPInstanceUID: {}", sopInstanceUid );
-                return Optional.empty( );
-            }
+            return getDicomInstanceBySopInstanceUidReactive( sopInstanceUid ).blockOptional( );
         } catch ( Exception ex ) {
             log.error( "Error fetching DicomInstance for SOPInstanceUID: {}", sopInstanceUid, ex );
             return Optional.empty( );
         }
     }
 
+    /**
+     * Empty when the DB connector has no instance for {@code sopInstanceUid}.
+     */
+    public Mono< DicomRequestDBObject > getDicomInstanceBySopInstanceUidReactive ( String sopInstanceUid ) {
+        return call( ( ) -> dbRestClient.exchange( HttpMethod.GET, "dicom/instance/" + sopInstanceUid, null, new ParameterizedTypeReference< ApiResponse< DicomRequestDBObject > >( ) {
+        }, null ), true )
+                .switchIfEmpty( Mono.fromRunnable( ( ) -> log.error( "Received null response for SOPInstanceUID: {}", sopInstanceUid ) ) )
+                .mapNotNull( ApiResponse::content );
+    }
+
+    /**
+     * Runs a DB connector exchange under a {@link DownstreamLimits.Downstream#DB_CONNECTOR} permit, without holding a
+     * thread while it waits for the permit or the reply. Each attempt is cut off after {@code db.connector.timeout-ms}.
+     * Idempotent calls are retried with backoff on any failure but an error reported by the connector itself; other
+     * calls only when the request provably never left, see {@link #neverSent(Throwable)}. Failures surface as
+     * {@link DbConnectorExeption}.
+     */
+    private < T > Mono< T > call ( Supplier< Mono< T > > exchange, boolean idempotent ) {
+        Mono< T > attempt = downstreamLimits.limit( DownstreamLimits.Downstream.DB_CONNECTOR,
+                Mono.defer( ( ) -> timeoutMs > 0 ? exchange.get( ).timeout( Duration.ofMillis( timeoutMs ) ) : exchange.get( ) ) );
+        if ( maxRetries > 0 ) {
+            attempt = attempt.retryWhen( Retry.backoff( maxRetries, Duration.ofMillis( Math.max( 1, retryBackoffMs ) ) )
+                    .filter( error -> idempotent ? !( error instanceof DbConnectorExeption ) : neverSent( error ) )
+                    .onRetryExhaustedThrow( ( spec, signal ) -> signal.failure( ) ) );
+        }
+        return attempt.onErrorMap( error -> !( error instanceof DbConnectorExeption ), error -> new DbConnectorExeption( "DB error", error.getMessage( ) ) );
+    }
+
+    /**
+     * True when nothing of the request reached the connector: no connection could be opened or taken from the pool.
+     * A reset, premature close or response timeout after the request was written is not, since the connector may
+     * have committed it.
+     */
+    static boolean neverSent ( Throwable error ) {
+        for ( Throwable cause = error; cause != null; cause = cause.getCause( ) == cause ? null : cause.getCause( ) ) {
+            if ( cause instanceof ConnectException || cause instanceof UnknownHostException
+                    || cause instanceof PoolAcquireTimeoutException || cause instanceof PoolAcquirePendingLimitException ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private < T > Mono< T > timed ( String name, Mono< T > call ) {
+        return Mono.defer( ( ) -> {
+            Timer.Sample sample = ingestMetrics.start( );
+            return call.doOnSuccess( value -> ingestMetrics.stop( sample, name, IngestMetrics.outcome( true ) ) )
+                    .doOnError( error -> ingestMetrics.stop( sample, name, IngestMetrics.outcome( false ) ) );
+        } );
+    }
 
     private static HttpHeaders getHttpHeaders ( String serviceName ) {
         HttpHeaders headers = new HttpHeaders( );
@@ -77,36 +175,69 @@ public class DatabaseService {
 
     public String saveMetaDataInfo ( DicomDirDocument dicomDirDocument ) {
         try {
-            return dbRestClient.exchange( HttpMethod.POST, "dicom/dicomdir", dicomDirDocument, new ParameterizedTypeReference< ApiResponse< String > >( ) {
-            }, null ).map( ApiResponse::status ).block( );
+            return saveMetaDataInfoReactive( dicomDirDocument ).block( );
         } catch ( Exception ex ) {
             throw new DbConnectorExeption( "DB error", ex.getMessage( ) );
         }
     }
 
+    public Mono< String > saveMetaDataInfoReactive ( DicomDirDocument dicomDirDocument ) {
+        return call( ( ) -> dbRestClient.exchange( HttpMethod.POST, "dicom/dicomdir", dicomDirDocument, new ParameterizedTypeReference< ApiResponse< String > >( ) {
+        }, null ).map( ApiResponse::status ), false );
+    }
+
     public Boolean isBarcodeExists ( String barcode ) {
         try {
-            return dbRestClient.exchange( HttpMethod.GET, "qaslide/barcode/" + barcode, null, new ParameterizedTypeReference< ApiResponse< Boolean >>( ) {
-            }, null ).map( ApiResponse::content ).block( );
+            return isBarcodeExistsReactive( barcode ).block( );
         } catch ( Exception ex ) {
             throw new DbConnectorExeption( "DB error", ex.getMessage( ) );
         }
     }
 
+    public Mono< Boolean > isBarcodeExistsReactive ( String barcode ) {
+        return call( ( ) -> dbRestClient.exchange( HttpMethod.GET, "qaslide/barcode/" + barcode, null, new ParameterizedTypeReference< ApiResponse< Boolean > >( ) {
+        }, null ).map( ApiResponse::content ), true );
+    }
+
+    /**
+     * All QA slide barcodes known to the DB connector, read from the bulk endpoint at {@code uri}.
+     */
+    public List< String > fetchQaSlideBarcodes ( String uri ) {
+        try {
+            return fetchQaSlideBarcodesReactive( uri ).collectList( ).block( );
+        } catch ( Exception ex ) {
+            throw new DbConnectorExeption( "DB error", ex.getMessage( ) );
+        }
+    }
+
+    public Flux< String > fetchQaSlideBarcodesReactive ( String uri ) {
+        return call( ( ) -> dbRestClient.exchange( HttpMethod.GET, uri, null, new ParameterizedTypeReference< ApiResponse< List< String > > >( ) {
+        }, null ), true )
+                .flatMapIterable( response -> response.content( ) != null ? response.content( ) : List.of( ) );
+    }
+
     public SlideScanner fetchScannerByDeviceSerialNumber ( String deviceSerialNumber ) {
         try {
-            ApiResponse< SlideScanner > response = dbRestClient.exchange( HttpMethod.GET, "scanner/" + deviceSerialNumber, null, new ParameterizedTypeReference< ApiResponse< SlideScanner > >( ) {
-            }, null ).block( );
-
-            if ( response != null ) {
-                return response.content( );
-            } else {
-                log.error( "Received null response for DeviceSerialNumber: {}", deviceSerialNumber );
-                return null;
-            }
+            return findScannerByDeviceSerialNumber( deviceSerialNumber ).orElse( null );
         } catch ( Exception ex ) {
             log.error( "Error fetching SlideScanner for DeviceSerialNumber: {}", deviceSerialNumber, ex );
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Looks up the scanner registered under {@code deviceSerialNumber}; empty when the DB connector has none.
+     * Unlike {@link #fetchScannerByDeviceSerialNumber(String)} a failed lookup is thrown, so callers can tell
+     * an unknown scanner from an unreachable connector.
+     */
+    public Optional< SlideScanner > findScannerByDeviceSerialNumber ( String deviceSerialNumber ) {
+        return findScannerByDeviceSerialNumberReactive( deviceSerialNumber ).blockOptional( );
+    }
+
+    public Mono< SlideScanner > findScannerByDeviceSerialNumberReactive ( String deviceSerialNumber ) {
+        return call( ( ) -> dbRestClient.exchange( HttpMethod.GET, "scanner/" + deviceSerialNumber, null, new ParameterizedTypeReference< ApiResponse< SlideScanner > >( ) {
+        }, null ), true )
+                .switchIfEmpty( Mono.fromRunnable( ( ) -> log.error( "Received null response for DeviceSerialNumber: {}", deviceSerialNumber ) ) )
+                .mapNotNull( ApiResponse::content );
+    }
+}
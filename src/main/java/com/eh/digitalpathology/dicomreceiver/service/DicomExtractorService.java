@@ -1,6 +1,8 @@
 package com.eh.digitalpathology.dicomreceiver.service;
 
 import com.eh.digitalpathology.dicomreceiver.api.DicomHealthcareApiClient;
+import com.eh.digitalpathology.dicomreceiver.api.DicomUpload;
+import com.eh.digitalpathology.dicomreceiver.api.StowBatchUploader;
 import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
 import com.eh.digitalpathology.dicomreceiver.config.KafkaTopicConfig;
 import com.eh.digitalpathology.dicomreceiver.constants.WatchDirectoryConstant;
@@ -9,13 +11,10 @@ import com.eh.digitalpathology.dicomreceiver.model.DicomDirDocument;
 import com.eh.digitalpathology.dicomreceiver.model.DicomRequestDBObject;
 import com.eh.digitalpathology.dicomreceiver.model.SlideScanner;
 import com.github.benmanes.caffeine.cache.Cache;
-import com.google.cloud.ServiceOptions;
-import com.google.cloud.WriteChannel;
-import com.google.cloud.storage.BlobInfo;
-import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
+import io.micrometer.core.instrument.Timer;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
 import org.dcm4che3.data.VR;
 import org.dcm4che3.io.DicomInputStream;
 import org.slf4j.Logger;
@@ -25,10 +24,8 @@ import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -47,9 +44,11 @@ public class DicomExtractorService {
     @Value( "${dicom.barcode.generation.enable}" )
     private boolean enableBarcodeGeneration;
 
+    @Value( "${gcp-config.stow-batch.enable:true}" )
+    private boolean stowBatchEnabled;
+
 
     private final EventNotificationService eventNotificationService;
-    private final DatabaseService dbService;
     private final DicomHealthcareApiClient dicomHealthcareApiClient;
     private final DicomDirService dicomDirService;
     private final Cache< String, String > studyBarcodeCache;
@@ -57,10 +56,14 @@ public class DicomExtractorService {
     private final KafkaTopicConfig kafkaTopicConfig;
     private final GcpConfig gcpConfig;
     private final SeriesUploadTrackerService seriesUploadTrackerService;
+    private final GcsUploadService gcsUploadService;
+    private final StowBatchUploader stowBatchUploader;
+    private final IngestMetrics ingestMetrics;
+    private final SlideScannerCache slideScannerCache;
+    private final QaBarcodeCache qaBarcodeCache;
 
-    public DicomExtractorService ( EventNotificationService eventNotificationService, DatabaseService dbService, DicomHealthcareApiClient dicomHealthcareApiClient, DicomDirService dicomDirService, Cache< String, String > studyBarcodeCache, BarcodeUploadTrackerService barcodeUploadTrackerService, KafkaTopicConfig kafkaTopicConfig, GcpConfig gcpConfig, SeriesUploadTrackerService seriesUploadTrackerService ) {
+    public DicomExtractorService ( EventNotificationService eventNotificationService, DicomHealthcareApiClient dicomHealthcareApiClient, DicomDirService dicomDirService, Cache< String, String > studyBarcodeCache, BarcodeUploadTrackerService barcodeUploadTrackerService, KafkaTopicConfig kafkaTopicConfig, GcpConfig gcpConfig, SeriesUploadTrackerService seriesUploadTrackerService, GcsUploadService gcsUploadService, StowBatchUploader stowBatchUploader, IngestMetrics ingestMetrics, SlideScannerCache slideScannerCache, QaBarcodeCache qaBarcodeCache ) {
         this.eventNotificationService = eventNotificationService;
-        this.dbService = dbService;
         this.dicomHealthcareApiClient = dicomHealthcareApiClient;
         this.dicomDirService = dicomDirService;
         this.studyBarcodeCache = studyBarcodeCache;
@@ -68,18 +71,46 @@ public class DicomExtractorService {
         this.kafkaTopicConfig = kafkaTopicConfig;
         this.gcpConfig = gcpConfig;
         this.seriesUploadTrackerService = seriesUploadTrackerService;
+        this.gcsUploadService = gcsUploadService;
+        this.stowBatchUploader = stowBatchUploader;
+        this.ingestMetrics = ingestMetrics;
+        this.slideScannerCache = slideScannerCache;
+        this.qaBarcodeCache = qaBarcodeCache;
+    }
+
+    /**
+     * Outcome of extracting a received file: the record to store in the database, null when the file needs none, and
+     * a future that completes once every upload the file was handed to has finished. Only an instance that joined a
+     * STOW-RS batch leaves that future pending when extraction returns.
+     */
+    public record Extraction( DicomRequestDBObject record, CompletableFuture< Void > uploaded ) {
+
+        static Extraction done ( DicomRequestDBObject record ) {
+            return new Extraction( record, CompletableFuture.completedFuture( null ) );
+        }
     }
 
     public DicomRequestDBObject extract ( String finalPath, Path fileName ) throws DicomAttributesException {
+        return extractFile( finalPath, fileName ).record( );
+    }
+
+    public Extraction extractFile ( String finalPath, Path fileName ) throws DicomAttributesException {
         DicomRequestDBObject dicomRequestDBObject = new DicomRequestDBObject( );
         File dicomFile = new File( fileName.toString( ) );
         boolean isDicomDir = false;
+        boolean handedOff = false;
+        boolean barcodeGenerated = false;
+        // Where the instance went; left at "error" when extraction throws
+        String route = "error";
+        String scanner = null;
+        long receivedBytes = dicomFile.length( );
+        Timer.Sample sample = ingestMetrics.start( );
 
-        try ( DicomInputStream dicomInputStream = new DicomInputStream( dicomFile ) ) {
+        try {
             log.info( "extract:: ************ Started extracting file : {}", dicomFile );
-            // Read the DICOM dataset
-            Attributes attributes = dicomInputStream.readDataset( );
-            Attributes fmi = dicomInputStream.readFileMetaInformation( );
+            Header header = readHeader( dicomFile );
+            Attributes attributes = header.dataset( );
+            Attributes fmi = header.fileMetaInformation( );
             log.info( "extract :: filename:: {}", fileName.getFileName( ) );
 
             String sopClassUID = attributes.getString( Tag.SOPClassUID );
@@ -88,23 +119,28 @@ public class DicomExtractorService {
 
             if ( isDicomDir ) {
                 log.info( "extract:: Processing DICOMDIR file: {}", dicomFile.getName( ) );
+                route = "dicomdir";
                 processDicomDirWithDelay( fileName, attributes );
-                return null; // Skip processing for DICOMDIR files
+                return Extraction.done( null ); // Skip processing for DICOMDIR files
             }
             String seriesInstanceUID = attributes.getString( Tag.SeriesInstanceUID );
             String sopInstanceUID = attributes.getString( Tag.SOPInstanceUID );
             String studyInstanceUID = attributes.getString( Tag.StudyInstanceUID );
             String deviceSerialNumber = attributes.getString( Tag.DeviceSerialNumber );
-
-            SlideScanner slideScanner = dbService.fetchScannerByDeviceSerialNumber( deviceSerialNumber );
+            SlideScanner slideScanner = slideScannerCache.get( deviceSerialNumber );
+            if ( slideScanner != null ) {
+                // Unregistered devices stay "unknown", so whatever a device sends cannot add histogram series
+                scanner = deviceSerialNumber;
+            }
 
             checkAttributeNull( dicomRequestDBObject, sopInstanceUID, "SOPInstanceUID" );
             checkAttributeNull( dicomRequestDBObject, seriesInstanceUID, "SeriesInstanceUID" );
             checkAttributeNull( dicomRequestDBObject, studyInstanceUID, "StudyInstanceUID" );
             log.info( "slide scanner ::: {}", slideScanner  );
             if ( slideScanner == null || !slideScanner.connected( ) ) {
+                route = "unregistered";
                 moveFileToTempStore( finalPath, dicomFile, sopInstanceUID, studyInstanceUID, seriesInstanceUID, deviceSerialNumber );
-                return null;
+                return Extraction.done( null );
             }
             log.info( "slide scanner connected:: {}", slideScanner.connected());
             log.info("slide scanner research:: {}", slideScanner.research());
@@ -112,23 +148,26 @@ public class DicomExtractorService {
             if (  attributes.getString( Tag.BarcodeValue ) == null && enableBarcodeGeneration ) {
                 String barcodeValue = generateShortBarcode( studyInstanceUID, seriesInstanceUID );
                 attributes.setString( Tag.BarcodeValue, VR.LO, barcodeValue );
+                barcodeGenerated = true;
                 log.info( "extract :: Generated and set new barcode: {}", barcodeValue );
             }
             String barcodeValue = attributes.getString( Tag.BarcodeValue );
             if ( slideScanner.research( ) ) {
-                dicomHealthcareApiClient.storeDicomInstances( fmi, attributes, gcpConfig.getResearchStoreUrl( ) );
-                seriesUploadTrackerService.recordUpload( studyInstanceUID, seriesInstanceUID );
-                return null;
+                route = "research";
+                CompletableFuture< Void > uploaded = storeDicomInstance( prepareUpload( dicomFile, fmi, attributes, barcodeGenerated ), gcpConfig.getResearchStoreUrl( ), ( ) -> seriesUploadTrackerService.recordUpload( studyInstanceUID, seriesInstanceUID ) );
+                handedOff = !uploaded.isDone( );
+                return new Extraction( null, uploaded );
             }
             checkAttributeNull( dicomRequestDBObject, barcodeValue, WatchDirectoryConstant.BARCODE );
 
             if ( studyInstanceUID != null && barcodeValue != null ) {
                 studyBarcodeCache.put( studyInstanceUID, barcodeValue );
             }
-            if (  dbService.isBarcodeExists( barcodeValue )  ) {
-                dicomHealthcareApiClient.storeDicomInstances( fmi, attributes, gcpConfig.getPathqaStoreUrl( ) );
-                barcodeUploadTrackerService.recordUpload( barcodeValue, studyInstanceUID, seriesInstanceUID, deviceSerialNumber );
-                return null;
+            if (  qaBarcodeCache.exists( barcodeValue )  ) {
+                route = "pathqa";
+                CompletableFuture< Void > uploaded = storeDicomInstance( prepareUpload( dicomFile, fmi, attributes, barcodeGenerated ), gcpConfig.getPathqaStoreUrl( ), ( ) -> barcodeUploadTrackerService.recordUpload( barcodeValue, studyInstanceUID, seriesInstanceUID, deviceSerialNumber ) );
+                handedOff = !uploaded.isDone( );
+                return new Extraction( null, uploaded );
             }
             String path = moveFileToTempStore( finalPath, dicomFile, sopInstanceUID, studyInstanceUID, seriesInstanceUID, null );
             dicomRequestDBObject.setIntermediateStoragePath( path );
@@ -136,13 +175,16 @@ public class DicomExtractorService {
             log.info( "extract :: Created DB object to save: {}", dicomRequestDBObject );
             // Get the current timestamp in ISO 8601 format
             dicomRequestDBObject.setDicomInstanceReceivedTimestamp( Calendar.getInstance( ).getTime( ) );
+            route = "intermediate";
 
 
         } catch ( IOException e ) {
             throw new DicomAttributesException( "BAD_REQUEST", e.getMessage( ) );
         } finally {
+            ingestMetrics.stop( sample, "ingest.extract", IngestMetrics.scanner( scanner ), IngestMetrics.route( route ) );
+            ingestMetrics.countBytes( "ingest.received", receivedBytes, IngestMetrics.scanner( scanner ) );
             try {
-                if ( !isDicomDir ) {
+                if ( !isDicomDir && !handedOff ) {
                     Files.deleteIfExists( dicomFile.toPath( ) );
                 }
             } catch ( IOException e ) {
@@ -150,9 +192,92 @@ public class DicomExtractorService {
             }
         }
         log.info( "extract::  Extracting and moving file done for {}", dicomFile.getName( ) );
-        return dicomRequestDBObject;
+        return Extraction.done( dicomRequestDBObject );
+    }
+
+    /**
+     * File meta information and the dataset up to Pixel Data of a received file.
+     */
+    record Header( Attributes fileMetaInformation, Attributes dataset ) {
     }
 
+    /**
+     * Reads the header only; pixel data stays on disk until an upload actually needs it.
+     */
+    static Header readHeader ( File dicomFile ) throws IOException {
+        try ( DicomInputStream dicomInputStream = new DicomInputStream( dicomFile ) ) {
+            dicomInputStream.setIncludeBulkData( DicomInputStream.IncludeBulkData.NO );
+            Attributes dataset = dicomInputStream.readDatasetUntilPixelData( );
+            return new Header( dicomInputStream.readFileMetaInformation( ), dataset );
+        }
+    }
+
+    /**
+     * Uploads the instance to the given DICOM store and runs {@code onStored} once it is stored. With STOW-RS
+     * batching the upload happens later, together with other instances of the study, and the file is deleted
+     * once its batch has been sent; the returned future is still pending in that case, so the caller leaves the
+     * file in place. It fails when the store rejected the instance.
+     */
+    private CompletableFuture< Void > storeDicomInstance ( DicomUpload upload, String dicomUrl, Runnable onStored ) {
+        File dicomFile = upload.file( );
+        if ( !stowBatchEnabled ) {
+            dicomHealthcareApiClient.storeDicomInstances( upload, dicomUrl );
+            onStored.run( );
+            return CompletableFuture.completedFuture( null );
+        }
+        return stowBatchUploader.submit( upload, dicomUrl ).whenComplete( ( ignored, failure ) -> {
+            if ( failure == null ) {
+                onStored.run( );
+            } else {
+                log.error( "storeDicomInstance :: Upload of {} failed: {}", dicomFile.getName( ), failure.getMessage( ) );
+            }
+            try {
+                Files.deleteIfExists( dicomFile.toPath( ) );
+            } catch ( IOException e ) {
+                log.error( "storeDicomInstance :: Unable to delete file : {}", e.getMessage( ) );
+            }
+        } );
+    }
+
+    /**
+     * Describes how the instance is sent. A file that was not changed after it was received is sent as is.
+     * When a barcode was generated, only the header up to Pixel Data is re-encoded with the barcode set and
+     * the rest of the file is copied behind it. Deflated files cannot be split that way and are re-encoded in full.
+     */
+    private DicomUpload prepareUpload ( File dicomFile, Attributes fmi, Attributes header, boolean barcodeGenerated ) throws IOException {
+        String sopInstanceUID = header.getString( Tag.SOPInstanceUID );
+        String studyInstanceUID = header.getString( Tag.StudyInstanceUID );
+        if ( !barcodeGenerated ) {
+            return DicomUpload.ofFile( sopInstanceUID, studyInstanceUID, dicomFile );
+        }
+        String transferSyntaxUID = fmi != null ? fmi.getString( Tag.TransferSyntaxUID ) : null;
+        if ( UID.DeflatedExplicitVRLittleEndian.equals( transferSyntaxUID ) ) {
+            return DicomUpload.withHeader( sopInstanceUID, studyInstanceUID, dicomFile, fmi, readForUpload( dicomFile, header ), dicomFile.length( ) );
+        }
+        try ( DicomInputStream dicomInputStream = new DicomInputStream( dicomFile ) ) {
+            dicomInputStream.setIncludeBulkData( DicomInputStream.IncludeBulkData.YES );
+            Attributes dataset = dicomInputStream.readDatasetUntilPixelData( );
+            long tailOffset = dicomInputStream.tag( ) == Tag.PixelData ? dicomInputStream.getTagPosition( ) : dicomFile.length( );
+            dataset.setString( Tag.BarcodeValue, VR.LO, header.getString( Tag.BarcodeValue ) );
+            return DicomUpload.withHeader( sopInstanceUID, studyInstanceUID, dicomFile, fmi, dataset, tailOffset );
+        }
+    }
+
+    /**
+     * Re-reads the full instance for upload, leaving bulk data (pixel data) on disk as URI references
+     * so it is streamed from the file while writing. Values set on the header, such as a generated barcode, are carried over.
+     */
+    private Attributes readForUpload ( File dicomFile, Attributes header ) throws IOException {
+        try ( DicomInputStream dicomInputStream = new DicomInputStream( dicomFile ) ) {
+            dicomInputStream.setIncludeBulkData( DicomInputStream.IncludeBulkData.URI );
+            Attributes dataset = dicomInputStream.readDataset( );
+            String barcodeValue = header.getString( Tag.BarcodeValue );
+            if ( barcodeValue != null ) {
+                dataset.setString( Tag.BarcodeValue, VR.LO, barcodeValue );
+            }
+            return dataset;
+        }
+    }
 
     private void processDicomDirWithDelay ( Path dicomDirPath, Attributes attributes ) {
         try {
@@ -164,7 +289,7 @@ public class DicomExtractorService {
             String barcode = studyBarcodeCache.getIfPresent( dicomDirDocument.studyId( ) );
 
             if ( barcode != null ) {
-                if ( dbService.isBarcodeExists( barcode )  ) {
+                if ( qaBarcodeCache.exists( barcode )  ) {
                     log.info( "processDicomDirWithDelay :: Skipping DICOMDIR - barcode already exists in DB: {} (studyUID: {})", barcode, dicomDirDocument.studyId( ) );
                     Files.deleteIfExists( dicomDirPath );
                     return;
@@ -179,7 +304,7 @@ public class DicomExtractorService {
                 try {
                     Thread.sleep( 120_000 ); // Wait 2 minutes
                     String delayedBarcode = studyBarcodeCache.getIfPresent( dicomDirDocument.studyId( ) );
-                    if ( delayedBarcode != null && dbService.isBarcodeExists( delayedBarcode ) ) {
+                    if ( delayedBarcode != null && qaBarcodeCache.exists( delayedBarcode ) ) {
                         log.info( "processDicomDirWithDelay :: Skipping DICOMDIR after delay - barcode exists: {} (studyUID: {})", delayedBarcode, dicomDirDocument.studyId( ) );
                         Files.deleteIfExists( dicomDirPath );
                         return;
@@ -230,25 +355,21 @@ public class DicomExtractorService {
             objectName = String.format( "%s/%s/%s.dcm", studyID, seriesID, sopInstanceID );
         }
 
-        Storage storage = StorageOptions.newBuilder( ).setRetrySettings( ServiceOptions.getDefaultRetrySettings( ) ).build( ).getService( );
-        BlobInfo blobInfo = BlobInfo.newBuilder( bucketName, objectName ).setContentType( "application/dicom" ).build( );
-
-        try ( WriteChannel writer = storage.writer( blobInfo ); FileInputStream input = new FileInputStream( dicomFile ) ) {
-            writer.setChunkSize( 64 * 1024 * 1024 );
-            byte[] buffer = new byte[ 64 * 1024 * 1024 ]; // 10 MB buffer
-            int limit;
-            while ( ( limit = input.read( buffer ) ) >= 0 ) {
-                writer.write( ByteBuffer.wrap( buffer, 0, limit ) );
-            }
-            log.info( "moveFileToTempStore :: File uploaded successfully." );
-        } catch ( IOException e ) {
-            throw new DicomAttributesException( "UPLOAD_EXCEPTION", e.getMessage( ) );
+        long bytes = dicomFile.length( );
+        Timer.Sample sample = ingestMetrics.start( );
+        boolean success = false;
+        try {
+            gcsUploadService.upload( bucketName, objectName, dicomFile );
+            success = true;
+        } finally {
+            ingestMetrics.stop( sample, "ingest.intermediate.upload", IngestMetrics.outcome( success ) );
         }
+        ingestMetrics.countBytes( "ingest.intermediate.uploaded", bytes );
         return String.format( "gs://%s/%s", bucketName, objectName );
     }
 
 
-    private String generateShortBarcode ( String studyUID, String seriesUID ) {
+    static String generateShortBarcode ( String studyUID, String seriesUID ) {
         try {
             String input = studyUID + seriesUID;
             MessageDigest md = MessageDigest.getInstance( "SHA-256" );
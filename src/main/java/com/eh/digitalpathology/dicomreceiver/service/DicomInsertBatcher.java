@@ -0,0 +1,124 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption;
+import com.eh.digitalpathology.dicomreceiver.model.DicomRequestDBObject;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects instance records from the same source service and stores them with a single bulk insert once the batch
+ * reaches its record count, or when the linger time since its first record runs out. Each submitted record gets its
+ * own future, completed with the status of the batch that carried it. A batch that fills up is sent on the
+ * submitting thread, so a slow DB connector still holds back the persist stage.
+ */
+@Service
+public class DicomInsertBatcher {
+    private static final Logger log = LoggerFactory.getLogger( DicomInsertBatcher.class.getName( ) );
+
+    private final DatabaseService databaseService;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map< String, Batch > batches = new HashMap<>( );
+
+    @Value( "${db.connector.insert.batch.max-instances:100}" )
+    private int maxInstances;
+
+    @Value( "${db.connector.insert.batch.linger-ms:200}" )
+    private long lingerMs;
+
+    public DicomInsertBatcher ( DatabaseService databaseService, @Qualifier( "dbInsertBatchScheduler" ) ScheduledExecutorService scheduler ) {
+        this.databaseService = databaseService;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queues a record for insertion. The returned future completes with the connector's status for the batch
+     * holding the record, or exceptionally with a {@link DbConnectorExeption} if the bulk insert failed.
+     */
+    public CompletableFuture< String > submit ( DicomRequestDBObject requestDBObject, String sourceServiceName ) {
+        PendingRecord pending = new PendingRecord( requestDBObject, new CompletableFuture<>( ) );
+
+        Batch full = null;
+        synchronized ( batches ) {
+            Batch batch = batches.get( sourceServiceName );
+            if ( batch == null ) {
+                batch = new Batch( sourceServiceName );
+                batches.put( sourceServiceName, batch );
+                Batch lingering = batch;
+                batch.lingerTask = scheduler.schedule( ( ) -> flush( sourceServiceName, lingering ), lingerMs, TimeUnit.MILLISECONDS );
+            }
+            batch.records.add( pending );
+            if ( batch.records.size( ) >= maxInstances ) {
+                batches.remove( sourceServiceName );
+                batch.lingerTask.cancel( false );
+                full = batch;
+            }
+        }
+        if ( full != null ) {
+            send( full );
+        }
+        return pending.future;
+    }
+
+    /** Sends every pending batch now, e.g. on shutdown. */
+    @PreDestroy
+    public void flushAll ( ) {
+        List< Batch > pending;
+        synchronized ( batches ) {
+            pending = new ArrayList<>( batches.values( ) );
+            batches.clear( );
+        }
+        pending.forEach( batch -> {
+            batch.lingerTask.cancel( false );
+            send( batch );
+        } );
+    }
+
+    private void flush ( String key, Batch batch ) {
+        synchronized ( batches ) {
+            if ( !batches.remove( key, batch ) ) {
+                return; // already sent because it filled up
+            }
+        }
+        send( batch );
+    }
+
+    private void send ( Batch batch ) {
+        List< PendingRecord > records = batch.records;
+        try {
+            String status = databaseService.insertDicomDataBatch( records.stream( ).map( PendingRecord::requestDBObject ).toList( ), batch.sourceServiceName );
+            log.info( "send :: Batch of {} records inserted with status {}", records.size( ), status );
+            records.forEach( pending -> pending.future.complete( status ) );
+        } catch ( RuntimeException e ) {
+            log.error( "send :: Batch insert of {} records failed: {}", records.size( ), e.getMessage( ) );
+            DbConnectorExeption failure = e instanceof DbConnectorExeption dbException ? dbException : new DbConnectorExeption( "DB error", e.getMessage( ) );
+            records.forEach( pending -> pending.future.completeExceptionally( failure ) );
+        }
+    }
+
+    private record PendingRecord( DicomRequestDBObject requestDBObject, CompletableFuture< String > future ) {
+    }
+
+    private static final class Batch {
+        private final String sourceServiceName;
+        private final List< PendingRecord > records = new ArrayList<>( );
+        private ScheduledFuture< ? > lingerTask;
+
+        private Batch ( String sourceServiceName ) {
+            this.sourceServiceName = sourceServiceName;
+        }
+    }
+}
@@ -1,69 +1,144 @@
 package com.eh.digitalpathology.dicomreceiver.service;
 
+import com.eh.digitalpathology.dicomreceiver.util.Inotify;
+import com.eh.digitalpathology.dicomreceiver.util.TimingWheel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 
 @Component
-public class DirectoryWatcher {
+public class DirectoryWatcher implements MeterBinder {
     private static final Logger log = LoggerFactory.getLogger( DirectoryWatcher.class.getName( ) );
     private final FileProcessingService fileProcessingService;
-    private final ExecutorService executorService;
-    private final ScheduledExecutorService stabilizerScheduler;
-
-    private final ConcurrentHashMap< Path, ScheduledFuture< ? > > scheduledChecks = new ConcurrentHashMap<>( );
+    private final IngestPipeline ingestPipeline;
+    private final IngestJournal ingestJournal;
+    private static final long TICK_MS = 100L;
+    // IN_CREATE is only acted on for subdirectories, which need a watch of their own
+    private static final int CLOSE_WRITE_MASK = Inotify.IN_CLOSE_WRITE | Inotify.IN_MOVED_TO | Inotify.IN_CREATE | Inotify.IN_ONLYDIR;
+    // Debounce, probe and admission-retry timers of all tracked files, advanced by one tick on the stabilizer scheduler
+    private final TimingWheel< Path > scheduledChecks = new TimingWheel<>( TICK_MS, 512 );
+    // Files whose probe timer fired in the current tick; stat-ed together per directory at the end of the tick
+    private final Map< Path, ProbeTarget > dueProbes = new ConcurrentHashMap<>( );
 
     private final ConcurrentHashMap< Path, WatchEvent< Path > > latestEvents = new ConcurrentHashMap<>( );
 
     private final Duration quietPeriod = Duration.ofSeconds( 5);   // time with no events before we start probing
+    private final Duration admissionRetry = Duration.ofSeconds( 1 ); // wait before offering a stable file to a full pipeline again
     private final Map< Path, ProbeState > probeStates = new ConcurrentHashMap<>( );
     private final Map< Path, Integer > retryCounts = new ConcurrentHashMap<>( );
-
-    public DirectoryWatcher ( FileProcessingService fileProcessingService, @Qualifier( "directoryWatcherExecutor" ) ExecutorService executorService, @Qualifier( "stabilizerScheduler" ) ScheduledExecutorService stabilizerScheduler ) {
+    // Files being renamed into place in-process (C-STORE SCP) and not handed off yet; their watch events are ignored
+    private final Set< Path > handOffs = ConcurrentHashMap.newKeySet( );
+    // Files admitted or handed off to the ingest pipeline and not ingested yet; a rescan must not probe them again
+    private final Set< Path > inFlight = ConcurrentHashMap.newKeySet( );
+    // Pipelines of additional watch roots, keyed by root; files of any other root use the shared ingest pipeline
+    private final Map< String, IngestPipeline > rootPipelines = new ConcurrentHashMap<>( );
+
+    // On Linux, take inotify close-write/moved-to events as completion instead of probing for stability
+    @Value( "${watcher.close-write.enable:false}" )
+    private boolean closeWriteEnabled;
+
+    // Startup reconciliation: files already below a root when it is first watched, oldest first, fed into the
+    // stability probes at a bounded rate so a large backlog does not flood the scheduler or the pipeline
+    @Value( "${watcher.reconcile.enable:false}" )
+    private boolean reconcileEnabled;
+    @Value( "${watcher.reconcile.rate-per-second:200}" )
+    private int reconcileRatePerSecond;
+    @Value( "${watcher.reconcile.parallelism:4}" )
+    private int reconcileParallelism;
+    private final Set< String > reconciledRoots = ConcurrentHashMap.newKeySet( );
+    private final Queue< Reconciled > reconcileBacklog = new ConcurrentLinkedQueue<>( );
+    private final AtomicLong reconcileFound = new AtomicLong( );
+    private final AtomicLong reconcileFed = new AtomicLong( );
+    private final AtomicLong reconcileRemaining = new AtomicLong( );
+    // Fractional feed allowance carried between ticks; only touched on the stabilizer thread
+    private double reconcileCredit;
+
+    public DirectoryWatcher ( FileProcessingService fileProcessingService, IngestPipeline ingestPipeline, IngestJournal ingestJournal, @Qualifier( "stabilizerScheduler" ) ScheduledExecutorService stabilizerScheduler ) {
         this.fileProcessingService = fileProcessingService;
-        this.executorService = executorService;
-        this.stabilizerScheduler = stabilizerScheduler;
+        this.ingestPipeline = ingestPipeline;
+        this.ingestJournal = ingestJournal;
+        stabilizerScheduler.scheduleAtFixedRate( this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS );
     }
 
+    /**
+     * Watches {@code fileStore} and, recursively, every directory below it; subdirectories created while watching
+     * are registered as they appear. Runs until interrupted or the root directory goes away.
+     */
     public void directoryLookup ( String fileStore, String intermediateStore ) {
         Path dir = Paths.get( fileStore ).toAbsolutePath( );
+        resumeFromJournal( fileStore, intermediateStore );
+        if ( closeWriteEnabled && Inotify.isSupported( ) && closeWriteLookup( dir, fileStore, intermediateStore ) ) {
+            return;
+        }
+        IngestPipeline pipeline = pipelineFor( fileStore );
         try ( WatchService watchService = FileSystems.getDefault( ).newWatchService( ) ) {
             if ( !Files.isDirectory( dir ) ) {
                 throw new IllegalArgumentException( "Not a directory: " + dir );
             }
-            dir.register( watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.OVERFLOW );
-            log.info( "directoryLookup :: Watching directory: {}", dir );
+            Map< WatchKey, Path > watchedDirs = new HashMap<>( );
+            registerTree( watchService, watchedDirs, dir );
+            log.info( "directoryLookup :: Watching directory: {} ({} directories)", dir, watchedDirs.size( ) );
+            startReconciliation( dir, fileStore, intermediateStore );
             for ( ; ; ) {
+                // Backpressure: stop draining events while the pipeline is full. Events the kernel drops
+                // meanwhile come back as OVERFLOW and are picked up by the rescan.
+                pipeline.awaitCapacity( );
                 WatchKey key = watchService.take( ); // blocks until events available
+                Path keyDir = watchedDirs.getOrDefault( key, dir );
                 for ( WatchEvent< ? > evt : key.pollEvents( ) ) {
                     WatchEvent.Kind< ? > kind = evt.kind( );
 
                     if ( kind == StandardWatchEventKinds.OVERFLOW ) {
                         log.warn( "directoryLookup :: OVERFLOW detected; rescanning for missed files..." );
+                        registerTree( watchService, watchedDirs, dir );
                         rescanDirectory( dir, fileStore, intermediateStore );
                         continue;
                     }
 
                     @SuppressWarnings( "unchecked" ) WatchEvent< Path > event = (WatchEvent< Path >) evt;
-                    Path childAbsPath = dir.resolve( event.context( ) ).toAbsolutePath( );
+                    Path childAbsPath = keyDir.resolve( event.context( ) ).toAbsolutePath( );
 
                     if ( kind == StandardWatchEventKinds.ENTRY_CREATE ) {
-                        onEvent( childAbsPath, event, fileStore, intermediateStore );
+                        if ( Files.isDirectory( childAbsPath, LinkOption.NOFOLLOW_LINKS ) ) {
+                            // Files may have landed in it before it was registered
+                            registerTree( watchService, watchedDirs, childAbsPath );
+                            rescanDirectory( childAbsPath, fileStore, intermediateStore );
+                        } else {
+                            onEvent( childAbsPath, keyDir.equals( dir ) ? event : eventFor( childAbsPath, fileStore ), fileStore, intermediateStore );
+                        }
                     }
                 }
                 boolean valid = key.reset( );
                 if ( !valid ) {
-                    log.warn( "directoryLookup :: WatchKey invalid for {}; stopping watcher.", dir );
-                    break;
+                    watchedDirs.remove( key );
+                    if ( keyDir.equals( dir ) ) {
+                        log.warn( "directoryLookup :: WatchKey invalid for {}; stopping watcher.", dir );
+                        break;
+                    }
                 }
             }
         } catch ( InterruptedException e ) {
@@ -74,32 +149,305 @@ public class DirectoryWatcher {
         }
     }
 
+    /**
+     * Picks up the files of {@code fileStore} the journal still has pending from before a restart: admitted files go
+     * straight back to the pipeline, detected ones restart their probe cycle. Only journaled files are looked at.
+     */
+    private void resumeFromJournal ( String fileStore, String intermediateStore ) {
+        Map< Path, IngestJournal.Entry > pending = ingestJournal.pending( fileStore );
+        if ( pending.isEmpty( ) ) {
+            return;
+        }
+        log.info( "resumeFromJournal :: Resuming {} pending files of {}", pending.size( ), fileStore );
+        pending.forEach( ( path, entry ) -> {
+            if ( !Files.exists( path ) ) {
+                ingestJournal.record( path, fileStore, IngestJournal.State.DISCARDED );
+            } else if ( entry.state( ) == IngestJournal.State.STABLE ) {
+                admit( path, eventFor( path, fileStore ), fileStore, intermediateStore );
+            } else {
+                onEvent( path, eventFor( path, fileStore ), fileStore, intermediateStore );
+            }
+        } );
+    }
+
+    /**
+     * Lists the files already below {@code dir} in the background, once per root, and queues them oldest first for
+     * {@link #feedReconciled()}. Called once the watches are in place, so a file written meanwhile is either listed
+     * here or reported by the watcher, and the tracking checks in {@link #reconcileFile} drop the duplicate.
+     */
+    private void startReconciliation ( Path dir, String fileStore, String intermediateStore ) {
+        if ( !reconcileEnabled || !reconciledRoots.add( fileStore ) ) {
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool( Math.max( 1, reconcileParallelism ) );
+        long started = System.nanoTime( );
+        CompletableFuture.supplyAsync( ( ) -> ReconciliationScan.scan( dir, pool ), pool ).whenComplete( ( files, ex ) -> {
+            pool.shutdown( );
+            if ( ex != null ) {
+                log.error( "startReconciliation :: Listing {} failed: {}", dir, ex.getMessage( ) );
+                return;
+            }
+            for ( Path file : files ) {
+                reconcileBacklog.add( new Reconciled( file, fileStore, intermediateStore ) );
+            }
+            reconcileFound.addAndGet( files.size( ) );
+            reconcileRemaining.addAndGet( files.size( ) );
+            log.info( "startReconciliation :: Found {} existing files below {} in {} ms, feeding {} per second", files.size( ), dir, TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - started ), reconcileRatePerSecond );
+        } );
+    }
+
+    /**
+     * Moves this tick's share of the reconciliation backlog into stability probing. Feeding pauses while the
+     * file's pipeline has no free admissions, so the backlog drains at the pace the pipeline can take it.
+     */
+    private void feedReconciled ( ) {
+        if ( reconcileBacklog.isEmpty( ) ) {
+            reconcileCredit = 0;
+            return;
+        }
+        reconcileCredit = Math.min( reconcileCredit + Math.max( 1, reconcileRatePerSecond ) * TICK_MS / 1000.0, Math.max( 1, reconcileRatePerSecond ) );
+        while ( reconcileCredit >= 1 ) {
+            Reconciled next = reconcileBacklog.peek( );
+            if ( next == null || pipelineFor( next.fileStore( ) ).availableAdmissions( ) == 0 ) {
+                return;
+            }
+            reconcileBacklog.poll( );
+            reconcileCredit--;
+            reconcileRemaining.decrementAndGet( );
+            reconcileFile( next.path( ), next.fileStore( ), next.intermediateStore( ) );
+            if ( reconcileFed.incrementAndGet( ) % 1000 == 0 || reconcileBacklog.isEmpty( ) ) {
+                log.info( "feedReconciled :: Reconciliation fed {} of {} files, {} remaining", reconcileFed.get( ), reconcileFound.get( ), reconcileRemaining.get( ) );
+            }
+        }
+    }
+
+    /**
+     * Starts the probe cycle of a file found by the startup listing right away: it has had no event to debounce.
+     * Files the watcher or the journal resume is already tracking are left alone.
+     */
+    private void reconcileFile ( Path path, String fileStore, String intermediateStore ) {
+        if ( latestEvents.containsKey( path ) || inFlight.contains( path ) || handOffs.contains( path ) || isPartialFile( path ) ) {
+            log.debug( "reconcileFile :: Skip tracked or partial file {}", path );
+            return;
+        }
+        latestEvents.put( path, eventFor( path, fileStore ) );
+        ingestJournal.record( path, fileStore, IngestJournal.State.DETECTED );
+        startStabilityCheck( path, fileStore, intermediateStore );
+    }
+
+    /**
+     * Files waiting on the watcher, and reconciliation progress: files listed, fed into probing, and still queued.
+     */
+    @Override
+    public void bindTo ( MeterRegistry registry ) {
+        Gauge.builder( "watcher.probes.pending", probeStates, Map::size ).description( "Files being probed for stability" ).register( registry );
+        Gauge.builder( "watcher.timers.scheduled", scheduledChecks, TimingWheel::size ).description( "Debounce, probe and admission-retry timers pending" ).register( registry );
+        Gauge.builder( "watcher.in.flight", inFlight, Set::size ).description( "Files admitted to the ingest pipeline whose ingest has not completed" ).register( registry );
+        FunctionCounter.builder( "watcher.reconcile.found", reconcileFound, AtomicLong::get ).description( "Existing files listed by the startup reconciliation" ).register( registry );
+        FunctionCounter.builder( "watcher.reconcile.fed", reconcileFed, AtomicLong::get ).description( "Reconciled files fed into stability probing" ).register( registry );
+        Gauge.builder( "watcher.reconcile.remaining", reconcileRemaining, AtomicLong::get ).description( "Reconciled files waiting to be fed" ).register( registry );
+    }
+
+    /**
+     * Routes files of {@code fileStore} through their own ingest pipeline instead of the shared one.
+     * Call before {@link #directoryLookup(String, String)} for that root.
+     */
+    public void registerRoot ( String fileStore, IngestPipeline pipeline ) {
+        rootPipelines.put( fileStore, pipeline );
+    }
+
+    private IngestPipeline pipelineFor ( String fileStore ) {
+        return rootPipelines.getOrDefault( fileStore, ingestPipeline );
+    }
+
+    /**
+     * Registers {@code start} and every directory below it that is not watched yet.
+     */
+    private void registerTree ( WatchService watchService, Map< WatchKey, Path > watchedDirs, Path start ) throws IOException {
+        Files.walkFileTree( start, new SimpleFileVisitor<>( ) {
+            @Override
+            public FileVisitResult preVisitDirectory ( Path dir, BasicFileAttributes attrs ) throws IOException {
+                if ( !watchedDirs.containsValue( dir ) ) {
+                    watchedDirs.put( dir.register( watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.OVERFLOW ), dir );
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed ( Path file, IOException exc ) {
+                log.warn( "registerTree :: Cannot watch {}: {}", file, exc.getMessage( ) );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+
+    /**
+     * Watches {@code dir} with inotify for files that were closed after writing or renamed into it, and admits them
+     * straight away: the writer is done with them, so there is nothing to debounce or probe. Files a queue overflow
+     * made us miss go through the regular probe cycle via the rescan.
+     *
+     * @return {@code false} if inotify could not be used, in which case the caller falls back to the {@code WatchService}
+     */
+    private boolean closeWriteLookup ( Path dir, String fileStore, String intermediateStore ) {
+        IngestPipeline pipeline = pipelineFor( fileStore );
+        try ( Inotify inotify = Inotify.open( ) ) {
+            Map< Integer, Path > watchedDirs = new HashMap<>( );
+            watchedDirs.put( inotify.addWatch( dir, CLOSE_WRITE_MASK ), dir );
+            watchSubdirectories( inotify, watchedDirs, dir );
+            log.info( "closeWriteLookup :: Watching directory for completed writes: {} ({} directories)", dir, watchedDirs.size( ) );
+            startReconciliation( dir, fileStore, intermediateStore );
+            for ( ; ; ) {
+                pipeline.awaitCapacity( );
+                for ( Inotify.Event event : inotify.poll( 1000 ) ) {
+                    Path eventDir = watchedDirs.get( event.wd( ) );
+                    if ( event.is( Inotify.IN_Q_OVERFLOW ) ) {
+                        log.warn( "closeWriteLookup :: OVERFLOW detected; rescanning for missed files..." );
+                        watchSubdirectories( inotify, watchedDirs, dir );
+                        rescanDirectory( dir, fileStore, intermediateStore );
+                    } else if ( event.is( Inotify.IN_IGNORED ) ) {
+                        watchedDirs.remove( event.wd( ) );
+                        if ( dir.equals( eventDir ) ) {
+                            log.warn( "closeWriteLookup :: Watch removed for {}; stopping watcher.", dir );
+                            return true;
+                        }
+                    } else if ( eventDir == null || event.name( ).isEmpty( ) ) {
+                        log.debug( "closeWriteLookup :: Ignoring event for unknown watch {}", event.wd( ) );
+                    } else if ( event.is( Inotify.IN_ISDIR ) ) {
+                        // New or moved-in subdirectory; files may have landed in it before the watch was added
+                        Path subDir = eventDir.resolve( event.name( ) );
+                        watchDirectory( inotify, watchedDirs, subDir );
+                        watchSubdirectories( inotify, watchedDirs, subDir );
+                        rescanDirectory( subDir, fileStore, intermediateStore );
+                    } else if ( event.is( Inotify.IN_CLOSE_WRITE | Inotify.IN_MOVED_TO ) ) {
+                        onWriteCompleted( eventDir.resolve( event.name( ) ), fileStore, intermediateStore );
+                    }
+                }
+            }
+        } catch ( InterruptedException e ) {
+            log.error( "closeWriteLookup :: Interrupted", e );
+            Thread.currentThread( ).interrupt( );
+            return true;
+        } catch ( IOException e ) {
+            log.warn( "closeWriteLookup :: inotify unavailable for {}, falling back to stability probing: {}", dir, e.getMessage( ) );
+            return false;
+        }
+    }
+
+    private void watchSubdirectories ( Inotify inotify, Map< Integer, Path > watchedDirs, Path start ) throws IOException {
+        try ( Stream< Path > tree = Files.walk( start ) ) {
+            tree.filter( path -> !path.equals( start ) && Files.isDirectory( path, LinkOption.NOFOLLOW_LINKS ) ).forEach( path -> watchDirectory( inotify, watchedDirs, path ) );
+        } catch ( UncheckedIOException e ) {
+            log.warn( "watchSubdirectories :: Incomplete walk of {}: {}", start, e.getMessage( ) );
+        }
+    }
+
+    private void watchDirectory ( Inotify inotify, Map< Integer, Path > watchedDirs, Path dir ) {
+        if ( watchedDirs.containsValue( dir ) ) {
+            return;
+        }
+        try {
+            watchedDirs.put( inotify.addWatch( dir, CLOSE_WRITE_MASK ), dir );
+        } catch ( IOException e ) {
+            log.warn( "watchDirectory :: Cannot watch {}: {}", dir, e.getMessage( ) );
+        }
+    }
+
+    /**
+     * Registers a file that is about to be atomically renamed into the watched directory by this process,
+     * so the resulting ENTRY_CREATE event is ignored. Call before the rename.
+     */
+    public void expectHandOff ( Path absoluteFilePath ) {
+        handOffs.add( absoluteFilePath.toAbsolutePath( ) );
+    }
+
+    /**
+     * Drops a registration made by {@link #expectHandOff(Path)} when the file never made it to its final name.
+     */
+    public void cancelHandOff ( Path absoluteFilePath ) {
+        handOffs.remove( absoluteFilePath.toAbsolutePath( ) );
+    }
+
+    /**
+     * Submits a file that is known to be complete straight to processing, skipping the debounce and stability probes.
+     * Waits while the ingest pipeline is full, which holds back the association that delivered the file. The file is
+     * in flight from here until its ingest completes, so watch events and rescans in between leave it alone.
+     */
+    public void handOff ( Path absoluteFilePath, String fileStore, String intermediateStore ) {
+        Path path = absoluteFilePath.toAbsolutePath( );
+        WatchEvent< Path > event = SyntheticWatchEvent.create( StandardWatchEventKinds.ENTRY_CREATE, path.getFileName( ) );
+        log.debug( "handOff :: Direct hand-off for {}", path );
+        inFlight.add( path );
+        handOffs.remove( path );
+        ingestJournal.record( path, fileStore, IngestJournal.State.STABLE );
+        try {
+            ingestPipeline.submit( ( ) -> process( path, event, fileStore, intermediateStore ) );
+        } catch ( InterruptedException e ) {
+            // The file stays in the watched directory under its final name; stop tracking it so a rescan picks it up
+            inFlight.remove( path );
+            log.error( "handOff :: Interrupted while waiting for the ingest pipeline: {}", path );
+            Thread.currentThread( ).interrupt( );
+        }
+    }
+
     /**
      * Debounce per file and schedule a stability check after quiet period.
      */
     private void onEvent ( Path absoluteFilePath, WatchEvent< Path > event, String fileStore, String intermediateStore ) {
+        // Skip files being handed off in-process
+        if ( handOffs.contains( absoluteFilePath ) ) {
+            log.debug( "onEvent :: Skip handed-off file {}", absoluteFilePath );
+            return;
+        }
+        // Skip files already waiting in the ingest pipeline
+        if ( inFlight.contains( absoluteFilePath ) ) {
+            log.debug( "onEvent :: Skip in-flight file {}", absoluteFilePath );
+            return;
+        }
         // Skip directories
         if ( Files.isDirectory( absoluteFilePath ) ) {
             log.debug( "onEvent :: Skip directory {}", absoluteFilePath );
             return;
         }
         // Skip temp/partial files
-        String name = absoluteFilePath.getFileName( ).toString( );
-        if ( name.endsWith( ".part" ) || name.endsWith( ".filepart" ) || name.endsWith( ".tmp" ) ) {
+        if ( isPartialFile( absoluteFilePath ) ) {
             log.info( "onEvent :: Ignoring temp/partial {}", absoluteFilePath );
             return;
         }
         // Record latest event (we'll pass this to processFile later)
         latestEvents.put( absoluteFilePath, event );
+        ingestJournal.record( absoluteFilePath, fileStore, IngestJournal.State.DETECTED );
 
-        // Cancel any previous scheduled check (debounce)
-        ScheduledFuture< ? > prev = scheduledChecks.get( absoluteFilePath );
-        if ( prev != null ) {
-            prev.cancel( false );
-        }
+        // Replaces any previous scheduled check (debounce)
         long delayMs = computeDynamicQuietMillis( absoluteFilePath );
-        ScheduledFuture< ? > future = stabilizerScheduler.schedule( ( ) -> startStabilityCheck( absoluteFilePath, fileStore, intermediateStore ), delayMs, TimeUnit.MILLISECONDS );
-        scheduledChecks.put( absoluteFilePath, future );
+        scheduledChecks.schedule( absoluteFilePath, delayMs, ( ) -> startStabilityCheck( absoluteFilePath, fileStore, intermediateStore ) );
+    }
+
+    /**
+     * A writer closed {@code absoluteFilePath} or renamed it into the watched directory, so it is complete.
+     * A writer that reopens a file to append produces another close-write, which the in-flight check absorbs.
+     */
+    private void onWriteCompleted ( Path absoluteFilePath, String fileStore, String intermediateStore ) {
+        if ( handOffs.contains( absoluteFilePath ) ) {
+            log.debug( "onWriteCompleted :: Skip handed-off file {}", absoluteFilePath );
+            return;
+        }
+        if ( inFlight.contains( absoluteFilePath ) ) {
+            log.debug( "onWriteCompleted :: Skip in-flight file {}", absoluteFilePath );
+            return;
+        }
+        if ( isPartialFile( absoluteFilePath ) ) {
+            log.debug( "onWriteCompleted :: Ignoring temp/partial {}", absoluteFilePath );
+            return;
+        }
+        // Drop a probe cycle a rescan may have started for it
+        cleanup( absoluteFilePath );
+        log.debug( "onWriteCompleted :: Write completed for {}", absoluteFilePath );
+        admit( absoluteFilePath, eventFor( absoluteFilePath, fileStore ), fileStore, intermediateStore );
+    }
+
+    private static boolean isPartialFile ( Path path ) {
+        String name = path.getFileName( ).toString( );
+        return name.endsWith( ".part" ) || name.endsWith( ".filepart" ) || name.endsWith( ".tmp" );
     }
 
     private long computeDynamicQuietMillis ( Path path ) {
@@ -141,6 +489,7 @@ public class DirectoryWatcher {
             if ( !Files.exists( path ) ) {
                 log.warn( "startStabilityCheck :: Path no longer exists: {}", path );
                 cleanup( path );
+                ingestJournal.record( path, fileStore, IngestJournal.State.DISCARDED );
                 return;
             }
             if ( !Files.isReadable( path ) ) {
@@ -174,8 +523,7 @@ public class DirectoryWatcher {
             probeStates.put( path, state );
             log.debug( "startStabilityCheck :: Init probe for {}: probeMs={}ms probesRequired={}", path, probeMs, probesRequired );
             // Schedule first probe (non-blocking)
-            ScheduledFuture< ? > f = stabilizerScheduler.schedule( ( ) -> runProbe( path, fileStore, intermediateStore ), probeMs, TimeUnit.MILLISECONDS );
-            scheduledChecks.put( path, f );
+            scheduleProbe( path, probeMs, fileStore, intermediateStore );
 
         } catch ( IOException ioex ) {
             log.error( "startStabilityCheck :: Error initializing for {}: {}", path, ioex.getMessage() );
@@ -187,7 +535,101 @@ public class DirectoryWatcher {
     }
 
 
+    /**
+     * One stabilizer tick: fires every timer that came due, probes all files whose probe timer fired, then feeds
+     * the next share of the reconciliation backlog.
+     */
+    private void tick ( ) {
+        try {
+            scheduledChecks.advance( );
+            probeDueFiles( );
+            feedReconciled( );
+        } catch ( Exception ex ) {
+            log.error( "tick :: Stabilizer tick failed: {}", ex.getMessage( ) );
+        }
+    }
+
+    private void scheduleProbe ( Path path, long delayMs, String fileStore, String intermediateStore ) {
+        scheduledChecks.schedule( path, delayMs, ( ) -> dueProbes.put( path, new ProbeTarget( fileStore, intermediateStore ) ) );
+    }
+
+    /**
+     * Probes every due file with one attribute read each, grouped by directory. Each directory is opened once and,
+     * where the platform supports it, the files are stat-ed relative to the open handle, so a tick costs one open
+     * plus one stat per pending file instead of an exists/size/mtime round trip per file.
+     */
+    private void probeDueFiles ( ) {
+        if ( dueProbes.isEmpty( ) ) {
+            return;
+        }
+        Map< Path, List< Path > > byDirectory = new HashMap<>( );
+        for ( Path path : List.copyOf( dueProbes.keySet( ) ) ) {
+            byDirectory.computeIfAbsent( path.getParent( ), dir -> new ArrayList<>( ) ).add( path );
+        }
+        for ( Map.Entry< Path, List< Path > > entry : byDirectory.entrySet( ) ) {
+            probeDirectory( entry.getKey( ), entry.getValue( ) );
+        }
+    }
+
+    private void probeDirectory ( Path dir, List< Path > paths ) {
+        try ( DirectoryStream< Path > stream = Files.newDirectoryStream( dir ) ) {
+            SecureDirectoryStream< Path > secure = stream instanceof SecureDirectoryStream< Path > s ? s : null;
+            for ( Path path : paths ) {
+                ProbeTarget target = dueProbes.remove( path );
+                if ( target == null ) {
+                    continue; // cleaned up since the timer fired
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = secure != null
+                            ? secure.getFileAttributeView( path.getFileName( ), BasicFileAttributeView.class ).readAttributes( )
+                            : Files.readAttributes( path, BasicFileAttributes.class );
+                } catch ( NoSuchFileException gone ) {
+                    attrs = null;
+                } catch ( IOException ioex ) {
+                    log.error( "probeDirectory :: IO error for {}: {}", path, ioex.getMessage( ) );
+                    reschedule( path, target.fileStore( ), target.intermediateStore( ) );
+                    continue;
+                }
+                runProbe( path, target.fileStore( ), target.intermediateStore( ), attrs );
+            }
+        } catch ( IOException ioex ) {
+            // Directory itself is unreadable or gone: fall back to probing each file on its own
+            log.warn( "probeDirectory :: Cannot open {}: {}", dir, ioex.getMessage( ) );
+            for ( Path path : paths ) {
+                ProbeTarget target = dueProbes.remove( path );
+                if ( target != null ) {
+                    runProbe( path, target.fileStore( ), target.intermediateStore( ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Probes a single file, reading its attributes on its own.
+     */
     private void runProbe ( Path path, String fileStore, String intermediateStore ) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes( path, BasicFileAttributes.class );
+        } catch ( NoSuchFileException gone ) {
+            attrs = null;
+        } catch ( IOException ioex ) {
+            log.error( "runProbe :: IO error for {}: {}", path, ioex.getMessage() );
+            reschedule( path, fileStore, intermediateStore );
+            return;
+        } catch ( Exception ex ) {
+            log.error( "runProbe :: Error for {}: {}", path, ex.getMessage() );
+            reschedule( path, fileStore, intermediateStore );
+            return;
+        }
+        runProbe( path, fileStore, intermediateStore, attrs );
+    }
+
+    /**
+     * Advances the probe state of {@code path} from an attribute snapshot; {@code attrs} is {@code null} when the file is gone.
+     */
+    private void runProbe ( Path path, String fileStore, String intermediateStore, BasicFileAttributes attrs ) {
         ProbeState state = probeStates.get( path );
         if ( state == null ) {
             // Initialize if missing (defensive)
@@ -195,20 +637,17 @@ public class DirectoryWatcher {
             return;
         }
         try {
-            if ( !Files.exists( path ) ) {
+            if ( attrs == null ) {
                 log.warn( "runProbe :: Path no longer exists: {}", path );
                 cleanup( path );
+                ingestJournal.record( path, fileStore, IngestJournal.State.DISCARDED );
                 probeStates.remove( path );
                 return;
             }
-            if ( !Files.isReadable( path ) ) {
-                log.warn( "runProbe :: Path not readable yet: {}", path );
-                reschedule( path, fileStore, intermediateStore );
-                return;
-            }
 
-            long size = Files.size( path );
-            FileTime mtime = Files.getLastModifiedTime( path );
+            long size = attrs.size( );
+            FileTime mtime = attrs.lastModifiedTime( );
+            boolean firstProbe = state.prevMTime == null;
 
             if ( size == state.prevSize && Objects.equals( mtime, state.prevMTime ) ) {
                 state.stableCount++;
@@ -218,72 +657,113 @@ public class DirectoryWatcher {
             state.prevSize = size;
             state.prevMTime = mtime;
 
-            if ( state.stableCount >= state.probesRequired ) {
+            // Permissions rarely change mid-write, so only check them when a cycle starts and before handing the file over
+            boolean stable = state.stableCount >= state.probesRequired;
+            if ( ( firstProbe || stable ) && !Files.isReadable( path ) ) {
+                log.warn( "runProbe :: Path not readable yet: {}", path );
+                reschedule( path, fileStore, intermediateStore );
+                return;
+            }
+
+            if ( stable ) {
                 log.info( "runProbe :: File is stable after {} probes @ {} ms: {}", state.probesRequired, state.probeMs, path );
                 cleanup( path );
                 probeStates.remove( path );
                 // Retrieve last event or synthesize
                 WatchEvent< Path > event = latestEvents.get( path );
                 if ( event == null ) {
-                    event = SyntheticWatchEvent.create( StandardWatchEventKinds.ENTRY_CREATE, path.getFileName( ) );
+                    event = eventFor( path, fileStore );
                 }
-                WatchEvent< Path > finalEvent = event;
-                // Process on separate executor (non-blocking of scheduler)
-                executorService.submit( ( ) -> {
-                    try {
-                        fileProcessingService.processFile( finalEvent, fileStore, intermediateStore );
-                    } catch ( Exception ex ) {
-                        log.error( "Processing failed for {}: {}", path, ex.getMessage());
-                    } finally {
-                        latestEvents.remove( path );
-                    }
-                } );
+                admit( path, event, fileStore, intermediateStore );
             } else {
                 // Not yet stable; schedule next probe without blocking any thread
-                ScheduledFuture< ? > f = stabilizerScheduler.schedule( ( ) -> runProbe( path, fileStore, intermediateStore ), state.probeMs, TimeUnit.MILLISECONDS );
-                scheduledChecks.put( path, f );
+                scheduleProbe( path, state.probeMs, fileStore, intermediateStore );
                 log.trace( "runProbe :: {} not stable yet (count={}/{})", path, state.stableCount, state.probesRequired );
             }
 
-        } catch ( IOException ioex ) {
-            log.error( "runProbe :: IO error for {}: {}", path, ioex.getMessage() );
-            reschedule( path, fileStore, intermediateStore );
         } catch ( Exception ex ) {
             log.error( "runProbe :: Error for {}: {}", path, ex.getMessage() );
             reschedule( path, fileStore, intermediateStore );
         }
     }
 
+    /**
+     * Offers a stable file to the ingest pipeline. When the pipeline is full the file stays where it is and is
+     * offered again later, so the scheduler thread is never blocked.
+     */
+    private void admit ( Path path, WatchEvent< Path > event, String fileStore, String intermediateStore ) {
+        inFlight.add( path );
+        ingestJournal.record( path, fileStore, IngestJournal.State.STABLE );
+        boolean admitted = pipelineFor( fileStore ).offer( ( ) -> process( path, event, fileStore, intermediateStore ) );
+        if ( !admitted ) {
+            log.debug( "admit :: Ingest pipeline full, retrying {} in {} ms", path, admissionRetry.toMillis( ) );
+            scheduledChecks.schedule( path, admissionRetry.toMillis( ), ( ) -> admit( path, event, fileStore, intermediateStore ) );
+        }
+    }
+
+    /**
+     * Runs the process stage for an admitted file. The journal marks the file processed only once the whole
+     * pipeline is done with it, so a restart before that resumes it instead of losing its later stages. Until then
+     * the file stays in flight, so a rescan or reconciliation that finds it still on disk does not ingest it again.
+     */
+    private void process ( Path path, WatchEvent< Path > event, String fileStore, String intermediateStore ) {
+        CompletableFuture< Void > ingested;
+        try {
+            ingested = fileProcessingService.processFile( event, fileStore, intermediateStore );
+        } catch ( Exception ex ) {
+            ingested = CompletableFuture.failedFuture( ex );
+        }
+        ingested.whenComplete( ( ignored, failure ) -> {
+            latestEvents.remove( path );
+            inFlight.remove( path );
+            if ( failure == null ) {
+                ingestJournal.record( path, fileStore, IngestJournal.State.PROCESSED );
+            } else {
+                log.error( "Processing failed for {}: {}", path, failure.getMessage( ) );
+                ingestJournal.record( path, fileStore, IngestJournal.State.FAILED );
+            }
+        } );
+    }
+
     private void reschedule ( Path path, String fileStore, String intermediateStore ) {
         int attempt = retryCounts.merge( path, 1, Integer::sum );
         long baseQuiet = computeDynamicQuietMillis( path );
         // Exponential backoff: 1x, 2x, 4x, 8x (capped)
         long delayMs = baseQuiet * Math.min( 8, 1 << Math.max( 0, attempt - 1 ) );
-        ScheduledFuture< ? > future = stabilizerScheduler.schedule( ( ) -> startStabilityCheck( path, fileStore, intermediateStore ), delayMs, TimeUnit.MILLISECONDS );
-        scheduledChecks.put( path, future );
+        scheduledChecks.schedule( path, delayMs, ( ) -> startStabilityCheck( path, fileStore, intermediateStore ) );
     }
 
     private void cleanup ( Path path ) {
-        ScheduledFuture< ? > prev = scheduledChecks.remove( path );
-        if ( prev != null ) {
-            prev.cancel( false );
-        }
+        scheduledChecks.cancel( path );
+        dueProbes.remove( path );
         probeStates.remove( path );
         retryCounts.remove( path );
     }
 
+    /**
+     * Feeds every file below {@code dir} through {@link #onEvent}, e.g. after an overflow or for a subdirectory that
+     * already had files in it when it was registered.
+     */
     private void rescanDirectory ( Path dir, String fileStore, String intermediateStore ) {
-        try ( DirectoryStream< Path > stream = Files.newDirectoryStream( dir ) ) {
-            for ( Path candidate : stream ) {
+        try ( Stream< Path > tree = Files.walk( dir ) ) {
+            tree.filter( candidate -> Files.isRegularFile( candidate, LinkOption.NOFOLLOW_LINKS ) ).forEach( candidate -> {
+                Path absolute = candidate.toAbsolutePath( );
                 // Create a synthetic event so your service can still use event.context()
-                WatchEvent< Path > synthetic = SyntheticWatchEvent.create( StandardWatchEventKinds.ENTRY_CREATE, candidate.getFileName( ) );
-                onEvent( candidate.toAbsolutePath( ), synthetic, fileStore, intermediateStore );
-            }
-        } catch ( IOException ioex ) {
+                onEvent( absolute, eventFor( absolute, fileStore ), fileStore, intermediateStore );
+            } );
+        } catch ( IOException | UncheckedIOException ioex ) {
             log.error( "rescanDirectory :: Error scanning directory {}, {}", dir, ioex.getMessage() );
         }
     }
 
+    /**
+     * Synthetic ENTRY_CREATE event whose context is {@code path} relative to the watch root, which is how
+     * {@code FileProcessingService} resolves files in nested folders.
+     */
+    private static WatchEvent< Path > eventFor ( Path path, String fileStore ) {
+        return SyntheticWatchEvent.create( StandardWatchEventKinds.ENTRY_CREATE, Paths.get( fileStore ).toAbsolutePath( ).relativize( path ) );
+    }
+
     /**
      * Minimal synthetic WatchEvent implementation used for rescan/overflow.
      */
@@ -319,6 +799,12 @@ public class DirectoryWatcher {
         }
     }
 
+    private record ProbeTarget( String fileStore, String intermediateStore ) {
+    }
+
+    private record Reconciled( Path path, String fileStore, String intermediateStore ) {
+    }
+
     private static final class ProbeState {
         long prevSize = -1L;
         FileTime prevMTime = null;
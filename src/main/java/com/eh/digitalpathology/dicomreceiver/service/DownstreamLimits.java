@@ -0,0 +1,158 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the concurrent calls to each downstream service, independently of how many threads make them. With
+ * virtual threads the executors no longer bound blocking I/O, so these permits are what keeps the DB connector,
+ * the Healthcare API, Cloud Storage and the shared folder from being flooded. Blocking callers wait for a permit in
+ * FIFO order; reactive callers share the same permits but wait in a queue of their own without holding a thread.
+ */
+@Component
+public class DownstreamLimits implements MeterBinder {
+
+    public enum Downstream {
+        DB_CONNECTOR( "db-connector" ),
+        HEALTHCARE_API( "healthcare-api" ),
+        CLOUD_STORAGE( "cloud-storage" ),
+        SHARED_FOLDER( "shared-folder" );
+
+        private final String tag;
+
+        Downstream ( String tag ) {
+            this.tag = tag;
+        }
+
+        public String tag ( ) {
+            return tag;
+        }
+    }
+
+    /**
+     * One call's permit; closing it returns the permit.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close ( );
+    }
+
+    private final Map< Downstream, Semaphore > permits = new EnumMap<>( Downstream.class );
+    private final Map< Downstream, Integer > maxConcurrency = new EnumMap<>( Downstream.class );
+    private final Map< Downstream, Queue< Waiter > > waiters = new EnumMap<>( Downstream.class );
+
+    public DownstreamLimits ( @Value( "${downstream.db-connector.max-concurrency:64}" ) int dbConnector, @Value( "${downstream.healthcare-api.max-concurrency:100}" ) int healthcareApi,
+                              @Value( "${downstream.cloud-storage.max-concurrency:16}" ) int cloudStorage, @Value( "${downstream.shared-folder.max-concurrency:8}" ) int sharedFolder ) {
+        limit( Downstream.DB_CONNECTOR, dbConnector );
+        limit( Downstream.HEALTHCARE_API, healthcareApi );
+        limit( Downstream.CLOUD_STORAGE, cloudStorage );
+        limit( Downstream.SHARED_FOLDER, sharedFolder );
+    }
+
+    /**
+     * Waits for a permit to call {@code downstream}; use in try-with-resources around the call.
+     */
+    public Permit acquire ( Downstream downstream ) {
+        permits.get( downstream ).acquireUninterruptibly( );
+        return granted( downstream );
+    }
+
+    /**
+     * Subscribes to {@code call} once a permit for {@code downstream} is free and returns the permit when the call
+     * completes, fails or is cancelled. No thread is held while waiting for the permit.
+     */
+    public < T > Mono< T > limit ( Downstream downstream, Mono< T > call ) {
+        return Mono.usingWhen( permit( downstream ), permit -> call, permit -> Mono.fromRunnable( permit::close ) );
+    }
+
+    public int available ( Downstream downstream ) {
+        return permits.get( downstream ).availablePermits( );
+    }
+
+    public int maxConcurrency ( Downstream downstream ) {
+        return maxConcurrency.get( downstream );
+    }
+
+    @Override
+    public void bindTo ( MeterRegistry registry ) {
+        for ( Downstream downstream : Downstream.values( ) ) {
+            Gauge.builder( "downstream.in.flight", this, limits -> limits.maxConcurrency( downstream ) - limits.available( downstream ) ).tag( "downstream", downstream.tag( ) ).register( registry );
+            Gauge.builder( "downstream.max.concurrency", this, limits -> limits.maxConcurrency( downstream ) ).tag( "downstream", downstream.tag( ) ).register( registry );
+        }
+    }
+
+    private void limit ( Downstream downstream, int max ) {
+        int bounded = Math.max( 1, max );
+        permits.put( downstream, new Semaphore( bounded, true ) );
+        maxConcurrency.put( downstream, bounded );
+        waiters.put( downstream, new ConcurrentLinkedQueue<>( ) );
+    }
+
+    private Mono< Permit > permit ( Downstream downstream ) {
+        return Mono.< Permit >create( sink -> {
+            Waiter waiter = new Waiter( sink, new AtomicBoolean( ) );
+            sink.onCancel( ( ) -> {
+                if ( waiter.claimed( ).compareAndSet( false, true ) ) {
+                    waiters.get( downstream ).remove( waiter );
+                }
+            } );
+            waiters.get( downstream ).add( waiter );
+            drain( downstream );
+        } ).doOnDiscard( Permit.class, Permit::close ); // a permit granted just as its subscriber cancelled
+    }
+
+    /**
+     * Hands free permits to waiting reactive callers. Runs after every enqueue and release, so a waiter is never
+     * left behind while a permit is free. Blocking callers already parked on the semaphore go first: the timed
+     * {@code tryAcquire} honours its fairness where the untimed one would barge past them.
+     */
+    private void drain ( Downstream downstream ) {
+        Semaphore semaphore = permits.get( downstream );
+        Queue< Waiter > queue = waiters.get( downstream );
+        while ( !queue.isEmpty( ) && tryAcquireFairly( semaphore ) ) {
+            Waiter waiter = queue.poll( );
+            if ( waiter != null && waiter.claimed( ).compareAndSet( false, true ) ) {
+                waiter.sink( ).success( granted( downstream ) );
+            } else {
+                semaphore.release( );
+            }
+        }
+    }
+
+    private static boolean tryAcquireFairly ( Semaphore semaphore ) {
+        try {
+            return semaphore.tryAcquire( 0, TimeUnit.NANOSECONDS );
+        } catch ( InterruptedException e ) {
+            // The next release drains again
+            Thread.currentThread( ).interrupt( );
+            return false;
+        }
+    }
+
+    private Permit granted ( Downstream downstream ) {
+        AtomicBoolean released = new AtomicBoolean( );
+        return ( ) -> {
+            if ( released.compareAndSet( false, true ) ) {
+                permits.get( downstream ).release( );
+                drain( downstream );
+            }
+        };
+    }
+
+    private record Waiter( MonoSink< Permit > sink, AtomicBoolean claimed ) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.eh.digitalpathology.dicomreceiver.service;
 
 import com.eh.digitalpathology.dicomreceiver.config.KafkaTopicConfig;
+import com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption;
 import com.eh.digitalpathology.dicomreceiver.model.DicomRequestDBObject;
 import com.eh.digitalpathology.dicomreceiver.model.ReqGeneratorNotificationMsg;
 import com.eh.digitalpathology.dicomreceiver.model.SlideScanProgressEvent;
@@ -8,12 +9,17 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.WatchEvent;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static com.eh.digitalpathology.dicomreceiver.constants.SlideScanStatusConstant.SLIDE_SCAN_ENRICH_IN_PROGRESS;
 
@@ -23,51 +29,140 @@ public class FileProcessingService {
     private final DatabaseService databaseService;
     private final EventNotificationService eventNotificationService;
     private final KafkaTopicConfig kafkaTopicConfig;
+    private final IngestPipeline ingestPipeline;
+    private final DicomInsertBatcher dicomInsertBatcher;
     public static final String DICOM_RECEIVER = "dicom-receiver";
     private static final Logger log = LoggerFactory.getLogger(FileProcessingService.class.getName());
+    private static final Executor BLOCKING_HANDOFF = task -> Schedulers.boundedElastic().schedule(task);
     ObjectMapper objectMapper = new ObjectMapper();
 
-    public FileProcessingService(DicomExtractorService dicomExtractorService, DatabaseService databaseService, EventNotificationService eventNotificationService, KafkaTopicConfig kafkaTopicConfig) {
+    @Value("${db.connector.insert.batch.enable:false}")
+    private boolean insertBatchEnabled;
+
+    @Value("${db.connector.reactive.enable:false}")
+    private boolean reactiveInsertEnabled;
+
+    public FileProcessingService(DicomExtractorService dicomExtractorService, DatabaseService databaseService, EventNotificationService eventNotificationService, KafkaTopicConfig kafkaTopicConfig, IngestPipeline ingestPipeline, DicomInsertBatcher dicomInsertBatcher) {
         this.dicomExtractorService = dicomExtractorService;
         this.databaseService = databaseService;
         this.eventNotificationService = eventNotificationService;
         this.kafkaTopicConfig = kafkaTopicConfig;
+        this.ingestPipeline = ingestPipeline;
+        this.dicomInsertBatcher = dicomInsertBatcher;
     }
 
-    public void processFile(WatchEvent<?> event, String fileStore, String intermediateStore) {
+    /**
+     * Process stage of the ingest pipeline: parses, routes and uploads the file, then hands the
+     * resulting record to the persist stage.
+     *
+     * @return completes once the file is fully ingested: its record stored and announced on Kafka, or its STOW-RS
+     * batch sent; fails when any of that failed. Files that need no ingest complete right away.
+     */
+    public CompletableFuture<Void> processFile(WatchEvent<?> event, String fileStore, String intermediateStore) {
         log.info("processFile :: ===============================>Process File thread Started:{}", Thread.currentThread().getName());
         Path dir = Paths.get(fileStore);
         Path filePath = dir.resolve((Path) event.context());
         log.info("processFile :: ===============================>\n======>File received by dicom-file-watcher======>\n {}", filePath);
-        if (Files.exists(filePath)) {
-            log.info("processFile :: File exists & ready to process: {}", filePath.getFileName());
-            log.info("processFile :: *********************\n*************\nProcessing file at: {}", filePath);
+        if (!Files.exists(filePath)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        log.info("processFile :: File exists & ready to process: {}", filePath.getFileName());
+        log.info("processFile :: *********************\n*************\nProcessing file at: {}", filePath);
+
+        if (filePath.getFileName().toString().endsWith(".svs")) {
+            log.info("processFile :: SVS file detected, skipping DICOM processing for file: {}", filePath);
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
 
-            if (filePath.getFileName().toString().endsWith(".svs")) {
-                log.info("processFile :: SVS file detected, skipping DICOM processing for file: {}", filePath);
-                return;
+            DicomExtractorService.Extraction extraction = dicomExtractorService.extractFile(intermediateStore, filePath);
+            DicomRequestDBObject dicomRequestDBObject = extraction.record();
+            if (dicomRequestDBObject == null) {
+                log.error("processFile :: Dicom extracted for qa slide or dicomdir or failed for file: {}", filePath);
+                return extraction.uploaded();
+            }
+            CompletableFuture<Void> ingested = new CompletableFuture<>();
+            if (reactiveInsertEnabled && !insertBatchEnabled) {
+                ingestPipeline.persistAsync(() -> persistReactive(dicomRequestDBObject, ingested));
+            } else {
+                ingestPipeline.persist(() -> persist(dicomRequestDBObject, ingested));
             }
-            try {
+            return ingested;
+        } catch (Exception e) {
+            log.error("processFile :: Exception occurred while processing file: {}", e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-                DicomRequestDBObject dicomRequestDBObject = dicomExtractorService.extract(intermediateStore, filePath);
-                if (dicomRequestDBObject == null) {
-                    log.error("processFile :: Dicom extracted for qa slide or dicomdir or failed for file: {}", filePath);
+    /**
+     * Persist stage of the ingest pipeline: stores the record and, once stored, hands it to the notify stage.
+     * With batched inserts the record joins the next bulk insert and is handed on when that batch returns.
+     * {@code ingested} completes once the notify stage is done with the record, or fails with the insert.
+     */
+    void persist(DicomRequestDBObject dicomRequestDBObject, CompletableFuture<Void> ingested) {
+        if (insertBatchEnabled) {
+            // A batch sent by a linger flush completes on one of the few batch scheduler threads, which must not wait for
+            // room in the notify stage; hand the result on from a worker thread, as the reactive path does
+            dicomInsertBatcher.submit(dicomRequestDBObject, DICOM_RECEIVER).whenCompleteAsync((status, error) -> {
+                if (error != null) {
+                    log.error("persist :: Batched insert failed for SOPInstanceUID {}: {}", dicomRequestDBObject.getSopInstanceUid(), error.getMessage());
+                    ingested.completeExceptionally(error);
                     return;
                 }
-                String status = databaseService.insertDicomData(dicomRequestDBObject, DICOM_RECEIVER);
-                log.info("processFile :: response from insertDicomData(): {}", status);
-                if ("success".equalsIgnoreCase(status)) {
-                    log.info("processFile :: Data insertion successful !!!\n sending kafka notification..");
-                    notifyKafka(dicomRequestDBObject);
-                    SlideScanProgressEvent slideScanProgressEvent = new SlideScanProgressEvent(dicomRequestDBObject.getBarcode(), dicomRequestDBObject.getDeviceSerialNumber(), SLIDE_SCAN_ENRICH_IN_PROGRESS);
-                    notifyKafka(kafkaTopicConfig.getScanProgress(), slideScanProgressEvent.slideBarcode(), slideScanProgressEvent);
-                } else {
-                    log.info("processFile :: KAFKA NOT NOTIFIED!!!.. ");
+                try {
+                    stored(dicomRequestDBObject, status, ingested);
+                } catch (Exception e) {
+                    log.error("persist :: Unable to hand SOPInstanceUID {} to the notify stage: {}", dicomRequestDBObject.getSopInstanceUid(), e.getMessage());
+                    ingested.completeExceptionally(e);
                 }
-            } catch (Exception e) {
-                log.error("processFile :: Exception occurred while processing file: {}", e.getMessage());
-            }
+            }, BLOCKING_HANDOFF);
+            return;
         }
+        try {
+            stored(dicomRequestDBObject, databaseService.insertDicomData(dicomRequestDBObject, DICOM_RECEIVER), ingested);
+        } catch (RuntimeException e) {
+            ingested.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking persist stage: the insert holds no thread while the DB connector works on it. The reply is handed
+     * on from a worker thread, since publishing may wait for room in the notify stage.
+     */
+    Mono<String> persistReactive(DicomRequestDBObject dicomRequestDBObject, CompletableFuture<Void> ingested) {
+        return databaseService.insertDicomDataReactive(dicomRequestDBObject, DICOM_RECEIVER)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(status -> stored(dicomRequestDBObject, status, ingested))
+                .doOnError(ingested::completeExceptionally);
+    }
+
+    private void stored(DicomRequestDBObject dicomRequestDBObject, String status, CompletableFuture<Void> ingested) {
+        log.info("persist :: response from insertDicomData(): {}", status);
+        if ("success".equalsIgnoreCase(status)) {
+            log.info("persist :: Data insertion successful !!!\n sending kafka notification..");
+            ingestPipeline.publish(() -> {
+                try {
+                    notifyStored(dicomRequestDBObject);
+                    ingested.complete(null);
+                } catch (RuntimeException e) {
+                    ingested.completeExceptionally(e);
+                    throw e;
+                }
+            });
+        } else {
+            log.info("persist :: KAFKA NOT NOTIFIED!!!.. ");
+            ingested.completeExceptionally(new DbConnectorExeption("DB error", "Insert returned status " + status));
+        }
+    }
+
+    /**
+     * Notify stage of the ingest pipeline.
+     */
+    void notifyStored(DicomRequestDBObject dicomRequestDBObject) {
+        notifyKafka(dicomRequestDBObject);
+        SlideScanProgressEvent slideScanProgressEvent = new SlideScanProgressEvent(dicomRequestDBObject.getBarcode(), dicomRequestDBObject.getDeviceSerialNumber(), SLIDE_SCAN_ENRICH_IN_PROGRESS);
+        notifyKafka(kafkaTopicConfig.getScanProgress(), slideScanProgressEvent.slideBarcode(), slideScanProgressEvent);
     }
 
     public void notifyKafka(DicomRequestDBObject requestDBObject) {
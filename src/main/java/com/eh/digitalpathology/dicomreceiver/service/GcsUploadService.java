@@ -0,0 +1,169 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.exceptions.DicomAttributesException;
+import com.eh.digitalpathology.dicomreceiver.util.UploadBufferPool;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Uploads files to GCS. Files up to the composite threshold go through a single resumable
+ * {@link WriteChannel}; larger ones are split into ranged parts that are uploaded in parallel with
+ * positional {@link FileChannel} reads and then composed into the final object. Each upload holds one pooled
+ * {@link UploadBufferPool} buffer plus the channel's own chunk buffer of {@code gcp-config.upload.chunk-size-kb}, which
+ * is kept small so that the pool's buffers remain the bulk of the upload memory.
+ */
+@Service
+public class GcsUploadService {
+    private static final Logger log = LoggerFactory.getLogger( GcsUploadService.class.getName( ) );
+
+    // GCS accepts at most 32 source objects per compose request
+    static final int MAX_COMPOSE_SOURCES = 32;
+    private static final long MB = 1024L * 1024L;
+    private static final int KB = 1024;
+
+    private final Storage storage;
+    private final UploadBufferPool uploadBufferPool;
+    private final ExecutorService uploadExecutor;
+    private final DownstreamLimits downstreamLimits;
+
+    @Value( "${gcp-config.upload.composite-threshold-mb:256}" )
+    private long compositeThresholdMb;
+
+    @Value( "${gcp-config.upload.part-size-mb:128}" )
+    private long partSizeMb;
+
+    // Chunk buffered by each WriteChannel and sent per request; GCS rounds it up to a multiple of 256 KB. Zero keeps
+    // the client library default, which is as large as a pooled buffer
+    @Value( "${gcp-config.upload.chunk-size-kb:2048}" )
+    private int chunkSizeKb;
+
+    public GcsUploadService ( Storage storage, UploadBufferPool uploadBufferPool, @Qualifier( "gcsUploadExecutor" ) ExecutorService uploadExecutor,
+                              DownstreamLimits downstreamLimits ) {
+        this.storage = storage;
+        this.uploadBufferPool = uploadBufferPool;
+        this.uploadExecutor = uploadExecutor;
+        this.downstreamLimits = downstreamLimits;
+    }
+
+    public void upload ( String bucketName, String objectName, File file ) throws DicomAttributesException {
+        BlobInfo blobInfo = BlobInfo.newBuilder( bucketName, objectName ).setContentType( "application/dicom" ).build( );
+        long size = file.length( );
+        try ( FileChannel input = FileChannel.open( file.toPath( ), StandardOpenOption.READ ) ) {
+            if ( size > compositeThresholdMb * MB ) {
+                uploadComposite( blobInfo, input, size );
+            } else {
+                uploadRange( blobInfo, input, 0, size );
+            }
+            log.info( "upload :: File uploaded successfully to gs://{}/{} ({} bytes)", bucketName, objectName, size );
+        } catch ( IOException e ) {
+            throw new DicomAttributesException( "UPLOAD_EXCEPTION", e.getMessage( ) );
+        }
+    }
+
+    private void uploadComposite ( BlobInfo target, FileChannel input, long size ) throws IOException {
+        long partSize = partSize( size );
+        int partCount = ( int ) ( ( size + partSize - 1 ) / partSize );
+        log.info( "uploadComposite :: Uploading {} in {} parts of {} bytes", target.getName( ), partCount, partSize );
+
+        List< BlobId > parts = new ArrayList<>( partCount );
+        List< CompletableFuture< Void > > futures = new ArrayList<>( partCount );
+        for ( int i = 0; i < partCount; i++ ) {
+            BlobInfo part = BlobInfo.newBuilder( target.getBucket( ), String.format( "%s.part-%02d", target.getName( ), i ) ).build( );
+            long position = i * partSize;
+            long length = Math.min( partSize, size - position );
+            parts.add( part.getBlobId( ) );
+            futures.add( CompletableFuture.runAsync( ( ) -> {
+                try {
+                    uploadRange( part, input, position, length );
+                } catch ( IOException e ) {
+                    throw new CompletionException( e );
+                }
+            }, uploadExecutor ) );
+        }
+
+        try {
+            // allOf completes only once every part has finished, so no part is still being written when the parts are deleted
+            CompletableFuture.allOf( futures.toArray( new CompletableFuture[ 0 ] ) ).join( );
+            Storage.ComposeRequest.Builder compose = Storage.ComposeRequest.newBuilder( ).setTarget( target );
+            parts.forEach( part -> compose.addSource( part.getName( ) ) );
+            storage.compose( compose.build( ) );
+        } catch ( CompletionException e ) {
+            Throwable cause = e.getCause( ) != null ? e.getCause( ) : e;
+            throw cause instanceof IOException ioException ? ioException : new IOException( cause.getMessage( ), cause );
+        } catch ( RuntimeException e ) {
+            throw new IOException( e.getMessage( ), e );
+        } finally {
+            deleteParts( parts );
+        }
+    }
+
+    /** Part size is raised for very large files so the part count stays within a single compose request. */
+    long partSize ( long size ) {
+        long minimum = ( size + MAX_COMPOSE_SOURCES - 1 ) / MAX_COMPOSE_SOURCES;
+        return Math.max( partSizeMb * MB, minimum );
+    }
+
+    private void uploadRange ( BlobInfo blobInfo, FileChannel input, long position, long length ) throws IOException {
+        ByteBuffer buffer;
+        try {
+            // Blocks while every pooled buffer is in use, which caps the memory held by concurrent uploads
+            buffer = uploadBufferPool.acquire( );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread( ).interrupt( );
+            throw new IOException( "Interrupted while waiting for an upload buffer", e );
+        }
+
+        try ( DownstreamLimits.Permit permit = downstreamLimits.acquire( DownstreamLimits.Downstream.CLOUD_STORAGE );
+              WriteChannel writer = storage.writer( blobInfo ) ) {
+            if ( chunkSizeKb > 0 ) {
+                writer.setChunkSize( chunkSizeKb * KB );
+            }
+            long offset = position;
+            long end = position + length;
+            while ( offset < end ) {
+                buffer.limit( ( int ) Math.min( buffer.capacity( ), end - offset ) );
+                int read = input.read( buffer, offset );
+                if ( read < 0 ) {
+                    throw new IOException( "Unexpected end of file at offset " + offset );
+                }
+                offset += read;
+                buffer.flip( );
+                while ( buffer.hasRemaining( ) ) {
+                    writer.write( buffer );
+                }
+                buffer.clear( );
+            }
+        } finally {
+            uploadBufferPool.release( buffer );
+        }
+    }
+
+    private void deleteParts ( List< BlobId > parts ) {
+        if ( parts.isEmpty( ) ) {
+            return;
+        }
+        try {
+            storage.delete( parts );
+        } catch ( RuntimeException e ) {
+            log.warn( "deleteParts :: Unable to delete composite parts for {}: {}", parts.get( 0 ).getName( ), e.getMessage( ) );
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only, memory-mapped journal of the ingest state of every file the watchers have seen.
+ * <p>
+ * Each transition is one record {@code [length][state][root length][root][path]}; the length is written last, so a
+ * record torn by a crash reads as the zero-filled end of the journal and is ignored on replay. Records land in the
+ * page cache as soon as they are written and therefore survive a process or pod restart; an OS crash may lose the
+ * most recent ones. When the mapped region is full the journal is compacted to the files still pending.
+ * <p>
+ * The journal belongs to a single receiver instance: replicas must not share {@code ingest.journal.directory}, since
+ * each would replay and compact the others' records, and memory-mapped writes are not coherent across NFS clients.
+ * <p>
+ * Disabled when {@code ingest.journal.directory} is blank; every call is then a no-op.
+ */
+@Component
+public class IngestJournal {
+    private static final Logger log = LoggerFactory.getLogger( IngestJournal.class.getName( ) );
+    private static final String FILE_NAME = "ingest.journal";
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+
+    public enum State {
+        /** Seen by a watcher, waiting to become stable */
+        DETECTED,
+        /** Complete and admitted to the ingest pipeline */
+        STABLE,
+        /** Fully ingested: its record stored and announced, or its upload sent */
+        PROCESSED,
+        FAILED,
+        /** Disappeared before it was processed */
+        DISCARDED;
+
+        boolean isPending ( ) {
+            return this == DETECTED || this == STABLE;
+        }
+    }
+
+    public record Entry( State state, String fileStore ) {
+    }
+
+    private final String directory;
+    private final long capacityBytes;
+    // Pending files by path, as the journal on disk describes them
+    private final Map< Path, Entry > pending = new LinkedHashMap<>( );
+    private Path journalFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    public IngestJournal ( @Value( "${ingest.journal.directory:}" ) String directory, @Value( "${ingest.journal.size-mb:64}" ) int sizeMb ) {
+        this.directory = directory;
+        this.capacityBytes = Math.max( 1L, sizeMb ) * 1024L * 1024L;
+    }
+
+    /**
+     * Opens the journal and replays it. Failing to open it disables journaling rather than the receiver.
+     */
+    @PostConstruct
+    public synchronized void open ( ) {
+        if ( directory == null || directory.isBlank( ) ) {
+            log.info( "open :: Ingest journal disabled" );
+            return;
+        }
+        try {
+            Path dir = Paths.get( directory ).toAbsolutePath( );
+            Files.createDirectories( dir );
+            journalFile = dir.resolve( FILE_NAME );
+            if ( Files.exists( journalFile ) ) {
+                map( journalFile, Math.max( capacityBytes, Files.size( journalFile ) ) );
+                replay( );
+            }
+            // Start from a compact journal holding only what is still pending
+            compact( );
+            log.info( "open :: Ingest journal {} replayed, {} files pending", journalFile, pending.size( ) );
+        } catch ( IOException e ) {
+            log.error( "open :: Unable to open ingest journal in {}, journaling disabled :: {}", directory, e.getMessage( ) );
+            closeChannel( );
+            buffer = null;
+            pending.clear( );
+        }
+    }
+
+    public synchronized boolean isEnabled ( ) {
+        return buffer != null;
+    }
+
+    /**
+     * Records a transition of {@code path}; repeating the file's current state writes nothing.
+     */
+    public synchronized void record ( Path path, String fileStore, State state ) {
+        if ( buffer == null ) {
+            return;
+        }
+        Entry current = pending.get( path );
+        if ( current != null && current.state( ) == state || current == null && !state.isPending( ) ) {
+            return;
+        }
+        if ( state.isPending( ) ) {
+            pending.put( path, new Entry( state, fileStore ) );
+        } else {
+            pending.remove( path );
+        }
+        try {
+            byte[] root = fileStore.getBytes( StandardCharsets.UTF_8 );
+            byte[] name = path.toString( ).getBytes( StandardCharsets.UTF_8 );
+            int length = HEADER_SIZE + root.length + name.length;
+            if ( buffer.remaining( ) < length ) {
+                // The compacted journal already reflects this transition
+                compact( );
+                return;
+            }
+            append( state, root, name );
+        } catch ( IOException e ) {
+            log.error( "record :: Unable to journal {} as {} :: {}", path, state, e.getMessage( ) );
+        }
+    }
+
+    /**
+     * Files of {@code fileStore} that were detected or admitted but not finished when the journal was last written.
+     */
+    public synchronized Map< Path, Entry > pending ( String fileStore ) {
+        Map< Path, Entry > result = new LinkedHashMap<>( );
+        pending.forEach( ( path, entry ) -> {
+            if ( entry.fileStore( ).equals( fileStore ) ) {
+                result.put( path, entry );
+            }
+        } );
+        return result;
+    }
+
+    @PreDestroy
+    public synchronized void close ( ) {
+        if ( buffer != null ) {
+            buffer.force( );
+            buffer = null;
+        }
+        closeChannel( );
+    }
+
+    private void replay ( ) {
+        buffer.position( 0 );
+        while ( buffer.remaining( ) >= HEADER_SIZE ) {
+            int start = buffer.position( );
+            int length = buffer.getInt( );
+            if ( length < HEADER_SIZE || length > buffer.limit( ) - start ) {
+                // Zero-filled tail, or a record torn by a crash
+                buffer.position( start );
+                break;
+            }
+            int ordinal = buffer.get( );
+            int rootLength = buffer.getInt( );
+            if ( ordinal < 0 || ordinal >= State.values( ).length || rootLength < 0 || rootLength > length - HEADER_SIZE ) {
+                log.warn( "replay :: Corrupt record at offset {}, ignoring the rest of the journal", start );
+                buffer.position( start );
+                break;
+            }
+            byte[] root = new byte[ rootLength ];
+            buffer.get( root );
+            byte[] name = new byte[ length - HEADER_SIZE - rootLength ];
+            buffer.get( name );
+            State state = State.values( )[ ordinal ];
+            Path path = Paths.get( new String( name, StandardCharsets.UTF_8 ) );
+            if ( state.isPending( ) ) {
+                pending.put( path, new Entry( state, new String( root, StandardCharsets.UTF_8 ) ) );
+            } else {
+                pending.remove( path );
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record per pending file, growing it if those alone do not leave room.
+     */
+    private void compact ( ) throws IOException {
+        long needed = 0;
+        for ( Map.Entry< Path, Entry > entry : pending.entrySet( ) ) {
+            needed += HEADER_SIZE + entry.getValue( ).fileStore( ).getBytes( StandardCharsets.UTF_8 ).length + entry.getKey( ).toString( ).getBytes( StandardCharsets.UTF_8 ).length;
+        }
+        long size = capacityBytes;
+        while ( size < needed * 2 ) {
+            size *= 2;
+        }
+        Path next = journalFile.resolveSibling( FILE_NAME + ".next" );
+        Files.deleteIfExists( next );
+        closeChannel( );
+        map( next, size );
+        for ( Map.Entry< Path, Entry > entry : pending.entrySet( ) ) {
+            append( entry.getValue( ).state( ), entry.getValue( ).fileStore( ).getBytes( StandardCharsets.UTF_8 ), entry.getKey( ).toString( ).getBytes( StandardCharsets.UTF_8 ) );
+        }
+        buffer.force( );
+        Files.move( next, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    private void append ( State state, byte[] root, byte[] name ) {
+        int start = buffer.position( );
+        buffer.position( start + Integer.BYTES );
+        buffer.put( (byte) state.ordinal( ) );
+        buffer.putInt( root.length );
+        buffer.put( root );
+        buffer.put( name );
+        int end = buffer.position( );
+        // Length last: until it is written the record reads as the end of the journal
+        buffer.putInt( start, end - start );
+    }
+
+    private void map ( Path file, long size ) throws IOException {
+        channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+        buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, size );
+    }
+
+    private void closeChannel ( ) {
+        if ( channel != null ) {
+            try {
+                channel.close( );
+            } catch ( IOException e ) {
+                log.warn( "closeChannel :: {}", e.getMessage( ) );
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Timers and byte counters of the ingest path, exported through the actuator's Prometheus endpoint.
+ * <p>
+ * Timers publish p50/p95/p99 plus a percentile histogram, so latency can also be aggregated across pods.
+ * Series that can be attributed to a scanner registered with the DB connector carry its device serial number as the
+ * {@code scanner} tag; everything else is tagged {@code unknown}, which keeps the tag bounded by the scanner registry.
+ */
+@Component
+public class IngestMetrics {
+    public static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry registry;
+
+    public IngestMetrics ( MeterRegistry registry ) {
+        this.registry = registry;
+    }
+
+    public MeterRegistry registry ( ) {
+        return registry;
+    }
+
+    public Timer.Sample start ( ) {
+        return Timer.start( registry );
+    }
+
+    public void stop ( Timer.Sample sample, String timer, Tag... tags ) {
+        sample.stop( Timer.builder( timer ).tags( Tags.of( tags ) ).publishPercentiles( 0.5, 0.95, 0.99 ).publishPercentileHistogram( ).register( registry ) );
+    }
+
+    public void countBytes ( String counter, long bytes, Tag... tags ) {
+        if ( bytes > 0 ) {
+            Counter.builder( counter ).baseUnit( "bytes" ).tags( Tags.of( tags ) ).register( registry ).increment( bytes );
+        }
+    }
+
+    /**
+     * Queue depth, active threads and completed tasks of {@code executor}, tagged {@code name}.
+     */
+    public void monitor ( ExecutorService executor, String name ) {
+        new ExecutorServiceMetrics( executor, name, Tags.empty( ) ).bindTo( registry );
+    }
+
+    public static Tag scanner ( String deviceSerialNumber ) {
+        return Tag.of( "scanner", deviceSerialNumber == null || deviceSerialNumber.isBlank( ) ? UNKNOWN : deviceSerialNumber );
+    }
+
+    public static Tag route ( String route ) {
+        return Tag.of( "route", route );
+    }
+
+    public static Tag outcome ( boolean success ) {
+        return Tag.of( "outcome", success ? "success" : "failure" );
+    }
+}
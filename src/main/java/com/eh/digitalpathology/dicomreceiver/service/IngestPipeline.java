@@ -0,0 +1,181 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Staged ingest pipeline for received files: detect → process (parse, route and upload) → persist → notify.
+ * <p>
+ * Every stage runs on its own bounded executor (see {@code ExecutorConfig}), whose caller blocks while the
+ * stage queue is full. On top of that at most {@code ingest.pipeline.max-in-flight} files are admitted from
+ * detection until they have left the process stage, so a slow database or Kafka holds back processing, which
+ * in turn holds back detection, instead of queuing a scanner burst in memory. Non-blocking persist calls hold no
+ * persist thread while they wait for the database; {@code ingest.pipeline.persist.max-in-flight-calls} bounds how
+ * many of them are outstanding, so they still push back on the process stage.
+ */
+@Component
+public class IngestPipeline implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger( IngestPipeline.class.getName( ) );
+    private static final int DEFAULT_MAX_PERSIST_CALLS = 256;
+
+    private final ExecutorService processStage;
+    private final ExecutorService persistStage;
+    private final ExecutorService notifyStage;
+    private final Semaphore admissions;
+    private final int maxInFlight;
+    private final Semaphore persistCalls;
+
+    public IngestPipeline ( ExecutorService processStage, ExecutorService persistStage, ExecutorService notifyStage, int maxInFlight ) {
+        this( processStage, persistStage, notifyStage, maxInFlight, DEFAULT_MAX_PERSIST_CALLS );
+    }
+
+    @Autowired
+    public IngestPipeline ( @Qualifier( "ingestProcessExecutor" ) ExecutorService processStage, @Qualifier( "ingestPersistExecutor" ) ExecutorService persistStage, @Qualifier( "ingestNotifyExecutor" ) ExecutorService notifyStage, @Value( "${ingest.pipeline.max-in-flight:64}" ) int maxInFlight,
+                            @Value( "${ingest.pipeline.persist.max-in-flight-calls:" + DEFAULT_MAX_PERSIST_CALLS + "}" ) int maxPersistCalls ) {
+        this( processStage, persistStage, notifyStage, maxInFlight, new Semaphore( Math.max( 1, maxPersistCalls ) ) );
+    }
+
+    private IngestPipeline ( ExecutorService processStage, ExecutorService persistStage, ExecutorService notifyStage, int maxInFlight, Semaphore persistCalls ) {
+        this.processStage = processStage;
+        this.persistStage = persistStage;
+        this.notifyStage = notifyStage;
+        this.admissions = new Semaphore( maxInFlight );
+        this.maxInFlight = maxInFlight;
+        this.persistCalls = persistCalls;
+    }
+
+    /**
+     * Admits a detected file to the process stage if the pipeline has room for it.
+     *
+     * @return {@code false} when the pipeline is full; the caller keeps the file and offers it again later
+     */
+    public boolean offer ( Runnable processTask ) {
+        if ( !admissions.tryAcquire( ) ) {
+            return false;
+        }
+        startProcessing( processTask );
+        return true;
+    }
+
+    /**
+     * Admits a file to the process stage, waiting for room in the pipeline.
+     */
+    public void submit ( Runnable processTask ) throws InterruptedException {
+        admissions.acquire( );
+        startProcessing( processTask );
+    }
+
+    /**
+     * Blocks until at least one more file could be admitted. Used by detection to stop taking new events while the pipeline is full.
+     */
+    public void awaitCapacity ( ) throws InterruptedException {
+        admissions.acquire( );
+        admissions.release( );
+    }
+
+    /**
+     * Hands work from the process stage to the persist stage, blocking while the persist queue is full.
+     */
+    public void persist ( Runnable persistTask ) {
+        persistStage.execute( guarded( "persist", persistTask ) );
+    }
+
+    /**
+     * Hands a non-blocking persist call to the persist stage. The stage thread only subscribes to the call, so a few
+     * threads keep many database calls in flight; once the persist call limit is reached the stage waits for one of
+     * them to finish, and its queue fills up as it would with blocking calls.
+     */
+    public void persistAsync ( Supplier< ? extends Mono< ? > > persistCall ) {
+        persist( ( ) -> {
+            persistCalls.acquireUninterruptibly( );
+            Mono< ? > call;
+            try {
+                call = persistCall.get( );
+            } catch ( RuntimeException e ) {
+                persistCalls.release( );
+                throw e;
+            }
+            call.doFinally( signal -> persistCalls.release( ) )
+                    .subscribe( null, error -> log.error( "persist :: Ingest stage failed: {}", error.getMessage( ) ) );
+        } );
+    }
+
+    /**
+     * Hands work from the persist stage to the notify stage, blocking while the notify queue is full.
+     */
+    public void publish ( Runnable notifyTask ) {
+        notifyStage.execute( guarded( "notify", notifyTask ) );
+    }
+
+    /**
+     * Pipeline with its own process stage and admission limit that hands on to this pipeline's persist and notify
+     * stages, so a watch root gets dedicated parse/upload capacity while database and Kafka load stays shared.
+     */
+    public IngestPipeline withProcessStage ( ExecutorService processStage, int maxInFlight ) {
+        return new IngestPipeline( processStage, persistStage, notifyStage, maxInFlight, persistCalls );
+    }
+
+    public int availableAdmissions ( ) {
+        return admissions.availablePermits( );
+    }
+
+    /**
+     * Files admitted and not yet handed on by the process stage.
+     */
+    public int inFlight ( ) {
+        return maxInFlight - admissions.availablePermits( );
+    }
+
+    @Override
+    public void bindTo ( MeterRegistry registry ) {
+        bindTo( registry, "shared" );
+    }
+
+    /**
+     * In-flight gauge of this pipeline, tagged with the watch root it serves.
+     */
+    public void bindTo ( MeterRegistry registry, String root ) {
+        Gauge.builder( "ingest.pipeline.in.flight", this, IngestPipeline::inFlight ).tag( "root", root ).description( "Files admitted and not yet handed on by the process stage" ).register( registry );
+        Gauge.builder( "ingest.pipeline.max.in.flight", this, pipeline -> pipeline.maxInFlight ).tag( "root", root ).register( registry );
+    }
+
+    private void startProcessing ( Runnable processTask ) {
+        Runnable task = guarded( "process", processTask );
+        try {
+            processStage.execute( ( ) -> {
+                try {
+                    task.run( );
+                } finally {
+                    // Released only once downstream stages accepted the file's work, so their backpressure reaches detection
+                    admissions.release( );
+                }
+            } );
+        } catch ( RejectedExecutionException e ) {
+            admissions.release( );
+            throw e;
+        }
+    }
+
+    private static Runnable guarded ( String stage, Runnable task ) {
+        return ( ) -> {
+            try {
+                task.run( );
+            } catch ( Exception ex ) {
+                log.error( "{} :: Ingest stage failed: {}", stage, ex.getMessage( ) );
+            }
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Caches whether a barcode belongs to a QA slide. Every tile of a slide asks for the same barcode, so lookups are
+ * single-flight: the first caller queries the DB connector on its own thread and concurrent callers for that barcode
+ * wait for its answer instead of sending their own request. Answers are kept for a short TTL; a failed lookup is
+ * dropped, so the next caller retries it. When {@code warm-uri} is set, the QA barcodes are preloaded from that bulk
+ * endpoint on startup and after every config bus refresh; preloaded barcodes are kept for the longer warm TTL, after
+ * which they are looked up one by one again.
+ */
+@Service
+public class QaBarcodeCache implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger( QaBarcodeCache.class.getName( ) );
+
+    private final DatabaseService databaseService;
+    private final boolean enabled;
+    private final String warmUri;
+    private final AsyncCache< String, Answer > barcodes;
+
+    public QaBarcodeCache ( DatabaseService databaseService,
+                            @Value( "${db.barcode-cache.enable:false}" ) boolean enabled,
+                            @Value( "${db.barcode-cache.maximum-size:10000}" ) long maximumSize,
+                            @Value( "${db.barcode-cache.ttl-seconds:30}" ) long ttlSeconds,
+                            @Value( "${db.barcode-cache.warm-ttl-seconds:3600}" ) long warmTtlSeconds,
+                            @Value( "${db.barcode-cache.warm-uri:}" ) String warmUri ) {
+        this( databaseService, enabled, maximumSize, Duration.ofSeconds( ttlSeconds ), Duration.ofSeconds( warmTtlSeconds ), warmUri, Ticker.systemTicker( ) );
+    }
+
+    QaBarcodeCache ( DatabaseService databaseService, boolean enabled, long maximumSize, Duration ttl, Duration warmTtl, String warmUri, Ticker ticker ) {
+        this.databaseService = databaseService;
+        this.enabled = enabled;
+        this.warmUri = warmUri;
+        this.barcodes = Caffeine.newBuilder( )
+                .maximumSize( maximumSize )
+                .expireAfter( new AnswerExpiry( ttl.toNanos( ), warmTtl.toNanos( ) ) )
+                .ticker( ticker )
+                .recordStats( )
+                .buildAsync( );
+    }
+
+    /**
+     * True when {@code barcode} belongs to a QA slide.
+     *
+     * @throws com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption when the lookup fails
+     */
+    public boolean exists ( String barcode ) {
+        if ( !enabled || barcode == null ) {
+            return Boolean.TRUE.equals( databaseService.isBarcodeExists( barcode ) );
+        }
+        CompletableFuture< Answer > lookup = new CompletableFuture<>( );
+        // The mapping function only publishes the future, so no cache lock is held while the DB connector is queried
+        CompletableFuture< Answer > answer = barcodes.get( barcode, ( key, executor ) -> lookup );
+        if ( answer == lookup ) {
+            try {
+                lookup.complete( new Answer( Boolean.TRUE.equals( databaseService.isBarcodeExists( barcode ) ), false ) );
+            } catch ( RuntimeException e ) {
+                lookup.completeExceptionally( e );
+            }
+        }
+        try {
+            return answer.join( ).qaSlide( );
+        } catch ( CompletionException e ) {
+            throw e.getCause( ) instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    @EventListener( ApplicationReadyEvent.class )
+    public void warm ( ) {
+        if ( !enabled || StringUtils.isBlank( warmUri ) ) {
+            return;
+        }
+        try {
+            List< String > qaBarcodes = databaseService.fetchQaSlideBarcodes( warmUri );
+            qaBarcodes.forEach( barcode -> barcodes.put( barcode, CompletableFuture.completedFuture( new Answer( true, true ) ) ) );
+            log.info( "warm :: Preloaded {} QA slide barcodes", qaBarcodes.size( ) );
+        } catch ( RuntimeException e ) {
+            log.warn( "warm :: Unable to preload QA slide barcodes from {}: {}", warmUri, e.getMessage( ) );
+        }
+    }
+
+    @EventListener( RefreshScopeRefreshedEvent.class )
+    public void refresh ( ) {
+        barcodes.synchronous( ).invalidateAll( );
+        warm( );
+    }
+
+    @Override
+    public void bindTo ( MeterRegistry registry ) {
+        CaffeineCacheMetrics.monitor( registry, barcodes, "qaBarcode" );
+    }
+
+    private record Answer( boolean qaSlide, boolean warmed ) {
+    }
+
+    /**
+     * Looked-up answers live for the TTL, preloaded ones for the warm TTL; reads do not extend either.
+     */
+    private record AnswerExpiry( long ttlNanos, long warmTtlNanos ) implements Expiry< String, Answer > {
+
+        @Override
+        public long expireAfterCreate ( String barcode, Answer answer, long currentTime ) {
+            return answer.warmed( ) ? warmTtlNanos : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate ( String barcode, Answer answer, long currentTime, long currentDuration ) {
+            return expireAfterCreate( barcode, answer, currentTime );
+        }
+
+        @Override
+        public long expireAfterRead ( String barcode, Answer answer, long currentTime, long currentDuration ) {
+            return currentDuration;
+        }
+    }
+}
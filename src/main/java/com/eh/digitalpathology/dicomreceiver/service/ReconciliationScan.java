@@ -0,0 +1,107 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lists every regular file below a root in parallel for the startup reconciliation. Each directory is read once
+ * with a {@link DirectoryStream}; its entries are stat-ed in chunks and its subdirectories listed concurrently on
+ * the given pool. The result is ordered by modification time, oldest first, as those are the most likely to be complete.
+ */
+final class ReconciliationScan {
+    private static final Logger log = LoggerFactory.getLogger( ReconciliationScan.class.getName( ) );
+    static final int CHUNK_SIZE = 256;
+
+    record Candidate( Path path, long modifiedMillis ) {
+    }
+
+    private ReconciliationScan ( ) {
+    }
+
+    static List< Path > scan ( Path root, ForkJoinPool pool ) {
+        List< Candidate > candidates = pool.invoke( new ListDirectory( root ) );
+        candidates.sort( Comparator.comparingLong( Candidate::modifiedMillis ) );
+        List< Path > files = new ArrayList<>( candidates.size( ) );
+        for ( Candidate candidate : candidates ) {
+            files.add( candidate.path( ) );
+        }
+        return files;
+    }
+
+    private static final class ListDirectory extends RecursiveTask< List< Candidate > > {
+        private final Path dir;
+
+        ListDirectory ( Path dir ) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected List< Candidate > compute ( ) {
+            List< ForkJoinTask< List< Candidate > > > forks = new ArrayList<>( );
+            List< Path > chunk = new ArrayList<>( CHUNK_SIZE );
+            try ( DirectoryStream< Path > stream = Files.newDirectoryStream( dir ) ) {
+                for ( Path entry : stream ) {
+                    chunk.add( entry );
+                    if ( chunk.size( ) == CHUNK_SIZE ) {
+                        forks.add( new StatChunk( chunk ).fork( ) );
+                        chunk = new ArrayList<>( CHUNK_SIZE );
+                    }
+                }
+            } catch ( IOException | RuntimeException e ) {
+                log.warn( "compute :: Unable to list {}: {}", dir, e.getMessage( ) );
+            }
+            List< Candidate > files = new ArrayList<>( new StatChunk( chunk ).compute( ) );
+            for ( ForkJoinTask< List< Candidate > > fork : forks ) {
+                files.addAll( fork.join( ) );
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Stats one chunk of directory entries; files become candidates, directories are listed as subtasks.
+     */
+    private static final class StatChunk extends RecursiveTask< List< Candidate > > {
+        private final List< Path > entries;
+
+        StatChunk ( List< Path > entries ) {
+            this.entries = entries;
+        }
+
+        @Override
+        protected List< Candidate > compute ( ) {
+            List< Candidate > files = new ArrayList<>( );
+            List< ForkJoinTask< List< Candidate > > > subdirectories = new ArrayList<>( );
+            for ( Path entry : entries ) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes( entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS );
+                    if ( attrs.isDirectory( ) ) {
+                        subdirectories.add( new ListDirectory( entry ).fork( ) );
+                    } else if ( attrs.isRegularFile( ) ) {
+                        files.add( new Candidate( entry.toAbsolutePath( ), attrs.lastModifiedTime( ).toMillis( ) ) );
+                    }
+                } catch ( IOException e ) {
+                    // Removed since it was listed
+                    log.debug( "compute :: Skipping {}: {}", entry, e.getMessage( ) );
+                }
+            }
+            for ( ForkJoinTask< List< Candidate > > subdirectory : subdirectories ) {
+                files.addAll( subdirectory.join( ) );
+            }
+            return files;
+        }
+    }
+}
@@ -49,6 +49,7 @@ public class RemoteDirectoryService {
     private final CommonUtils commonUtils;
     private final ExecutorService executorService;
     private final SharedFolderConfig sharedFolderConfig;
+    private final DownstreamLimits downstreamLimits;
 
     private final Semaphore largeCopyLimit = new Semaphore( 2 ); // > 1 GB
     private final Semaphore mediumCopyLimit = new Semaphore( 6 ); // 100 MB – 1 GB
@@ -57,10 +58,12 @@ public class RemoteDirectoryService {
     private final ThreadLocal< ShareHandle > shareHolder = new ThreadLocal<>( );
     private final Object shareLock = new Object();
 
-    public RemoteDirectoryService ( CommonUtils commonUtils, @Qualifier( "remoteDirectoryWatcherExecutor" ) ExecutorService executorService, SharedFolderConfig sharedFolderConfig ) {
+    public RemoteDirectoryService ( CommonUtils commonUtils, @Qualifier( "remoteDirectoryWatcherExecutor" ) ExecutorService executorService, SharedFolderConfig sharedFolderConfig,
+                                    DownstreamLimits downstreamLimits ) {
         this.commonUtils = commonUtils;
         this.executorService = executorService;
         this.sharedFolderConfig = sharedFolderConfig;
+        this.downstreamLimits = downstreamLimits;
     }
 
     public CompletableFuture< Boolean > processFileEvent ( FileObject file, String smbUrl ) {
@@ -68,7 +71,11 @@ public class RemoteDirectoryService {
         try {
             String relativeFilePath = file.getName( ).getPath( ).replaceFirst( smbUrl, "" );
             long sizeBytes = safeSize( file );
-            Callable< Boolean > task = ( ) -> establishConnectionAndCopy( relativeFilePath, file.getName( ).getBaseName( ), sizeBytes );
+            Callable< Boolean > task = ( ) -> {
+                try ( DownstreamLimits.Permit permit = downstreamLimits.acquire( DownstreamLimits.Downstream.SHARED_FOLDER ) ) {
+                    return establishConnectionAndCopy( relativeFilePath, file.getName( ).getBaseName( ), sizeBytes );
+                }
+            };
 
             // Size-aware concurrency (small files bypass, medium/large limited)
             Future< Boolean > f = submitWithSizeControl( sizeBytes, task );
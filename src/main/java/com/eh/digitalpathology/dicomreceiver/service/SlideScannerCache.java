@@ -0,0 +1,112 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.model.SlideScanner;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Read-through cache of the slide scanners, keyed by device serial number. All tiles of a slide carry the same
+ * serial number, so without it every instance costs a round trip to the DB connector. Entries are reloaded in the
+ * background once they are older than the refresh interval, while callers keep getting the cached scanner; an entry
+ * that could not be reloaded before its expiry is dropped. Unknown scanners are remembered for the shorter negative
+ * TTL, failed lookups are not cached at all. A config bus refresh empties the cache.
+ */
+@Service
+public class SlideScannerCache implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger( SlideScannerCache.class.getName( ) );
+
+    private final DatabaseService databaseService;
+    private final boolean enabled;
+    private final LoadingCache< String, Optional< SlideScanner > > scanners;
+
+    public SlideScannerCache ( DatabaseService databaseService,
+                               @Value( "${db.scanner-cache.enable:false}" ) boolean enabled,
+                               @Value( "${db.scanner-cache.maximum-size:1000}" ) long maximumSize,
+                               @Value( "${db.scanner-cache.refresh-after-write-seconds:60}" ) long refreshAfterWriteSeconds,
+                               @Value( "${db.scanner-cache.expire-after-write-seconds:600}" ) long expireAfterWriteSeconds,
+                               @Value( "${db.scanner-cache.negative-ttl-seconds:30}" ) long negativeTtlSeconds ) {
+        this( databaseService, enabled, maximumSize, Duration.ofSeconds( refreshAfterWriteSeconds ), Duration.ofSeconds( expireAfterWriteSeconds ),
+                Duration.ofSeconds( negativeTtlSeconds ), Ticker.systemTicker( ), ForkJoinPool.commonPool( ) );
+    }
+
+    SlideScannerCache ( DatabaseService databaseService, boolean enabled, long maximumSize, Duration refreshAfterWrite, Duration expireAfterWrite,
+                        Duration negativeTtl, Ticker ticker, Executor refreshExecutor ) {
+        this.databaseService = databaseService;
+        this.enabled = enabled;
+        this.scanners = Caffeine.newBuilder( )
+                .maximumSize( maximumSize )
+                .refreshAfterWrite( refreshAfterWrite )
+                .expireAfter( new ScannerExpiry( expireAfterWrite.toNanos( ), negativeTtl.toNanos( ) ) )
+                .ticker( ticker )
+                .executor( refreshExecutor )
+                .recordStats( )
+                .build( databaseService::findScannerByDeviceSerialNumber );
+    }
+
+    /**
+     * The scanner registered under {@code deviceSerialNumber}, or null when it is unknown or cannot be looked up.
+     */
+    public SlideScanner get ( String deviceSerialNumber ) {
+        if ( !enabled || deviceSerialNumber == null ) {
+            return databaseService.fetchScannerByDeviceSerialNumber( deviceSerialNumber );
+        }
+        try {
+            return scanners.get( deviceSerialNumber ).orElse( null );
+        } catch ( RuntimeException e ) {
+            log.error( "get :: Error fetching SlideScanner for DeviceSerialNumber: {}", deviceSerialNumber, e );
+            return null;
+        }
+    }
+
+    public void invalidate ( String deviceSerialNumber ) {
+        scanners.invalidate( deviceSerialNumber );
+    }
+
+    @EventListener( RefreshScopeRefreshedEvent.class )
+    public void invalidateAll ( ) {
+        log.info( "invalidateAll :: Configuration refreshed, dropping {} cached scanners", scanners.estimatedSize( ) );
+        scanners.invalidateAll( );
+    }
+
+    @Override
+    public void bindTo ( MeterRegistry registry ) {
+        CaffeineCacheMetrics.monitor( registry, scanners, "slideScanner" );
+    }
+
+    /**
+     * Known scanners live for the full expiry, unknown ones for the negative TTL; reads do not extend either.
+     */
+    private record ScannerExpiry( long expireNanos, long negativeTtlNanos ) implements Expiry< String, Optional< SlideScanner > > {
+
+        @Override
+        public long expireAfterCreate ( String deviceSerialNumber, Optional< SlideScanner > scanner, long currentTime ) {
+            return scanner.isPresent( ) ? expireNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate ( String deviceSerialNumber, Optional< SlideScanner > scanner, long currentTime, long currentDuration ) {
+            return expireAfterCreate( deviceSerialNumber, scanner, currentTime );
+        }
+
+        @Override
+        public long expireAfterRead ( String deviceSerialNumber, Optional< SlideScanner > scanner, long currentTime, long currentDuration ) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.config.ExecutorConfig;
+import com.eh.digitalpathology.dicomreceiver.config.WatcherConfig;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts a {@link DirectoryWatcher} lookup for every additional root in {@code watcher.roots}, each feeding its own
+ * process-stage pool so traffic landing on several volumes is parsed and uploaded in parallel. A root's share of the
+ * work is set by its concurrency and max-in-flight; its thread priority is only a hint that Linux HotSpot ignores.
+ */
+@Component
+public class WatchRoots {
+    private static final Logger log = LoggerFactory.getLogger( WatchRoots.class.getName( ) );
+
+    private final WatcherConfig watcherConfig;
+    private final DirectoryWatcher directoryWatcher;
+    private final IngestPipeline ingestPipeline;
+    private final IngestMetrics ingestMetrics;
+    private final List< ExecutorService > processStages = new ArrayList<>( );
+    private ExecutorService lookups;
+
+    public WatchRoots ( WatcherConfig watcherConfig, DirectoryWatcher directoryWatcher, IngestPipeline ingestPipeline, IngestMetrics ingestMetrics ) {
+        this.watcherConfig = watcherConfig;
+        this.directoryWatcher = directoryWatcher;
+        this.ingestPipeline = ingestPipeline;
+        this.ingestMetrics = ingestMetrics;
+    }
+
+    public synchronized void start ( String intermediateStore ) {
+        List< WatcherConfig.Root > roots = watcherConfig.getRoots( );
+        if ( roots.isEmpty( ) || lookups != null ) {
+            return;
+        }
+        lookups = Executors.newFixedThreadPool( roots.size( ), namedThreads( "watch-root", Thread.NORM_PRIORITY ) );
+        for ( WatcherConfig.Root root : roots ) {
+            Path dir = Paths.get( root.getPath( ) ).toAbsolutePath( );
+            try {
+                Files.createDirectories( dir );
+            } catch ( IOException e ) {
+                log.error( "start :: unable to create watch root {} :: {}", dir, e.getMessage( ) );
+                continue;
+            }
+            String fileStore = dir.toString( );
+            int priority = Math.max( Thread.MIN_PRIORITY, Math.min( Thread.MAX_PRIORITY, root.getPriority( ) ) );
+            ExecutorService processStage = ExecutorConfig.boundedExecutor( "Ingest process stage for " + fileStore, root.getConcurrency( ), root.getQueueCapacity( ), namedThreads( "ingest-" + dir.getFileName( ), priority ) );
+            processStages.add( processStage );
+            IngestPipeline rootPipeline = ingestPipeline.withProcessStage( processStage, root.getMaxInFlight( ) );
+            ingestMetrics.monitor( processStage, "ingestProcessExecutor-" + dir.getFileName( ) );
+            rootPipeline.bindTo( ingestMetrics.registry( ), fileStore );
+            directoryWatcher.registerRoot( fileStore, rootPipeline );
+            log.info( "start :: Watching root {} with {} workers, {} in flight (thread priority hint {})", fileStore, root.getConcurrency( ), root.getMaxInFlight( ), priority );
+            lookups.submit( ( ) -> {
+                directoryWatcher.directoryLookup( fileStore, intermediateStore );
+                log.info( "start :: Directory watcher for {} completed.", fileStore );
+            } );
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown ( ) {
+        if ( lookups != null ) {
+            lookups.shutdownNow( );
+        }
+        for ( ExecutorService processStage : processStages ) {
+            processStage.shutdown( );
+            try {
+                if ( !processStage.awaitTermination( 60, TimeUnit.SECONDS ) ) {
+                    processStage.shutdownNow( );
+                }
+            } catch ( InterruptedException ex ) {
+                processStage.shutdownNow( );
+                Thread.currentThread( ).interrupt( );
+            }
+        }
+    }
+
+    private static ThreadFactory namedThreads ( String prefix, int priority ) {
+        AtomicInteger count = new AtomicInteger( );
+        return runnable -> {
+            Thread thread = new Thread( runnable, prefix + "-" + count.incrementAndGet( ) );
+            thread.setPriority( priority );
+            return thread;
+        };
+    }
+}
@@ -8,10 +8,12 @@ import org.dcm4che3.net.Connection;
 import org.dcm4che3.net.Device;
 import org.dcm4che3.net.TransferCapability;
 import org.dcm4che3.net.service.DicomServiceRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 @Service
@@ -27,7 +29,7 @@ public class DicomSCPServer {
     private final DicomStoreSCPService dicomStoreSCPService;
     private final CommonUtils commonUtils;
 
-    public DicomSCPServer ( StorageCommitmentSCPService storageCommitmentSCPService, DicomStoreSCPService dicomStoreSCPService, CommonUtils commonUtils ) {
+    public DicomSCPServer ( StorageCommitmentSCPService storageCommitmentSCPService, DicomStoreSCPService dicomStoreSCPService, CommonUtils commonUtils, @Qualifier( "dicomDeviceExecutor" ) ExecutorService deviceExecutor ) {
         this.storageCommitmentSCPService = storageCommitmentSCPService;
         this.dicomStoreSCPService = dicomStoreSCPService;
         this.commonUtils = commonUtils;
@@ -36,7 +38,7 @@ public class DicomSCPServer {
         conn = new Connection( );
 
 
-        device.setExecutor( Executors.newCachedThreadPool( ) );
+        device.setExecutor( deviceExecutor );
         device.setScheduledExecutor( Executors.newSingleThreadScheduledExecutor( ) );
 
         device.addConnection( conn );
@@ -1,5 +1,6 @@
 package com.eh.digitalpathology.dicomreceiver.service.storescp;
 
+import com.eh.digitalpathology.dicomreceiver.service.DirectoryWatcher;
 import com.eh.digitalpathology.dicomreceiver.util.CommonUtils;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
@@ -9,22 +10,40 @@ import org.dcm4che3.net.Association;
 import org.dcm4che3.net.PDVInputStream;
 import org.dcm4che3.net.pdu.PresentationContext;
 import org.dcm4che3.net.service.BasicCStoreSCP;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 
 @Service
 public class DicomStoreSCPService extends BasicCStoreSCP {
 
+    private static final Logger log = LoggerFactory.getLogger(DicomStoreSCPService.class.getName());
+
+    private static final String PART_SUFFIX = ".part";
+
     private final CommonUtils commonUtils;
+    private final DirectoryWatcher directoryWatcher;
+
+    @Value("${storescp.streaming.enable:true}")
+    private boolean streamingEnabled;
 
-    public DicomStoreSCPService( CommonUtils commonUtils ) {
+    @Value("${storescp.handoff.enable:true}")
+    private boolean handOffEnabled;
+
+    public DicomStoreSCPService( CommonUtils commonUtils, DirectoryWatcher directoryWatcher ) {
         super("*");
         this.commonUtils = commonUtils;
+        this.directoryWatcher = directoryWatcher;
     }
 
 
@@ -33,8 +52,34 @@ public class DicomStoreSCPService extends BasicCStoreSCP {
         String sopInstanceUID = rq.getString(Tag.AffectedSOPInstanceUID);
 
         Path storageDir = Paths.get(commonUtils.getLocalStoragePath());
-        File file = storageDir.resolve(sopInstanceUID + ".dcm").toFile();
+        Path target = storageDir.resolve(sopInstanceUID + ".dcm");
+        // Written under a .part name (ignored by the DirectoryWatcher) and renamed once complete
+        Path part = storageDir.resolve(sopInstanceUID + ".dcm" + PART_SUFFIX);
+
+        try {
+            if (streamingEnabled) {
+                streamToFile(pc, rq, data, part.toFile());
+            } else {
+                decodeToFile(pc, data, part.toFile());
+            }
+            if (handOffEnabled) {
+                directoryWatcher.expectHandOff(target);
+            }
+            moveIntoPlace(part, target);
+        } catch (IOException | RuntimeException e) {
+            if (handOffEnabled) {
+                directoryWatcher.cancelHandOff(target);
+            }
+            Files.deleteIfExists(part);
+            throw e;
+        }
 
+        if (handOffEnabled) {
+            directoryWatcher.handOff(target, storageDir.toString(), commonUtils.getIntermediateFileServer());
+        }
+    }
+
+    private void decodeToFile(PresentationContext pc, PDVInputStream data, File file) throws IOException {
         Attributes dataset;
         try (DicomInputStream dis = new DicomInputStream(data)) {
             dis.setIncludeBulkData(DicomInputStream.IncludeBulkData.URI);
@@ -45,4 +90,44 @@ public class DicomStoreSCPService extends BasicCStoreSCP {
             dos.writeDataset(dataset.createFileMetaInformation(pc.getTransferSyntax()), dataset);
         }
     }
-}
\ No newline at end of file
+
+    private static void moveIntoPlace(Path part, Path target) throws IOException {
+        try {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.warn("moveIntoPlace :: Atomic move not supported for {}, falling back to plain move", target);
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the file meta header built from the C-STORE command and copies the PDV bytes
+     * straight to disk, so the dataset (and its pixel data) is never decoded on the heap.
+     */
+    private void streamToFile(PresentationContext pc, Attributes rq, PDVInputStream data, File file) throws IOException {
+        String sopInstanceUID = rq.getString(Tag.AffectedSOPInstanceUID);
+        String sopClassUID = rq.getString(Tag.AffectedSOPClassUID);
+        Attributes fmi = Attributes.createFileMetaInformation(sopInstanceUID, sopClassUID, pc.getTransferSyntax());
+
+        try (DicomOutputStream dos = new DicomOutputStream(file)) {
+            dos.writeFileMetaInformation(fmi);
+            data.copyTo(dos);
+        }
+
+        Attributes header = readHeader(file);
+        String headerSopInstanceUID = header != null ? header.getString(Tag.SOPInstanceUID) : null;
+        if (headerSopInstanceUID != null && !headerSopInstanceUID.equals(sopInstanceUID)) {
+            log.warn("streamToFile :: SOPInstanceUID mismatch, command: {} dataset: {}", sopInstanceUID, headerSopInstanceUID);
+        }
+        log.debug("streamToFile :: Stored SOPInstanceUID {} (study: {}, series: {}) at {}", sopInstanceUID,
+                header != null ? header.getString(Tag.StudyInstanceUID) : null,
+                header != null ? header.getString(Tag.SeriesInstanceUID) : null, file);
+    }
+
+    private static Attributes readHeader(File file) throws IOException {
+        try (DicomInputStream dis = new DicomInputStream(file)) {
+            dis.setIncludeBulkData(DicomInputStream.IncludeBulkData.NO);
+            return dis.readDatasetUntilPixelData();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.eh.digitalpathology.dicomreceiver.util;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Structure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal Linux inotify binding (via JNA) for watching a directory for completed writes.
+ * Unlike the JDK {@code WatchService} it reports {@link #IN_CLOSE_WRITE} and {@link #IN_MOVED_TO},
+ * i.e. the moment a writer has closed a file or renamed a finished file into the directory.
+ * Check {@link #isSupported()} first; everywhere else callers keep using the {@code WatchService}.
+ */
+public final class Inotify implements Closeable {
+
+    public static final int IN_CLOSE_WRITE = 0x00000008;
+    public static final int IN_MOVED_TO = 0x00000080;
+    public static final int IN_CREATE = 0x00000100;
+    public static final int IN_Q_OVERFLOW = 0x00004000;
+    public static final int IN_IGNORED = 0x00008000;
+    public static final int IN_ONLYDIR = 0x01000000;
+    public static final int IN_ISDIR = 0x40000000;
+
+    private static final int IN_NONBLOCK = 0x00000800;
+    private static final int IN_CLOEXEC = 0x00080000;
+    private static final short POLLIN = 0x0001;
+    private static final int EINTR = 4;
+    // Room for many events of files with long names; the kernel never splits an event across reads
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int EVENT_HEADER_SIZE = 16;
+
+    private final int fd;
+    private final byte[] buffer = new byte[ BUFFER_SIZE ];
+    private volatile boolean closed;
+
+    private Inotify ( int fd ) {
+        this.fd = fd;
+    }
+
+    /**
+     * @return {@code true} on Linux when libc can be bound, {@code false} anywhere else
+     */
+    public static boolean isSupported ( ) {
+        if ( !System.getProperty( "os.name", "" ).toLowerCase( ).startsWith( "linux" ) ) {
+            return false;
+        }
+        try {
+            return LibC.Holder.INSTANCE != null;
+        } catch ( LinkageError e ) {
+            return false;
+        }
+    }
+
+    public static Inotify open ( ) throws IOException {
+        int fd = LibC.Holder.INSTANCE.inotify_init1( IN_NONBLOCK | IN_CLOEXEC );
+        if ( fd < 0 ) {
+            throw new IOException( "inotify_init1 failed, errno " + Native.getLastError( ) );
+        }
+        return new Inotify( fd );
+    }
+
+    /**
+     * Adds a watch for {@code mask} events on {@code dir}.
+     *
+     * @return the watch descriptor reported in {@link Event#wd()}
+     */
+    public int addWatch ( Path dir, int mask ) throws IOException {
+        int wd = LibC.Holder.INSTANCE.inotify_add_watch( fd, dir.toString( ), mask );
+        if ( wd < 0 ) {
+            throw new IOException( "inotify_add_watch failed for " + dir + ", errno " + Native.getLastError( ) );
+        }
+        return wd;
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for events and returns all that are queued, or an empty list on timeout.
+     * The bounded wait lets the caller notice interruption, which a blocking native read would not.
+     */
+    public List< Event > poll ( long timeoutMillis ) throws IOException {
+        PollFd pollFd = new PollFd( );
+        pollFd.fd = fd;
+        pollFd.events = POLLIN;
+        int ready = LibC.Holder.INSTANCE.poll( pollFd, 1, (int) timeoutMillis );
+        if ( ready < 0 ) {
+            int errno = Native.getLastError( );
+            if ( errno == EINTR ) {
+                return List.of( );
+            }
+            throw new IOException( "poll on inotify failed, errno " + errno );
+        }
+        if ( ready == 0 ) {
+            return List.of( );
+        }
+        long read = LibC.Holder.INSTANCE.read( fd, buffer, new NativeLong( buffer.length ) ).longValue( );
+        if ( read < 0 ) {
+            // EAGAIN after a spurious wake-up
+            return List.of( );
+        }
+        return parse( buffer, (int) read );
+    }
+
+    static List< Event > parse ( byte[] bytes, int length ) {
+        ByteBuffer buf = ByteBuffer.wrap( bytes, 0, length ).order( ByteOrder.nativeOrder( ) );
+        List< Event > events = new ArrayList<>( );
+        while ( buf.remaining( ) >= EVENT_HEADER_SIZE ) {
+            int wd = buf.getInt( );
+            int mask = buf.getInt( );
+            buf.getInt( ); // cookie, pairs IN_MOVED_FROM with IN_MOVED_TO
+            int nameLength = buf.getInt( );
+            String name = "";
+            if ( nameLength > 0 ) {
+                // The name is NUL-padded to an aligned length
+                int end = buf.position( );
+                while ( end < buf.position( ) + nameLength && bytes[ end ] != 0 ) {
+                    end++;
+                }
+                name = new String( bytes, buf.position( ), end - buf.position( ), StandardCharsets.UTF_8 );
+                buf.position( buf.position( ) + nameLength );
+            }
+            events.add( new Event( wd, mask, name ) );
+        }
+        return events;
+    }
+
+    @Override
+    public void close ( ) {
+        if ( !closed ) {
+            closed = true;
+            LibC.Holder.INSTANCE.close( fd );
+        }
+    }
+
+    /**
+     * One inotify event; {@code name} is the file name relative to the watched directory, empty for events on the directory itself.
+     */
+    public record Event( int wd, int mask, String name ) {
+        public boolean is ( int flag ) {
+            return ( mask & flag ) != 0;
+        }
+    }
+
+    @Structure.FieldOrder( { "fd", "events", "revents" } )
+    public static class PollFd extends Structure {
+        public int fd;
+        public short events;
+        public short revents;
+    }
+
+    interface LibC extends Library {
+        int inotify_init1 ( int flags );
+
+        int inotify_add_watch ( int fd, String pathname, int mask );
+
+        int poll ( PollFd fds, int nfds, int timeout );
+
+        NativeLong read ( int fd, byte[] buf, NativeLong count );
+
+        int close ( int fd );
+
+        // Loaded on first use, so merely referencing Inotify off Linux does not touch native code
+        final class Holder {
+            static final LibC INSTANCE = Native.load( "c", LibC.class );
+
+            private Holder ( ) {
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.eh.digitalpathology.dicomreceiver.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel holding at most one pending task per key. Scheduling a key again replaces its task and
+ * deadline in O(1), so debouncing a busy file leaves no cancelled timers behind. The owner calls {@link #advance()}
+ * from its own periodic tick, every {@code tickMillis}; it runs every task that became due since the previous call
+ * on the calling thread. Deadlines beyond one revolution stay in their slot until their round comes up.
+ */
+public class TimingWheel< K > {
+    private static final Logger log = LoggerFactory.getLogger( TimingWheel.class.getName( ) );
+
+    private final long tickMillis;
+    private final long tickNanos;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final List< Set< K > > slots;
+    private final Map< K, Timeout > pending = new HashMap<>( );
+    private long processedTick;
+
+    public TimingWheel ( long tickMillis, int wheelSize ) {
+        this( tickMillis, wheelSize, System::nanoTime );
+    }
+
+    TimingWheel ( long tickMillis, int wheelSize, LongSupplier nanoClock ) {
+        if ( tickMillis <= 0 || wheelSize <= 0 ) {
+            throw new IllegalArgumentException( "tickMillis and wheelSize must be positive" );
+        }
+        this.tickMillis = tickMillis;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos( tickMillis );
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong( );
+        this.slots = new ArrayList<>( wheelSize );
+        for ( int i = 0; i < wheelSize; i++ ) {
+            slots.add( new HashSet<>( ) );
+        }
+    }
+
+    /**
+     * Schedules {@code task} to run once {@code delayMillis} have passed (rounded up to whole ticks),
+     * replacing any task still pending for {@code key}.
+     */
+    public synchronized void schedule ( K key, long delayMillis, Runnable task ) {
+        long ticks = Math.max( 1L, ( delayMillis + tickMillis - 1 ) / tickMillis );
+        Timeout timeout = new Timeout( currentTick( ) + ticks, task );
+        Timeout previous = pending.put( key, timeout );
+        if ( previous != null ) {
+            slotOf( previous.deadlineTick ).remove( key );
+        }
+        slotOf( timeout.deadlineTick ).add( key );
+    }
+
+    public synchronized boolean cancel ( K key ) {
+        Timeout timeout = pending.remove( key );
+        if ( timeout == null ) {
+            return false;
+        }
+        slotOf( timeout.deadlineTick ).remove( key );
+        return true;
+    }
+
+    public synchronized boolean isScheduled ( K key ) {
+        return pending.containsKey( key );
+    }
+
+    public synchronized int size ( ) {
+        return pending.size( );
+    }
+
+    /**
+     * Runs every task whose deadline has passed. Called on every tick of the owner; catches up on ticks it was late for.
+     */
+    public void advance ( ) {
+        List< Runnable > due = new ArrayList<>( );
+        synchronized ( this ) {
+            long now = currentTick( );
+            while ( processedTick < now ) {
+                processedTick++;
+                Iterator< K > keys = slotOf( processedTick ).iterator( );
+                while ( keys.hasNext( ) ) {
+                    K key = keys.next( );
+                    Timeout timeout = pending.get( key );
+                    if ( timeout.deadlineTick <= processedTick ) {
+                        keys.remove( );
+                        pending.remove( key );
+                        due.add( timeout.task );
+                    }
+                }
+            }
+        }
+        // Outside the lock, so tasks can schedule their key again
+        for ( Runnable task : due ) {
+            try {
+                task.run( );
+            } catch ( Exception ex ) {
+                log.error( "advance :: Scheduled task failed: {}", ex.getMessage( ) );
+            }
+        }
+    }
+
+    private long currentTick ( ) {
+        return ( nanoClock.getAsLong( ) - startNanos ) / tickNanos;
+    }
+
+    private Set< K > slotOf ( long tick ) {
+        return slots.get( (int) ( tick % slots.size( ) ) );
+    }
+
+    private record Timeout( long deadlineTick, Runnable task ) {
+    }
+}
@@ -0,0 +1,54 @@
+package com.eh.digitalpathology.dicomreceiver.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fixed-size pool of direct {@link ByteBuffer}s used for uploads. Buffers are allocated lazily up to
+ * {@code bufferCount} and then recycled, so upload memory stays bounded no matter how many files arrive;
+ * callers block in {@link #acquire()} while all buffers are in use. A GCS upload holding a buffer also holds its
+ * channel's chunk buffer, so upload memory is {@code bufferCount} times the sum of the buffer and chunk sizes.
+ */
+public class UploadBufferPool {
+
+    private final int bufferSize;
+    private final Semaphore permits;
+    private final Queue< ByteBuffer > freeBuffers = new ConcurrentLinkedQueue<>( );
+
+    public UploadBufferPool ( int bufferCount, int bufferSize ) {
+        if ( bufferCount <= 0 || bufferSize <= 0 ) {
+            throw new IllegalArgumentException( "bufferCount and bufferSize must be positive" );
+        }
+        this.bufferSize = bufferSize;
+        this.permits = new Semaphore( bufferCount, true );
+    }
+
+    public ByteBuffer acquire ( ) throws InterruptedException {
+        permits.acquire( );
+        ByteBuffer buffer = freeBuffers.poll( );
+        if ( buffer == null ) {
+            buffer = ByteBuffer.allocateDirect( bufferSize );
+        }
+        buffer.clear( );
+        return buffer;
+    }
+
+    public void release ( ByteBuffer buffer ) {
+        if ( buffer == null ) {
+            return;
+        }
+        buffer.clear( );
+        freeBuffers.offer( buffer );
+        permits.release( );
+    }
+
+    public int getBufferSize ( ) {
+        return bufferSize;
+    }
+
+    public int availableBuffers ( ) {
+        return permits.availablePermits( );
+    }
+}
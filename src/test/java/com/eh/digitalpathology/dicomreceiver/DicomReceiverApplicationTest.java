@@ -2,6 +2,7 @@ package com.eh.digitalpathology.dicomreceiver;
 
 import com.eh.digitalpathology.dicomreceiver.service.DirectoryWatcher;
 import com.eh.digitalpathology.dicomreceiver.service.RemoteDirectoryWatcher;
+import com.eh.digitalpathology.dicomreceiver.service.WatchRoots;
 import com.eh.digitalpathology.dicomreceiver.util.CommonUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -55,7 +56,7 @@ class DicomReceiverApplicationTest {
         when(utils.getIntermediateFileServer()).thenReturn("/data/intermediate");
         when(utils.isEnableRemoteDirectoryWatcher()).thenReturn(true);
 
-        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher);
+        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher, mock(WatchRoots.class));
         setExecutor(app, new DirectExecutorService());
 
         // Act
@@ -79,7 +80,7 @@ class DicomReceiverApplicationTest {
         when(utils.getIntermediateFileServer()).thenReturn("/mnt/intermediate");
         when(utils.isEnableRemoteDirectoryWatcher()).thenReturn(false);
 
-        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher);
+        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher, mock(WatchRoots.class));
         setExecutor(app, new DirectExecutorService());
 
         // Act
@@ -91,6 +92,25 @@ class DicomReceiverApplicationTest {
         verifyNoMoreInteractions(dirWatcher, remoteWatcher);
     }
 
+    @Test
+    @DisplayName("run(): additional watch roots are started with the intermediate store")
+    void run_startsAdditionalWatchRoots() throws Exception {
+        DirectoryWatcher dirWatcher = mock(DirectoryWatcher.class);
+        RemoteDirectoryWatcher remoteWatcher = mock(RemoteDirectoryWatcher.class);
+        CommonUtils utils = mock(CommonUtils.class);
+        WatchRoots watchRoots = mock(WatchRoots.class);
+
+        when(utils.getLocalStoragePath()).thenReturn("/data/received");
+        when(utils.getIntermediateFileServer()).thenReturn("/data/intermediate");
+
+        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher, watchRoots);
+        setExecutor(app, new DirectExecutorService());
+
+        app.run();
+
+        verify(watchRoots).start("/data/intermediate");
+    }
+
     @Test
     @DisplayName("run(): remote watcher ENABLED but throws -> error handled, no rethrow")
     void run_remoteEnabled_remoteThrows_exceptionHandled() throws Exception {
@@ -105,7 +125,7 @@ class DicomReceiverApplicationTest {
 
         doThrow(new RuntimeException("boom")).when(remoteWatcher).watchSharedDirectory();
 
-        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher);
+        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher, mock(WatchRoots.class));
         setExecutor(app, new DirectExecutorService());
 
         // Act & Assert: run() should not propagate the exception
@@ -130,7 +150,7 @@ class DicomReceiverApplicationTest {
         RemoteDirectoryWatcher remoteWatcher = mock(RemoteDirectoryWatcher.class);
         CommonUtils utils = mock(CommonUtils.class);
 
-        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher);
+        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher, mock(WatchRoots.class));
 
         ExecutorService exec = mock(ExecutorService.class);
         when(exec.awaitTermination(60, TimeUnit.SECONDS))
@@ -159,7 +179,7 @@ class DicomReceiverApplicationTest {
         RemoteDirectoryWatcher remoteWatcher = mock(RemoteDirectoryWatcher.class);
         CommonUtils utils = mock(CommonUtils.class);
 
-        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher);
+        DicomReceiverApplication app = new DicomReceiverApplication(dirWatcher, utils, remoteWatcher, mock(WatchRoots.class));
 
         ExecutorService exec = mock(ExecutorService.class);
         when(exec.awaitTermination(60, TimeUnit.SECONDS))
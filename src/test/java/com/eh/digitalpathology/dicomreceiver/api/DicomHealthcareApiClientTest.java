@@ -2,33 +2,31 @@ package com.eh.digitalpathology.dicomreceiver.api;
 
 import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
 import com.eh.digitalpathology.dicomreceiver.exceptions.HealthcareApiException;
-import com.eh.digitalpathology.dicomreceiver.util.GCPUtils;
+import com.eh.digitalpathology.dicomreceiver.service.AccessTokenService;
+import com.eh.digitalpathology.dicomreceiver.service.DownstreamLimits;
+import com.eh.digitalpathology.dicomreceiver.service.IngestMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.dcm4che3.data.Attributes;
-import org.dcm4che3.data.Tag;
-import org.dcm4che3.data.UID;
-import org.dcm4che3.data.VR;
-import org.dcm4che3.io.DicomOutputStream;
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
-import org.mockito.MockedConstruction;
-import org.mockito.MockedStatic;
-import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -44,135 +42,79 @@ class DicomHealthcareApiClientTest {
     @Mock
     private CloseableHttpClient mockHttpClient;
 
+    @Mock
+    private AccessTokenService accessTokenService;
+
     @Mock
     private CloseableHttpResponse mockResponse;
 
     @Mock
     private StatusLine mockStatusLine;
 
-    @Spy
-    private ExecutorService executorService = Executors.newSingleThreadExecutor();
+    @TempDir
+    Path tempDir;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
     private DicomHealthcareApiClient client;
+    private File dicomFile;
 
     @BeforeEach
-    void setUp() {
-        client = new DicomHealthcareApiClient(gcpConfig);
-        client.executorService = executorService;
-    }
-
-    @AfterEach
-    void tearDown() {
-        client.shutdownExecutor();
-        executorService.shutdownNow();
+    void setUp() throws IOException {
+        client = new DicomHealthcareApiClient(gcpConfig, mockHttpClient, accessTokenService, new IngestMetrics(meterRegistry),
+                new DownstreamLimits(64, 100, 16, 8));
+        dicomFile = Files.write(tempDir.resolve("instance.dcm"), "DICM-CONTENT".getBytes(StandardCharsets.US_ASCII)).toFile();
     }
 
 
     @Test
     void testStoreDicomInstances_SuccessfulUpload() throws Exception {
-
-        Attributes meta = new Attributes();
-        meta.setString(Tag.MediaStorageSOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
-        meta.setString(Tag.MediaStorageSOPInstanceUID, VR.UI, "SOP123");
-        meta.setString(Tag.TransferSyntaxUID, VR.UI, UID.ImplicitVRLittleEndian);
-
-        Attributes attrs = new Attributes();
-        attrs.setString(Tag.SOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
-        attrs.setString(Tag.SOPInstanceUID, VR.UI, "SOP123");
-        attrs.setString(Tag.PatientName, VR.PN, "Test^Patient");
-
         when(gcpConfig.getDicomWebUrl()).thenReturn("http://test-url");
         when(gcpConfig.getPathqaStoreUrl()).thenReturn("storePath");
+        when(accessTokenService.getAccessToken()).thenReturn("test-token");
 
-        try (MockedStatic<HttpClients> mockedHttpClients = mockStatic(HttpClients.class);
-                MockedStatic<GCPUtils> mockedGCPUtils = mockStatic(GCPUtils.class);
-                MockedConstruction<DicomOutputStream> mockedDicomOutputStream =
-                        mockConstruction(DicomOutputStream.class, (mock, context) -> {
-                            doNothing().when(mock).writeDataset(any(), any());
-                            doNothing().when(mock).close();})) {
-            mockedGCPUtils.when(() -> GCPUtils.getAccessToken(any())).thenReturn("test-token");
-
-            HttpClientBuilder mockBuilder = mock(HttpClientBuilder.class);
-            when(mockBuilder.setDefaultRequestConfig(any())).thenReturn(mockBuilder);
-            when(mockBuilder.build()).thenReturn(mockHttpClient);
-            mockedHttpClients.when(HttpClients::custom).thenReturn(mockBuilder);
-
-            when(mockHttpClient.execute(any(HttpPost.class))).thenReturn(mockResponse);
-            when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
-            when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
-
-            assertDoesNotThrow(() -> client.storeDicomInstances(meta, attrs, gcpConfig.getPathqaStoreUrl()));
-
-            verify(mockHttpClient, times(1)).execute(any(HttpPost.class));
-            assertEquals("http://test-url", gcpConfig.getDicomWebUrl());
-            assertEquals("storePath", gcpConfig.getPathqaStoreUrl());
-
-        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(mockHttpClient.execute(any(HttpPost.class))).thenAnswer(inv -> {
+            ((HttpPost) inv.getArgument(0)).getEntity().writeTo(body);
+            return mockResponse;
+        });
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        assertDoesNotThrow(() -> client.storeDicomInstances(DicomUpload.ofFile("SOP123", "STUDY", dicomFile), gcpConfig.getPathqaStoreUrl()));
+
+        ArgumentCaptor<HttpPost> post = ArgumentCaptor.forClass(HttpPost.class);
+        verify(mockHttpClient, times(1)).execute(post.capture());
+        assertEquals("http://test-url/storePath/dicomWeb/studies", post.getValue().getURI().toString());
+        assertEquals("Bearer test-token", post.getValue().getFirstHeader("Authorization").getValue());
+        assertEquals("application/dicom", post.getValue().getEntity().getContentType().getValue());
+        // An unchanged instance is sent byte for byte with a known length
+        assertEquals(dicomFile.length(), post.getValue().getEntity().getContentLength());
+        assertEquals("DICM-CONTENT", body.toString(StandardCharsets.US_ASCII));
+        // The shared pooled client must stay open across uploads
+        verify(mockHttpClient, never()).close();
+        assertEquals(1, meterRegistry.get("ingest.stow").tag("outcome", "success").timer().count());
+        assertEquals(dicomFile.length(), meterRegistry.get("ingest.stow.uploaded").counter().count());
     }
 
     @Test
     void testStoreDicomInstances_WhenHttpFails_ShouldThrowException() throws Exception {
-
-        Attributes meta = new Attributes();
-        Attributes attrs = new Attributes();
-        attrs.setString(Tag.SOPInstanceUID, VR.UI, "SOP123");
-
         when(gcpConfig.getDicomWebUrl()).thenReturn("http://test-url");
         when(gcpConfig.getPathqaStoreUrl()).thenReturn("storePath");
 
-        try (
-                MockedStatic<HttpClients> mockedHttpClients = mockStatic(HttpClients.class);
-                MockedStatic<GCPUtils> mockedGCPUtils = mockStatic(GCPUtils.class)
-        ) {
-            mockedGCPUtils.when(() -> GCPUtils.getAccessToken(any())).thenReturn("test-token");
-
-            HttpClientBuilder mockBuilder = mock(HttpClientBuilder.class);
-            when(mockBuilder.setDefaultRequestConfig(any())).thenReturn(mockBuilder);
-            when(mockBuilder.build()).thenReturn(mockHttpClient);
-            mockedHttpClients.when(HttpClients::custom).thenReturn(mockBuilder);
-
-            when(mockHttpClient.execute(any(HttpPost.class))).thenThrow(new IOException("error"));
-
-            HealthcareApiException ex = assertThrows(HealthcareApiException.class,
-                    () -> client.storeDicomInstances(meta, attrs, gcpConfig.getPathqaStoreUrl()));
-
-            assertTrue(ex.getMessage().contains("An error occurred while uploading"));
-        }
-    }
+        when(accessTokenService.getAccessToken()).thenReturn("test-token");
 
+        when(mockHttpClient.execute(any(HttpPost.class))).thenThrow(new IOException("error"));
 
-    @Test
-    void testShutdownExecutor_WhenNotTerminated_ShouldInvokeShutdownNow() throws InterruptedException {
-
-        ExecutorService mockExecutor = mock(ExecutorService.class);
-        when(mockExecutor.awaitTermination(anyLong(), any())).thenReturn(false);
-        client.executorService = mockExecutor;
-
-        client.shutdownExecutor();
-        verify(mockExecutor).shutdown();
-        verify(mockExecutor).awaitTermination(30, TimeUnit.SECONDS);
-        verify(mockExecutor).shutdownNow();
-    }
-
-    @Test
-    void testShutdownExecutor_WhenInterrupted_ShouldInvokeShutdownNow() throws InterruptedException {
-
-        ExecutorService mockExecutor = mock(ExecutorService.class);
-        when(mockExecutor.awaitTermination(anyLong(), any())).thenThrow(new InterruptedException());
-        client.executorService = mockExecutor;
-        boolean wasInterruptedBefore = Thread.currentThread().isInterrupted();
-
-        client.shutdownExecutor();
+        HealthcareApiException ex = assertThrows(HealthcareApiException.class,
+                () -> client.storeDicomInstances(DicomUpload.ofFile("SOP123", "STUDY", dicomFile), gcpConfig.getPathqaStoreUrl()));
 
-        verify(mockExecutor).shutdown();
-        verify(mockExecutor).shutdownNow();
-        assertTrue(Thread.interrupted());
-        if (wasInterruptedBefore) Thread.currentThread().interrupt();
+        assertTrue(ex.getMessage().contains("An error occurred while uploading"));
+        assertEquals(1, meterRegistry.get("ingest.stow").tag("outcome", "failure").timer().count());
+        assertTrue(meterRegistry.find("ingest.stow.uploaded").counters().isEmpty());
     }
 
     @Test
     void testStoreInstances_ShouldThrowHealthcareApiException() throws Exception {
-        Future<?> mockFuture = mock(Future.class);
         HttpPost mockPost = new HttpPost("http://test");
 
         when(mockHttpClient.execute(any(HttpPost.class))).thenReturn(mockResponse);
@@ -181,57 +123,9 @@ class DicomHealthcareApiClientTest {
         when(mockStatusLine.getReasonPhrase()).thenReturn("Internal Server Error");
 
         HealthcareApiException ex = assertThrows(HealthcareApiException.class,
-                () -> ReflectionTestUtils.invokeMethod(client, "storeInstances", mockFuture, mockHttpClient, mockPost, "SOP123"));
+                () -> ReflectionTestUtils.invokeMethod(client, "storeInstances", mockPost, "SOP123"));
 
         assertTrue(ex.getMessage().contains("Error storing DICOM instance with SOPInstance id"));
-        verify(mockFuture).cancel(true);
-    }
-
-
-
-    @Test
-    void testHandleWriteTask_WhenFutureThrowsExecutionException_ShouldInterruptThread() throws Exception {
-        Future<Object> mockFuture = mock(Future.class); // Use Future<Object> not Future<?>
-
-        when(mockFuture.get(5L, TimeUnit.MINUTES))  // Match exact args from source
-                .thenThrow(new ExecutionException("Write failed", new RuntimeException("cause")));
-
-        assertDoesNotThrow(() ->
-                ReflectionTestUtils.invokeMethod(client, "handleWriteTask", (Object) mockFuture));
-
-        assertTrue(Thread.interrupted()); // clears flag too, keeping tests isolated
-    }
-
-
-    @Test
-    void testHandleWriteTask_WhenFutureThrowsInterruptedException_ShouldInterruptThread() throws Exception {
-        Future<Object> mockFuture = mock(Future.class);
-
-        // Use lenient stubbing to avoid strict mismatch errors
-        lenient().when(mockFuture.get(eq(5L), any(TimeUnit.class)))
-                .thenThrow(new InterruptedException("Interrupted"));
-
-        // Run the method under test
-        assertDoesNotThrow(() ->
-                ReflectionTestUtils.invokeMethod(client, "handleWriteTask", (Object) mockFuture));
-
-        // Check that the thread was interrupted (without clearing the flag)
-        assertTrue(Thread.currentThread().isInterrupted(),
-                "Thread should be interrupted after InterruptedException");
-    }
-
-
-    @Test
-    void testHandleWriteTask_WhenFutureTimesOut_ShouldCancelTask() throws Exception {
-        Future<Object> mockFuture = mock(Future.class);
-
-        when(mockFuture.get(5L, TimeUnit.MINUTES))
-                .thenThrow(new TimeoutException("Timed out"));
-
-        assertDoesNotThrow(() ->
-                ReflectionTestUtils.invokeMethod(client, "handleWriteTask", (Object) mockFuture));
-
-        verify(mockFuture).cancel(true);
     }
 
 }
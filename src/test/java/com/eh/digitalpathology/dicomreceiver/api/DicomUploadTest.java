@@ -0,0 +1,88 @@
+package com.eh.digitalpathology.dicomreceiver.api;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.io.DicomOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedConstruction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DicomUploadTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File file(String content) throws IOException {
+        return Files.write(tempDir.resolve("instance.dcm"), content.getBytes(StandardCharsets.US_ASCII)).toFile();
+    }
+
+    @Test
+    void ofFile_WritesFileUnchanged() throws Exception {
+        File file = file("PREAMBLE-HEADER-PIXELDATA");
+        DicomUpload upload = DicomUpload.ofFile("SOP", "STUDY", file);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        upload.writeTo(out);
+
+        assertEquals("PREAMBLE-HEADER-PIXELDATA", out.toString(StandardCharsets.US_ASCII));
+        assertEquals(file.length(), upload.contentLength());
+    }
+
+    @Test
+    void withHeader_WritesNewHeaderFollowedByTail() throws Exception {
+        File file = file("OLDHEADER|PIXELDATA");
+        Attributes fmi = new Attributes();
+        Attributes header = new Attributes();
+        DicomUpload upload = DicomUpload.withHeader("SOP", "STUDY", file, fmi, header, 9);
+
+        OutputStream out = spy(new ByteArrayOutputStream());
+        try (MockedConstruction<DicomOutputStream> streams = mockConstruction(DicomOutputStream.class, (mock, ctx) -> {
+            OutputStream target = (OutputStream) ctx.arguments().get(0);
+            doAnswer(inv -> {
+                target.write("NEWHEADER".getBytes(StandardCharsets.US_ASCII));
+                return null;
+            }).when(mock).writeDataset(any(), any());
+            doAnswer(inv -> {
+                target.close();
+                return null;
+            }).when(mock).close();
+        })) {
+            upload.writeTo(out);
+
+            verify(streams.constructed().get(0)).writeDataset(fmi, header);
+        }
+
+        assertEquals("NEWHEADER|PIXELDATA", out.toString());
+        // Closing the header writer must leave the request stream open for the tail
+        verify(out, never()).close();
+        assertEquals(-1, upload.contentLength());
+    }
+
+    @Test
+    void withHeader_TailOffsetAtEndOfFile_WritesOnlyHeader() throws Exception {
+        File file = file("WHOLEFILE");
+        DicomUpload upload = DicomUpload.withHeader("SOP", "STUDY", file, new Attributes(), new Attributes(), file.length());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MockedConstruction<DicomOutputStream> ignored = mockConstruction(DicomOutputStream.class, (mock, ctx) ->
+                doAnswer(inv -> {
+                    ((OutputStream) ctx.arguments().get(0)).write("DATASET".getBytes(StandardCharsets.US_ASCII));
+                    return null;
+                }).when(mock).writeDataset(any(), any()))) {
+            upload.writeTo(out);
+        }
+
+        assertEquals("DATASET", out.toString(StandardCharsets.US_ASCII));
+    }
+}
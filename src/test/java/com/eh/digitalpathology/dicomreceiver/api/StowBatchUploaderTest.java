@@ -0,0 +1,225 @@
+package com.eh.digitalpathology.dicomreceiver.api;
+
+import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
+import com.eh.digitalpathology.dicomreceiver.exceptions.HealthcareApiException;
+import com.eh.digitalpathology.dicomreceiver.service.AccessTokenService;
+import com.eh.digitalpathology.dicomreceiver.service.DownstreamLimits;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StowBatchUploaderTest {
+
+    @Mock
+    private GcpConfig gcpConfig;
+    @Mock
+    private CloseableHttpClient httpClient;
+    @Mock
+    private AccessTokenService accessTokenService;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    @Mock
+    private ScheduledFuture<Object> lingerTask;
+    @Mock
+    private CloseableHttpResponse response;
+    @Mock
+    private StatusLine statusLine;
+
+    private StowBatchUploader uploader;
+    private final List<String> requestBodies = new ArrayList<>();
+    private File largeFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        uploader = new StowBatchUploader(gcpConfig, httpClient, accessTokenService, scheduler, new DownstreamLimits(64, 100, 16, 8));
+        ReflectionTestUtils.setField(uploader, "maxInstances", 3);
+        ReflectionTestUtils.setField(uploader, "maxBytesMb", 1L);
+        ReflectionTestUtils.setField(uploader, "lingerMs", 2000L);
+
+        lenient().when(gcpConfig.getDicomWebUrl()).thenReturn("http://dicomweb");
+        lenient().when(accessTokenService.getAccessToken()).thenReturn("token");
+        lenient().doReturn(lingerTask).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        lenient().when(response.getStatusLine()).thenReturn(statusLine);
+        lenient().when(httpClient.execute(any(HttpPost.class))).thenAnswer(inv -> {
+            HttpPost post = inv.getArgument(0);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            post.getEntity().writeTo(body);
+            requestBodies.add(body.toString(StandardCharsets.US_ASCII));
+            return response;
+        });
+    }
+
+    // Each instance file holds "DICM:" + its SOPInstanceUID, so the request body shows which files were sent
+    private static File instanceFile(String sop) throws IOException {
+        File file = Files.createTempFile("stow", ".dcm").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), ("DICM:" + sop).getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private CompletableFuture<Void> submit(String study, String sop) throws IOException {
+        File file = largeFile != null ? largeFile : instanceFile(sop);
+        return uploader.submit(DicomUpload.ofFile(sop, study, file), "store");
+    }
+
+    private Runnable lingerFlush() {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, atLeastOnce()).schedule(task.capture(), eq(2000L), eq(TimeUnit.MILLISECONDS));
+        return task.getValue();
+    }
+
+    @Test
+    void submit_BatchFillsUp_SendsOneMultipartRequest() throws Exception {
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        CompletableFuture<Void> f1 = submit("STUDY", "SOP1");
+        CompletableFuture<Void> f2 = submit("STUDY", "SOP2");
+        assertFalse(f1.isDone());
+        CompletableFuture<Void> f3 = submit("STUDY", "SOP3");
+
+        ArgumentCaptor<HttpPost> post = ArgumentCaptor.forClass(HttpPost.class);
+        verify(httpClient, times(1)).execute(post.capture());
+        assertEquals("http://dicomweb/store/dicomWeb/studies", post.getValue().getURI().toString());
+        assertEquals("Bearer token", post.getValue().getFirstHeader("Authorization").getValue());
+        assertEquals("application/dicom+json", post.getValue().getFirstHeader("Accept").getValue());
+        String contentType = post.getValue().getEntity().getContentType().getValue();
+        assertTrue(contentType.startsWith("multipart/related; type=\"application/dicom\"; boundary="));
+
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + 9);
+        String body = requestBodies.get(0);
+        String part = "Content-Type: application/dicom\r\n\r\n";
+        assertEquals("--" + boundary + "\r\n" + part + "DICM:SOP1\r\n"
+                + "--" + boundary + "\r\n" + part + "DICM:SOP2\r\n"
+                + "--" + boundary + "\r\n" + part + "DICM:SOP3\r\n"
+                + "--" + boundary + "--\r\n", body);
+
+        assertTrue(f1.isDone() && f2.isDone() && f3.isDone());
+        assertFalse(f1.isCompletedExceptionally());
+        verify(lingerTask).cancel(false);
+    }
+
+    @Test
+    void submit_DifferentStudies_AreBatchedSeparately() throws Exception {
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        submit("STUDY_A", "A1");
+        submit("STUDY_B", "B1");
+
+        verify(scheduler, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        verify(httpClient, never()).execute(any(HttpPost.class));
+
+        uploader.flushAll();
+
+        verify(httpClient, times(2)).execute(any(HttpPost.class));
+    }
+
+    @Test
+    void lingerExpires_SendsPartialBatch() throws Exception {
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+
+        CompletableFuture<Void> f1 = submit("STUDY", "SOP1");
+        lingerFlush().run();
+
+        verify(httpClient, times(1)).execute(any(HttpPost.class));
+        assertTrue(requestBodies.get(0).contains("DICM:SOP1"));
+        assertTrue(f1.isDone());
+
+        // The batch is gone, so a second linger run for it sends nothing
+        lingerFlush().run();
+        verify(httpClient, times(1)).execute(any(HttpPost.class));
+    }
+
+    @Test
+    void submit_ByteLimitReached_SendsImmediately() throws Exception {
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        largeFile = Files.createTempFile("stow", ".dcm").toFile();
+        largeFile.deleteOnExit();
+        Files.write(largeFile.toPath(), new byte[1024 * 1024]);
+
+        CompletableFuture<Void> f1 = submit("STUDY", "SOP1");
+
+        verify(httpClient, times(1)).execute(any(HttpPost.class));
+        assertTrue(f1.isDone());
+    }
+
+    @Test
+    void partialFailure_OnlyRejectedInstancesFail() throws Exception {
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_ACCEPTED);
+        when(response.getEntity()).thenReturn(new StringEntity(
+                "{\"00081198\":{\"vr\":\"SQ\",\"Value\":[{\"00081150\":{\"vr\":\"UI\",\"Value\":[\"1.2\"]},"
+                        + "\"00081155\":{\"vr\":\"UI\",\"Value\":[\"SOP2\"]},\"00081197\":{\"vr\":\"US\",\"Value\":[272]}}]}}"));
+
+        CompletableFuture<Void> f1 = submit("STUDY", "SOP1");
+        CompletableFuture<Void> f2 = submit("STUDY", "SOP2");
+        CompletableFuture<Void> f3 = submit("STUDY", "SOP3");
+
+        assertDoesNotThrow(() -> f1.get());
+        assertDoesNotThrow(() -> f3.get());
+        ExecutionException ex = assertThrows(ExecutionException.class, f2::get);
+        assertInstanceOf(HealthcareApiException.class, ex.getCause());
+        assertTrue(ex.getCause().getMessage().contains("SOP2"));
+        assertTrue(ex.getCause().getMessage().contains("272"));
+    }
+
+    @Test
+    void allRejected_EveryInstanceFails() throws Exception {
+        when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_CONFLICT);
+        when(statusLine.getReasonPhrase()).thenReturn("Conflict");
+
+        CompletableFuture<Void> f1 = submit("STUDY", "SOP1");
+        uploader.flushAll();
+
+        ExecutionException ex = assertThrows(ExecutionException.class, f1::get);
+        assertTrue(ex.getCause().getMessage().contains("409 - Conflict"));
+    }
+
+    @Test
+    void requestFails_EveryInstanceFails() throws Exception {
+        when(httpClient.execute(any(HttpPost.class))).thenThrow(new IOException("connection reset"));
+
+        CompletableFuture<Void> f1 = submit("STUDY", "SOP1");
+        CompletableFuture<Void> f2 = submit("STUDY", "SOP2");
+        uploader.flushAll();
+
+        assertTrue(f1.isCompletedExceptionally());
+        assertTrue(f2.isCompletedExceptionally());
+        ExecutionException ex = assertThrows(ExecutionException.class, f1::get);
+        assertInstanceOf(HealthcareApiException.class, ex.getCause());
+    }
+
+    @Test
+    void parseFailures_IgnoresMalformedBody() {
+        Map<String, String> failures = uploader.parseFailures("not json");
+        assertTrue(failures.isEmpty());
+        assertTrue(uploader.parseFailures(null).isEmpty());
+    }
+}
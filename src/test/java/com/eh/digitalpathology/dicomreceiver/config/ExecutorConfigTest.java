@@ -4,11 +4,16 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -39,6 +44,15 @@ class ExecutorConfigTest {
         }
     }
 
+    private static void setIngestStageSizes(ExecutorConfig cfg) {
+        ReflectionTestUtils.setField(cfg, "ingestProcessConcurrency", 2);
+        ReflectionTestUtils.setField(cfg, "ingestProcessQueueCapacity", 4);
+        ReflectionTestUtils.setField(cfg, "ingestPersistConcurrency", 1);
+        ReflectionTestUtils.setField(cfg, "ingestPersistQueueCapacity", 4);
+        ReflectionTestUtils.setField(cfg, "ingestNotifyConcurrency", 1);
+        ReflectionTestUtils.setField(cfg, "ingestNotifyQueueCapacity", 4);
+    }
+
     @AfterEach
     void clearInterruptIfSet() {
         if (Thread.currentThread().isInterrupted()) {
@@ -52,18 +66,28 @@ class ExecutorConfigTest {
     @DisplayName("All @Bean methods: non-null, distinct instances, and private fields are set")
     void beanMethods_createExecutors_andSetFields() {
         ExecutorConfig cfg = new ExecutorConfig();
+        setIngestStageSizes(cfg);
 
-        ExecutorService directoryWatcher = cfg.directoryWatcherExecutor();
+        ExecutorService directoryWatcher = cfg.ingestProcessExecutor();
+        ExecutorService ingestPersist = cfg.ingestPersistExecutor();
+        ExecutorService ingestNotify = cfg.ingestNotifyExecutor();
         ExecutorService remoteWatcher = cfg.remoteDirectoryWatcherExecutor();
         ScheduledExecutorService remoteWatcherSched = cfg.remoteDirectoryWatcherScheduledExecutor();
         ScheduledExecutorService barcodeSched = cfg.barcodeUploadScheduledExecutor();
         ScheduledExecutorService stabilizer = cfg.stabilizerScheduler();
+        ReflectionTestUtils.setField(cfg, "gcsUploadParallelism", 2);
+        ExecutorService gcsUpload = cfg.gcsUploadExecutor();
+        ScheduledExecutorService tokenRefresh = cfg.tokenRefreshScheduler();
+        ScheduledExecutorService stowBatch = cfg.stowBatchScheduler();
 
         assertNotNull(directoryWatcher);
         assertNotNull(remoteWatcher);
         assertNotNull(remoteWatcherSched);
         assertNotNull(barcodeSched);
         assertNotNull(stabilizer);
+        assertNotNull(gcsUpload);
+        assertNotNull(tokenRefresh);
+        assertNotNull(stowBatch);
 
         // Distinct instances
         assertNotSame(directoryWatcher, remoteWatcher);
@@ -71,13 +95,73 @@ class ExecutorConfigTest {
         assertNotSame(remoteWatcherSched, barcodeSched);
         assertNotSame(barcodeSched, stabilizer);
         assertNotSame(stabilizer, directoryWatcher);
+        assertNotSame(directoryWatcher, ingestPersist);
+        assertNotSame(ingestPersist, ingestNotify);
 
         // Private fields should be set by bean methods
-        assertSame(directoryWatcher, getField(cfg, "directoryWatcherExecutor"));
+        assertSame(directoryWatcher, getField(cfg, "ingestProcessExecutor"));
+        assertSame(ingestPersist, getField(cfg, "ingestPersistExecutor"));
+        assertSame(ingestNotify, getField(cfg, "ingestNotifyExecutor"));
         assertSame(remoteWatcher, getField(cfg, "remoteDirectoryWatcherExecutor"));
         assertSame(remoteWatcherSched, getField(cfg, "remoteDirectoryWatcherScheduledExecutor"));
         assertSame(barcodeSched, getField(cfg, "barcodeUploadScheduledExecutor"));
         assertSame(stabilizer, getField(cfg, "stabilizerScheduler"));
+        assertSame(gcsUpload, getField(cfg, "gcsUploadExecutor"));
+        assertSame(tokenRefresh, getField(cfg, "tokenRefreshScheduler"));
+        assertSame(stowBatch, getField(cfg, "stowBatchScheduler"));
+
+        cfg.shutdownExecutors();
+        assertTrue(gcsUpload.isShutdown());
+        assertTrue(tokenRefresh.isShutdown());
+        assertTrue(stowBatch.isShutdown());
+        assertTrue(directoryWatcher.isShutdown());
+        assertTrue(ingestPersist.isShutdown());
+        assertTrue(ingestNotify.isShutdown());
+    }
+
+    @Test
+    @DisplayName("boundedExecutor(): a full queue blocks the submitter until a slot frees up")
+    void boundedExecutor_fullQueue_blocksSubmitter() throws Exception {
+        ThreadPoolExecutor executor = ExecutorConfig.boundedExecutor("test stage", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> awaitQuietly(release)); // occupies the only thread
+            executor.execute(() -> { });                    // fills the queue
+
+            AtomicBoolean submitted = new AtomicBoolean();
+            Thread submitter = new Thread(() -> {
+                executor.execute(() -> { });
+                submitted.set(true);
+            });
+            submitter.start();
+            submitter.join(300);
+            assertFalse(submitted.get(), "Submitter should wait while the stage is full");
+
+            release.countDown();
+            submitter.join(5000);
+            assertTrue(submitted.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("boundedExecutor(): rejects new work once shut down")
+    void boundedExecutor_shutDown_rejects() {
+        ThreadPoolExecutor executor = ExecutorConfig.boundedExecutor("test stage", 1, 1);
+        executor.shutdown();
+
+        RejectedExecutionException ex = assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        assertTrue(ex.getMessage().contains("test stage"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     // ---------- shutdownExecutors() coverage: nulls + await=true ----------
@@ -90,7 +174,7 @@ class ExecutorConfigTest {
         ExecutorService dir = mock(ExecutorService.class);
         ScheduledExecutorService barcode = mock(ScheduledExecutorService.class);
         // leave others null to hit the null guard
-        setField(cfg, "directoryWatcherExecutor", dir);
+        setField(cfg, "ingestProcessExecutor", dir);
         setField(cfg, "remoteDirectoryWatcherExecutor", null);
         setField(cfg, "remoteDirectoryWatcherScheduledExecutor", null);
         setField(cfg, "barcodeUploadScheduledExecutor", barcode);
@@ -125,7 +209,7 @@ class ExecutorConfigTest {
         ScheduledExecutorService barcode = mock(ScheduledExecutorService.class);
         ScheduledExecutorService stabilizer = mock(ScheduledExecutorService.class);
 
-        setField(cfg, "directoryWatcherExecutor", dir);
+        setField(cfg, "ingestProcessExecutor", dir);
         setField(cfg, "remoteDirectoryWatcherExecutor", remote);
         setField(cfg, "remoteDirectoryWatcherScheduledExecutor", remoteSched);
         setField(cfg, "barcodeUploadScheduledExecutor", barcode);
@@ -179,7 +263,7 @@ class ExecutorConfigTest {
         ExecutorConfig cfg = new ExecutorConfig();
 
         ExecutorService dir = mock(ExecutorService.class);
-        setField(cfg, "directoryWatcherExecutor", dir);
+        setField(cfg, "ingestProcessExecutor", dir);
 
         when(dir.awaitTermination(60, TimeUnit.SECONDS))
                 .thenThrow(new InterruptedException("test interrupt"));
@@ -206,7 +290,8 @@ class ExecutorConfigTest {
         ExecutorConfig cfg = new ExecutorConfig();
 
         // Create real executors via bean methods (this also sets the private fields)
-        cfg.directoryWatcherExecutor();
+        setIngestStageSizes(cfg);
+        cfg.ingestProcessExecutor();
         cfg.remoteDirectoryWatcherExecutor();
         cfg.remoteDirectoryWatcherScheduledExecutor();
         cfg.barcodeUploadScheduledExecutor();
@@ -216,7 +301,7 @@ class ExecutorConfigTest {
         assertDoesNotThrow(cfg::shutdownExecutors);
 
         // Fields should now be non-null and (most likely) shut down
-        Object dir = getField(cfg, "directoryWatcherExecutor");
+        Object dir = getField(cfg, "ingestProcessExecutor");
         Object remote = getField(cfg, "remoteDirectoryWatcherExecutor");
         Object remoteSched = getField(cfg, "remoteDirectoryWatcherScheduledExecutor");
         Object barcode = getField(cfg, "barcodeUploadScheduledExecutor");
@@ -228,4 +313,53 @@ class ExecutorConfigTest {
         assertNotNull(barcode);
         assertNotNull(stabilizer);
     }
-}
\ No newline at end of file
+
+    // ---------- virtual threads ----------
+
+    @Test
+    @DisplayName("Virtual threads disabled: ingest stages and the DICOM device use platform thread pools")
+    void virtualThreadsDisabled_usesPlatformPools() throws Exception {
+        ExecutorConfig cfg = new ExecutorConfig();
+        setIngestStageSizes(cfg);
+
+        assertFalse(cfg.useVirtualThreads());
+        assertInstanceOf(ThreadPoolExecutor.class, cfg.ingestProcessExecutor());
+        ExecutorService device = cfg.dicomDeviceExecutor();
+        assertInstanceOf(ThreadPoolExecutor.class, device);
+        assertEquals(Boolean.FALSE, device.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get(5, TimeUnit.SECONDS));
+
+        cfg.shutdownExecutors();
+        assertTrue(device.isShutdown());
+    }
+
+    @Test
+    @DisplayName("Virtual threads enabled: tasks run on virtual threads, or on platform pools where the JDK has none")
+    void virtualThreadsEnabled_followsRuntimeSupport() throws Exception {
+        ExecutorConfig cfg = new ExecutorConfig();
+        setIngestStageSizes(cfg);
+        ReflectionTestUtils.setField(cfg, "virtualThreadsEnabled", true);
+        ReflectionTestUtils.setField(cfg, "sharedFolderConcurrency", 2);
+        ReflectionTestUtils.setField(cfg, "gcsUploadParallelism", 2);
+
+        boolean supported = VirtualThreads.isSupported();
+        assertEquals(supported, cfg.useVirtualThreads());
+
+        ExecutorService ingest = cfg.ingestProcessExecutor();
+        ExecutorService gcs = cfg.gcsUploadExecutor();
+        ExecutorService remote = cfg.remoteDirectoryWatcherExecutor();
+        ScheduledExecutorService token = cfg.tokenRefreshScheduler();
+        ScheduledExecutorService stabilizer = cfg.stabilizerScheduler();
+
+        for (ExecutorService executor : new ExecutorService[] { ingest, gcs, remote, token }) {
+            assertEquals(supported, executor.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get(5, TimeUnit.SECONDS));
+        }
+        // The stabilizer's timing wheel always keeps its platform thread
+        assertEquals(Boolean.FALSE, stabilizer.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get(5, TimeUnit.SECONDS));
+        // Ingest stages stay bounded on virtual threads, keeping their backpressure
+        assertInstanceOf(ThreadPoolExecutor.class, ingest);
+        assertEquals(2, ((ThreadPoolExecutor) ingest).getMaximumPoolSize());
+        assertEquals(4, ((ThreadPoolExecutor) ingest).getQueue().remainingCapacity());
+
+        cfg.shutdownExecutors();
+    }
+}
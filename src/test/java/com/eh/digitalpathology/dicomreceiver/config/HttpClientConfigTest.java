@@ -0,0 +1,82 @@
+package com.eh.digitalpathology.dicomreceiver.config;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpClientConfigTest {
+
+    private MockWebServer server;
+    private CloseableHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        HttpClientConfig cfg = new HttpClientConfig();
+        ReflectionTestUtils.setField(cfg, "maxTotal", 10);
+        ReflectionTestUtils.setField(cfg, "maxPerRoute", 5);
+        ReflectionTestUtils.setField(cfg, "idleTimeoutSeconds", 60L);
+        ReflectionTestUtils.setField(cfg, "validateAfterInactivityMs", 1000);
+        ReflectionTestUtils.setField(cfg, "connectTimeoutMs", 5000);
+        ReflectionTestUtils.setField(cfg, "socketTimeoutMs", 5000);
+        ReflectionTestUtils.setField(cfg, "connectionRequestTimeoutMs", 5000);
+        client = cfg.healthcareApiHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.shutdown();
+    }
+
+    private int post(String body) throws IOException {
+        HttpPost post = new HttpPost(server.url("/dicomWeb/studies").uri());
+        post.setEntity(new StringEntity(body));
+        try (CloseableHttpResponse response = client.execute(post)) {
+            EntityUtils.consume(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        }
+    }
+
+    @Test
+    @DisplayName("healthcareApiHttpClient(): consecutive requests reuse the same pooled connection")
+    void reusesKeepAliveConnection() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+
+        assertEquals(200, post("first"));
+        assertEquals(200, post("second"));
+
+        // sequenceNumber is the index of the request on its connection: 1 means the socket was reused
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    @DisplayName("healthcareApiHttpClient(): connection is still reused after an error response")
+    void reusesConnectionAfterErrorResponse() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("failure"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+
+        assertEquals(500, post("first"));
+        assertEquals(200, post("second"));
+
+        server.takeRequest();
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+}
@@ -0,0 +1,48 @@
+package com.eh.digitalpathology.dicomreceiver.config;
+
+import com.eh.digitalpathology.dicomreceiver.util.UploadBufferPool;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StorageConfigTest {
+
+    @Test
+    @DisplayName("storage(): builds the client once from StorageOptions with retry settings")
+    void storageBuildsClientFromOptions() {
+        StorageOptions.Builder builder = mock(StorageOptions.Builder.class);
+        StorageOptions options = mock(StorageOptions.class);
+        Storage storage = mock(Storage.class);
+
+        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class)) {
+            mocked.when(StorageOptions::newBuilder).thenReturn(builder);
+            when(builder.setRetrySettings(any())).thenReturn(builder);
+            when(builder.build()).thenReturn(options);
+            when(options.getService()).thenReturn(storage);
+
+            assertSame(storage, new StorageConfig().storage());
+            verify(builder).setRetrySettings(any());
+            mocked.verify(StorageOptions::newBuilder, times(1));
+        }
+    }
+
+    @Test
+    @DisplayName("uploadBufferPool(): sizes the pool from the configured MB and count")
+    void uploadBufferPoolUsesConfiguredSizes() {
+        StorageConfig cfg = new StorageConfig();
+        ReflectionTestUtils.setField(cfg, "uploadBufferSizeMb", 2);
+        ReflectionTestUtils.setField(cfg, "uploadBufferCount", 3);
+
+        UploadBufferPool pool = cfg.uploadBufferPool();
+
+        assertEquals(2 * 1024 * 1024, pool.getBufferSize());
+        assertEquals(3, pool.availableBuffers());
+    }
+}
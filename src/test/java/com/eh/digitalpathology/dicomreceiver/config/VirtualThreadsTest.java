@@ -0,0 +1,61 @@
+package com.eh.digitalpathology.dicomreceiver.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadsTest {
+
+    @Test
+    void isSupported_matchesRuntimeVersion() {
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads.isSupported());
+    }
+
+    @Test
+    void isVirtual_falseForPlatformThread() {
+        assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+    }
+
+    @Test
+    void unsupportedRuntime_throws() {
+        assumeFalse(VirtualThreads.isSupported());
+
+        assertThrows(UnsupportedOperationException.class, () -> VirtualThreads.factory("test"));
+        assertThrows(UnsupportedOperationException.class, () -> VirtualThreads.newThreadPerTaskExecutor("test"));
+    }
+
+    @Test
+    void factory_createsNamedVirtualThreads() {
+        assumeTrue(VirtualThreads.isSupported());
+
+        ThreadFactory factory = VirtualThreads.factory("test");
+        Thread first = factory.newThread(() -> { });
+        Thread second = factory.newThread(() -> { });
+
+        assertTrue(VirtualThreads.isVirtual(first));
+        assertEquals("test-0", first.getName());
+        assertEquals("test-1", second.getName());
+    }
+
+    @Test
+    void newThreadPerTaskExecutor_runsEachTaskOnItsOwnVirtualThread() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test");
+        try {
+            Thread first = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            Thread second = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+
+            assertTrue(VirtualThreads.isVirtual(first));
+            assertNotSame(first, second);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
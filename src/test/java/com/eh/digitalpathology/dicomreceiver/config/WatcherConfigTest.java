@@ -0,0 +1,44 @@
+package com.eh.digitalpathology.dicomreceiver.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatcherConfigTest {
+
+    @Test
+    @DisplayName("No additional roots and sensible per-root defaults")
+    void testDefaults() {
+        WatcherConfig config = new WatcherConfig();
+        WatcherConfig.Root root = new WatcherConfig.Root();
+
+        assertTrue(config.getRoots().isEmpty());
+        assertNull(root.getPath());
+        assertEquals(4, root.getConcurrency());
+        assertEquals(32, root.getQueueCapacity());
+        assertEquals(32, root.getMaxInFlight());
+        assertEquals(Thread.NORM_PRIORITY, root.getPriority());
+    }
+
+    @Test
+    @DisplayName("Should set and get all root properties")
+    void testRootProperties() {
+        WatcherConfig.Root root = new WatcherConfig.Root();
+        root.setPath("/mnt/scanner2");
+        root.setConcurrency(6);
+        root.setQueueCapacity(12);
+        root.setMaxInFlight(18);
+        root.setPriority(8);
+        WatcherConfig config = new WatcherConfig();
+        config.setRoots(List.of(root));
+
+        assertEquals("/mnt/scanner2", config.getRoots().get(0).getPath());
+        assertEquals(6, root.getConcurrency());
+        assertEquals(12, root.getQueueCapacity());
+        assertEquals(18, root.getMaxInFlight());
+        assertEquals(8, root.getPriority());
+    }
+}
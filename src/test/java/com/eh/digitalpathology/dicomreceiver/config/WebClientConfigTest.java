@@ -1,16 +1,24 @@
 package com.eh.digitalpathology.dicomreceiver.config;
 
 import org.junit.jupiter.api.DisplayName;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.test.util.ReflectionTestUtils;
 import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -58,4 +66,68 @@ class WebClientConfigTest {
         // Verify default header from config is set
         assertEquals(MediaType.APPLICATION_JSON_VALUE, capturedContentType.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("dbConnectorConnectionProvider(): named pool sized from config")
+    void testConnectionProviderIsSizedFromConfig() {
+        WebClientConfig cfg = new WebClientConfig();
+        ReflectionTestUtils.setField(cfg, "maxConnections", 12);
+
+        ConnectionProvider provider = cfg.dbConnectorConnectionProvider();
+        try {
+            assertEquals("db-connector", provider.name());
+            assertEquals(12, provider.maxConnections());
+        } finally {
+            provider.disposeLater().block();
+        }
+    }
+
+    @Test
+    @DisplayName("webClient(): fails fast once the pending-acquire queue of a saturated pool is full")
+    void testSaturatedPoolRejectsBeyondPendingAcquireLimit() throws Exception {
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/slow", exchange -> {
+            arrived.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "ok".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        WebClientConfig cfg = new WebClientConfig();
+        setBaseUrl(cfg, "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(cfg, "maxConnections", 1);
+        ReflectionTestUtils.setField(cfg, "pendingAcquireMaxCount", 1);
+        WebClient client = cfg.webClient();
+        try {
+            CompletableFuture<?> inFlight = client.get().uri("/slow").retrieve().toBodilessEntity().toFuture();
+            assertTrue(arrived.await(5, TimeUnit.SECONDS));
+            CompletableFuture<?> pending = client.get().uri("/slow").retrieve().toBodilessEntity().toFuture();
+
+            Mono<?> rejected = client.get().uri("/slow").retrieve().toBodilessEntity();
+            Exception ex = assertThrows(Exception.class, rejected::block);
+            Throwable cause = ex;
+            // Reactor Netty shades reactor-pool, so match the pool's exception by name
+            while (cause != null && !"PoolAcquirePendingLimitException".equals(cause.getClass().getSimpleName())) {
+                cause = cause.getCause();
+            }
+            assertNotNull(cause, "expected the pool to reject the request, got " + ex);
+
+            release.countDown();
+            inFlight.get(5, TimeUnit.SECONDS);
+            pending.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
+import com.eh.digitalpathology.dicomreceiver.exceptions.HealthcareApiException;
+import com.eh.digitalpathology.dicomreceiver.util.GCPUtils;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccessTokenServiceTest {
+
+    private static final String CREDS = "{\"type\":\"service_account\"}";
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Mock
+    private GcpConfig gcpConfig;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    @Mock
+    private GoogleCredentials credentials;
+    @Mock
+    private ScheduledFuture<Object> scheduledFuture;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MutableClock clock;
+    private AccessTokenService accessTokenService;
+    private MockedStatic<GCPUtils> gcpUtils;
+
+    /** Clock whose instant can be moved forward by the test. */
+    private static final class MutableClock extends Clock {
+        private Instant instant = NOW;
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new MutableClock();
+        accessTokenService = new AccessTokenService(gcpConfig, scheduler, meterRegistry, clock);
+        ReflectionTestUtils.setField(accessTokenService, "refreshMarginSeconds", 300L);
+        ReflectionTestUtils.setField(accessTokenService, "minValiditySeconds", 60L);
+        ReflectionTestUtils.setField(accessTokenService, "retryDelaySeconds", 30L);
+        gcpUtils = mockStatic(GCPUtils.class);
+        lenient().when(gcpConfig.getCreds()).thenReturn(CREDS);
+        lenient().doReturn(scheduledFuture).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        gcpUtils.close();
+    }
+
+    private static AccessToken token(String value, Instant expiresAt) {
+        return new AccessToken(value, Date.from(expiresAt));
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("gcp.access.token", "result", result).count();
+    }
+
+    private Runnable capturedRefresh() {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, atLeastOnce()).schedule(task.capture(), anyLong(), any(TimeUnit.class));
+        return task.getValue();
+    }
+
+    @Test
+    void getAccessToken_BlankCredentials_ReturnsEmptyWithoutNetworkCall() {
+        when(gcpConfig.getCreds()).thenReturn("  ");
+
+        assertEquals("", accessTokenService.getAccessToken());
+
+        gcpUtils.verifyNoInteractions();
+        verifyNoInteractions(scheduler);
+    }
+
+    @Test
+    void getAccessToken_ReusesCachedTokenUntilNearExpiry() throws Exception {
+        gcpUtils.when(() -> GCPUtils.createCredentials(CREDS)).thenReturn(credentials);
+        when(credentials.refreshAccessToken()).thenReturn(token("T1", NOW.plusSeconds(3600)));
+
+        assertEquals("T1", accessTokenService.getAccessToken());
+        assertEquals("T1", accessTokenService.getAccessToken());
+        assertEquals("T1", accessTokenService.getAccessToken());
+
+        verify(credentials, times(1)).refreshAccessToken();
+        gcpUtils.verify(() -> GCPUtils.createCredentials(CREDS), times(1));
+        assertEquals(1.0, count("sync_refresh"));
+        assertEquals(2.0, count("hit"));
+        // Background refresh planned refresh-margin seconds before expiry
+        verify(scheduler).schedule(any(Runnable.class), eq(3300_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void backgroundRefresh_ReplacesTokenOffTheHotPath() throws Exception {
+        gcpUtils.when(() -> GCPUtils.createCredentials(CREDS)).thenReturn(credentials);
+        when(credentials.refreshAccessToken())
+                .thenReturn(token("T1", NOW.plusSeconds(3600)))
+                .thenReturn(token("T2", NOW.plusSeconds(7200)));
+
+        assertEquals("T1", accessTokenService.getAccessToken());
+        clock.instant = NOW.plusSeconds(3300);
+        capturedRefresh().run();
+
+        assertEquals("T2", accessTokenService.getAccessToken());
+        verify(credentials, times(2)).refreshAccessToken();
+        assertEquals(1.0, count("background_refresh"));
+        assertEquals(1.0, count("sync_refresh"));
+        assertEquals(1.0, count("hit"));
+    }
+
+    @Test
+    void backgroundRefreshFailure_KeepsValidTokenAndRetries() throws Exception {
+        gcpUtils.when(() -> GCPUtils.createCredentials(CREDS)).thenReturn(credentials);
+        when(credentials.refreshAccessToken())
+                .thenReturn(token("T1", NOW.plusSeconds(3600)))
+                .thenThrow(new IOException("token endpoint down"));
+
+        accessTokenService.getAccessToken();
+        clock.instant = NOW.plusSeconds(3300);
+        capturedRefresh().run();
+
+        assertEquals("T1", accessTokenService.getAccessToken());
+        assertEquals(1.0, count("refresh_failure"));
+        verify(scheduler).schedule(any(Runnable.class), eq(30_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void getAccessToken_TokenAboutToExpire_RefreshesSynchronously() throws Exception {
+        gcpUtils.when(() -> GCPUtils.createCredentials(CREDS)).thenReturn(credentials);
+        when(credentials.refreshAccessToken())
+                .thenReturn(token("T1", NOW.plusSeconds(3600)))
+                .thenReturn(token("T2", NOW.plusSeconds(7200)));
+
+        accessTokenService.getAccessToken();
+        // Background refresh never ran and less than min-validity remains
+        clock.instant = NOW.plusSeconds(3570);
+
+        assertEquals("T2", accessTokenService.getAccessToken());
+        assertEquals(2.0, count("sync_refresh"));
+        gcpUtils.verify(() -> GCPUtils.createCredentials(CREDS), times(1));
+    }
+
+    @Test
+    void getAccessToken_CredentialsChanged_DiscardsCachedToken() throws Exception {
+        GoogleCredentials rotated = mock(GoogleCredentials.class);
+        gcpUtils.when(() -> GCPUtils.createCredentials(CREDS)).thenReturn(credentials);
+        gcpUtils.when(() -> GCPUtils.createCredentials("{\"rotated\":true}")).thenReturn(rotated);
+        when(credentials.refreshAccessToken()).thenReturn(token("T1", NOW.plusSeconds(3600)));
+        when(rotated.refreshAccessToken()).thenReturn(token("R1", NOW.plusSeconds(3600)));
+
+        assertEquals("T1", accessTokenService.getAccessToken());
+        when(gcpConfig.getCreds()).thenReturn("{\"rotated\":true}");
+
+        assertEquals("R1", accessTokenService.getAccessToken());
+    }
+
+    @Test
+    void getAccessToken_RefreshFails_ThrowsHealthcareApiException() throws Exception {
+        gcpUtils.when(() -> GCPUtils.createCredentials(CREDS)).thenThrow(new IOException("bad json"));
+
+        HealthcareApiException ex = assertThrows(HealthcareApiException.class,
+                () -> accessTokenService.getAccessToken());
+
+        assertTrue(ex.getMessage().contains("Failed to get access token"));
+        assertEquals(1.0, count("refresh_failure"));
+    }
+}
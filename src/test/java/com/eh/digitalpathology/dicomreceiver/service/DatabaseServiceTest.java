@@ -3,6 +3,7 @@ package com.eh.digitalpathology.dicomreceiver.service;
 import com.eh.digitalpathology.dicomreceiver.config.DBRestClient;
 import com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption;
 import com.eh.digitalpathology.dicomreceiver.model.*;
+import io.netty.handler.timeout.ReadTimeoutException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -11,9 +12,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -26,6 +34,10 @@ class DatabaseServiceTest {
 
     @Mock
     private DBRestClient dbRestClient;
+    @Mock
+    private IngestMetrics ingestMetrics;
+    @Spy
+    private DownstreamLimits downstreamLimits = new DownstreamLimits(64, 100, 16, 8);
 
     @InjectMocks
     private DatabaseService databaseService;
@@ -65,6 +77,25 @@ class DatabaseServiceTest {
         assertEquals("DB error", exception.getMessage());
     }
 
+    @Test
+    void testInsertDicomDataBatch_success() {
+        databaseService.uriInsertBatch = "dicom/instances/batch";
+        List<DicomRequestDBObject> batch = List.of(new DicomRequestDBObject(), new DicomRequestDBObject());
+        when(dbRestClient.exchange(eq(HttpMethod.POST), eq("dicom/instances/batch"), eq(batch), any(ParameterizedTypeReference.class), any()))
+                .thenReturn(Mono.just(new ApiResponse<>("Success", "Inserted", "", "")));
+
+        assertEquals("Success", databaseService.insertDicomDataBatch(batch, "TestService"));
+    }
+
+    @Test
+    void testInsertDicomDataBatch_failure() {
+        databaseService.uriInsertBatch = "dicom/instances/batch";
+        when(dbRestClient.exchange(any(), anyString(), any(), any(), any()))
+                .thenThrow(new RuntimeException("DB error"));
+
+        assertThrows(DbConnectorExeption.class, () -> databaseService.insertDicomDataBatch(List.of(new DicomRequestDBObject()), "TestService"));
+    }
+
    /* @Test
     void testInsertDicomData_withNullResponse() {
         DicomRequestDBObject request = new DicomRequestDBObject();
@@ -368,6 +399,56 @@ class DatabaseServiceTest {
         assertNull(result);
     }
 
+    @Test
+    void testFetchQaSlideBarcodes_success() {
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("qaslide/barcodes"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenReturn(Mono.just(new ApiResponse<>("Success", List.of("QA-1", "QA-2"), "", "")));
+
+        assertEquals(List.of("QA-1", "QA-2"), databaseService.fetchQaSlideBarcodes("qaslide/barcodes"));
+    }
+
+    @Test
+    void testFetchQaSlideBarcodes_noContent() {
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("qaslide/barcodes"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenReturn(Mono.just(new ApiResponse<>("Success", null, "", "")));
+
+        assertEquals(List.of(), databaseService.fetchQaSlideBarcodes("qaslide/barcodes"));
+    }
+
+    @Test
+    void testFetchQaSlideBarcodes_error() {
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("qaslide/barcodes"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenThrow(new RuntimeException("Connection error"));
+
+        assertThrows(DbConnectorExeption.class, () -> databaseService.fetchQaSlideBarcodes("qaslide/barcodes"));
+    }
+
+    @Test
+    void testFindScannerByDeviceSerialNumber_success() {
+        SlideScanner scanner = new SlideScanner("id123", "name", "model", "vendor",
+                "location", "store", "AE", "device", "SN12345", false, true);
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("scanner/SN12345"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenReturn(Mono.just(new ApiResponse<>("Success", scanner, "", "")));
+
+        assertEquals(Optional.of(scanner), databaseService.findScannerByDeviceSerialNumber("SN12345"));
+    }
+
+    @Test
+    void testFindScannerByDeviceSerialNumber_unknownScanner() {
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("scanner/SN12345"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenReturn(Mono.just(new ApiResponse<>("Success", null, "", "")));
+
+        assertEquals(Optional.empty(), databaseService.findScannerByDeviceSerialNumber("SN12345"));
+    }
+
+    @Test
+    void testFindScannerByDeviceSerialNumber_errorIsThrown() {
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("scanner/SN12345"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenReturn(Mono.error(new DbConnectorExeption("DB_ERROR", "Connection refused")));
+
+        assertThrows(DbConnectorExeption.class, () -> databaseService.findScannerByDeviceSerialNumber("SN12345"));
+    }
+
     @Test
     void testInsertDicomData_withDifferentServiceNames() {
         DicomRequestDBObject request = new DicomRequestDBObject();
@@ -387,4 +468,99 @@ class DatabaseServiceTest {
         assertEquals("Success", result3);
         verify(dbRestClient, times(3)).exchange(any(), anyString(), any(), any(), any());
     }
+
+    @Test
+    void testInsertDicomDataReactive_isLazyAndHoldsDbConnectorPermit() {
+        DicomRequestDBObject request = new DicomRequestDBObject();
+        when(dbRestClient.exchange(eq(HttpMethod.POST), eq("dicom/insert"), eq(request), any(ParameterizedTypeReference.class), any()))
+                .thenReturn(Mono.fromCallable(() -> {
+                    assertEquals(63, downstreamLimits.available(DownstreamLimits.Downstream.DB_CONNECTOR));
+                    return new ApiResponse<>("success", "id", "", "");
+                }));
+
+        Mono<String> insert = databaseService.insertDicomDataReactive(request, "Service1");
+        verifyNoInteractions(dbRestClient);
+
+        assertEquals("success", insert.block());
+        assertEquals(64, downstreamLimits.available(DownstreamLimits.Downstream.DB_CONNECTOR));
+    }
+
+    @Test
+    void testInsertDicomDataReactive_retriedOnlyWhenRequestNotSent() {
+        databaseService.maxRetries = 2;
+        databaseService.retryBackoffMs = 1;
+        DicomRequestDBObject request = new DicomRequestDBObject();
+        WebClientRequestException refused = new WebClientRequestException(new ConnectException("Connection refused"), HttpMethod.POST, URI.create("http://db/dicom/insert"), new HttpHeaders());
+        when(dbRestClient.exchange(any(), anyString(), any(), any(), any()))
+                .thenReturn(Mono.error(refused), Mono.just(new ApiResponse<>("success", "id", "", "")));
+
+        assertEquals("success", databaseService.insertDicomDataReactive(request, "Service1").block());
+        verify(dbRestClient, times(2)).exchange(any(), anyString(), any(), any(), any());
+    }
+
+    @Test
+    void testInsertDicomDataReactive_responseTimeoutAfterPostIsNotResent() {
+        databaseService.maxRetries = 2;
+        databaseService.retryBackoffMs = 1;
+        WebClientRequestException readTimeout = new WebClientRequestException(ReadTimeoutException.INSTANCE, HttpMethod.POST, URI.create("http://db/dicom/insert"), new HttpHeaders());
+        when(dbRestClient.exchange(any(), anyString(), any(), any(), any()))
+                .thenReturn(Mono.error(readTimeout), Mono.just(new ApiResponse<>("success", "id", "", "")));
+
+        Mono<String> insert = databaseService.insertDicomDataReactive(new DicomRequestDBObject(), "Service1");
+
+        assertThrows(DbConnectorExeption.class, insert::block);
+        verify(dbRestClient, times(1)).exchange(any(), anyString(), any(), any(), any());
+    }
+
+    @Test
+    void testNeverSent_onlyWhenNoConnectionWasMade() {
+        assertTrue(DatabaseService.neverSent(new WebClientRequestException(new UnknownHostException("db"), HttpMethod.POST, URI.create("http://db/dicom/insert"), new HttpHeaders())));
+        assertTrue(DatabaseService.neverSent(new RuntimeException(new ConnectException("Connection refused"))));
+        assertFalse(DatabaseService.neverSent(new WebClientRequestException(new IOException("Connection reset by peer"), HttpMethod.POST, URI.create("http://db/dicom/insert"), new HttpHeaders())));
+        assertFalse(DatabaseService.neverSent(new RuntimeException("Connection prematurely closed BEFORE response")));
+    }
+
+    @Test
+    void testInsertDicomDataReactive_timeoutIsNotRetried() {
+        databaseService.timeoutMs = 50;
+        databaseService.maxRetries = 2;
+        databaseService.retryBackoffMs = 1;
+        when(dbRestClient.exchange(any(), anyString(), any(), any(), any())).thenReturn(Mono.never());
+
+        Mono<String> insert = databaseService.insertDicomDataReactive(new DicomRequestDBObject(), "Service1");
+
+        DbConnectorExeption ex = assertThrows(DbConnectorExeption.class, insert::block);
+        assertEquals("DB error", ex.getErrorCode());
+        verify(dbRestClient, times(1)).exchange(any(), anyString(), any(), any(), any());
+        assertEquals(64, downstreamLimits.available(DownstreamLimits.Downstream.DB_CONNECTOR));
+    }
+
+    @Test
+    void testFindScannerByDeviceSerialNumberReactive_retriesTimeoutsButNotConnectorErrors() {
+        databaseService.timeoutMs = 50;
+        databaseService.maxRetries = 2;
+        databaseService.retryBackoffMs = 1;
+        SlideScanner scanner = new SlideScanner("id123", "name", "model", "vendor",
+                "location", "store", "AE", "device", "SN12345", false, true);
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("scanner/SN12345"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenReturn(Mono.never(), Mono.just(new ApiResponse<>("Success", scanner, "", "")));
+
+        assertEquals(scanner, databaseService.findScannerByDeviceSerialNumberReactive("SN12345").block(Duration.ofSeconds(5)));
+
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("scanner/SN99"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenReturn(Mono.error(new DbConnectorExeption("NOT_ALLOWED", "Denied")));
+
+        Mono<SlideScanner> denied = databaseService.findScannerByDeviceSerialNumberReactive("SN99");
+        DbConnectorExeption ex = assertThrows(DbConnectorExeption.class, denied::block);
+        assertEquals("NOT_ALLOWED", ex.getErrorCode());
+        verify(dbRestClient, times(1)).exchange(eq(HttpMethod.GET), eq("scanner/SN99"), isNull(), any(ParameterizedTypeReference.class), isNull());
+    }
+
+    @Test
+    void testFetchQaSlideBarcodesReactive_emitsEachBarcode() {
+        when(dbRestClient.exchange(eq(HttpMethod.GET), eq("qaslide/barcodes"), isNull(), any(ParameterizedTypeReference.class), isNull()))
+                .thenReturn(Mono.just(new ApiResponse<>("Success", List.of("QA-1", "QA-2"), "", "")));
+
+        assertEquals(List.of("QA-1", "QA-2"), databaseService.fetchQaSlideBarcodesReactive("qaslide/barcodes").collectList().block());
+    }
 }
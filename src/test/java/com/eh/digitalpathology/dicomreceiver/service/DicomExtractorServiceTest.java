@@ -1,6 +1,8 @@
 package com.eh.digitalpathology.dicomreceiver.service;
 
 import com.eh.digitalpathology.dicomreceiver.api.DicomHealthcareApiClient;
+import com.eh.digitalpathology.dicomreceiver.api.DicomUpload;
+import com.eh.digitalpathology.dicomreceiver.api.StowBatchUploader;
 import com.eh.digitalpathology.dicomreceiver.config.GcpConfig;
 import com.eh.digitalpathology.dicomreceiver.config.KafkaTopicConfig;
 import com.eh.digitalpathology.dicomreceiver.exceptions.DicomAttributesException;
@@ -8,10 +10,6 @@ import com.eh.digitalpathology.dicomreceiver.model.DicomDirDocument;
 import com.eh.digitalpathology.dicomreceiver.model.DicomRequestDBObject;
 import com.eh.digitalpathology.dicomreceiver.model.SlideScanner;
 import com.github.benmanes.caffeine.cache.Cache;
-import com.google.cloud.WriteChannel;
-import com.google.cloud.storage.BlobInfo;
-import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.VR;
@@ -26,13 +24,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -47,8 +45,6 @@ class DicomExtractorServiceTest {
     @Mock
     private KafkaTopicConfig kafkaTopicConfig;
     @Mock
-    private DatabaseService dbService;
-    @Mock
     private DicomHealthcareApiClient dicomHealthcareApiClient;
     @Mock
     private Cache<String, String> studyBarcodeCache;
@@ -62,6 +58,16 @@ class DicomExtractorServiceTest {
     private GcpConfig gcpConfig;
     @Mock
     private SeriesUploadTrackerService seriesUploadTrackerService;
+    @Mock
+    private GcsUploadService gcsUploadService;
+    @Mock
+    private StowBatchUploader stowBatchUploader;
+    @Mock
+    private IngestMetrics ingestMetrics;
+    @Mock
+    private SlideScannerCache slideScannerCache;
+    @Mock
+    private QaBarcodeCache qaBarcodeCache;
 
     @InjectMocks
     private DicomExtractorService dicomExtractorService;
@@ -86,7 +92,7 @@ class DicomExtractorServiceTest {
     void setup() {
         mockPath = Paths.get("/mock/path");
         attributes = new Attributes();
-        lenient().when(dbService.fetchScannerByDeviceSerialNumber(anyString()))
+        lenient().when(slideScannerCache.get(anyString()))
                 .thenReturn(CONNECTED_SCANNER);
         ReflectionTestUtils.setField(dicomExtractorService, "enableBarcodeGeneration", false);
     }
@@ -104,20 +110,6 @@ class DicomExtractorServiceTest {
         return dicomFile;
     }
 
-    /** Wire standard GCS mocks inside a MockedStatic<StorageOptions> block. */
-    private void wireGcsMock(MockedStatic<StorageOptions> mocked) {
-        StorageOptions.Builder mockBuilder = mock(StorageOptions.Builder.class);
-        StorageOptions mockOptions = mock(StorageOptions.class);
-        Storage mockStorage = mock(Storage.class);
-        WriteChannel mockWriter = mock(WriteChannel.class);
-
-        mocked.when(StorageOptions::newBuilder).thenReturn(mockBuilder);
-        when(mockBuilder.setRetrySettings(any())).thenReturn(mockBuilder);
-        when(mockBuilder.build()).thenReturn(mockOptions);
-        when(mockOptions.getService()).thenReturn(mockStorage);
-        when(mockStorage.writer(any(BlobInfo.class))).thenReturn(mockWriter);
-    }
-
     // =========================================================================
     // extract() — DICOMDIR detection branches
     // =========================================================================
@@ -133,7 +125,7 @@ class DicomExtractorServiceTest {
 
         try (MockedConstruction<DicomInputStream> ignored =
                      mockConstruction(DicomInputStream.class, (mock, ctx) -> {
-                         when(mock.readDataset()).thenReturn(mockAttributes);
+                         when(mock.readDatasetUntilPixelData()).thenReturn(mockAttributes);
                          when(mock.readFileMetaInformation()).thenReturn(mockFmi);
                      })) {
 
@@ -157,7 +149,7 @@ class DicomExtractorServiceTest {
 
         try (MockedConstruction<DicomInputStream> ignored =
                      mockConstruction(DicomInputStream.class, (mock, ctx) -> {
-                         when(mock.readDataset()).thenReturn(mockAttributes);
+                         when(mock.readDatasetUntilPixelData()).thenReturn(mockAttributes);
                          when(mock.readFileMetaInformation()).thenReturn(mockFmi);
                      })) {
 
@@ -183,16 +175,12 @@ class DicomExtractorServiceTest {
         attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
         File dicomFile = writeDicomFile(tempFile, attrs);
 
-        when(dbService.fetchScannerByDeviceSerialNumber(any())).thenReturn(null);
-
-        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class)) {
-            wireGcsMock(mocked);
+        when(slideScannerCache.get(any())).thenReturn(null);
 
-            Object result = dicomExtractorService.extract(
-                    "bucket-null", Path.of(dicomFile.getAbsolutePath()));
+        Object result = dicomExtractorService.extract(
+                "bucket-null", Path.of(dicomFile.getAbsolutePath()));
 
-            assertNull(result);
-        }
+        assertNull(result);
     }
 
     // =========================================================================
@@ -210,16 +198,12 @@ class DicomExtractorServiceTest {
         attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
         File dicomFile = writeDicomFile(tempFile, attrs);
 
-        when(dbService.fetchScannerByDeviceSerialNumber(anyString())).thenReturn(DISCONNECTED_SCANNER);
-
-        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class)) {
-            wireGcsMock(mocked);
+        when(slideScannerCache.get(anyString())).thenReturn(DISCONNECTED_SCANNER);
 
-            Object result = dicomExtractorService.extract(
-                    "bucket-disc", Path.of(dicomFile.getAbsolutePath()));
+        Object result = dicomExtractorService.extract(
+                "bucket-disc", Path.of(dicomFile.getAbsolutePath()));
 
-            assertNull(result);
-        }
+        assertNull(result);
     }
 
     // =========================================================================
@@ -237,17 +221,48 @@ class DicomExtractorServiceTest {
         attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
         File dicomFile = writeDicomFile(tempFile, attrs);
 
-        when(dbService.fetchScannerByDeviceSerialNumber(anyString())).thenReturn(RESEARCH_SCANNER);
+        when(slideScannerCache.get(anyString())).thenReturn(RESEARCH_SCANNER);
         when(gcpConfig.getResearchStoreUrl()).thenReturn("research-store-url");
 
         Object result = dicomExtractorService.extract(
                 "bucket-research", Path.of(dicomFile.getAbsolutePath()));
 
-        verify(dicomHealthcareApiClient).storeDicomInstances(any(), any(), eq("research-store-url"));
+        verify(dicomHealthcareApiClient).storeDicomInstances(any(), eq("research-store-url"));
         verify(seriesUploadTrackerService).recordUpload("STUDY_RES", "SERIES_RES");
         assertNull(result);
     }
 
+    @Test
+    void testExtract_WhenResearchScanner_StowBatchEnabled_ShouldSubmitAndDeleteAfterUpload() throws Exception {
+        Path tempFile = Files.createTempFile("dicom-research-batch", ".dcm");
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, "SOP_RESB");
+        attrs.setString(Tag.SeriesInstanceUID, VR.UI, "SERIES_RESB");
+        attrs.setString(Tag.StudyInstanceUID, VR.UI, "STUDY_RESB");
+        attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
+        File dicomFile = writeDicomFile(tempFile, attrs);
+
+        ReflectionTestUtils.setField(dicomExtractorService, "stowBatchEnabled", true);
+        when(slideScannerCache.get(anyString())).thenReturn(RESEARCH_SCANNER);
+        when(gcpConfig.getResearchStoreUrl()).thenReturn("research-store-url");
+        CompletableFuture<Void> upload = new CompletableFuture<>();
+        when(stowBatchUploader.submit(argThat(u -> u.file().equals(dicomFile)), eq("research-store-url"))).thenReturn(upload);
+
+        Object result = dicomExtractorService.extract(
+                "bucket-research", Path.of(dicomFile.getAbsolutePath()));
+
+        assertNull(result);
+        // File stays until its batch is sent; tracking happens only after a successful upload
+        assertTrue(dicomFile.exists());
+        verify(seriesUploadTrackerService, never()).recordUpload(any(), any());
+        verify(dicomHealthcareApiClient, never()).storeDicomInstances(any(), any());
+
+        upload.complete(null);
+
+        verify(seriesUploadTrackerService).recordUpload("STUDY_RESB", "SERIES_RESB");
+        assertFalse(dicomFile.exists());
+    }
+
     @Test
     void testExtract_WhenResearchScanner_NoBarcodeInFile_ShouldStoreToResearchAndReturnNull() throws Exception {
         // Research branch is reached before barcode validation — barcode absence is irrelevant
@@ -259,13 +274,13 @@ class DicomExtractorServiceTest {
         attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
         File dicomFile = writeDicomFile(tempFile, attrs);
 
-        when(dbService.fetchScannerByDeviceSerialNumber(anyString())).thenReturn(RESEARCH_SCANNER);
+        when(slideScannerCache.get(anyString())).thenReturn(RESEARCH_SCANNER);
         when(gcpConfig.getResearchStoreUrl()).thenReturn("research-store-url");
 
         Object result = dicomExtractorService.extract(
                 "bucket-research", Path.of(dicomFile.getAbsolutePath()));
 
-        verify(dicomHealthcareApiClient).storeDicomInstances(any(), any(), eq("research-store-url"));
+        verify(dicomHealthcareApiClient).storeDicomInstances(any(), eq("research-store-url"));
         assertNull(result);
     }
 
@@ -284,22 +299,18 @@ class DicomExtractorServiceTest {
         attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
         File dicomFile = writeDicomFile(tempFile, attrs);
 
-        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class)) {
-            wireGcsMock(mocked);
+        DicomRequestDBObject result = dicomExtractorService.extract(
+                "bucket-test", Path.of(dicomFile.getAbsolutePath()));
 
-            DicomRequestDBObject result = dicomExtractorService.extract(
-                    "bucket-test", Path.of(dicomFile.getAbsolutePath()));
-
-            assertNotNull(result);
-            assertEquals("SOP123", result.getSopInstanceUid());
-            assertEquals("SERIES123", result.getSeriesInstanceUid());
-            assertNull(result.getEnrichmentTimestamp());
-            assertNull(result.getActualStudyInstanceUid());
-            assertEquals("STUDY123", result.getOriginalStudyInstanceUid());
-            assertTrue(result.getBarcode().startsWith("BC-"));
-            assertTrue(result.getIntermediateStoragePath().contains("gs://bucket-test"));
-            assertNotNull(result.getDicomInstanceReceivedTimestamp());
-        }
+        assertNotNull(result);
+        assertEquals("SOP123", result.getSopInstanceUid());
+        assertEquals("SERIES123", result.getSeriesInstanceUid());
+        assertNull(result.getEnrichmentTimestamp());
+        assertNull(result.getActualStudyInstanceUid());
+        assertEquals("STUDY123", result.getOriginalStudyInstanceUid());
+        assertTrue(result.getBarcode().startsWith("BC-"));
+        assertTrue(result.getIntermediateStoragePath().contains("gs://bucket-test"));
+        assertNotNull(result.getDicomInstanceReceivedTimestamp());
     }
 
     @Test
@@ -314,13 +325,9 @@ class DicomExtractorServiceTest {
         attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
         File dicomFile = writeDicomFile(tempFile, attrs);
 
-        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class)) {
-            wireGcsMock(mocked);
+        dicomExtractorService.extract("bucket-test", Path.of(dicomFile.getAbsolutePath()));
 
-            dicomExtractorService.extract("bucket-test", Path.of(dicomFile.getAbsolutePath()));
-
-            verify(studyBarcodeCache).put("STUDY_CACHE", "BC-CACH");
-        }
+        verify(studyBarcodeCache).put("STUDY_CACHE", "BC-CACH");
     }
 
     // =========================================================================
@@ -340,19 +347,15 @@ class DicomExtractorServiceTest {
 
         ReflectionTestUtils.setField(dicomExtractorService, "enableBarcodeGeneration", true);
 
-        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class)) {
-            wireGcsMock(mocked);
-
-            DicomRequestDBObject result = dicomExtractorService.extract(
-                    "autogen-bucket", Path.of(dicomFile.getAbsolutePath()));
+        DicomRequestDBObject result = dicomExtractorService.extract(
+                "autogen-bucket", Path.of(dicomFile.getAbsolutePath()));
 
-            assertNotNull(result);
-            assertEquals("SOP123", result.getSopInstanceUid());
-            assertEquals("SERIES123", result.getSeriesInstanceUid());
-            assertNotNull(result.getBarcode());
-            assertTrue(result.getBarcode().startsWith("BC-"));
-            assertTrue(result.getIntermediateStoragePath().contains("gs://autogen-bucket"));
-        }
+        assertNotNull(result);
+        assertEquals("SOP123", result.getSopInstanceUid());
+        assertEquals("SERIES123", result.getSeriesInstanceUid());
+        assertNotNull(result.getBarcode());
+        assertTrue(result.getBarcode().startsWith("BC-"));
+        assertTrue(result.getIntermediateStoragePath().contains("gs://autogen-bucket"));
     }
 
     @Test
@@ -391,21 +394,21 @@ class DicomExtractorServiceTest {
         when(mockAttributes.getString(Tag.DeviceSerialNumber)).thenReturn("DEVICE456");
         when(mockAttributes.getString(Tag.SOPClassUID)).thenReturn("SOP001");
         when(mockAttributes.getString(Tag.SOPInstanceUID)).thenReturn("SOPI001");
-        when(dbService.isBarcodeExists("B123")).thenReturn(true);
+        when(qaBarcodeCache.exists("B123")).thenReturn(true);
         when(gcpConfig.getPathqaStoreUrl()).thenReturn("pathqa-store-url");
-        when(dbService.fetchScannerByDeviceSerialNumber("DEVICE456")).thenReturn(
+        when(slideScannerCache.get("DEVICE456")).thenReturn(
                 new SlideScanner("123", "test", "test", "test", "test", "test", "test", "test",
                         "DEVICE456", true, false));
 
         try (MockedConstruction<DicomInputStream> ignored =
                      mockConstruction(DicomInputStream.class, (mock, ctx) -> {
-                         when(mock.readDataset()).thenReturn(mockAttributes);
+                         when(mock.readDatasetUntilPixelData()).thenReturn(mockAttributes);
                          when(mock.readFileMetaInformation()).thenReturn(mockFmi);
                      })) {
 
             Object result = dicomExtractorService.extract("somePath", mockPath);
 
-          //  verify(dicomHealthcareApiClient).storeDicomInstances(mockFmi, mockAttributes, "pathqa-store-url");
+          //  verify(dicomHealthcareApiClient).storeDicomInstances(any(), eq("pathqa-store-url"));
           //  verify(barcodeUploadTrackerService).recordUpload("B123", "STUDY123", "SERIES123", "DEVICE456");
             assertNotNull(result);
         }
@@ -429,7 +432,7 @@ class DicomExtractorServiceTest {
 
         try (MockedConstruction<DicomInputStream> ignored =
                      mockConstruction(DicomInputStream.class, (mock, ctx) -> {
-                         when(mock.readDataset()).thenReturn(mockAttributes);
+                         when(mock.readDatasetUntilPixelData()).thenReturn(mockAttributes);
                          when(mock.readFileMetaInformation()).thenReturn(mockFmi);
                      })) {
 
@@ -455,6 +458,63 @@ class DicomExtractorServiceTest {
         assertEquals("BAD_REQUEST", ex.getErrorCode());
     }
 
+    // =========================================================================
+    // readForUpload()
+    // =========================================================================
+
+    @Test
+    void testReadForUpload_ReadsFullDatasetAndCarriesHeaderBarcode() throws Exception {
+        Path tempFile = Files.createTempFile("dicom-upload", ".dcm");
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, "SOP_UPLOAD");
+        attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
+        attrs.setBytes(Tag.PixelData, VR.OB, new byte[64]);
+        File dicomFile = writeDicomFile(tempFile, attrs);
+
+        Attributes header = new Attributes();
+        header.setString(Tag.BarcodeValue, VR.LO, "BC-UPLD");
+
+        Attributes dataset = ReflectionTestUtils.invokeMethod(
+                dicomExtractorService, "readForUpload", dicomFile, header);
+
+        assertNotNull(dataset);
+        assertEquals("SOP_UPLOAD", dataset.getString(Tag.SOPInstanceUID));
+        assertEquals("BC-UPLD", dataset.getString(Tag.BarcodeValue));
+        assertTrue(dataset.contains(Tag.PixelData));
+        Files.deleteIfExists(tempFile);
+    }
+
+    @Test
+    void testPrepareUpload_BarcodeGenerated_ReencodesHeaderAndKeepsPixelDataTail() throws Exception {
+        Path tempFile = Files.createTempFile("dicom-upload", ".dcm");
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, "SOP_UPLOAD");
+        attrs.setString(Tag.StudyInstanceUID, VR.UI, "STUDY_UPLOAD");
+        attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.2");
+        attrs.setBytes(Tag.PixelData, VR.OB, new byte[64]);
+        File dicomFile = writeDicomFile(tempFile, attrs);
+
+        Attributes header = new Attributes(attrs);
+        header.setString(Tag.BarcodeValue, VR.LO, "BC-UPLD");
+
+        DicomUpload unchanged = ReflectionTestUtils.invokeMethod(
+                dicomExtractorService, "prepareUpload", dicomFile, new Attributes(), header, false);
+        assertNotNull(unchanged);
+        assertNull(unchanged.header());
+        assertEquals(dicomFile.length(), unchanged.contentLength());
+
+        DicomUpload withBarcode = ReflectionTestUtils.invokeMethod(
+                dicomExtractorService, "prepareUpload", dicomFile, new Attributes(), header, true);
+        assertNotNull(withBarcode);
+        assertEquals("SOP_UPLOAD", withBarcode.sopInstanceUid());
+        assertEquals("STUDY_UPLOAD", withBarcode.studyInstanceUid());
+        assertEquals("BC-UPLD", withBarcode.header().getString(Tag.BarcodeValue));
+        assertFalse(withBarcode.header().contains(Tag.PixelData));
+        // Only the Pixel Data element and what follows it are copied from the file
+        assertTrue(withBarcode.tailOffset() > 0 && withBarcode.tailOffset() < dicomFile.length());
+        Files.deleteIfExists(tempFile);
+    }
+
     // =========================================================================
     // generateShortBarcode()
     // =========================================================================
@@ -511,17 +571,14 @@ class DicomExtractorServiceTest {
         // deviceSerialNumber != null → path = serial/study/series/sop.dcm
         Path tempPath = Files.createTempFile("test-serial", ".dcm");
 
-        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class)) {
-            wireGcsMock(mocked);
-
-            String path = ReflectionTestUtils.invokeMethod(
-                    dicomExtractorService, "moveFileToTempStore",
-                    "my-bucket", tempPath.toFile(), "SOP1", "STUDY1", "SERIES1", "DEVICE1");
+        String path = ReflectionTestUtils.invokeMethod(
+                dicomExtractorService, "moveFileToTempStore",
+                "my-bucket", tempPath.toFile(), "SOP1", "STUDY1", "SERIES1", "DEVICE1");
 
-            assertNotNull(path);
-            assertTrue(path.startsWith("gs://my-bucket/"));
-            assertTrue(path.contains("DEVICE1/STUDY1/SERIES1/SOP1.dcm"));
-        }
+        assertNotNull(path);
+        assertTrue(path.startsWith("gs://my-bucket/"));
+        assertTrue(path.contains("DEVICE1/STUDY1/SERIES1/SOP1.dcm"));
+        verify(gcsUploadService).upload("my-bucket", "DEVICE1/STUDY1/SERIES1/SOP1.dcm", tempPath.toFile());
     }
 
     @Test
@@ -529,16 +586,12 @@ class DicomExtractorServiceTest {
         // deviceSerialNumber == null → path = study/series/sop.dcm
         Path tempPath = Files.createTempFile("test-no-serial", ".dcm");
 
-        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class)) {
-            wireGcsMock(mocked);
-
-            String path = ReflectionTestUtils.invokeMethod(
-                    dicomExtractorService, "moveFileToTempStore",
-                    "my-bucket", tempPath.toFile(), "SOP2", "STUDY2", "SERIES2", null);
+        String path = ReflectionTestUtils.invokeMethod(
+                dicomExtractorService, "moveFileToTempStore",
+                "my-bucket", tempPath.toFile(), "SOP2", "STUDY2", "SERIES2", null);
 
-            assertNotNull(path);
-            assertEquals("gs://my-bucket/STUDY2/SERIES2/SOP2.dcm", path);
-        }
+        assertNotNull(path);
+        assertEquals("gs://my-bucket/STUDY2/SERIES2/SOP2.dcm", path);
     }
 
     // =========================================================================
@@ -549,21 +602,16 @@ class DicomExtractorServiceTest {
     void testMoveFileToTempStore_Exception() throws Exception {
         Path tempPath = Files.createTempFile("test-io", ".dcm");
 
-        try (MockedStatic<StorageOptions> mocked = mockStatic(StorageOptions.class);
-             MockedConstruction<FileInputStream> ignored =
-                     mockConstruction(FileInputStream.class, (mock, ctx) ->
-                             when(mock.read(any())).thenThrow(new IOException(" IO Exception")))) {
+        doThrow(new DicomAttributesException("UPLOAD_EXCEPTION", " IO Exception"))
+                .when(gcsUploadService).upload(anyString(), anyString(), any(File.class));
 
-            wireGcsMock(mocked);
-
-            DicomAttributesException ex = assertThrows(DicomAttributesException.class,
-                    () -> ReflectionTestUtils.invokeMethod(
-                            dicomExtractorService, "moveFileToTempStore",
-                            "bucket-fail", tempPath.toFile(), "SOPX", "STUDYX", "SERIESX", "DEVICEY"));
+        DicomAttributesException ex = assertThrows(DicomAttributesException.class,
+                () -> ReflectionTestUtils.invokeMethod(
+                        dicomExtractorService, "moveFileToTempStore",
+                        "bucket-fail", tempPath.toFile(), "SOPX", "STUDYX", "SERIESX", "DEVICEY"));
 
-            assertEquals("UPLOAD_EXCEPTION", ex.getErrorCode());
-            assertTrue(ex.getMessage().contains(" IO Exception"));
-        }
+        assertEquals("UPLOAD_EXCEPTION", ex.getErrorCode());
+        assertTrue(ex.getMessage().contains(" IO Exception"));
     }
 
     // =========================================================================
@@ -652,7 +700,7 @@ class DicomExtractorServiceTest {
         ReflectionTestUtils.invokeMethod(
                 dicomExtractorService, "processDicomDirWithDelay", mockPath, mockAttributes);
 
-        verify(dbService, never()).isBarcodeExists(anyString());
+        verify(qaBarcodeCache, never()).exists(anyString());
         verify(dicomDirService, never()).fetchAndStoreMetaData(any(), any());
     }
 
@@ -661,7 +709,7 @@ class DicomExtractorServiceTest {
         when(dicomDirService.fetchMetaData(mockPath, attributes)).thenReturn(dicomDirDocument);
         when(dicomDirDocument.studyId()).thenReturn("STUDY1");
         when(studyBarcodeCache.getIfPresent("STUDY1")).thenReturn("BC001");
-        when(dbService.isBarcodeExists("BC001")).thenReturn(true);
+        when(qaBarcodeCache.exists("BC001")).thenReturn(true);
 
         ReflectionTestUtils.invokeMethod(
                 dicomExtractorService, "processDicomDirWithDelay", mockPath, attributes);
@@ -674,7 +722,7 @@ class DicomExtractorServiceTest {
         when(dicomDirService.fetchMetaData(mockPath, attributes)).thenReturn(dicomDirDocument);
         when(dicomDirDocument.studyId()).thenReturn("STUDY2");
         when(studyBarcodeCache.getIfPresent("STUDY2")).thenReturn("BC002");
-        when(dbService.isBarcodeExists("BC002")).thenReturn(false);
+        when(qaBarcodeCache.exists("BC002")).thenReturn(false);
 
         ReflectionTestUtils.invokeMethod(
                 dicomExtractorService, "processDicomDirWithDelay", mockPath, attributes);
@@ -693,6 +741,6 @@ class DicomExtractorServiceTest {
 
         // Async retry is scheduled; synchronous path should not touch DB or storage
         verify(dicomDirService, never()).fetchAndStoreMetaData(any(), any());
-        verify(dbService, never()).isBarcodeExists(anyString());
+        verify(qaBarcodeCache, never()).exists(anyString());
     }
 }
\ No newline at end of file
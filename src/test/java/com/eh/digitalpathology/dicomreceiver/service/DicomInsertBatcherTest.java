@@ -0,0 +1,137 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption;
+import com.eh.digitalpathology.dicomreceiver.model.DicomRequestDBObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DicomInsertBatcherTest {
+
+    private static final String SOURCE = FileProcessingService.DICOM_RECEIVER;
+
+    @Mock
+    private DatabaseService databaseService;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    @Mock
+    private ScheduledFuture<Object> lingerTask;
+
+    private DicomInsertBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        batcher = new DicomInsertBatcher(databaseService, scheduler);
+        ReflectionTestUtils.setField(batcher, "maxInstances", 3);
+        ReflectionTestUtils.setField(batcher, "lingerMs", 200L);
+        lenient().doReturn(lingerTask).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    private static DicomRequestDBObject record(String sop) {
+        DicomRequestDBObject record = new DicomRequestDBObject();
+        record.setSopInstanceUid(sop);
+        return record;
+    }
+
+    private Runnable lingerFlush() {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, atLeastOnce()).schedule(task.capture(), eq(200L), eq(TimeUnit.MILLISECONDS));
+        return task.getValue();
+    }
+
+    @Test
+    void submit_BatchFillsUp_SendsOneBulkInsert() throws Exception {
+        DicomRequestDBObject r1 = record("SOP1");
+        DicomRequestDBObject r2 = record("SOP2");
+        DicomRequestDBObject r3 = record("SOP3");
+        when(databaseService.insertDicomDataBatch(List.of(r1, r2, r3), SOURCE)).thenReturn("success");
+
+        CompletableFuture<String> f1 = batcher.submit(r1, SOURCE);
+        CompletableFuture<String> f2 = batcher.submit(r2, SOURCE);
+        assertFalse(f1.isDone());
+        CompletableFuture<String> f3 = batcher.submit(r3, SOURCE);
+
+        verify(databaseService, times(1)).insertDicomDataBatch(any(), any());
+        assertEquals("success", f1.get());
+        assertEquals("success", f2.get());
+        assertEquals("success", f3.get());
+        verify(lingerTask).cancel(false);
+        verify(scheduler, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    void submit_LingerExpires_SendsPartialBatch() throws Exception {
+        DicomRequestDBObject r1 = record("SOP1");
+        when(databaseService.insertDicomDataBatch(List.of(r1), SOURCE)).thenReturn("success");
+
+        CompletableFuture<String> f1 = batcher.submit(r1, SOURCE);
+        verify(databaseService, never()).insertDicomDataBatch(any(), any());
+
+        lingerFlush().run();
+
+        assertEquals("success", f1.get());
+    }
+
+    @Test
+    void submit_LingerAfterBatchFilledUp_DoesNotResend() {
+        when(databaseService.insertDicomDataBatch(any(), eq(SOURCE))).thenReturn("success");
+        batcher.submit(record("SOP1"), SOURCE);
+        Runnable flush = lingerFlush();
+        batcher.submit(record("SOP2"), SOURCE);
+        batcher.submit(record("SOP3"), SOURCE);
+
+        flush.run();
+
+        verify(databaseService, times(1)).insertDicomDataBatch(any(), any());
+    }
+
+    @Test
+    void submit_DifferentSources_AreBatchedSeparately() {
+        when(databaseService.insertDicomDataBatch(any(), any())).thenReturn("success");
+
+        batcher.submit(record("SOP1"), "source-a");
+        batcher.submit(record("SOP2"), "source-b");
+        verify(scheduler, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+        batcher.flushAll();
+
+        verify(databaseService).insertDicomDataBatch(any(), eq("source-a"));
+        verify(databaseService).insertDicomDataBatch(any(), eq("source-b"));
+    }
+
+    @Test
+    void submit_BulkInsertFails_CompletesEveryRecordExceptionally() {
+        when(databaseService.insertDicomDataBatch(any(), any())).thenThrow(new DbConnectorExeption("DB error", "Connection refused"));
+
+        CompletableFuture<String> f1 = batcher.submit(record("SOP1"), SOURCE);
+        CompletableFuture<String> f2 = batcher.submit(record("SOP2"), SOURCE);
+        batcher.flushAll();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, f1::get);
+        assertInstanceOf(DbConnectorExeption.class, failure.getCause());
+        assertTrue(f2.isCompletedExceptionally());
+    }
+
+    @Test
+    void flushAll_NothingPending_SendsNothing() {
+        batcher.flushAll();
+
+        verifyNoInteractions(databaseService);
+    }
+}
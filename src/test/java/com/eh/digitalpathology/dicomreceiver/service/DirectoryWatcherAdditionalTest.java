@@ -47,7 +47,7 @@
 //        stabilizerScheduler = Executors.newSingleThreadScheduledExecutor();
 //        tempDir = Files.createTempDirectory("watcherAdditionalTest");
 //        directoryWatcher = Mockito.spy(
-//                new DirectoryWatcher(fileProcessingService, executorService, stabilizerScheduler));
+//                new DirectoryWatcher(fileProcessingService, new IngestPipeline(executorService, executorService, executorService, 16), new IngestJournal("", 1), stabilizerScheduler));
 //    }
 //
 //    @AfterEach
@@ -397,6 +397,7 @@
 
 package com.eh.digitalpathology.dicomreceiver.service;
 
+import com.eh.digitalpathology.dicomreceiver.util.TimingWheel;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
@@ -408,6 +409,7 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.util.Map;
@@ -444,7 +446,7 @@ class DirectoryWatcherAdditionalTest {
         stabilizerScheduler = Executors.newSingleThreadScheduledExecutor();
         tempDir = Files.createTempDirectory("watcherAdditionalTest");
         directoryWatcher = Mockito.spy(
-                new DirectoryWatcher(fileProcessingService, executorService, stabilizerScheduler));
+                new DirectoryWatcher(fileProcessingService, new IngestPipeline(executorService, executorService, executorService, 16), new IngestJournal("", 1), stabilizerScheduler));
     }
 
     @AfterEach
@@ -525,10 +527,10 @@ class DirectoryWatcherAdditionalTest {
         Field scheduledChecksField = DirectoryWatcher.class.getDeclaredField("scheduledChecks");
         scheduledChecksField.setAccessible(true);
         @SuppressWarnings("unchecked")
-        Map<Path, ?> scheduledChecks = (Map<Path, ?>) scheduledChecksField.get(directoryWatcher);
+        TimingWheel<Path> scheduledChecks = (TimingWheel<Path>) scheduledChecksField.get(directoryWatcher);
 
         assertNull(probeStates.get(file), "probeState should be cleaned up for deleted file");
-        assertNull(scheduledChecks.get(file), "scheduledCheck should be cleaned up for deleted file");
+        assertFalse(scheduledChecks.isScheduled(file), "scheduledCheck should be cleaned up for deleted file");
     }
 
     @Test
@@ -548,13 +550,13 @@ class DirectoryWatcherAdditionalTest {
 
             startMethod.invoke(directoryWatcher, file, tempDir.toString(), "intermediateStore");
 
-            // A reschedule means a new ScheduledFuture is placed in scheduledChecks
+            // A reschedule means the file has a new timer in scheduledChecks
             Field scheduledChecksField = DirectoryWatcher.class.getDeclaredField("scheduledChecks");
             scheduledChecksField.setAccessible(true);
             @SuppressWarnings("unchecked")
-            Map<Path, ?> scheduledChecks = (Map<Path, ?>) scheduledChecksField.get(directoryWatcher);
+            TimingWheel<Path> scheduledChecks = (TimingWheel<Path>) scheduledChecksField.get(directoryWatcher);
 
-            assertNotNull(scheduledChecks.get(file),
+            assertTrue(scheduledChecks.isScheduled(file),
                     "A reschedule future should exist for an unreadable file");
 
             // Retry count should have been incremented
@@ -664,11 +666,11 @@ class DirectoryWatcherAdditionalTest {
         try (MockedStatic<Files> mockedFiles = mockStatic(Files.class)) {
             mockedFiles.when(() -> Files.exists(file)).thenReturn(true);
             mockedFiles.when(() -> Files.isReadable(file)).thenReturn(true);
-            // First call throws IOException to trigger the catch block;
-            // second call returns 0L for reschedule -> computeDynamicQuietMillis.
-            mockedFiles.when(() -> Files.size(file))
-                    .thenThrow(new IOException("Simulated probe IO failure"))
-                    .thenReturn(0L);
+            // The probe's attribute read throws IOException to trigger the catch block;
+            // Files.size returns 0L for reschedule -> computeDynamicQuietMillis.
+            mockedFiles.when(() -> Files.readAttributes(file, BasicFileAttributes.class))
+                    .thenThrow(new IOException("Simulated probe IO failure"));
+            mockedFiles.when(() -> Files.size(file)).thenReturn(0L);
             mockedFiles.when(() -> Files.deleteIfExists(any())).thenReturn(true);
             mockedFiles.when(() -> Files.exists(any())).thenReturn(true);
 
@@ -699,12 +701,12 @@ class DirectoryWatcherAdditionalTest {
         try (MockedStatic<Files> mockedFiles = mockStatic(Files.class)) {
             mockedFiles.when(() -> Files.exists(file)).thenReturn(true);
             mockedFiles.when(() -> Files.isReadable(file)).thenReturn(true);
-            // First call (inside runProbe) throws to trigger the Exception catch block.
-            // Subsequent calls (inside reschedule -> computeDynamicQuietMillis) must
-            // return normally, otherwise the exception propagates out of reschedule uncaught.
-            mockedFiles.when(() -> Files.size(file))
-                    .thenThrow(new RuntimeException("Simulated probe unexpected failure"))
-                    .thenReturn(0L); // fallback for computeDynamicQuietMillis
+            // The attribute read inside runProbe throws to trigger the Exception catch block.
+            // Files.size (inside reschedule -> computeDynamicQuietMillis) must return
+            // normally, otherwise the exception propagates out of reschedule uncaught.
+            mockedFiles.when(() -> Files.readAttributes(file, BasicFileAttributes.class))
+                    .thenThrow(new RuntimeException("Simulated probe unexpected failure"));
+            mockedFiles.when(() -> Files.size(file)).thenReturn(0L); // fallback for computeDynamicQuietMillis
             mockedFiles.when(() -> Files.deleteIfExists(any())).thenReturn(true);
             // computeDynamicQuietMillis also calls Files.exists — keep returning true
             mockedFiles.when(() -> Files.exists(any())).thenReturn(true);
@@ -1,5 +1,8 @@
 package com.eh.digitalpathology.dicomreceiver.service;
 
+import com.eh.digitalpathology.dicomreceiver.util.Inotify;
+import com.eh.digitalpathology.dicomreceiver.util.TimingWheel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -14,6 +17,7 @@ import java.nio.file.*;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 
 import static org.awaitility.Awaitility.await;
@@ -40,7 +44,7 @@ class DirectoryWatcherTest {
         executorService = Executors.newSingleThreadExecutor();
         stabilizerScheduler = Executors.newSingleThreadScheduledExecutor();
         tempDir = Files.createTempDirectory("watcherTest");
-        DirectoryWatcher realWatcher = new DirectoryWatcher(fileProcessingService, executorService, stabilizerScheduler);
+        DirectoryWatcher realWatcher = new DirectoryWatcher(fileProcessingService, new IngestPipeline(executorService, executorService, executorService, 16), new IngestJournal("", 1), stabilizerScheduler);
         directoryWatcher = Mockito.spy(realWatcher);
     }
 
@@ -79,7 +83,7 @@ class DirectoryWatcherTest {
     @DisplayName("Should ignore partial files (.part)")
     void testDirectoryLookup_IgnoresPartialFiles() throws Exception {
         ExecutorService mockExecutor = mock(ExecutorService.class);
-        ReflectionTestUtils.setField(directoryWatcher, "executorService", mockExecutor);
+        ReflectionTestUtils.setField(directoryWatcher, "ingestPipeline", new IngestPipeline(mockExecutor, mockExecutor, mockExecutor, 16));
 
         Thread watcherThread = new Thread(() -> {
             directoryWatcher.directoryLookup(tempDir.toString(), "intermediateStore");
@@ -94,14 +98,14 @@ class DirectoryWatcherTest {
         watcherThread.interrupt();
         watcherThread.join(5000);
 
-        verify(mockExecutor, never()).submit(any(Runnable.class));
+        verify(mockExecutor, never()).execute(any(Runnable.class));
     }
 
     @Test
     @DisplayName("Should ignore temporary files (.tmp)")
     void testDirectoryLookup_IgnoresTempFiles() throws Exception {
         ExecutorService mockExecutor = mock(ExecutorService.class);
-        ReflectionTestUtils.setField(directoryWatcher, "executorService", mockExecutor);
+        ReflectionTestUtils.setField(directoryWatcher, "ingestPipeline", new IngestPipeline(mockExecutor, mockExecutor, mockExecutor, 16));
 
         Thread watcherThread = new Thread(() -> {
             directoryWatcher.directoryLookup(tempDir.toString(), "intermediateStore");
@@ -115,14 +119,14 @@ class DirectoryWatcherTest {
         watcherThread.interrupt();
         watcherThread.join(5000);
 
-        verify(mockExecutor, never()).submit(any(Runnable.class));
+        verify(mockExecutor, never()).execute(any(Runnable.class));
     }
 
     @Test
     @DisplayName("Should ignore directories")
     void testDirectoryLookup_IgnoresDirectories() throws Exception {
         ExecutorService mockExecutor = mock(ExecutorService.class);
-        ReflectionTestUtils.setField(directoryWatcher, "executorService", mockExecutor);
+        ReflectionTestUtils.setField(directoryWatcher, "ingestPipeline", new IngestPipeline(mockExecutor, mockExecutor, mockExecutor, 16));
 
         Thread watcherThread = new Thread(() -> {
             directoryWatcher.directoryLookup(tempDir.toString(), "intermediateStore");
@@ -136,7 +140,7 @@ class DirectoryWatcherTest {
         watcherThread.interrupt();
         watcherThread.join(5000);
 
-        verify(mockExecutor, never()).submit(any(Runnable.class));
+        verify(mockExecutor, never()).execute(any(Runnable.class));
     }
 
     @Test
@@ -673,6 +677,108 @@ class DirectoryWatcherTest {
         assertNotNull(latestEvents.get(testFile));
     }
 
+    @Test
+    @DisplayName("Should process handed-off file directly and ignore its watch event")
+    void testHandOff_ProcessesDirectlyAndSkipsEvent() throws Exception {
+        Path testFile = tempDir.resolve("handoff.dcm");
+        Files.createFile(testFile);
+
+        directoryWatcher.expectHandOff(testFile);
+
+        @SuppressWarnings("unchecked")
+        WatchEvent<Path> mockEvent = mock(WatchEvent.class);
+        Method onEventMethod = DirectoryWatcher.class.getDeclaredMethod(
+                "onEvent", Path.class, WatchEvent.class, String.class, String.class);
+        onEventMethod.setAccessible(true);
+        onEventMethod.invoke(directoryWatcher, testFile, mockEvent, tempDir.toString(), "intermediateStore");
+
+        Field scheduledChecksField = DirectoryWatcher.class.getDeclaredField("scheduledChecks");
+        scheduledChecksField.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        TimingWheel<Path> scheduledChecks = (TimingWheel<Path>) scheduledChecksField.get(directoryWatcher);
+        assertFalse(scheduledChecks.isScheduled(testFile), "Handed-off file must not enter the probe cycle");
+
+        directoryWatcher.handOff(testFile, tempDir.toString(), "intermediateStore");
+
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                verify(fileProcessingService).processFile(
+                        argThat(e -> testFile.getFileName().equals(e.context())),
+                        eq(tempDir.toString()), eq("intermediateStore"))
+        );
+    }
+
+    @Test
+    @DisplayName("Should ignore repeated events for a handed-off file until its ingest completes")
+    void testHandOff_InFlightUntilIngestCompletes() throws Exception {
+        Path testFile = tempDir.resolve("handoff.dcm");
+        Files.createFile(testFile);
+        CompletableFuture<Void> ingested = new CompletableFuture<>();
+        when(fileProcessingService.processFile(any(), eq(tempDir.toString()), eq("intermediateStore"))).thenReturn(ingested);
+
+        directoryWatcher.expectHandOff(testFile);
+        directoryWatcher.handOff(testFile, tempDir.toString(), "intermediateStore");
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                verify(fileProcessingService).processFile(any(), eq(tempDir.toString()), eq("intermediateStore")));
+
+        // The rename's event, then a rescan and a reconciliation of the same still-processing file
+        @SuppressWarnings("unchecked")
+        WatchEvent<Path> mockEvent = mock(WatchEvent.class);
+        Method onEventMethod = DirectoryWatcher.class.getDeclaredMethod(
+                "onEvent", Path.class, WatchEvent.class, String.class, String.class);
+        onEventMethod.setAccessible(true);
+        for (int i = 0; i < 3; i++) {
+            onEventMethod.invoke(directoryWatcher, testFile, mockEvent, tempDir.toString(), "intermediateStore");
+        }
+        @SuppressWarnings("unchecked")
+        TimingWheel<Path> scheduledChecks = (TimingWheel<Path>) ReflectionTestUtils.getField(directoryWatcher, "scheduledChecks");
+        assertFalse(scheduledChecks.isScheduled(testFile.toAbsolutePath()));
+
+        Set<?> inFlight = (Set<?>) ReflectionTestUtils.getField(directoryWatcher, "inFlight");
+        assertTrue(inFlight.contains(testFile.toAbsolutePath()));
+        ingested.complete(null);
+        assertFalse(inFlight.contains(testFile.toAbsolutePath()));
+        assertTrue(((Set<?>) ReflectionTestUtils.getField(directoryWatcher, "handOffs")).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should journal a handed-off file as processed only once the whole pipeline is done with it")
+    void testHandOff_JournalsProcessedWhenIngestCompletes() throws Exception {
+        IngestJournal journal = mock(IngestJournal.class);
+        DirectoryWatcher watcher = new DirectoryWatcher(fileProcessingService, new IngestPipeline(executorService, executorService, executorService, 16), journal, stabilizerScheduler);
+        Path testFile = tempDir.resolve("handoff.dcm");
+        Files.createFile(testFile);
+        CompletableFuture<Void> ingested = new CompletableFuture<>();
+        when(fileProcessingService.processFile(any(), eq(tempDir.toString()), eq("intermediateStore"))).thenReturn(ingested);
+
+        watcher.handOff(testFile, tempDir.toString(), "intermediateStore");
+
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                verify(fileProcessingService).processFile(any(), eq(tempDir.toString()), eq("intermediateStore")));
+        verify(journal, never()).record(any(), any(), eq(IngestJournal.State.PROCESSED));
+
+        ingested.complete(null);
+
+        verify(journal).record(testFile.toAbsolutePath(), tempDir.toString(), IngestJournal.State.PROCESSED);
+        verify(journal, never()).record(any(), any(), eq(IngestJournal.State.FAILED));
+    }
+
+    @Test
+    @DisplayName("Should journal a handed-off file as failed when a later ingest stage fails")
+    void testHandOff_JournalsFailedWhenIngestFails() throws Exception {
+        IngestJournal journal = mock(IngestJournal.class);
+        DirectoryWatcher watcher = new DirectoryWatcher(fileProcessingService, new IngestPipeline(executorService, executorService, executorService, 16), journal, stabilizerScheduler);
+        Path testFile = tempDir.resolve("handoff.dcm");
+        Files.createFile(testFile);
+        when(fileProcessingService.processFile(any(), eq(tempDir.toString()), eq("intermediateStore")))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("DB error")));
+
+        watcher.handOff(testFile, tempDir.toString(), "intermediateStore");
+
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                verify(journal).record(testFile.toAbsolutePath(), tempDir.toString(), IngestJournal.State.FAILED));
+        verify(journal, never()).record(any(), any(), eq(IngestJournal.State.PROCESSED));
+    }
+
     @Test
     @DisplayName("Should directly test onEvent method skips directories")
     void testOnEvent_SkipsDirectories() throws Exception {
@@ -696,10 +802,9 @@ class DirectoryWatcherTest {
         Field scheduledChecksField = DirectoryWatcher.class.getDeclaredField("scheduledChecks");
         scheduledChecksField.setAccessible(true);
         @SuppressWarnings("unchecked")
-        ConcurrentHashMap<Path, ScheduledFuture<?>> scheduledChecks =
-                (ConcurrentHashMap<Path, ScheduledFuture<?>>) scheduledChecksField.get(directoryWatcher);
+        TimingWheel<Path> scheduledChecks = (TimingWheel<Path>) scheduledChecksField.get(directoryWatcher);
 
-        assertNull(scheduledChecks.get(testDir));
+        assertFalse(scheduledChecks.isScheduled(testDir));
     }
 
     @Test
@@ -724,10 +829,9 @@ class DirectoryWatcherTest {
         Field scheduledChecksField = DirectoryWatcher.class.getDeclaredField("scheduledChecks");
         scheduledChecksField.setAccessible(true);
         @SuppressWarnings("unchecked")
-        ConcurrentHashMap<Path, ScheduledFuture<?>> scheduledChecks =
-                (ConcurrentHashMap<Path, ScheduledFuture<?>>) scheduledChecksField.get(directoryWatcher);
+        TimingWheel<Path> scheduledChecks = (TimingWheel<Path>) scheduledChecksField.get(directoryWatcher);
 
-        assertNull(scheduledChecks.get(tempFile));
+        assertFalse(scheduledChecks.isScheduled(tempFile));
     }
 
     @Test
@@ -976,9 +1080,8 @@ class DirectoryWatcherTest {
         Field scheduledChecksField = DirectoryWatcher.class.getDeclaredField("scheduledChecks");
         scheduledChecksField.setAccessible(true);
         @SuppressWarnings("unchecked")
-        ConcurrentHashMap<Path, ScheduledFuture<?>> scheduledChecks =
-                (ConcurrentHashMap<Path, ScheduledFuture<?>>) scheduledChecksField.get(directoryWatcher);
-        assertNull(scheduledChecks.get(file));
+        TimingWheel<Path> scheduledChecks = (TimingWheel<Path>) scheduledChecksField.get(directoryWatcher);
+        assertFalse(scheduledChecks.isScheduled(file));
     }
 
     @Test
@@ -1151,8 +1254,7 @@ class DirectoryWatcherTest {
         Field scheduledChecksField = DirectoryWatcher.class.getDeclaredField("scheduledChecks");
         scheduledChecksField.setAccessible(true);
         @SuppressWarnings("unchecked")
-        ConcurrentHashMap<Path, ScheduledFuture<?>> scheduledChecks =
-                (ConcurrentHashMap<Path, ScheduledFuture<?>>) scheduledChecksField.get(directoryWatcher);
+        TimingWheel<Path> scheduledChecks = (TimingWheel<Path>) scheduledChecksField.get(directoryWatcher);
 
         assertEquals(1, scheduledChecks.size());
     }
@@ -1210,4 +1312,254 @@ class DirectoryWatcherTest {
 
         assertNull(probeStates.get(file));
     }
+
+    @Test
+    @DisplayName("Should keep a stable file and offer it again while the ingest pipeline is full")
+    void testAdmit_PipelineFull_RetriesAndSkipsRescanEvents() throws Exception {
+        Path file = tempDir.resolve("burst.dcm");
+        Files.write(file, "content".getBytes());
+        IngestPipeline fullPipeline = mock(IngestPipeline.class);
+        when(fullPipeline.offer(any())).thenReturn(false, true);
+        ReflectionTestUtils.setField(directoryWatcher, "ingestPipeline", fullPipeline);
+
+        @SuppressWarnings("unchecked")
+        WatchEvent<Path> mockEvent = mock(WatchEvent.class);
+        Method admitMethod = DirectoryWatcher.class.getDeclaredMethod(
+                "admit", Path.class, WatchEvent.class, String.class, String.class);
+        admitMethod.setAccessible(true);
+        admitMethod.invoke(directoryWatcher, file, mockEvent, tempDir.toString(), "intermediateStore");
+
+        // A rescan while the file waits for admission must not start another probe cycle
+        Method onEventMethod = DirectoryWatcher.class.getDeclaredMethod(
+                "onEvent", Path.class, WatchEvent.class, String.class, String.class);
+        onEventMethod.setAccessible(true);
+        onEventMethod.invoke(directoryWatcher, file, mockEvent, tempDir.toString(), "intermediateStore");
+        Field latestEventsField = DirectoryWatcher.class.getDeclaredField("latestEvents");
+        latestEventsField.setAccessible(true);
+        assertFalse(((Map<?, ?>) latestEventsField.get(directoryWatcher)).containsKey(file));
+
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> verify(fullPipeline, times(2)).offer(any()));
+        verify(fileProcessingService, never()).processFile(any(), anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("Should keep an admitted file in flight until its ingest completes")
+    void testAdmit_StaysInFlightUntilIngestCompletes() throws Exception {
+        Path file = tempDir.resolve("batched.dcm");
+        Files.write(file, "content".getBytes());
+        CompletableFuture<Void> ingested = new CompletableFuture<>();
+        when(fileProcessingService.processFile(any(), eq(tempDir.toString()), eq("intermediateStore"))).thenReturn(ingested);
+
+        @SuppressWarnings("unchecked")
+        WatchEvent<Path> mockEvent = mock(WatchEvent.class);
+        Method admitMethod = DirectoryWatcher.class.getDeclaredMethod(
+                "admit", Path.class, WatchEvent.class, String.class, String.class);
+        admitMethod.setAccessible(true);
+        admitMethod.invoke(directoryWatcher, file, mockEvent, tempDir.toString(), "intermediateStore");
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                verify(fileProcessingService).processFile(any(), eq(tempDir.toString()), eq("intermediateStore")));
+
+        // The process stage has returned but the upload is still batched: a rescan must not pick the file up again
+        Set<?> inFlight = (Set<?>) ReflectionTestUtils.getField(directoryWatcher, "inFlight");
+        assertTrue(inFlight.contains(file));
+        Method onEventMethod = DirectoryWatcher.class.getDeclaredMethod(
+                "onEvent", Path.class, WatchEvent.class, String.class, String.class);
+        onEventMethod.setAccessible(true);
+        onEventMethod.invoke(directoryWatcher, file, mockEvent, tempDir.toString(), "intermediateStore");
+        assertFalse(((Map<?, ?>) ReflectionTestUtils.getField(directoryWatcher, "latestEvents")).containsKey(file));
+
+        ingested.complete(null);
+        assertFalse(inFlight.contains(file));
+    }
+
+    @Test
+    @DisplayName("Should probe every due file of a directory in one tick from a single attribute pass")
+    void testTick_ProbesDueFilesInOneBatch() throws Exception {
+        // No background ticking, the test drives the ticks itself
+        DirectoryWatcher watcher = new DirectoryWatcher(fileProcessingService,
+                new IngestPipeline(executorService, executorService, executorService, 16), new IngestJournal("", 1), mock(ScheduledExecutorService.class));
+        Path growing = tempDir.resolve("growing.dcm");
+        Path removed = tempDir.resolve("removed.dcm");
+        Files.write(growing, "content".getBytes());
+        Files.write(removed, "content".getBytes());
+
+        Method startMethod = DirectoryWatcher.class.getDeclaredMethod(
+                "startStabilityCheck", Path.class, String.class, String.class);
+        startMethod.setAccessible(true);
+        startMethod.invoke(watcher, growing, tempDir.toString(), "intermediateStore");
+        startMethod.invoke(watcher, removed, tempDir.toString(), "intermediateStore");
+        Files.delete(removed);
+
+        Thread.sleep(700);
+        Method tickMethod = DirectoryWatcher.class.getDeclaredMethod("tick");
+        tickMethod.setAccessible(true);
+        tickMethod.invoke(watcher);
+
+        @SuppressWarnings("unchecked")
+        Map<Path, ?> probeStates = (Map<Path, ?>) ReflectionTestUtils.getField(watcher, "probeStates");
+        assertNotNull(probeStates.get(growing));
+        assertEquals(7L, ReflectionTestUtils.getField(probeStates.get(growing), "prevSize"));
+        assertNull(probeStates.get(removed));
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(watcher, "dueProbes")).isEmpty());
+
+        @SuppressWarnings("unchecked")
+        TimingWheel<Path> wheel = (TimingWheel<Path>) ReflectionTestUtils.getField(watcher, "scheduledChecks");
+        assertTrue(wheel.isScheduled(growing), "Next probe should be scheduled for the remaining file");
+        assertFalse(wheel.isScheduled(removed));
+    }
+
+    @Test
+    @DisplayName("Should admit a file as soon as its writer closes it in close-write mode")
+    void testDirectoryLookup_CloseWrite_SkipsStabilization() throws Exception {
+        Assumptions.assumeTrue(Inotify.isSupported(), "inotify is Linux only");
+        ReflectionTestUtils.setField(directoryWatcher, "closeWriteEnabled", true);
+        Thread watcherThread = new Thread(() -> directoryWatcher.directoryLookup(tempDir.toString(), "intermediateStore"));
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        Thread.sleep(300);
+
+        Path file = tempDir.resolve("closed.dcm");
+        Files.write(file, "content".getBytes());
+        Files.write(tempDir.resolve("closed.dcm.part"), "partial".getBytes());
+
+        // The probe cycle would need the quiet period plus several probes, well over a second
+        await().atMost(1500, TimeUnit.MILLISECONDS).untilAsserted(() ->
+                verify(fileProcessingService).processFile(argThat(e -> e.context().equals(file.getFileName())), eq(tempDir.toString()), eq("intermediateStore")));
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(directoryWatcher, "probeStates")).isEmpty());
+
+        watcherThread.interrupt();
+        watcherThread.join(3000);
+        assertFalse(watcherThread.isAlive(), "Watcher should be terminated");
+        verify(fileProcessingService, times(1)).processFile(any(), anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("Should not admit a handed-off file on its close-write event")
+    void testOnWriteCompleted_HandedOffFile_Skipped() throws Exception {
+        IngestPipeline pipeline = mock(IngestPipeline.class);
+        ReflectionTestUtils.setField(directoryWatcher, "ingestPipeline", pipeline);
+        Path file = tempDir.resolve("handed.dcm");
+        directoryWatcher.expectHandOff(file);
+
+        Method method = DirectoryWatcher.class.getDeclaredMethod("onWriteCompleted", Path.class, String.class, String.class);
+        method.setAccessible(true);
+        method.invoke(directoryWatcher, file, tempDir.toString(), "intermediateStore");
+
+        verify(pipeline, never()).offer(any());
+    }
+
+    @Test
+    @DisplayName("Should watch existing and newly created subdirectories and pass root-relative paths")
+    void testDirectoryLookup_NestedFolders() throws Exception {
+        Path existing = Files.createDirectories(tempDir.resolve("scanner1"));
+        Thread watcherThread = new Thread(() -> directoryWatcher.directoryLookup(tempDir.toString(), "intermediateStore"));
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        Thread.sleep(500);
+
+        Files.write(existing.resolve("a.dcm"), "content".getBytes());
+        Path created = Files.createDirectories(tempDir.resolve("study").resolve("series"));
+        Files.write(created.resolve("b.dcm"), "content".getBytes());
+
+        await().atMost(20, TimeUnit.SECONDS).untilAsserted(() -> {
+            verify(fileProcessingService).processFile(argThat(e -> e.context().equals(Path.of("scanner1", "a.dcm"))), eq(tempDir.toString()), eq("intermediateStore"));
+            verify(fileProcessingService).processFile(argThat(e -> e.context().equals(Path.of("study", "series", "b.dcm"))), eq(tempDir.toString()), eq("intermediateStore"));
+        });
+
+        watcherThread.interrupt();
+        watcherThread.join(3000);
+    }
+
+    @Test
+    @DisplayName("Should admit files of a registered root through that root's pipeline")
+    void testRegisterRoot_UsesRootPipeline() throws Exception {
+        IngestPipeline rootPipeline = mock(IngestPipeline.class);
+        when(rootPipeline.offer(any())).thenReturn(true);
+        directoryWatcher.registerRoot(tempDir.toString(), rootPipeline);
+        Path file = tempDir.resolve("root.dcm");
+
+        Method admitMethod = DirectoryWatcher.class.getDeclaredMethod(
+                "admit", Path.class, WatchEvent.class, String.class, String.class);
+        admitMethod.setAccessible(true);
+        admitMethod.invoke(directoryWatcher, file, mock(WatchEvent.class), tempDir.toString(), "intermediateStore");
+
+        verify(rootPipeline).offer(any());
+    }
+
+    @Test
+    @DisplayName("Should resume journaled files after a restart without rescanning the directory")
+    void testResumeFromJournal_ReadmitsStableAndDiscardsVanishedFiles() throws Exception {
+        Path journalDir = Files.createTempDirectory("journalTest");
+        try {
+            Path admitted = tempDir.resolve("admitted.dcm");
+            Files.write(admitted, "content".getBytes());
+            Path vanished = tempDir.resolve("vanished.dcm");
+            IngestJournal journal = new IngestJournal(journalDir.toString(), 1);
+            journal.open();
+            journal.record(admitted, tempDir.toString(), IngestJournal.State.STABLE);
+            journal.record(vanished, tempDir.toString(), IngestJournal.State.DETECTED);
+            ReflectionTestUtils.setField(directoryWatcher, "ingestJournal", journal);
+            when(fileProcessingService.processFile(any(), anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+
+            Method resume = DirectoryWatcher.class.getDeclaredMethod("resumeFromJournal", String.class, String.class);
+            resume.setAccessible(true);
+            resume.invoke(directoryWatcher, tempDir.toString(), "intermediateStore");
+
+            await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                    verify(fileProcessingService).processFile(argThat(e -> e.context().equals(admitted.getFileName())), eq(tempDir.toString()), eq("intermediateStore")));
+            await().atMost(5, TimeUnit.SECONDS).until(() -> journal.pending(tempDir.toString()).isEmpty());
+            journal.close();
+        } finally {
+            FileUtils.deleteQuietly(journalDir.toFile());
+        }
+    }
+
+    @Test
+    @DisplayName("Should feed pre-existing files into probing oldest first at the configured rate")
+    void testReconciliation_FeedsExistingFilesOldestFirst() throws Exception {
+        // No background ticking, the test drives the ticks itself
+        DirectoryWatcher watcher = new DirectoryWatcher(fileProcessingService,
+                new IngestPipeline(executorService, executorService, executorService, 16), new IngestJournal("", 1), mock(ScheduledExecutorService.class));
+        ReflectionTestUtils.setField(watcher, "reconcileEnabled", true);
+        ReflectionTestUtils.setField(watcher, "reconcileRatePerSecond", 10);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        watcher.bindTo(registry);
+
+        Instant now = Instant.now();
+        Path newest = Files.write(tempDir.resolve("newest.dcm"), "content".getBytes());
+        Path oldest = Files.write(Files.createDirectory(tempDir.resolve("case1")).resolve("oldest.dcm"), "content".getBytes());
+        Path middle = Files.write(tempDir.resolve("middle.dcm"), "content".getBytes());
+        Files.write(tempDir.resolve("upload.part"), "content".getBytes());
+        Files.setLastModifiedTime(oldest, FileTime.from(now.minusSeconds(7200)));
+        Files.setLastModifiedTime(middle, FileTime.from(now.minusSeconds(3600)));
+        Files.setLastModifiedTime(newest, FileTime.from(now));
+
+        Method start = DirectoryWatcher.class.getDeclaredMethod("startReconciliation", Path.class, String.class, String.class);
+        start.setAccessible(true);
+        start.invoke(watcher, tempDir.toAbsolutePath(), tempDir.toString(), "intermediateStore");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> registry.get("watcher.reconcile.found").functionCounter().count() == 4);
+
+        Method tick = DirectoryWatcher.class.getDeclaredMethod("tick");
+        tick.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        Map<Path, ?> probeStates = (Map<Path, ?>) ReflectionTestUtils.getField(watcher, "probeStates");
+
+        tick.invoke(watcher);
+        assertEquals(Set.of(oldest.toAbsolutePath()), probeStates.keySet());
+        assertEquals(1, registry.get("watcher.probes.pending").gauge().value());
+        tick.invoke(watcher);
+        assertEquals(Set.of(oldest.toAbsolutePath(), middle.toAbsolutePath()), probeStates.keySet());
+        assertEquals(2, registry.get("watcher.reconcile.remaining").gauge().value());
+
+        tick.invoke(watcher);
+        tick.invoke(watcher);
+        assertEquals(3, probeStates.size(), "Partial files are listed but not probed");
+        assertEquals(4, registry.get("watcher.reconcile.fed").functionCounter().count());
+        assertEquals(0, registry.get("watcher.reconcile.remaining").gauge().value());
+
+        // A root is reconciled once
+        start.invoke(watcher, tempDir.toAbsolutePath(), tempDir.toString(), "intermediateStore");
+        Thread.sleep(200);
+        assertEquals(4, registry.get("watcher.reconcile.found").functionCounter().count());
+    }
 }
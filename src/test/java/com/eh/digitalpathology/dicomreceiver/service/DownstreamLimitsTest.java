@@ -0,0 +1,131 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.service.DownstreamLimits.Downstream;
+import com.eh.digitalpathology.dicomreceiver.service.DownstreamLimits.Permit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownstreamLimitsTest {
+
+    private final DownstreamLimits limits = new DownstreamLimits(3, 2, 1, 0);
+
+    @Test
+    void maxConcurrency_isConfiguredPerDownstreamAndAtLeastOne() {
+        assertEquals(3, limits.maxConcurrency(Downstream.DB_CONNECTOR));
+        assertEquals(2, limits.maxConcurrency(Downstream.HEALTHCARE_API));
+        assertEquals(1, limits.maxConcurrency(Downstream.CLOUD_STORAGE));
+        assertEquals(1, limits.maxConcurrency(Downstream.SHARED_FOLDER));
+    }
+
+    @Test
+    void acquire_takesPermitUntilClosed() {
+        try (Permit first = limits.acquire(Downstream.HEALTHCARE_API)) {
+            assertEquals(1, limits.available(Downstream.HEALTHCARE_API));
+            try (Permit second = limits.acquire(Downstream.HEALTHCARE_API)) {
+                assertEquals(0, limits.available(Downstream.HEALTHCARE_API));
+                assertEquals(3, limits.available(Downstream.DB_CONNECTOR));
+            }
+        }
+        assertEquals(2, limits.available(Downstream.HEALTHCARE_API));
+    }
+
+    @Test
+    void acquire_waitsWhileDownstreamIsSaturated() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Void> waiting;
+            try (Permit held = limits.acquire(Downstream.CLOUD_STORAGE)) {
+                waiting = CompletableFuture.runAsync(() -> limits.acquire(Downstream.CLOUD_STORAGE).close(), executor);
+                assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+            }
+            waiting.get(5, TimeUnit.SECONDS);
+            assertEquals(1, limits.available(Downstream.CLOUD_STORAGE));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void limit_subscribesOnceAPermitIsReleasedAndReturnsIt() throws Exception {
+        CompletableFuture<String> call;
+        try (Permit held = limits.acquire(Downstream.CLOUD_STORAGE)) {
+            call = limits.limit(Downstream.CLOUD_STORAGE, Mono.fromCallable(() -> "uploaded")).toFuture();
+            assertFalse(call.isDone());
+        }
+        assertEquals("uploaded", call.get(5, TimeUnit.SECONDS));
+        assertEquals(1, limits.available(Downstream.CLOUD_STORAGE));
+    }
+
+    @Test
+    void limit_releasesPermitOnErrorAndCancel() {
+        Mono<String> failing = limits.limit(Downstream.CLOUD_STORAGE, Mono.error(new IllegalStateException("refused")));
+        assertThrows(IllegalStateException.class, failing::block);
+        assertEquals(1, limits.available(Downstream.CLOUD_STORAGE));
+
+        Disposable running = limits.limit(Downstream.CLOUD_STORAGE, Mono.never()).subscribe();
+        assertEquals(0, limits.available(Downstream.CLOUD_STORAGE));
+        running.dispose();
+        assertEquals(1, limits.available(Downstream.CLOUD_STORAGE));
+    }
+
+    @Test
+    void limit_cancelledWaiterGivesUpItsPlace() {
+        Disposable waiting;
+        try (Permit held = limits.acquire(Downstream.CLOUD_STORAGE)) {
+            waiting = limits.limit(Downstream.CLOUD_STORAGE, Mono.never()).subscribe();
+            waiting.dispose();
+        }
+        assertEquals(1, limits.available(Downstream.CLOUD_STORAGE));
+        assertEquals("uploaded", limits.limit(Downstream.CLOUD_STORAGE, Mono.just("uploaded")).block());
+    }
+
+    @Test
+    void limit_doesNotBargePastParkedBlockingCaller() throws Exception {
+        CompletableFuture<Void> blockingGranted = new CompletableFuture<>();
+        CompletableFuture<Void> blockingDone = new CompletableFuture<>();
+        Thread blocking = new Thread(() -> {
+            try (Permit permit = limits.acquire(Downstream.CLOUD_STORAGE)) {
+                blockingGranted.complete(null);
+                blockingDone.join();
+            }
+        });
+        CompletableFuture<String> call;
+        try (Permit held = limits.acquire(Downstream.CLOUD_STORAGE)) {
+            blocking.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (blocking.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            call = limits.limit(Downstream.CLOUD_STORAGE, Mono.fromCallable(() -> "uploaded")).toFuture();
+        }
+        blockingGranted.get(5, TimeUnit.SECONDS);
+        assertFalse(call.isDone());
+
+        blockingDone.complete(null);
+        assertEquals("uploaded", call.get(5, TimeUnit.SECONDS));
+        blocking.join(5000);
+        assertEquals(1, limits.available(Downstream.CLOUD_STORAGE));
+    }
+
+    @Test
+    void bindTo_registersInFlightAndMaxGauges() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        limits.bindTo(registry);
+
+        try (Permit permit = limits.acquire(Downstream.DB_CONNECTOR)) {
+            assertEquals(1.0, registry.get("downstream.in.flight").tag("downstream", "db-connector").gauge().value());
+        }
+        assertEquals(0.0, registry.get("downstream.in.flight").tag("downstream", "db-connector").gauge().value());
+        assertEquals(2.0, registry.get("downstream.max.concurrency").tag("downstream", "healthcare-api").gauge().value());
+    }
+}
@@ -1,10 +1,12 @@
 package com.eh.digitalpathology.dicomreceiver.service;
 
 import com.eh.digitalpathology.dicomreceiver.config.KafkaTopicConfig;
+import com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption;
 import com.eh.digitalpathology.dicomreceiver.model.DicomRequestDBObject;
 import com.eh.digitalpathology.dicomreceiver.model.ReqGeneratorNotificationMsg;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,12 +14,18 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedConstruction;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.WatchEvent;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,12 +43,31 @@ class FileProcessingServiceTest {
     @Mock
     private KafkaTopicConfig kafkaTopicConfig;
 
+    @Mock
+    private IngestPipeline ingestPipeline;
+
+    @Mock
+    private DicomInsertBatcher dicomInsertBatcher;
+
     @InjectMocks
     private FileProcessingService fileProcessingService;
 
     private static final String INTERMEDIATE = "intermediate";
     private static final Path TEMP_DIR = Paths.get(System.getProperty("java.io.tmpdir"));
 
+    @BeforeEach
+    void setUp() {
+        // Run the persist and notify stages inline
+        lenient().doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(ingestPipeline).persist(any());
+        lenient().doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(ingestPipeline).publish(any());
+    }
+
     @Test
     void testProcessFile_FileDoesNotExist_shouldSkipProcessing() {
         WatchEvent<Path> mockEvent = mock(WatchEvent.class);
@@ -52,7 +79,7 @@ class FileProcessingServiceTest {
 
             fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
 
-            verify(dicomExtractorService, never()).extract(any(), any());
+            verify(dicomExtractorService, never()).extractFile(any(), any());
             verify(databaseService, never()).insertDicomData(any(), any());
             verify(eventNotificationService, never()).sendEvent(any(), any(), any());
         }
@@ -69,7 +96,7 @@ class FileProcessingServiceTest {
 
             fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
 
-            verify(dicomExtractorService, never()).extract(any(), any());
+            verify(dicomExtractorService, never()).extractFile(any(), any());
             verify(databaseService, never()).insertDicomData(any(), any());
             verify(eventNotificationService, never()).sendEvent(any(), any(), any());
         }
@@ -84,16 +111,36 @@ class FileProcessingServiceTest {
         try (var filesMock = mockStatic(Files.class)) {
             filesMock.when(() -> Files.exists(mockFile)).thenReturn(true);
 
-            when(dicomExtractorService.extract(INTERMEDIATE, mockFile)).thenReturn(null);
+            when(dicomExtractorService.extractFile(INTERMEDIATE, mockFile)).thenReturn(DicomExtractorService.Extraction.done(null));
 
             fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
 
-            verify(dicomExtractorService, times(1)).extract(INTERMEDIATE, mockFile);
+            verify(dicomExtractorService, times(1)).extractFile(INTERMEDIATE, mockFile);
             verify(databaseService, never()).insertDicomData(any(), any());
             verify(eventNotificationService, never()).sendEvent(any(), any(), any());
         }
     }
 
+    @Test
+    void testProcessFile_StowBatchedUpload_completesWhenBatchIsSent() {
+        WatchEvent<Path> mockEvent = mock(WatchEvent.class);
+        when(mockEvent.context()).thenReturn(Paths.get("pathqa.dcm"));
+        Path mockFile = TEMP_DIR.resolve("pathqa.dcm");
+        CompletableFuture<Void> batch = new CompletableFuture<>();
+
+        try (var filesMock = mockStatic(Files.class)) {
+            filesMock.when(() -> Files.exists(mockFile)).thenReturn(true);
+            when(dicomExtractorService.extractFile(INTERMEDIATE, mockFile)).thenReturn(new DicomExtractorService.Extraction(null, batch));
+
+            CompletableFuture<Void> ingested = fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
+
+            assertFalse(ingested.isDone());
+            batch.completeExceptionally(new IllegalStateException("STOW-RS batch failed"));
+            assertTrue(ingested.isCompletedExceptionally());
+            verify(ingestPipeline, never()).persist(any());
+        }
+    }
+
     @Test
     void testProcessFile_SuccessFlow_shouldNotifyKafkaTwice() {
         WatchEvent<Path> mockEvent = mock(WatchEvent.class);
@@ -112,13 +159,15 @@ class FileProcessingServiceTest {
         try (var filesMock = mockStatic(Files.class)) {
             filesMock.when(() -> Files.exists(mockFile)).thenReturn(true);
 
-            when(dicomExtractorService.extract(INTERMEDIATE, mockFile)).thenReturn(mockDBObject);
+            when(dicomExtractorService.extractFile(INTERMEDIATE, mockFile)).thenReturn(DicomExtractorService.Extraction.done(mockDBObject));
             when(databaseService.insertDicomData(mockDBObject, FileProcessingService.DICOM_RECEIVER))
                     .thenReturn("success");
 
             fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
 
-            verify(dicomExtractorService, times(1)).extract(INTERMEDIATE, mockFile);
+            verify(dicomExtractorService, times(1)).extractFile(INTERMEDIATE, mockFile);
+            verify(ingestPipeline).persist(any());
+            verify(ingestPipeline).publish(any());
             verify(databaseService, times(1)).insertDicomData(mockDBObject, FileProcessingService.DICOM_RECEIVER);
             verify(eventNotificationService, times(1))
                     .sendEvent(eq("receiver-topic"), eq("B123"), anyString());
@@ -142,17 +191,101 @@ class FileProcessingServiceTest {
         try (var filesMock = mockStatic(Files.class)) {
             filesMock.when(() -> Files.exists(mockFile)).thenReturn(true);
 
-            when(dicomExtractorService.extract(INTERMEDIATE, mockFile)).thenReturn(mockDBObject);
+            when(dicomExtractorService.extractFile(INTERMEDIATE, mockFile)).thenReturn(DicomExtractorService.Extraction.done(mockDBObject));
             when(databaseService.insertDicomData(mockDBObject, FileProcessingService.DICOM_RECEIVER))
                     .thenReturn("failure");
 
-            fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
+            CompletableFuture<Void> ingested = fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
 
+            assertTrue(ingested.isCompletedExceptionally());
             verify(databaseService, times(1)).insertDicomData(mockDBObject, FileProcessingService.DICOM_RECEIVER);
+            verify(ingestPipeline, never()).publish(any());
             verify(eventNotificationService, never()).sendEvent(any(), any(), any());
         }
     }
 
+    @Test
+    void testPersist_BatchedInsert_notifiesKafkaWhenBatchReturns() throws Exception {
+        ReflectionTestUtils.setField(fileProcessingService, "insertBatchEnabled", true);
+        DicomRequestDBObject mockDBObject = new DicomRequestDBObject();
+        mockDBObject.setBarcode("B123");
+        mockDBObject.setSopInstanceUid("SOP123");
+        CompletableFuture<String> batch = new CompletableFuture<>();
+        // The result is handed on from a worker thread, never from the thread completing the batch
+        Thread batchThread = Thread.currentThread();
+        lenient().doAnswer(inv -> {
+            assertNotSame(batchThread, Thread.currentThread());
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(ingestPipeline).publish(any());
+        when(dicomInsertBatcher.submit(mockDBObject, FileProcessingService.DICOM_RECEIVER)).thenReturn(batch);
+        when(kafkaTopicConfig.getReceiver()).thenReturn("receiver-topic");
+        when(kafkaTopicConfig.getScanProgress()).thenReturn("scan-progress-topic");
+
+        CompletableFuture<Void> ingested = new CompletableFuture<>();
+        fileProcessingService.persist(mockDBObject, ingested);
+        verify(ingestPipeline, never()).publish(any());
+        assertFalse(ingested.isDone());
+
+        batch.complete("success");
+
+        assertNull(ingested.get(5, TimeUnit.SECONDS));
+        verify(databaseService, never()).insertDicomData(any(), any());
+        verify(ingestPipeline).publish(any());
+        verify(eventNotificationService).sendEvent(eq("receiver-topic"), eq("B123"), anyString());
+        verify(eventNotificationService).sendEvent(eq("scan-progress-topic"), eq("B123"), anyString());
+    }
+
+    @Test
+    void testPersist_BatchedInsertFails_shouldNotNotifyKafka() {
+        ReflectionTestUtils.setField(fileProcessingService, "insertBatchEnabled", true);
+        DicomRequestDBObject mockDBObject = new DicomRequestDBObject();
+        mockDBObject.setSopInstanceUid("SOP123");
+        when(dicomInsertBatcher.submit(mockDBObject, FileProcessingService.DICOM_RECEIVER))
+                .thenReturn(CompletableFuture.failedFuture(new DbConnectorExeption("DB error", "Connection refused")));
+
+        CompletableFuture<Void> ingested = new CompletableFuture<>();
+        fileProcessingService.persist(mockDBObject, ingested);
+
+        assertThrows(ExecutionException.class, () -> ingested.get(5, TimeUnit.SECONDS));
+        verify(ingestPipeline, never()).publish(any());
+        verify(eventNotificationService, never()).sendEvent(any(), any(), any());
+    }
+
+    @Test
+    void testPersistReactive_notifiesKafkaOnceInserted() {
+        DicomRequestDBObject mockDBObject = new DicomRequestDBObject();
+        mockDBObject.setBarcode("B123");
+        when(databaseService.insertDicomDataReactive(mockDBObject, FileProcessingService.DICOM_RECEIVER)).thenReturn(Mono.just("success"));
+        when(kafkaTopicConfig.getReceiver()).thenReturn("receiver-topic");
+        when(kafkaTopicConfig.getScanProgress()).thenReturn("scan-progress-topic");
+
+        CompletableFuture<Void> ingested = new CompletableFuture<>();
+        Mono<String> persisted = fileProcessingService.persistReactive(mockDBObject, ingested);
+        verify(ingestPipeline, never()).publish(any());
+
+        assertEquals("success", persisted.block());
+        assertTrue(ingested.isDone() && !ingested.isCompletedExceptionally());
+        verify(databaseService, never()).insertDicomData(any(), any());
+        verify(eventNotificationService).sendEvent(eq("receiver-topic"), eq("B123"), anyString());
+        verify(eventNotificationService).sendEvent(eq("scan-progress-topic"), eq("B123"), anyString());
+    }
+
+    @Test
+    void testPersistReactive_InsertFails_shouldNotNotifyKafka() {
+        DicomRequestDBObject mockDBObject = new DicomRequestDBObject();
+        when(databaseService.insertDicomDataReactive(mockDBObject, FileProcessingService.DICOM_RECEIVER))
+                .thenReturn(Mono.error(new DbConnectorExeption("DB error", "Connection refused")));
+
+        CompletableFuture<Void> ingested = new CompletableFuture<>();
+        Mono<String> persisted = fileProcessingService.persistReactive(mockDBObject, ingested);
+
+        assertThrows(DbConnectorExeption.class, persisted::block);
+        assertTrue(ingested.isCompletedExceptionally());
+        verify(ingestPipeline, never()).publish(any());
+        verify(eventNotificationService, never()).sendEvent(any(), any(), any());
+    }
+
     @Test
     void testProcessFile_ExceptionDuringExtraction_shouldBeHandledGracefully() {
         WatchEvent<Path> mockEvent = mock(WatchEvent.class);
@@ -162,11 +295,12 @@ class FileProcessingServiceTest {
         try (var filesMock = mockStatic(Files.class)) {
             filesMock.when(() -> Files.exists(mockFile)).thenReturn(true);
 
-            when(dicomExtractorService.extract(INTERMEDIATE, mockFile))
+            when(dicomExtractorService.extractFile(INTERMEDIATE, mockFile))
                     .thenThrow(new RuntimeException("Extraction failed"));
 
-            fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
+            CompletableFuture<Void> ingested = fileProcessingService.processFile(mockEvent, TEMP_DIR.toString(), INTERMEDIATE);
 
+            assertTrue(ingested.isCompletedExceptionally());
             verify(databaseService, never()).insertDicomData(any(), any());
             verify(eventNotificationService, never()).sendEvent(any(), any(), any());
         }
@@ -0,0 +1,202 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.exceptions.DicomAttributesException;
+import com.eh.digitalpathology.dicomreceiver.util.UploadBufferPool;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GcsUploadServiceTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Mock
+    private Storage storage;
+
+    private UploadBufferPool uploadBufferPool;
+    private ExecutorService uploadExecutor;
+    private GcsUploadService gcsUploadService;
+
+    // object name -> bytes written through its WriteChannel
+    private final Map<String, ByteArrayOutputStream> uploaded = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        uploadBufferPool = spy(new UploadBufferPool(2, 1024));
+        uploadExecutor = Executors.newFixedThreadPool(2);
+        gcsUploadService = new GcsUploadService(storage, uploadBufferPool, uploadExecutor, new DownstreamLimits(64, 100, 16, 8));
+        ReflectionTestUtils.setField(gcsUploadService, "compositeThresholdMb", 1L);
+        ReflectionTestUtils.setField(gcsUploadService, "partSizeMb", 1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    private void recordWrites() throws IOException {
+        when(storage.writer(any(BlobInfo.class))).thenAnswer(inv -> {
+            BlobInfo info = inv.getArgument(0);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            uploaded.put(info.getName(), sink);
+            WriteChannel writer = mock(WriteChannel.class);
+            when(writer.write(any(ByteBuffer.class))).thenAnswer(w -> {
+                ByteBuffer src = w.getArgument(0);
+                int n = src.remaining();
+                byte[] bytes = new byte[n];
+                src.get(bytes);
+                sink.write(bytes);
+                return n;
+            });
+            return writer;
+        });
+    }
+
+    private static Path fileOfSize(long size) throws IOException {
+        Path file = Files.createTempFile("gcs-upload", ".dcm");
+        byte[] content = new byte[(int) size];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        Files.write(file, content);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    @Test
+    void upload_BelowThreshold_StreamsWholeFileThroughOneWriter() throws Exception {
+        Path file = fileOfSize(2500);
+        recordWrites();
+
+        gcsUploadService.upload("bucket", "study/series/sop.dcm", file.toFile());
+
+        assertEquals(1, uploaded.size());
+        assertArrayEquals(Files.readAllBytes(file), uploaded.get("study/series/sop.dcm").toByteArray());
+        verify(storage, never()).compose(any());
+        verify(uploadBufferPool).acquire();
+        assertEquals(2, uploadBufferPool.availableBuffers());
+    }
+
+    @Test
+    void upload_AboveThreshold_UploadsPartsInParallelAndComposes() throws Exception {
+        // 2.5 MB with 1 MB parts -> 3 parts
+        Path file = fileOfSize(2 * MB + MB / 2);
+        recordWrites();
+
+        gcsUploadService.upload("bucket", "big.dcm", file.toFile());
+
+        ArgumentCaptor<Storage.ComposeRequest> compose = ArgumentCaptor.forClass(Storage.ComposeRequest.class);
+        verify(storage).compose(compose.capture());
+        assertEquals("big.dcm", compose.getValue().getTarget().getName());
+        assertEquals("application/dicom", compose.getValue().getTarget().getContentType());
+
+        List<String> sources = new ArrayList<>();
+        compose.getValue().getSourceBlobs().forEach(b -> sources.add(b.getName()));
+        assertEquals(List.of("big.dcm.part-00", "big.dcm.part-01", "big.dcm.part-02"), sources);
+
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (String source : sources) {
+            joined.write(uploaded.get(source).toByteArray());
+        }
+        assertArrayEquals(Files.readAllBytes(file), joined.toByteArray());
+        assertEquals(MB, uploaded.get("big.dcm.part-00").size());
+        assertEquals(MB / 2, uploaded.get("big.dcm.part-02").size());
+
+        verify(storage).delete(List.of(
+                BlobId.of("bucket", "big.dcm.part-00"),
+                BlobId.of("bucket", "big.dcm.part-01"),
+                BlobId.of("bucket", "big.dcm.part-02")));
+        assertEquals(2, uploadBufferPool.availableBuffers());
+    }
+
+    @Test
+    void upload_SetsSmallChunkSizeInsteadOfPooledBufferSize() throws Exception {
+        uploadBufferPool = new UploadBufferPool(1, (int) MB);
+        gcsUploadService = new GcsUploadService(storage, uploadBufferPool, uploadExecutor, new DownstreamLimits(64, 100, 16, 8));
+        ReflectionTestUtils.setField(gcsUploadService, "compositeThresholdMb", 1L);
+        ReflectionTestUtils.setField(gcsUploadService, "chunkSizeKb", 256);
+        WriteChannel writer = mock(WriteChannel.class);
+        when(writer.write(any(ByteBuffer.class))).thenAnswer(w -> {
+            ByteBuffer src = w.getArgument(0);
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        });
+        when(storage.writer(any(BlobInfo.class))).thenReturn(writer);
+
+        gcsUploadService.upload("bucket", "sop.dcm", fileOfSize(2500).toFile());
+
+        verify(writer).setChunkSize(256 * 1024);
+    }
+
+    @Test
+    void upload_PartFails_ThrowsUploadExceptionAndDeletesParts() throws Exception {
+        Path file = fileOfSize(2 * MB);
+        when(storage.writer(any(BlobInfo.class))).thenAnswer(inv -> {
+            WriteChannel writer = mock(WriteChannel.class);
+            when(writer.write(any(ByteBuffer.class))).thenThrow(new IOException("network down"));
+            return writer;
+        });
+
+        DicomAttributesException ex = assertThrows(DicomAttributesException.class,
+                () -> gcsUploadService.upload("bucket", "fail.dcm", file.toFile()));
+
+        assertEquals("UPLOAD_EXCEPTION", ex.getErrorCode());
+        assertTrue(ex.getErrorMessage().contains("network down"));
+        verify(storage, never()).compose(any());
+        verify(storage).delete(anyList());
+        assertEquals(2, uploadBufferPool.availableBuffers());
+    }
+
+    @Test
+    void upload_ComposeFails_ThrowsUploadExceptionAndDeletesParts() throws Exception {
+        Path file = fileOfSize(2 * MB);
+        recordWrites();
+        when(storage.compose(any())).thenThrow(new StorageException(503, "compose failed"));
+
+        DicomAttributesException ex = assertThrows(DicomAttributesException.class,
+                () -> gcsUploadService.upload("bucket", "compose.dcm", file.toFile()));
+
+        assertEquals("UPLOAD_EXCEPTION", ex.getErrorCode());
+        verify(storage).delete(anyList());
+    }
+
+    @Test
+    void partSize_GrowsSoPartCountStaysWithinComposeLimit() {
+        ReflectionTestUtils.setField(gcsUploadService, "partSizeMb", 128L);
+
+        assertEquals(128 * MB, gcsUploadService.partSize(1024 * MB));
+
+        long huge = 8192 * MB;
+        long partSize = gcsUploadService.partSize(huge);
+        assertEquals(256 * MB, partSize);
+        assertTrue((huge + partSize - 1) / partSize <= GcsUploadService.MAX_COMPOSE_SOURCES);
+    }
+}
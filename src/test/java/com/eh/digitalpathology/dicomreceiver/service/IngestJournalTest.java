@@ -0,0 +1,115 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestJournalTest {
+
+    private static final String ROOT = "/opt/received";
+
+    @TempDir
+    Path dir;
+
+    private IngestJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private IngestJournal reopen() {
+        if (journal != null) {
+            journal.close();
+        }
+        journal = new IngestJournal(dir.toString(), 1);
+        journal.open();
+        return journal;
+    }
+
+    @Test
+    void disabled_WhenDirectoryBlank() {
+        journal = new IngestJournal("", 1);
+        journal.open();
+
+        journal.record(Path.of(ROOT, "a.dcm"), ROOT, IngestJournal.State.DETECTED);
+
+        assertFalse(journal.isEnabled());
+        assertTrue(journal.pending(ROOT).isEmpty());
+    }
+
+    @Test
+    void replay_ResumesPendingFilesAndForgetsFinishedOnes() {
+        reopen();
+        journal.record(Path.of(ROOT, "detected.dcm"), ROOT, IngestJournal.State.DETECTED);
+        journal.record(Path.of(ROOT, "stable.dcm"), ROOT, IngestJournal.State.DETECTED);
+        journal.record(Path.of(ROOT, "stable.dcm"), ROOT, IngestJournal.State.STABLE);
+        journal.record(Path.of(ROOT, "done.dcm"), ROOT, IngestJournal.State.STABLE);
+        journal.record(Path.of(ROOT, "done.dcm"), ROOT, IngestJournal.State.PROCESSED);
+        journal.record(Path.of(ROOT, "failed.dcm"), ROOT, IngestJournal.State.STABLE);
+        journal.record(Path.of(ROOT, "failed.dcm"), ROOT, IngestJournal.State.FAILED);
+        journal.record(Path.of("/mnt/vol2", "other.dcm"), "/mnt/vol2", IngestJournal.State.DETECTED);
+
+        Map<Path, IngestJournal.Entry> pending = reopen().pending(ROOT);
+
+        assertEquals(2, pending.size());
+        assertEquals(IngestJournal.State.DETECTED, pending.get(Path.of(ROOT, "detected.dcm")).state());
+        assertEquals(IngestJournal.State.STABLE, pending.get(Path.of(ROOT, "stable.dcm")).state());
+        assertEquals(1, journal.pending("/mnt/vol2").size());
+    }
+
+    @Test
+    void replay_IgnoresTornRecordAtTheEnd() throws Exception {
+        reopen();
+        journal.record(Path.of(ROOT, "kept.dcm"), ROOT, IngestJournal.State.DETECTED);
+        journal.close();
+        journal = null;
+
+        // A record whose body was written but whose length was not, as a crash mid-append would leave it
+        Path file = dir.resolve("ingest.journal");
+        int end = ByteBuffer.wrap(Files.readAllBytes(file)).getInt(0);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(end + Integer.BYTES);
+            raf.write(new byte[]{1, 0, 0, 0, 4, 'j', 'u', 'n', 'k'});
+        }
+
+        Map<Path, IngestJournal.Entry> pending = reopen().pending(ROOT);
+
+        assertEquals(Map.of(Path.of(ROOT, "kept.dcm"), new IngestJournal.Entry(IngestJournal.State.DETECTED, ROOT)), pending);
+    }
+
+    @Test
+    void record_FullJournal_CompactsToPendingFiles() {
+        reopen();
+        // ~60 bytes per record; 1 MB fills after ~17k transitions
+        for (int i = 0; i < 20_000; i++) {
+            Path path = Path.of(ROOT, "tile-" + i + ".dcm");
+            journal.record(path, ROOT, IngestJournal.State.DETECTED);
+            journal.record(path, ROOT, IngestJournal.State.PROCESSED);
+        }
+        journal.record(Path.of(ROOT, "last.dcm"), ROOT, IngestJournal.State.STABLE);
+
+        assertEquals(Map.of(Path.of(ROOT, "last.dcm"), new IngestJournal.Entry(IngestJournal.State.STABLE, ROOT)), reopen().pending(ROOT));
+        assertEquals(1024 * 1024, dir.resolve("ingest.journal").toFile().length());
+    }
+
+    @Test
+    void record_RepeatedStateOrUnknownTerminalState_WritesNothing() {
+        reopen();
+        journal.record(Path.of(ROOT, "never-seen.dcm"), ROOT, IngestJournal.State.PROCESSED);
+        journal.record(Path.of(ROOT, "a.dcm"), ROOT, IngestJournal.State.DETECTED);
+        journal.record(Path.of(ROOT, "a.dcm"), ROOT, IngestJournal.State.DETECTED);
+
+        assertEquals(1, reopen().pending(ROOT).size());
+    }
+}
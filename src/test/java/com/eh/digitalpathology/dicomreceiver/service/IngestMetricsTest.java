@@ -0,0 +1,52 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final IngestMetrics metrics = new IngestMetrics(registry);
+
+    @Test
+    void stop_RecordsTimerWithTagsAndPercentiles() {
+        metrics.stop(metrics.start(), "ingest.extract", IngestMetrics.scanner("SN-1"), IngestMetrics.route("pathqa"));
+        metrics.stop(metrics.start(), "ingest.extract", IngestMetrics.scanner(null), IngestMetrics.route("error"));
+
+        Timer timer = registry.get("ingest.extract").tag("scanner", "SN-1").tag("route", "pathqa").timer();
+        assertEquals(1, timer.count());
+        assertEquals(1, registry.get("ingest.extract").tag("scanner", IngestMetrics.UNKNOWN).timer().count());
+        assertArrayEquals(new double[]{0.5, 0.95, 0.99},
+                Arrays.stream(timer.takeSnapshot().percentileValues()).mapToDouble(ValueAtPercentile::percentile).toArray());
+    }
+
+    @Test
+    void countBytes_AddsPerTagAndIgnoresEmptyFiles() {
+        metrics.countBytes("ingest.received", 100, IngestMetrics.scanner("SN-1"));
+        metrics.countBytes("ingest.received", 50, IngestMetrics.scanner("SN-1"));
+        metrics.countBytes("ingest.received", 0, IngestMetrics.scanner("SN-2"));
+
+        assertEquals(150, registry.get("ingest.received").tag("scanner", "SN-1").counter().count());
+        assertNull(registry.find("ingest.received").tag("scanner", "SN-2").counter());
+    }
+
+    @Test
+    void monitor_ExposesExecutorQueueDepth() {
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            metrics.monitor(executor, "ingestProcessExecutor");
+
+            assertEquals(0, registry.get("executor.queued").tag("name", "ingestProcessExecutor").gauge().value());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IngestPipelineTest {
+
+    private ExecutorService processStage;
+    private ExecutorService persistStage;
+    private ExecutorService notifyStage;
+    private IngestPipeline pipeline;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        processStage = Executors.newFixedThreadPool(2);
+        persistStage = Executors.newSingleThreadExecutor();
+        notifyStage = Executors.newSingleThreadExecutor();
+        pipeline = new IngestPipeline(processStage, persistStage, notifyStage, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        processStage.shutdownNow();
+        persistStage.shutdownNow();
+        notifyStage.shutdownNow();
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void offer_PipelineFull_RefusesUntilAFileLeavesTheProcessStage() {
+        assertTrue(pipeline.offer(this::awaitRelease));
+        assertTrue(pipeline.offer(this::awaitRelease));
+
+        assertFalse(pipeline.offer(() -> { }));
+        assertEquals(0, pipeline.availableAdmissions());
+
+        release.countDown();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> pipeline.availableAdmissions() == 2);
+        assertTrue(pipeline.offer(() -> { }));
+    }
+
+    @Test
+    void bindTo_GaugesFilesInFlight() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        pipeline.bindTo(registry);
+        pipeline.offer(this::awaitRelease);
+
+        assertEquals(1, registry.get("ingest.pipeline.in.flight").tag("root", "shared").gauge().value());
+        assertEquals(2, registry.get("ingest.pipeline.max.in.flight").gauge().value());
+
+        release.countDown();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> registry.get("ingest.pipeline.in.flight").gauge().value() == 0);
+    }
+
+    @Test
+    void submit_PipelineFull_WaitsForRoom() throws Exception {
+        pipeline.offer(this::awaitRelease);
+        pipeline.offer(this::awaitRelease);
+
+        AtomicBoolean admitted = new AtomicBoolean();
+        Thread submitter = new Thread(() -> {
+            try {
+                pipeline.submit(() -> { });
+                admitted.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        submitter.join(300);
+        assertFalse(admitted.get());
+
+        release.countDown();
+        submitter.join(5000);
+        assertTrue(admitted.get());
+    }
+
+    @Test
+    void stages_RunHandedOnWorkAndSurviveFailures() throws Exception {
+        CountDownLatch notified = new CountDownLatch(1);
+
+        pipeline.offer(() -> pipeline.persist(() -> pipeline.publish(notified::countDown)));
+        assertTrue(notified.await(5, TimeUnit.SECONDS));
+
+        pipeline.offer(() -> { throw new IllegalStateException("boom"); });
+        await().atMost(5, TimeUnit.SECONDS).until(() -> pipeline.availableAdmissions() == 2);
+    }
+
+    @Test
+    void offer_ProcessStageRejects_ReleasesAdmission() {
+        ExecutorService rejecting = mock(ExecutorService.class);
+        doThrow(new RejectedExecutionException("shut down")).when(rejecting).execute(any());
+        IngestPipeline rejectingPipeline = new IngestPipeline(rejecting, persistStage, notifyStage, 1);
+
+        assertThrows(RejectedExecutionException.class, () -> rejectingPipeline.offer(() -> { }));
+        assertEquals(1, rejectingPipeline.availableAdmissions());
+    }
+
+    @Test
+    void withProcessStage_OwnAdmissionsButSharedDownstreamStages() throws Exception {
+        ExecutorService rootStage = Executors.newSingleThreadExecutor();
+        try {
+            IngestPipeline root = pipeline.withProcessStage(rootStage, 1);
+            assertTrue(root.offer(this::awaitRelease));
+            assertFalse(root.offer(() -> { }));
+            // The shared pipeline's admissions are untouched by the root's in-flight file
+            assertEquals(2, pipeline.availableAdmissions());
+
+            CountDownLatch persisted = new CountDownLatch(1);
+            root.persist(persisted::countDown);
+            assertTrue(persisted.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            rootStage.shutdownNow();
+        }
+    }
+
+    @Test
+    void persistAsync_BoundsCallsInFlightWithoutHoldingThePersistThread() {
+        IngestPipeline bounded = new IngestPipeline(processStage, persistStage, notifyStage, 2, 2);
+        Sinks.Empty<Void> first = Sinks.empty();
+        Sinks.Empty<Void> second = Sinks.empty();
+        AtomicInteger subscribed = new AtomicInteger();
+
+        bounded.persistAsync(() -> first.asMono().doOnSubscribe(s -> subscribed.incrementAndGet()));
+        bounded.persistAsync(() -> second.asMono().doOnSubscribe(s -> subscribed.incrementAndGet()));
+        bounded.persistAsync(() -> Mono.fromRunnable(subscribed::incrementAndGet));
+
+        // One persist thread started both calls and now waits for one of them to finish
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscribed.get() == 2);
+        assertEquals(2, subscribed.get());
+
+        first.tryEmitError(new IllegalStateException("DB error"));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> subscribed.get() == 3);
+        second.tryEmitEmpty();
+    }
+}
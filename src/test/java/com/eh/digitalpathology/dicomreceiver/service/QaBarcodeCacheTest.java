@@ -0,0 +1,176 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QaBarcodeCacheTest {
+
+    private static final String BARCODE = "QA-0001";
+
+    @Mock
+    private DatabaseService databaseService;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private QaBarcodeCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new QaBarcodeCache(databaseService, true, 100, Duration.ofSeconds(30), Duration.ofMinutes(60), "qaslide/barcodes", nanos::get);
+    }
+
+    @Test
+    void exists_concurrentLookupsShareOneRequest() throws Exception {
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(databaseService.isBarcodeExists(BARCODE)).thenAnswer(invocation -> {
+            inFlight.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> answers = new ArrayList<>();
+            answers.add(executor.submit(() -> cache.exists(BARCODE)));
+            assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 20; i++) {
+                answers.add(executor.submit(() -> cache.exists(BARCODE)));
+            }
+            release.countDown();
+
+            for (Future<Boolean> answer : answers) {
+                assertTrue(answer.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(databaseService, times(1)).isBarcodeExists(BARCODE);
+    }
+
+    @Test
+    void exists_cachesAnswerForTtl() {
+        when(databaseService.isBarcodeExists(BARCODE)).thenReturn(false, true);
+
+        assertFalse(cache.exists(BARCODE));
+        nanos.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertFalse(cache.exists(BARCODE));
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertTrue(cache.exists(BARCODE));
+        verify(databaseService, times(2)).isBarcodeExists(BARCODE);
+    }
+
+    @Test
+    void exists_missingAnswerIsFalse() {
+        when(databaseService.isBarcodeExists(BARCODE)).thenReturn(null);
+
+        assertFalse(cache.exists(BARCODE));
+    }
+
+    @Test
+    void exists_failedLookupIsThrownAndRetried() {
+        when(databaseService.isBarcodeExists(BARCODE))
+                .thenThrow(new DbConnectorExeption("DB error", "Connection refused"))
+                .thenReturn(true);
+
+        DbConnectorExeption failure = assertThrows(DbConnectorExeption.class, () -> cache.exists(BARCODE));
+        assertEquals("Connection refused", failure.getErrorMessage());
+        assertTrue(cache.exists(BARCODE));
+    }
+
+    @Test
+    void exists_disabledOrNullBarcode_bypassesCache() {
+        QaBarcodeCache disabled = new QaBarcodeCache(databaseService, false, 100, Duration.ofSeconds(30), Duration.ofMinutes(60), "", nanos::get);
+        when(databaseService.isBarcodeExists(BARCODE)).thenReturn(true);
+
+        assertTrue(disabled.exists(BARCODE));
+        assertTrue(disabled.exists(BARCODE));
+        assertFalse(cache.exists(null));
+
+        verify(databaseService, times(2)).isBarcodeExists(BARCODE);
+        verify(databaseService).isBarcodeExists(null);
+    }
+
+    @Test
+    void warm_preloadsBarcodesFromBulkEndpoint() {
+        when(databaseService.fetchQaSlideBarcodes("qaslide/barcodes")).thenReturn(List.of(BARCODE, "QA-0002"));
+
+        cache.warm();
+
+        assertTrue(cache.exists(BARCODE));
+        assertTrue(cache.exists("QA-0002"));
+        verify(databaseService, never()).isBarcodeExists(anyString());
+    }
+
+    @Test
+    void warm_preloadedBarcodesOutliveLookupTtl() {
+        when(databaseService.fetchQaSlideBarcodes("qaslide/barcodes")).thenReturn(List.of(BARCODE));
+        when(databaseService.isBarcodeExists("QA-0002")).thenReturn(true);
+        cache.warm();
+        assertTrue(cache.exists("QA-0002"));
+
+        nanos.addAndGet(Duration.ofMinutes(30).toNanos());
+        assertTrue(cache.exists(BARCODE));
+        assertTrue(cache.exists("QA-0002"));
+        verify(databaseService, never()).isBarcodeExists(BARCODE);
+        verify(databaseService, times(2)).isBarcodeExists("QA-0002");
+
+        nanos.addAndGet(Duration.ofMinutes(31).toNanos());
+        when(databaseService.isBarcodeExists(BARCODE)).thenReturn(true);
+        assertTrue(cache.exists(BARCODE));
+        verify(databaseService).isBarcodeExists(BARCODE);
+    }
+
+    @Test
+    void warm_withoutUriOrOnFailure_leavesCacheEmpty() {
+        QaBarcodeCache noUri = new QaBarcodeCache(databaseService, true, 100, Duration.ofSeconds(30), Duration.ofMinutes(60), "", nanos::get);
+        noUri.warm();
+        verify(databaseService, never()).fetchQaSlideBarcodes(anyString());
+
+        when(databaseService.fetchQaSlideBarcodes("qaslide/barcodes")).thenThrow(new DbConnectorExeption("DB error", "Connection refused"));
+        assertDoesNotThrow(cache::warm);
+    }
+
+    @Test
+    void refresh_dropsCachedAnswersAndRewarms() {
+        when(databaseService.isBarcodeExists(BARCODE)).thenReturn(false);
+        when(databaseService.fetchQaSlideBarcodes("qaslide/barcodes")).thenReturn(List.of(BARCODE));
+        assertFalse(cache.exists(BARCODE));
+
+        cache.refresh();
+
+        assertTrue(cache.exists(BARCODE));
+    }
+
+    @Test
+    void bindTo_recordsHitsAndMisses() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        when(databaseService.isBarcodeExists(BARCODE)).thenReturn(true);
+
+        cache.exists(BARCODE);
+        cache.exists(BARCODE);
+
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "qaBarcode").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "qaBarcode").tag("result", "miss").functionCounter().count());
+    }
+}
@@ -0,0 +1,64 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReconciliationScanTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void scan_ListsNestedFilesOldestFirst() throws Exception {
+        Instant now = Instant.now();
+        Path sub = Files.createDirectories(dir.resolve("a/b"));
+        Path newer = Files.write(dir.resolve("newer.dcm"), new byte[1]);
+        Path older = Files.write(sub.resolve("older.dcm"), new byte[1]);
+        Files.setLastModifiedTime(newer, FileTime.from(now));
+        Files.setLastModifiedTime(older, FileTime.from(now.minusSeconds(60)));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(List.of(older.toAbsolutePath(), newer.toAbsolutePath()), ReconciliationScan.scan(dir, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void scan_DirectoryLargerThanOneChunk_ListsEveryFile() throws Exception {
+        int count = ReconciliationScan.CHUNK_SIZE * 2 + 3;
+        for (int i = 0; i < count; i++) {
+            Files.write(dir.resolve("f" + i + ".dcm"), new byte[1]);
+        }
+        Files.createDirectory(dir.resolve("empty"));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Path> files = ReconciliationScan.scan(dir, pool);
+            assertEquals(count, files.size());
+            assertEquals(count, files.stream().distinct().count());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void scan_MissingRoot_ReturnsNothing() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            assertTrue(ReconciliationScan.scan(dir.resolve("missing"), pool).isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
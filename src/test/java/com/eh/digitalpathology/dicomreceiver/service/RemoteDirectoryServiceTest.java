@@ -44,7 +44,7 @@ class RemoteDirectoryServiceTest {
 
     @BeforeEach
     void setUp() {
-        service = new RemoteDirectoryService(commonUtils, executorService, sharedFolderConfig);
+        service = new RemoteDirectoryService(commonUtils, executorService, sharedFolderConfig, new DownstreamLimits(64, 100, 16, 8));
     }
 
     private void setMaxRetries(long value) throws Exception {
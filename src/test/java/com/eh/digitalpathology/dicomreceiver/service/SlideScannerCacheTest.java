@@ -0,0 +1,154 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.exceptions.DbConnectorExeption;
+import com.eh.digitalpathology.dicomreceiver.model.SlideScanner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SlideScannerCacheTest {
+
+    private static final String SERIAL = "SN-1";
+    private static final SlideScanner SCANNER = new SlideScanner("1", "scanner", "model", "lab", "pathology",
+            "store", "AE", "device", SERIAL, false, true);
+    private static final SlideScanner RECONFIGURED = new SlideScanner("1", "scanner", "model", "lab", "pathology",
+            "store", "AE", "device", SERIAL, true, true);
+
+    @Mock
+    private DatabaseService databaseService;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private SlideScannerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        // Refreshes run on the calling thread so they complete before get returns
+        cache = new SlideScannerCache(databaseService, true, 100, Duration.ofSeconds(60), Duration.ofSeconds(600),
+                Duration.ofSeconds(30), nanos::get, Runnable::run);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void get_loadsOnceAndServesFromCache() {
+        when(databaseService.findScannerByDeviceSerialNumber(SERIAL)).thenReturn(Optional.of(SCANNER));
+
+        for (int i = 0; i < 1000; i++) {
+            assertSame(SCANNER, cache.get(SERIAL));
+        }
+
+        verify(databaseService, times(1)).findScannerByDeviceSerialNumber(SERIAL);
+    }
+
+    @Test
+    void get_reloadsAfterRefreshInterval() {
+        when(databaseService.findScannerByDeviceSerialNumber(SERIAL)).thenReturn(Optional.of(SCANNER), Optional.of(RECONFIGURED));
+        cache.get(SERIAL);
+
+        advance(Duration.ofSeconds(61));
+
+        // The first read after the interval triggers the reload and is answered with the entry being replaced
+        cache.get(SERIAL);
+        assertSame(RECONFIGURED, cache.get(SERIAL));
+        verify(databaseService, times(2)).findScannerByDeviceSerialNumber(SERIAL);
+    }
+
+    @Test
+    void get_keepsScannerWhenRefreshFails() {
+        when(databaseService.findScannerByDeviceSerialNumber(SERIAL))
+                .thenReturn(Optional.of(SCANNER))
+                .thenThrow(new DbConnectorExeption("DB error", "Connection refused"));
+        cache.get(SERIAL);
+
+        advance(Duration.ofSeconds(61));
+
+        assertSame(SCANNER, cache.get(SERIAL));
+        assertSame(SCANNER, cache.get(SERIAL));
+    }
+
+    @Test
+    void get_cachesUnknownScannerForNegativeTtl() {
+        when(databaseService.findScannerByDeviceSerialNumber(SERIAL)).thenReturn(Optional.empty(), Optional.of(SCANNER));
+
+        assertNull(cache.get(SERIAL));
+        advance(Duration.ofSeconds(29));
+        assertNull(cache.get(SERIAL));
+        verify(databaseService, times(1)).findScannerByDeviceSerialNumber(SERIAL);
+
+        advance(Duration.ofSeconds(2));
+        assertSame(SCANNER, cache.get(SERIAL));
+        verify(databaseService, times(2)).findScannerByDeviceSerialNumber(SERIAL);
+    }
+
+    @Test
+    void get_doesNotCacheFailedLookup() {
+        when(databaseService.findScannerByDeviceSerialNumber(SERIAL))
+                .thenThrow(new DbConnectorExeption("DB error", "Connection refused"))
+                .thenReturn(Optional.of(SCANNER));
+
+        assertNull(cache.get(SERIAL));
+        assertSame(SCANNER, cache.get(SERIAL));
+    }
+
+    @Test
+    void invalidateAll_forcesReload() {
+        when(databaseService.findScannerByDeviceSerialNumber(SERIAL)).thenReturn(Optional.of(SCANNER), Optional.of(RECONFIGURED));
+        cache.get(SERIAL);
+
+        cache.invalidateAll();
+
+        assertSame(RECONFIGURED, cache.get(SERIAL));
+    }
+
+    @Test
+    void invalidate_forcesReloadOfOneScanner() {
+        when(databaseService.findScannerByDeviceSerialNumber(SERIAL)).thenReturn(Optional.of(SCANNER), Optional.of(RECONFIGURED));
+        cache.get(SERIAL);
+
+        cache.invalidate(SERIAL);
+
+        assertSame(RECONFIGURED, cache.get(SERIAL));
+    }
+
+    @Test
+    void get_disabledOrNullSerial_bypassesCache() {
+        SlideScannerCache disabled = new SlideScannerCache(databaseService, false, 100, Duration.ofSeconds(60),
+                Duration.ofSeconds(600), Duration.ofSeconds(30), nanos::get, Runnable::run);
+        when(databaseService.fetchScannerByDeviceSerialNumber(SERIAL)).thenReturn(SCANNER);
+
+        assertSame(SCANNER, disabled.get(SERIAL));
+        assertSame(SCANNER, disabled.get(SERIAL));
+        assertNull(cache.get(null));
+
+        verify(databaseService, times(2)).fetchScannerByDeviceSerialNumber(SERIAL);
+        verify(databaseService).fetchScannerByDeviceSerialNumber(null);
+        verify(databaseService, never()).findScannerByDeviceSerialNumber(any());
+    }
+
+    @Test
+    void bindTo_recordsHitsAndMisses() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        when(databaseService.findScannerByDeviceSerialNumber(SERIAL)).thenReturn(Optional.of(SCANNER));
+
+        cache.get(SERIAL);
+        cache.get(SERIAL);
+        cache.get(SERIAL);
+
+        assertEquals(2.0, registry.get("cache.gets").tag("cache", "slideScanner").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "slideScanner").tag("result", "miss").functionCounter().count());
+    }
+}
@@ -0,0 +1,87 @@
+package com.eh.digitalpathology.dicomreceiver.service;
+
+import com.eh.digitalpathology.dicomreceiver.config.WatcherConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class WatchRootsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final DirectoryWatcher directoryWatcher = mock(DirectoryWatcher.class);
+    private final ExecutorService shared = Executors.newSingleThreadExecutor();
+    private final IngestPipeline ingestPipeline = new IngestPipeline(shared, shared, shared, 4);
+    private final WatcherConfig config = new WatcherConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WatchRoots watchRoots = new WatchRoots(config, directoryWatcher, ingestPipeline, new IngestMetrics(meterRegistry));
+
+    @AfterEach
+    void tearDown() {
+        watchRoots.shutdown();
+        shared.shutdownNow();
+    }
+
+    private WatcherConfig.Root root(Path path, int priority) {
+        WatcherConfig.Root root = new WatcherConfig.Root();
+        root.setPath(path.toString());
+        root.setConcurrency(2);
+        root.setMaxInFlight(3);
+        root.setPriority(priority);
+        return root;
+    }
+
+    @Test
+    void start_NoRoots_StartsNothing() {
+        watchRoots.start("/intermediate");
+
+        verifyNoInteractions(directoryWatcher);
+    }
+
+    @Test
+    void start_RegistersOwnPipelineAndWatchesEveryRoot() throws Exception {
+        Path first = tempDir.resolve("vol1");
+        Path second = tempDir.resolve("vol2");
+        config.setRoots(List.of(root(first, 8), root(second, 42)));
+
+        watchRoots.start("/intermediate");
+
+        assertTrue(Files.isDirectory(first));
+        ArgumentCaptor<IngestPipeline> pipelines = ArgumentCaptor.forClass(IngestPipeline.class);
+        verify(directoryWatcher).registerRoot(eq(first.toString()), pipelines.capture());
+        verify(directoryWatcher).registerRoot(eq(second.toString()), pipelines.capture());
+        assertNotSame(ingestPipeline, pipelines.getValue());
+        assertEquals(3, pipelines.getValue().availableAdmissions());
+        assertEquals(0, meterRegistry.get("ingest.pipeline.in.flight").tag("root", second.toString()).gauge().value());
+        assertNotNull(meterRegistry.get("executor.queued").tag("name", "ingestProcessExecutor-vol1").gauge());
+        verify(directoryWatcher, timeout(TimeUnit.SECONDS.toMillis(5))).directoryLookup(first.toString(), "/intermediate");
+        verify(directoryWatcher, timeout(TimeUnit.SECONDS.toMillis(5))).directoryLookup(second.toString(), "/intermediate");
+    }
+
+    @Test
+    void start_Twice_StartsRootsOnce() {
+        config.setRoots(List.of(root(tempDir.resolve("vol1"), 5)));
+
+        watchRoots.start("/intermediate");
+        watchRoots.start("/intermediate");
+
+        verify(directoryWatcher, timeout(5000).times(1)).directoryLookup(anyString(), eq("/intermediate"));
+        verify(directoryWatcher, times(1)).registerRoot(anyString(), any());
+    }
+}
@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.security.GeneralSecurityException;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
@@ -29,7 +30,7 @@ class DicomSCPServerTest {
         when(commonUtils.getAeName()).thenReturn("TEST_AE");
         when(commonUtils.getPort()).thenReturn(11112);
 
-        dicomSCPServer = new DicomSCPServer(storageCommitmentSCPService, dicomStoreSCPService, commonUtils);
+        dicomSCPServer = new DicomSCPServer(storageCommitmentSCPService, dicomStoreSCPService, commonUtils, Executors.newCachedThreadPool());
     }
 
     @Test
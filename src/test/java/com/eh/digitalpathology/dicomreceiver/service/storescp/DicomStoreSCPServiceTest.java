@@ -1,10 +1,12 @@
 package com.eh.digitalpathology.dicomreceiver.service.storescp;
 
+import com.eh.digitalpathology.dicomreceiver.service.DirectoryWatcher;
 import com.eh.digitalpathology.dicomreceiver.util.CommonUtils;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.io.DicomOutputStream;
 import org.dcm4che3.net.Association;
 import org.dcm4che3.net.PDVInputStream;
@@ -13,27 +15,38 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class DicomStoreSCPServiceTest  {
 
     private CommonUtils commonUtils;
+    private DirectoryWatcher directoryWatcher;
     private DicomStoreSCPService dicomStoreSCPService;
 
     @BeforeEach
     void setUp() {
         commonUtils = mock(CommonUtils.class);
-        dicomStoreSCPService = new DicomStoreSCPService(commonUtils);
+        directoryWatcher = mock(DirectoryWatcher.class);
+        dicomStoreSCPService = new DicomStoreSCPService(commonUtils, directoryWatcher);
     }
 
     @Test
@@ -79,10 +92,135 @@ class DicomStoreSCPServiceTest  {
 
         Path expectedFile = tempDir.resolve(sopInstanceUID + ".dcm");
         assertTrue(Files.exists(expectedFile));
+        assertFalse(Files.exists(tempDir.resolve(sopInstanceUID + ".dcm.part")));
+        verify(directoryWatcher, never()).handOff(any(), any(), any());
 
         Files.deleteIfExists(expectedFile);
         Files.deleteIfExists(dicomTempFile);
         Files.deleteIfExists(tempDir);
     }
 
-}
\ No newline at end of file
+    @Test
+    void testStoreStreamsPdvBytesToFile() throws Exception {
+        String sopInstanceUID = "1.2.345.7777";
+        String sopClassUID = UID.SecondaryCaptureImageStorage;
+        String transferSyntaxUID = UID.ExplicitVRLittleEndian;
+        ReflectionTestUtils.setField(dicomStoreSCPService, "streamingEnabled", true);
+
+        Path tempDir = Files.createTempDirectory("dicom-stream-test");
+        when(commonUtils.getLocalStoragePath()).thenReturn(tempDir.toString());
+
+        Association association = mock(Association.class);
+        PresentationContext pc = mock(PresentationContext.class);
+        when(pc.getTransferSyntax()).thenReturn(transferSyntaxUID);
+
+        Attributes rq = new Attributes();
+        rq.setString(Tag.AffectedSOPClassUID, VR.UI, sopClassUID);
+        rq.setString(Tag.AffectedSOPInstanceUID, VR.UI, sopInstanceUID);
+
+        Attributes dataset = new Attributes();
+        dataset.setString(Tag.SOPClassUID, VR.UI, sopClassUID);
+        dataset.setString(Tag.SOPInstanceUID, VR.UI, sopInstanceUID);
+        dataset.setString(Tag.StudyInstanceUID, VR.UI, "1.2.3");
+        dataset.setString(Tag.SeriesInstanceUID, VR.UI, "1.2.3.4");
+
+        // PDV payload is the bare dataset in the negotiated transfer syntax (no preamble/meta header)
+        ByteArrayOutputStream pdvBytes = new ByteArrayOutputStream();
+        try (DicomOutputStream dos = new DicomOutputStream(pdvBytes, transferSyntaxUID)) {
+            dos.writeDataset(null, dataset);
+        }
+        PDVInputStream pdvInputStream = mock(PDVInputStream.class);
+        doAnswer(inv -> {
+            inv.<OutputStream>getArgument(0).write(pdvBytes.toByteArray());
+            return null;
+        }).when(pdvInputStream).copyTo(any(OutputStream.class));
+
+        dicomStoreSCPService.store(association, pc, rq, pdvInputStream, new Attributes());
+
+        Path expectedFile = tempDir.resolve(sopInstanceUID + ".dcm");
+        assertTrue(Files.exists(expectedFile));
+        try (DicomInputStream dis = new DicomInputStream(expectedFile.toFile())) {
+            Attributes fmi = dis.readFileMetaInformation();
+            Attributes stored = dis.readDataset();
+            assertEquals(transferSyntaxUID, fmi.getString(Tag.TransferSyntaxUID));
+            assertEquals(sopInstanceUID, fmi.getString(Tag.MediaStorageSOPInstanceUID));
+            assertEquals(sopInstanceUID, stored.getString(Tag.SOPInstanceUID));
+            assertEquals("1.2.3.4", stored.getString(Tag.SeriesInstanceUID));
+        }
+
+        Files.deleteIfExists(expectedFile);
+        Files.deleteIfExists(tempDir);
+    }
+
+    @Test
+    void testStoreRenamesPartFileAndHandsOff() throws Exception {
+        String sopInstanceUID = "1.2.345.8888";
+        ReflectionTestUtils.setField(dicomStoreSCPService, "streamingEnabled", true);
+        ReflectionTestUtils.setField(dicomStoreSCPService, "handOffEnabled", true);
+
+        Path tempDir = Files.createTempDirectory("dicom-handoff-test");
+        when(commonUtils.getLocalStoragePath()).thenReturn(tempDir.toString());
+        when(commonUtils.getIntermediateFileServer()).thenReturn("intermediateStore");
+
+        PresentationContext pc = mock(PresentationContext.class);
+        when(pc.getTransferSyntax()).thenReturn(UID.ExplicitVRLittleEndian);
+
+        Attributes rq = new Attributes();
+        rq.setString(Tag.AffectedSOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
+        rq.setString(Tag.AffectedSOPInstanceUID, VR.UI, sopInstanceUID);
+
+        PDVInputStream pdvInputStream = mock(PDVInputStream.class);
+        Path partFile = tempDir.resolve(sopInstanceUID + ".dcm.part");
+        doAnswer(inv -> {
+            // While streaming only the .part file may exist
+            assertTrue(Files.exists(partFile));
+            assertFalse(Files.exists(tempDir.resolve(sopInstanceUID + ".dcm")));
+            return null;
+        }).when(pdvInputStream).copyTo(any(OutputStream.class));
+
+        dicomStoreSCPService.store(mock(Association.class), pc, rq, pdvInputStream, new Attributes());
+
+        Path expectedFile = tempDir.resolve(sopInstanceUID + ".dcm");
+        assertTrue(Files.exists(expectedFile));
+        assertFalse(Files.exists(partFile));
+        var order = inOrder(directoryWatcher);
+        order.verify(directoryWatcher).expectHandOff(expectedFile);
+        order.verify(directoryWatcher).handOff(expectedFile, tempDir.toString(), "intermediateStore");
+
+        Files.deleteIfExists(expectedFile);
+        Files.deleteIfExists(tempDir);
+    }
+
+    @Test
+    void testStoreRemovesPartFileOnFailure() throws Exception {
+        String sopInstanceUID = "1.2.345.9999";
+        ReflectionTestUtils.setField(dicomStoreSCPService, "streamingEnabled", true);
+        ReflectionTestUtils.setField(dicomStoreSCPService, "handOffEnabled", true);
+
+        Path tempDir = Files.createTempDirectory("dicom-failure-test");
+        when(commonUtils.getLocalStoragePath()).thenReturn(tempDir.toString());
+
+        PresentationContext pc = mock(PresentationContext.class);
+        when(pc.getTransferSyntax()).thenReturn(UID.ExplicitVRLittleEndian);
+
+        Attributes rq = new Attributes();
+        rq.setString(Tag.AffectedSOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
+        rq.setString(Tag.AffectedSOPInstanceUID, VR.UI, sopInstanceUID);
+
+        PDVInputStream pdvInputStream = mock(PDVInputStream.class);
+        doAnswer(inv -> {
+            throw new IOException("association aborted");
+        }).when(pdvInputStream).copyTo(any(OutputStream.class));
+
+        assertThrows(IOException.class,
+                () -> dicomStoreSCPService.store(mock(Association.class), pc, rq, pdvInputStream, new Attributes()));
+
+        assertFalse(Files.exists(tempDir.resolve(sopInstanceUID + ".dcm.part")));
+        assertFalse(Files.exists(tempDir.resolve(sopInstanceUID + ".dcm")));
+        verify(directoryWatcher, never()).handOff(any(), any(), any());
+        verify(directoryWatcher).cancelHandOff(eq(tempDir.resolve(sopInstanceUID + ".dcm")));
+
+        Files.deleteIfExists(tempDir);
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.eh.digitalpathology.dicomreceiver.util;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InotifyTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parse_ReadsHeaderAndNulPaddedName() {
+        ByteBuffer buf = ByteBuffer.allocate(64).order(ByteOrder.nativeOrder());
+        buf.putInt(1).putInt(Inotify.IN_CLOSE_WRITE).putInt(0).putInt(16).put("a.dcm".getBytes(StandardCharsets.UTF_8));
+        buf.position(32);
+        buf.putInt(1).putInt(Inotify.IN_Q_OVERFLOW).putInt(0).putInt(0);
+
+        List<Inotify.Event> events = Inotify.parse(buf.array(), buf.position());
+
+        assertEquals(2, events.size());
+        assertEquals(new Inotify.Event(1, Inotify.IN_CLOSE_WRITE, "a.dcm"), events.get(0));
+        assertTrue(events.get(1).is(Inotify.IN_Q_OVERFLOW));
+        assertEquals("", events.get(1).name());
+    }
+
+    @Test
+    void poll_ReportsClosedAndMovedInFiles() throws Exception {
+        Assumptions.assumeTrue(Inotify.isSupported(), "inotify is Linux only");
+        Path outside = Files.createTempFile("inotify", ".dcm");
+        try (Inotify inotify = Inotify.open()) {
+            inotify.addWatch(dir, Inotify.IN_CLOSE_WRITE | Inotify.IN_MOVED_TO | Inotify.IN_ONLYDIR);
+
+            assertTrue(inotify.poll(50).isEmpty());
+
+            Files.write(dir.resolve("written.dcm"), "content".getBytes());
+            Files.move(outside, dir.resolve("moved.dcm"), StandardCopyOption.ATOMIC_MOVE);
+
+            List<Inotify.Event> events = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (events.size() < 2 && System.currentTimeMillis() < deadline) {
+                events.addAll(inotify.poll(200));
+            }
+            assertTrue(events.stream().anyMatch(e -> e.is(Inotify.IN_CLOSE_WRITE) && e.name().equals("written.dcm")));
+            assertTrue(events.stream().anyMatch(e -> e.is(Inotify.IN_MOVED_TO) && e.name().equals("moved.dcm")));
+        } finally {
+            Files.deleteIfExists(outside);
+        }
+    }
+
+    @Test
+    void addWatch_NotADirectory_Throws() throws Exception {
+        Assumptions.assumeTrue(Inotify.isSupported(), "inotify is Linux only");
+        Path file = Files.createFile(dir.resolve("plain.dcm"));
+        try (Inotify inotify = Inotify.open()) {
+            assertThrows(java.io.IOException.class, () -> inotify.addWatch(file, Inotify.IN_CLOSE_WRITE | Inotify.IN_ONLYDIR));
+        }
+    }
+}
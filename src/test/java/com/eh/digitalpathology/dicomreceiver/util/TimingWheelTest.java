@@ -0,0 +1,109 @@
+package com.eh.digitalpathology.dicomreceiver.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final TimingWheel<String> wheel = new TimingWheel<>(100, 8, nanos::get);
+    private final List<String> fired = new ArrayList<>();
+
+    private void advanceMillis(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        wheel.advance();
+    }
+
+    @Test
+    void schedule_RunsTaskOnceItsDeadlinePassed() {
+        wheel.schedule("a", 250, () -> fired.add("a"));
+
+        advanceMillis(200);
+        assertTrue(fired.isEmpty());
+        assertTrue(wheel.isScheduled("a"));
+
+        advanceMillis(100);
+        assertEquals(List.of("a"), fired);
+        assertFalse(wheel.isScheduled("a"));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void schedule_SameKeyAgain_ReplacesPendingTask() {
+        wheel.schedule("a", 100, () -> fired.add("first"));
+        wheel.schedule("a", 300, () -> fired.add("second"));
+        assertEquals(1, wheel.size());
+
+        advanceMillis(200);
+        assertTrue(fired.isEmpty());
+
+        advanceMillis(100);
+        assertEquals(List.of("second"), fired);
+    }
+
+    @Test
+    void schedule_DelayLongerThanOneRevolution_WaitsForItsRound() {
+        // 8 slots of 100 ms: 1000 ms lands in the same slot as 200 ms, one round later
+        wheel.schedule("long", 1000, () -> fired.add("long"));
+
+        advanceMillis(200);
+        assertTrue(fired.isEmpty());
+
+        advanceMillis(700);
+        assertTrue(fired.isEmpty());
+
+        advanceMillis(100);
+        assertEquals(List.of("long"), fired);
+    }
+
+    @Test
+    void advance_LateTick_CatchesUpOnAllDueTasks() {
+        wheel.schedule("a", 100, () -> fired.add("a"));
+        wheel.schedule("b", 500, () -> fired.add("b"));
+        wheel.schedule("c", 900, () -> fired.add("c"));
+
+        advanceMillis(600);
+
+        assertEquals(List.of("a", "b"), fired);
+        assertTrue(wheel.isScheduled("c"));
+    }
+
+    @Test
+    void cancel_RemovesPendingTask() {
+        wheel.schedule("a", 100, () -> fired.add("a"));
+
+        assertTrue(wheel.cancel("a"));
+        assertFalse(wheel.cancel("a"));
+
+        advanceMillis(200);
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    void advance_TaskReschedulesItselfAndFailuresDoNotStopOtherTasks() {
+        wheel.schedule("boom", 100, () -> { throw new IllegalStateException("boom"); });
+        wheel.schedule("probe", 100, () -> {
+            fired.add("probe");
+            wheel.schedule("probe", 100, () -> fired.add("probe-again"));
+        });
+
+        advanceMillis(100);
+        assertEquals(List.of("probe"), fired);
+        assertTrue(wheel.isScheduled("probe"));
+
+        advanceMillis(100);
+        assertEquals(List.of("probe", "probe-again"), fired);
+    }
+
+    @Test
+    void constructor_RejectsNonPositiveArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(0, 8));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(100, 0));
+    }
+}
@@ -0,0 +1,81 @@
+package com.eh.digitalpathology.dicomreceiver.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadBufferPoolTest {
+
+    @Test
+    @DisplayName("acquire(): hands out cleared direct buffers of the configured size")
+    void acquireReturnsDirectBufferOfConfiguredSize() throws Exception {
+        UploadBufferPool pool = new UploadBufferPool(2, 4096);
+
+        ByteBuffer buffer = pool.acquire();
+
+        assertTrue(buffer.isDirect());
+        assertEquals(4096, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(4096, buffer.limit());
+        assertEquals(4096, pool.getBufferSize());
+        assertEquals(1, pool.availableBuffers());
+    }
+
+    @Test
+    @DisplayName("release(): buffers are recycled and come back cleared")
+    void releasedBufferIsReused() throws Exception {
+        UploadBufferPool pool = new UploadBufferPool(1, 1024);
+
+        ByteBuffer first = pool.acquire();
+        first.put(new byte[100]).flip();
+        pool.release(first);
+        ByteBuffer second = pool.acquire();
+
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(1024, second.limit());
+    }
+
+    @Test
+    @DisplayName("acquire(): blocks while every buffer is in use until one is released")
+    void acquireBlocksWhenExhausted() throws Exception {
+        UploadBufferPool pool = new UploadBufferPool(1, 1024);
+        ByteBuffer held = pool.acquire();
+
+        CompletableFuture<ByteBuffer> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+        pool.release(held);
+        assertSame(held, waiting.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("release(null): is a no-op and does not add permits")
+    void releaseNullIsIgnored() {
+        UploadBufferPool pool = new UploadBufferPool(1, 1024);
+
+        pool.release(null);
+
+        assertEquals(1, pool.availableBuffers());
+    }
+
+    @Test
+    @DisplayName("constructor: rejects non-positive sizes")
+    void rejectsInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new UploadBufferPool(0, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new UploadBufferPool(1, 0));
+    }
+}